@@ -0,0 +1,199 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * In-memory Bloom filter over the encoded keys of a {@link Tree}. Every key
+ * that has been stored in the tree since the filter was created sets a small
+ * number of bits chosen by hashing its encoded bytes. A key whose bits are not
+ * all set has definitely never been stored, so a fetch can report it absent
+ * without searching the tree.
+ * </p>
+ * <p>
+ * Bits are never cleared: removing a record leaves its bits set, and the
+ * filter then simply answers "maybe" for that key. The filter is therefore
+ * correct regardless of transaction outcome, but the fraction of absent keys
+ * it fails to reject grows as records are removed and as more keys are added
+ * than it was sized for. Rebuilding it with
+ * {@link Tree#enableBloomFilter(long)} restores its accuracy.
+ * </p>
+ * <p>
+ * All methods are thread-safe; bits are set with atomic operations so that
+ * concurrent <code>add</code> calls do not lose each other's updates.
+ * </p>
+ */
+class BloomFilter {
+
+    /**
+     * Number of bits per expected key. Ten bits per key with seven hash
+     * functions yields a false-positive rate of about 1%.
+     */
+    final static int DEFAULT_BITS_PER_KEY = 10;
+
+    private final static int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final AtomicLongArray _words;
+
+    private final long _bitCount;
+
+    private final int _hashCount;
+
+    private final AtomicLong _keyCount = new AtomicLong();
+
+    private final AtomicLong _negativeCount = new AtomicLong();
+
+    private final AtomicLong _falsePositiveCount = new AtomicLong();
+
+    private volatile boolean _ready;
+
+    BloomFilter(final long expectedKeys, final int bitsPerKey) {
+        if (expectedKeys <= 0 || bitsPerKey <= 0) {
+            throw new IllegalArgumentException("Invalid expectedKeys=" + expectedKeys + " bitsPerKey=" + bitsPerKey);
+        }
+        final long words = Math.min(MAX_WORDS, (expectedKeys * bitsPerKey + 63) / 64);
+        _words = new AtomicLongArray((int) words);
+        _bitCount = words * 64;
+        _hashCount = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+    }
+
+    /**
+     * Record the supplied key as present.
+     * 
+     * @param key
+     *            the key
+     */
+    void add(final Key key) {
+        final long hash = hash(key.getEncodedBytes(), key.getEncodedSize());
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < _hashCount; i++) {
+            final long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % _bitCount;
+            final int index = (int) (bit >>> 6);
+            final long mask = 1L << (bit & 63);
+            for (;;) {
+                final long word = _words.get(index);
+                if ((word & mask) != 0 || _words.compareAndSet(index, word, word | mask)) {
+                    break;
+                }
+            }
+        }
+        _keyCount.incrementAndGet();
+    }
+
+    /**
+     * Test whether the supplied key may have been added. Until the filter is
+     * marked ready this method always returns <code>true</code>.
+     * 
+     * @param key
+     *            the key
+     * @return <code>false</code> if the key has definitely never been added
+     */
+    boolean mightContain(final Key key) {
+        if (!_ready) {
+            return true;
+        }
+        final long hash = hash(key.getEncodedBytes(), key.getEncodedSize());
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < _hashCount; i++) {
+            final long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % _bitCount;
+            if ((_words.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                _negativeCount.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record that a key for which {@link #mightContain(Key)} returned
+     * <code>true</code> turned out to have no value.
+     */
+    void falsePositive() {
+        if (_ready) {
+            _falsePositiveCount.incrementAndGet();
+        }
+    }
+
+    boolean isReady() {
+        return _ready;
+    }
+
+    /**
+     * Mark the filter ready for use once it contains every key in the tree.
+     */
+    void setReady() {
+        _ready = true;
+    }
+
+    long getBitCount() {
+        return _bitCount;
+    }
+
+    int getHashCount() {
+        return _hashCount;
+    }
+
+    /**
+     * @return the number of keys added, including keys added more than once
+     */
+    long getKeyCount() {
+        return _keyCount.get();
+    }
+
+    /**
+     * @return the number of lookups the filter answered as definitely absent
+     */
+    long getNegativeCount() {
+        return _negativeCount.get();
+    }
+
+    /**
+     * @return the number of lookups the filter answered as possibly present
+     *         for keys that had no value
+     */
+    long getFalsePositiveCount() {
+        return _falsePositiveCount.get();
+    }
+
+    /**
+     * 64-bit FNV-1a hash followed by the MurmurHash3 finalizer, which spreads
+     * the similar byte sequences of adjacent keys across the whole range.
+     */
+    private static long hash(final byte[] bytes, final int size) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < size; i++) {
+            h ^= bytes[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BloomFilter(bits=%,d hashes=%d keys=%,d negatives=%,d falsePositives=%,d)", _bitCount,
+                _hashCount, getKeyCount(), getNegativeCount(), getFalsePositiveCount());
+    }
+}
@@ -27,6 +27,8 @@ import java.util.List;
 import java.util.Set;
 
 import com.persistit.CleanupManager.CleanupAntiValue;
+import com.persistit.CleanupManager.CleanupMergeOperands;
+import com.persistit.CleanupManager.CleanupRecount;
 import com.persistit.Exchange.Sequence;
 import com.persistit.JournalRecord.IV;
 import com.persistit.JournalRecord.PA;
@@ -179,6 +181,19 @@ public class Buffer extends SharedResource {
     final static int RIGHT_SIBLING_OFFSET = 16;
     final static int TIMESTAMP_OFFSET = 24;
 
+    /*
+     * Flag in the buffer length byte marking an index page whose tail blocks
+     * also carry the record counts of their child subtrees. The buffer length
+     * byte holds at most 64 (16384 / 256), so its high bit is otherwise unused.
+     */
+    final static int COUNTED_INDEX_FLAG = 0x80;
+
+    /*
+     * Versioned-record count of an index entry whose subtree has not been
+     * counted since the entry was written.
+     */
+    final static int UNKNOWN_VERSIONED_COUNT = Integer.MAX_VALUE;
+
     // Offset within page of first KeyBlock
     final static int KEY_BLOCK_START = HEADER_SIZE;
 
@@ -191,7 +206,10 @@ public class Buffer extends SharedResource {
     // Length of tail block
     final static int TAILBLOCK_HDR_SIZE_DATA = 4;
     final static int TAILBLOCK_HDR_SIZE_INDEX = 8;
+    final static int TAILBLOCK_HDR_SIZE_COUNTED_INDEX = 20;
     final static int TAILBLOCK_POINTER = 4;
+    final static int TAILBLOCK_RECORDS = 8;
+    final static int TAILBLOCK_VERSIONED = 16;
     final static int TAILBLOCK_FACTOR = 4;
     final static int TAILBLOCK_MASK = 0xFFFFFFFC;
 
@@ -304,6 +322,12 @@ public class Buffer extends SharedResource {
      */
     private volatile Volume _vol;
 
+    /**
+     * The Tree whose operation most recently loaded or found the page, used
+     * to account for per-Tree buffer shares. Maintained only by the BufferPool.
+     */
+    private volatile Tree _tree;
+
     /**
      * Timestamp of last Transaction to modify this resource
      */
@@ -345,6 +369,11 @@ public class Buffer extends SharedResource {
      */
     private volatile int _tailHeaderSize = TAILBLOCK_HDR_SIZE_DATA;
 
+    /**
+     * Whether this is an index page that carries subtree record counts
+     */
+    private volatile boolean _countedIndex;
+
     /**
      * Offset within the buffer to the first byte past the last keyblock
      */
@@ -370,7 +399,7 @@ public class Buffer extends SharedResource {
      * Singly-linked list of Buffers current having the same hash code.
      * (Maintained by BufferPool.)
      */
-    private Buffer _next = null;
+    private volatile Buffer _next = null;
 
     private volatile long _lastPrunedTime;
 
@@ -415,6 +444,7 @@ public class Buffer extends SharedResource {
         _mvvCount = original._mvvCount;
         setKeyBlockEnd(original._keyBlockEnd);
         _tailHeaderSize = original._tailHeaderSize;
+        _countedIndex = original._countedIndex;
         System.arraycopy(original._bytes, 0, _bytes, 0, _bytes.length);
     }
 
@@ -422,9 +452,24 @@ public class Buffer extends SharedResource {
      * Initializes the buffer so that it contains no keys or data.
      */
     void init(int type) {
+        init(type, false);
+    }
+
+    /**
+     * Initializes the buffer so that it contains no keys or data.
+     * 
+     * @param type
+     *            the page type
+     * @param counted
+     *            whether an index page should carry subtree record counts in
+     *            its tail blocks; ignored for other page types
+     */
+    void init(int type, boolean counted) {
         _type = type;
         setKeyBlockEnd(KEY_BLOCK_START);
-        _tailHeaderSize = isIndexPage() ? TAILBLOCK_HDR_SIZE_INDEX : TAILBLOCK_HDR_SIZE_DATA;
+        _countedIndex = counted && isIndexPage();
+        _tailHeaderSize = isIndexPage() ? (_countedIndex ? TAILBLOCK_HDR_SIZE_COUNTED_INDEX
+                : TAILBLOCK_HDR_SIZE_INDEX) : TAILBLOCK_HDR_SIZE_DATA;
         _rightSibling = 0;
         _alloc = _bufferSize;
         _slack = 0;
@@ -476,18 +521,20 @@ public class Buffer extends SharedResource {
                 _slack = 0;
                 _rightSibling = 0;
             } else {
-                Debug.$assert0.t(getByte(BUFFER_LENGTH_OFFSET) * 256 == _bufferSize);
+                Debug.$assert0.t((getByte(BUFFER_LENGTH_OFFSET) & ~COUNTED_INDEX_FLAG) * 256 == _bufferSize);
                 Debug.$assert0.t(getLong(PAGE_ADDRESS_OFFSET) == _page);
                 _alloc = getChar(FREE_OFFSET);
                 _slack = getChar(SLACK_OFFSET);
                 _rightSibling = getLong(RIGHT_SIBLING_OFFSET);
 
+                _countedIndex = false;
                 if (isDataPage()) {
                     _tailHeaderSize = TAILBLOCK_HDR_SIZE_DATA;
                     _mvvCount = Integer.MAX_VALUE;
                     clearEnqueuedForPruning();
                 } else if (isIndexPage()) {
-                    _tailHeaderSize = TAILBLOCK_HDR_SIZE_INDEX;
+                    _countedIndex = (getByte(BUFFER_LENGTH_OFFSET) & COUNTED_INDEX_FLAG) != 0;
+                    _tailHeaderSize = _countedIndex ? TAILBLOCK_HDR_SIZE_COUNTED_INDEX : TAILBLOCK_HDR_SIZE_INDEX;
                 }
             }
         } else {
@@ -510,15 +557,31 @@ public class Buffer extends SharedResource {
         _persistit.checkFatal();
         final Volume volume = getVolume();
         if (volume != null) {
-            clearSlack();
-            save();
+            prepareWrite();
             _vol.getStorage().writePage(this);
-            clearDirty();
-            volume.getStatistics().bumpWriteCounter();
-            _pool.bumpWriteCounter();
+            writeCompleted();
         }
     }
 
+    /**
+     * Bring the page image up to date before it is written. Used with
+     * {@link #writeCompleted()} when several pages are written together by
+     * {@link VolumeStorage#writePages(Buffer[], int, ByteBuffer)}.
+     */
+    void prepareWrite() throws InvalidPageStructureException {
+        clearSlack();
+        save();
+    }
+
+    /**
+     * Mark the page clean after it has been written.
+     */
+    void writeCompleted() {
+        clearDirty();
+        _vol.getStatistics().bumpWriteCounter();
+        _pool.bumpWriteCounter();
+    }
+
     boolean clearDirty() {
         if (super.clearDirty()) {
             _pool.decrementDirtyPageCount();
@@ -605,7 +668,7 @@ public class Buffer extends SharedResource {
         putLong(TIMESTAMP_OFFSET, _timestamp);
         if (_page != 0) {
             putByte(TYPE_OFFSET, _type);
-            putByte(BUFFER_LENGTH_OFFSET, _bufferSize / 256);
+            putByte(BUFFER_LENGTH_OFFSET, _bufferSize / 256 | (_countedIndex ? COUNTED_INDEX_FLAG : 0));
             putChar(KEY_BLOCK_END_OFFSET, _keyBlockEnd);
             putChar(FREE_OFFSET, _alloc);
             putChar(SLACK_OFFSET, _slack);
@@ -727,6 +790,14 @@ public class Buffer extends SharedResource {
         _vol = volume;
     }
 
+    Tree getTree() {
+        return _tree;
+    }
+
+    void setTree(final Tree tree) {
+        _tree = tree;
+    }
+
     /**
      * Set the right sibling's page address
      * 
@@ -804,12 +875,61 @@ public class Buffer extends SharedResource {
      * @throws PersistitInterruptedException
      */
     int findKey(Key key) throws PersistitInterruptedException {
-        final FastIndex fastIndex = getFastIndex();
+        return findKey(key, getFastIndex());
+    }
+
+    /**
+     * Variant of {@link #findKey(Key)} used during an optimistic read, when the
+     * caller holds no claim on this <code>Buffer</code> (see
+     * {@link SharedResource#getOptimisticStamp()}). The page may be modified
+     * concurrently, so the result is meaningful only if the stamp is validated
+     * afterward. This method never recomputes the <code>FastIndex</code>; it
+     * returns -1 if the <code>FastIndex</code> is not valid, if another thread
+     * recomputes it during the search, or if the search encounters
+     * inconsistent data.
+     * 
+     * @param key
+     *            The key to seek
+     * @return An encoded result as for {@link #findKey(Key)}, or -1
+     */
+    int findKeyOptimistic(Key key) {
+        final FastIndex fastIndex = _fastIndex;
+        final int version = fastIndex.getVersion();
+        if ((version & 1) != 0 || !fastIndex.isValid()) {
+            return -1;
+        }
+        final int result = findKey(key, fastIndex);
+        return fastIndex.getVersion() == version ? result : -1;
+    }
+
+    /**
+     * Variant of {@link #getPointer(int)} used during an optimistic read.
+     * 
+     * @param p
+     *            offset of a key block in this index page
+     * @return the child page pointer, or -1 if the key block does not refer
+     *         to a tail block within the page
+     */
+    long getPointerOptimistic(final int p) {
+        final int tail = decodeKeyBlockTail(getInt(p));
+        if (tail + TAILBLOCK_POINTER + 4 > _bufferSize) {
+            return -1;
+        }
+        return getInt(tail + TAILBLOCK_POINTER);
+    }
+
+    /**
+     * Search this page using the supplied <code>FastIndex</code>. Returns -1
+     * if the page content or the <code>FastIndex</code> is found to be
+     * inconsistent, which can happen only during an optimistic read.
+     */
+    private int findKey(final Key key, final FastIndex fastIndex) {
         byte[] kbytes = key.getEncodedBytes();
         int klength = key.getEncodedSize();
         int depth = 0;
         int left = KEY_BLOCK_START;
         int right = _keyBlockEnd;
+        final int end = right;
         int start = left;
         int tailHeaderSize = _tailHeaderSize;
 
@@ -863,6 +983,9 @@ public class Buffer extends SharedResource {
                         // p2 now points to the last key block with the same
                         // ebc in this run.
                         //
+                        if (p2 >= end) {
+                            return -1;
+                        }
                         int kbData2 = getInt(p2);
                         int db2 = decodeKeyBlockDb(kbData2);
                         //
@@ -888,8 +1011,9 @@ public class Buffer extends SharedResource {
                                 // -
                                 // in that case we use the cross count to skip
                                 // all of them.
-                                int runCount2 = fastIndex.getRunCount(index + runCount);
-                                assert runCount2 <= 0;
+                                if (fastIndex.getRunCount(index + runCount) > 0) {
+                                    return -1;
+                                }
                                 p = p2 + KEYBLOCK_LENGTH * (-runCount + 1);
                                 continue;
                             } else {
@@ -969,8 +1093,14 @@ public class Buffer extends SharedResource {
                             //
                             index = (p2 - start) >> 2;
                             runCount = fastIndex.getRunCount(index);
-                            assert runCount <= 0;
-                            p = p2 + KEYBLOCK_LENGTH * (-runCount + 1);
+                            if (runCount > 0) {
+                                return -1;
+                            }
+                            //
+                            // Never move backward: during an optimistic read
+                            // the FastIndex may be inconsistent.
+                            //
+                            p = p2 + KEYBLOCK_LENGTH * (runCount < 0 ? -runCount + 1 : 1);
                             continue;
                         } else {
                             // found it right here. We'll fall through to the
@@ -991,7 +1121,9 @@ public class Buffer extends SharedResource {
                     }
                 }
 
-                assert db == kb;
+                if (db != kb) {
+                    return -1;
+                }
                 //
                 // kb == db so we now try to go deeper into the key. On
                 // an exact match we will perform this block of code once
@@ -999,9 +1131,15 @@ public class Buffer extends SharedResource {
                 //
                 kbData = getInt(p);
                 int tail = decodeKeyBlockTail(kbData);
+                if (tail + tailHeaderSize > _bufferSize) {
+                    return -1;
+                }
                 int tbData = getInt(tail);
                 int tlength = decodeTailBlockKLength(tbData) + depth + 1;
                 int qlength = tlength < klength ? tlength : klength;
+                if (tail + tailHeaderSize + qlength - depth - 1 > _bufferSize) {
+                    return -1;
+                }
                 //
                 // Walk down the key, increasing depth
                 //
@@ -1088,6 +1226,26 @@ public class Buffer extends SharedResource {
 
     }
 
+    /**
+     * Determines whether the value at the supplied keyblock is neither an MVV
+     * nor an anti-value, and is therefore visible to every transaction.
+     * 
+     * @param foundAt
+     *            the keyblock index
+     * @return <code>true</code> if the value is primordial
+     */
+    boolean isPrimordialValue(final int foundAt) {
+        final int p = foundAt & P_MASK;
+        final int kbData = getInt(p);
+        final int tail = decodeKeyBlockTail(kbData);
+        final int tbData = getInt(tail);
+        final int klength = decodeTailBlockKLength(tbData);
+        final int size = decodeTailBlockSize(tbData);
+        final int offset = tail + _tailHeaderSize + klength;
+        final int valueSize = size - klength - _tailHeaderSize;
+        return !isValueMVV(_bytes, offset, valueSize) && !(valueSize == 1 && _bytes[offset] == MVV.TYPE_ANTIVALUE);
+    }
+
     /**
      * Given a foundAt position, return a long value that encodes the offset and
      * size of the associated value field
@@ -1176,6 +1334,150 @@ public class Buffer extends SharedResource {
         return getInt(tail + 4);
     }
 
+    /**
+     * @return <i>true</i> if this is an index page whose entries carry the
+     *         record counts of their child subtrees
+     */
+    boolean isCountedIndexPage() {
+        return _countedIndex;
+    }
+
+    /**
+     * Number of records, including versioned records and anti-values, in the
+     * subtree under the entry at <code>foundAt</code> of a counted index page.
+     * The value is exact only if {@link #getVersionedCount(int)} is zero.
+     * 
+     * @param foundAt
+     *            the keyblock index
+     * @return the subtree record count
+     */
+    long getRecordCount(int foundAt) {
+        Debug.$assert0.t(_countedIndex);
+        return getLong(decodeKeyBlockTail(getInt(foundAt & P_MASK)) + TAILBLOCK_RECORDS);
+    }
+
+    /**
+     * Upper bound on the number of records in the subtree under the entry at
+     * <code>foundAt</code> of a counted index page whose values are MVVs or
+     * anti-values, or {@link #UNKNOWN_VERSIONED_COUNT} if the subtree has not
+     * been counted since the entry was written. Pruning can only lower the
+     * true number, so a stale value errs on the safe side.
+     * 
+     * @param foundAt
+     *            the keyblock index
+     * @return the versioned record count
+     */
+    int getVersionedCount(int foundAt) {
+        Debug.$assert0.t(_countedIndex);
+        return getInt(decodeKeyBlockTail(getInt(foundAt & P_MASK)) + TAILBLOCK_VERSIONED);
+    }
+
+    /**
+     * Set the subtree record counts of the entry at <code>foundAt</code> of a
+     * counted index page.
+     * 
+     * @param foundAt
+     *            the keyblock index
+     * @param records
+     *            number of records in the subtree
+     * @param versioned
+     *            number of those records that are MVVs or anti-values
+     */
+    void setRecordCounts(int foundAt, long records, int versioned) {
+        Debug.$assert0.t(_countedIndex);
+        final int tail = decodeKeyBlockTail(getInt(foundAt & P_MASK));
+        putLong(tail + TAILBLOCK_RECORDS, records);
+        putInt(tail + TAILBLOCK_VERSIONED, versioned);
+    }
+
+    /**
+     * Compute the number of records in the subtree rooted at this page. For a
+     * data page this is the number of keys other than the left guard and the
+     * right edge; for a counted index page it is the sum of the record counts
+     * of its entries.
+     * 
+     * @return the subtree record count
+     */
+    long subtreeRecords() {
+        if (isDataPage()) {
+            return Math.max(0, (_keyBlockEnd - KEYBLOCK_LENGTH - firstRecordKeyBlock()) / KEYBLOCK_LENGTH);
+        }
+        long count = 0;
+        if (_countedIndex) {
+            for (int p = KEY_BLOCK_START; p < _keyBlockEnd - KEYBLOCK_LENGTH; p += KEYBLOCK_LENGTH) {
+                count += getRecordCount(p);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the number of records in the subtree rooted at this page whose
+     * values are MVVs or anti-values. For an index page the result is the
+     * saturated sum of the versioned counts of its entries and is therefore
+     * {@link #UNKNOWN_VERSIONED_COUNT} if any of them is unknown, or if the
+     * page carries no counts.
+     * 
+     * @return the subtree versioned record count
+     */
+    int subtreeVersioned() {
+        long count = 0;
+        if (isDataPage()) {
+            final int first = firstRecordKeyBlock();
+            if (_mvvCount != 0) {
+                for (int p = first; p < _keyBlockEnd - KEYBLOCK_LENGTH; p += KEYBLOCK_LENGTH) {
+                    if (!isPrimordialValue(p)) {
+                        count++;
+                    }
+                }
+            } else if (first < _keyBlockEnd - KEYBLOCK_LENGTH && isPrimordialAntiValue(first)) {
+                //
+                // A primordial anti-value awaiting removal from the left edge
+                //
+                count++;
+            }
+        } else if (!_countedIndex) {
+            return UNKNOWN_VERSIONED_COUNT;
+        } else {
+            for (int p = KEY_BLOCK_START; p < _keyBlockEnd - KEYBLOCK_LENGTH; p += KEYBLOCK_LENGTH) {
+                count += getVersionedCount(p);
+            }
+        }
+        return (int) Math.min(count, UNKNOWN_VERSIONED_COUNT);
+    }
+
+    /**
+     * @return the keyblock of the first record of a data page: the first
+     *         keyblock, or the second if the first holds the left guard key
+     *         of the leftmost page
+     */
+    int firstRecordKeyBlock() {
+        return _keyBlockEnd > KEY_BLOCK_START && decodeKeyBlockDb(getInt(KEY_BLOCK_START)) == 0 ? KEY_BLOCK_START
+                + KEYBLOCK_LENGTH : KEY_BLOCK_START;
+    }
+
+    /**
+     * Copy the pointer and, on a counted index page, the subtree record counts
+     * of the index tail block at <code>tail</code> to the tail block at
+     * <code>toTail</code> in <code>toBuffer</code>. The blocks may overlap.
+     */
+    private void copyIndexHeader(final int tail, final Buffer toBuffer, final int toTail) {
+        System.arraycopy(_bytes, tail + TAILBLOCK_POINTER, toBuffer._bytes, toTail + TAILBLOCK_POINTER,
+                _tailHeaderSize - TAILBLOCK_POINTER);
+    }
+
+    /**
+     * Mark the index tail block at <code>tail</code> as the right edge of its
+     * page: it has no child, and on a counted index page no records.
+     */
+    private void putEdgePointer(final int tail) {
+        putInt(tail + TAILBLOCK_POINTER, -1);
+        if (_countedIndex) {
+            putLong(tail + TAILBLOCK_RECORDS, 0);
+            putInt(tail + TAILBLOCK_VERSIONED, 0);
+        }
+    }
+
     /**
      * Internal implementation of getKey using a previously computed result from
      * the findKey() method.
@@ -1497,6 +1799,9 @@ public class Buffer extends SharedResource {
 
                 Debug.$assert0.t(p + KEYBLOCK_LENGTH < _keyBlockEnd ? pointer > 0 : true);
                 putInt(newTail + TAILBLOCK_POINTER, pointer);
+                if (_countedIndex) {
+                    setRecordCounts(p, 0, UNKNOWN_VERSIONED_COUNT);
+                }
             } else {
                 int storedLength = valueHelper.storeVersion(_bytes, newTail + _tailHeaderSize + klength, -1,
                         _bytes.length); // TODO limit
@@ -1625,6 +1930,9 @@ public class Buffer extends SharedResource {
             long pointer = valueHelper.getPointerValue();
             Debug.$assert0.t(p + KEYBLOCK_LENGTH < _keyBlockEnd ? pointer > 0 : pointer == -1);
             putInt(newTail + TAILBLOCK_POINTER, (int) pointer);
+            if (_countedIndex) {
+                setRecordCounts(p, 0, UNKNOWN_VERSIONED_COUNT);
+            }
         } else {
             final int storedLength = valueHelper.storeVersion(_bytes, newTail + _tailHeaderSize + klength, oldTailSize
                     - _tailHeaderSize - klength, _bytes.length); // TODO - limit
@@ -1771,7 +2079,7 @@ public class Buffer extends SharedResource {
                 // location.
                 //
                 if (isIndexPage()) {
-                    putInt(newNextTail + TAILBLOCK_POINTER, getInt(tailNext + TAILBLOCK_POINTER));
+                    copyIndexHeader(tailNext, this, newNextTail);
                 }
                 System.arraycopy(_bytes, tailNext + _tailHeaderSize, _bytes, newNextTail + _tailHeaderSize + ebcNext
                         - ebc, nextTailSize - _tailHeaderSize);
@@ -1875,6 +2183,7 @@ public class Buffer extends SharedResource {
 
         Debug.$assert0.t(rightSibling._keyBlockEnd == KEY_BLOCK_START);
         Debug.$assert0.t(rightSibling._alloc == rightSibling._bufferSize);
+        Debug.$assert0.t(rightSibling._countedIndex == _countedIndex);
         if (Debug.ENABLED) {
             assertVerify();
         }
@@ -2167,7 +2476,7 @@ public class Buffer extends SharedResource {
                 System.arraycopy(_bytes, tail + _tailHeaderSize + klength, rightSibling._bytes, newTailBlock
                         + _tailHeaderSize + newKeyLength, dataSize);
             } else {
-                rightSibling.putInt(newTailBlock + TAILBLOCK_POINTER, getInt(tail + TAILBLOCK_POINTER));
+                copyIndexHeader(tail, rightSibling, newTailBlock);
             }
 
             //
@@ -2210,7 +2519,7 @@ public class Buffer extends SharedResource {
                 } else {
                     // edge key for index block. We destroy the pointer value
                     // so that we don't get confused later.
-                    putInt(tail + TAILBLOCK_POINTER, -1);
+                    putEdgePointer(tail);
                 }
             }
         }
@@ -2260,7 +2569,7 @@ public class Buffer extends SharedResource {
         // it does not later get confused and interpreted as a valid pointer.
         //
         if (isIndexPage()) {
-            putInt(edgeTail + TAILBLOCK_POINTER, -1);
+            putEdgePointer(edgeTail);
         }
 
         invalidateFastIndex();
@@ -2356,7 +2665,9 @@ public class Buffer extends SharedResource {
      * @param foundAt1
      *            Offset of the first key block to remove
      * @param foundAt2
-     *            Offset of the first key block in buffer to keep
+     *            Offset of the first key block in buffer to keep. May be
+     *            {@link #KEY_BLOCK_START} to keep all of the right page's
+     *            records and remove only keys from the left page.
      * @param spareKey
      *            A spare Key used internally for intermediate results
      * @param policy
@@ -2372,7 +2683,7 @@ public class Buffer extends SharedResource {
         foundAt1 &= P_MASK;
         foundAt2 &= P_MASK;
 
-        if (buffer == this || foundAt1 <= KEY_BLOCK_START || foundAt1 >= _keyBlockEnd || foundAt2 <= KEY_BLOCK_START
+        if (buffer == this || foundAt1 <= KEY_BLOCK_START || foundAt1 >= _keyBlockEnd || foundAt2 < KEY_BLOCK_START
                 || foundAt2 >= buffer._keyBlockEnd) {
             Debug.$assert0.t(false);
             throw new IllegalArgumentException("foundAt1=" + foundAt1 + " foundAt2=" + foundAt2 + " _keyBlockEnd="
@@ -2402,6 +2713,16 @@ public class Buffer extends SharedResource {
         buffer.keyAt(foundAt2, spareKey);
 
         long measureLeft = joinMeasure(foundAt1, _keyBlockEnd);
+        if (foundAt2 == KEY_BLOCK_START) {
+            /*
+             * The first key of the right page is stored with an ebc of zero.
+             * Encode it relative to the last remaining key of the left page,
+             * as if it already followed that key. It is encoded with an ebc
+             * of zero again below if it remains the first key of the right
+             * page.
+             */
+            buffer.increaseEbc(KEY_BLOCK_START, (int) (measureLeft >>> 32), spareKeyBytes);
+        }
         long measureRight = buffer.joinMeasure(KEY_BLOCK_START, foundAt2);
         kbData = buffer.getInt(foundAt2);
         int oldEbc = decodeKeyBlockEbc(kbData);
@@ -2499,12 +2820,22 @@ public class Buffer extends SharedResource {
                 /*
                  * Rebalancing is infeasible
                  */
+                if (foundAt2 == KEY_BLOCK_START) {
+                    buffer.reduceEbc(KEY_BLOCK_START, 0, spareKeyBytes);
+                }
                 throw new RebalanceException();
             } else if (joinOffset < 0) {
                 /*
                  * Move records from the right page to the left page.
                  */
                 joinOffset = -joinOffset;
+                if (foundAt2 == KEY_BLOCK_START) {
+                    /*
+                     * The first key block no longer holds a complete key, so
+                     * keyAt needs its leading bytes from spareKey.
+                     */
+                    spareKey.copyTo(indexKey);
+                }
                 buffer.keyAt(joinOffset, indexKey);
                 /*
                  * Remove records from the left page
@@ -2821,6 +3152,46 @@ public class Buffer extends SharedResource {
         return _fastIndex;
     }
 
+    /**
+     * Increase the ebc of the key block at <code>p</code> to
+     * <code>newEbc</code>, removing the bytes that are now elided from the
+     * front of its tail block. The tail block shrinks in place; any space no
+     * longer needed is deallocated.
+     * 
+     * @param p
+     *            offset of the key block
+     * @param newEbc
+     *            the new ebc
+     * @param keyBytes
+     *            the encoded bytes of the full key at <code>p</code>
+     */
+    private void increaseEbc(int p, int newEbc, byte[] keyBytes) {
+        int kbData = getInt(p);
+        int oldEbc = decodeKeyBlockEbc(kbData);
+        int tail = decodeKeyBlockTail(kbData);
+        int tbData = getInt(tail);
+        int size = decodeTailBlockSize(tbData);
+        int klength = decodeTailBlockKLength(tbData);
+        int delta = newEbc - oldEbc;
+
+        if (delta == 0)
+            return;
+        if (delta < 0 || delta > klength) {
+            throw new IllegalArgumentException("newEbc=" + newEbc + " must be between oldEbc=" + oldEbc + " and "
+                    + (oldEbc + klength));
+        }
+        System.arraycopy(_bytes, tail + _tailHeaderSize + delta, _bytes, tail + _tailHeaderSize, size
+                - _tailHeaderSize - delta);
+
+        int oldAllocated = (size + ~TAILBLOCK_MASK) & TAILBLOCK_MASK;
+        int newAllocated = (size - delta + ~TAILBLOCK_MASK) & TAILBLOCK_MASK;
+        putInt(tail, encodeTailBlock(size - delta, klength - delta));
+        if (newAllocated < oldAllocated) {
+            deallocTail(tail + newAllocated, oldAllocated - newAllocated);
+        }
+        putInt(p, encodeKeyBlock(newEbc, keyBytes[newEbc] & 0xFF, tail));
+    }
+
     private void reduceEbc(int p, int newEbc, byte[] indexKeyBytes) {
         int kbData = getInt(p);
         int oldDb = decodeKeyBlockDb(kbData);
@@ -2866,7 +3237,7 @@ public class Buffer extends SharedResource {
         }
 
         if (newTail != tail && isIndexPage()) {
-            putInt(newTail + TAILBLOCK_POINTER, getInt(tail + TAILBLOCK_POINTER));
+            copyIndexHeader(tail, this, newTail);
         }
         System.arraycopy(_bytes, tail + _tailHeaderSize, _bytes, newTail + _tailHeaderSize + oldEbc - newEbc, size
                 - _tailHeaderSize);
@@ -2942,7 +3313,7 @@ public class Buffer extends SharedResource {
             putInt(newTail, encodeTailBlock(newSize, klength));
 
             if (edgeCase && isIndexPage()) {
-                putInt(newTail + TAILBLOCK_POINTER, -1);
+                putEdgePointer(newTail);
             }
 
             putInt(insertAt, encodeKeyBlock(ebc, db, newTail));
@@ -3594,6 +3965,10 @@ public class Buffer extends SharedResource {
                 }
                 if (changed) {
                     setDirtyAtTimestamp(timestamp);
+                    final Tree base = tree == null ? null : tree.getMergeBaseTree();
+                    if (base != null) {
+                        offerMergeFolds(tree, base);
+                    }
                 }
 
                 deallocatePrunedVersions(_persistit, _vol, prunedVersions);
@@ -3629,6 +4004,13 @@ public class Buffer extends SharedResource {
                         throw deferredExceptions.get(0);
                     }
                 }
+                if (changed && tree != null && tree.hasRecordCounts()) {
+                    //
+                    // The index entries above this page still count the
+                    // pruned versions and anti-values
+                    //
+                    _persistit.getCleanupManager().offer(new CleanupRecount(tree.getHandle(), getPageAddress()));
+                }
             }
 
         } finally {
@@ -3702,6 +4084,47 @@ public class Buffer extends SharedResource {
         return changed;
     }
 
+    /**
+     * Offer a {@link CleanupMergeOperands} action for each record of the
+     * supplied tree that has at least {@link Exchange#MERGE_FOLD_THRESHOLD}
+     * operands on this page of its merge operand tree. Operands become
+     * primordial when pruned, so this is where committed operands accumulate
+     * without being read. Each operand key begins with a byte array segment
+     * holding its record's key; consecutive operands of one record therefore
+     * share at least the bytes of that segment, which the keyblock's elided
+     * byte count reveals without comparing keys. The actions name the operand
+     * tree, whose handle is known since it holds MVVs.
+     */
+    private void offerMergeFolds(final Tree tree, final Tree base) {
+        if (base.getMergeOperator() == null) {
+            return;
+        }
+        final int treeHandle = tree.getHandle();
+        final Key key = _persistit.getThreadLocalKey();
+        int run = 0;
+        //
+        // The last keyblock is the right edge key
+        //
+        for (int p = KEY_BLOCK_START; p < _keyBlockEnd - KEYBLOCK_LENGTH; p += KEYBLOCK_LENGTH) {
+            nextKey(key, p);
+            final int segmentEnd = key.nextElementIndex(0);
+            if (segmentEnd <= 0) {
+                run = 0;
+                continue;
+            }
+            run = p > KEY_BLOCK_START && decodeKeyBlockEbc(getInt(p)) >= segmentEnd ? run + 1 : 1;
+            if (run == Exchange.MERGE_FOLD_THRESHOLD && base.reserveMergeFold()) {
+                final byte[] bytes = key.reset().decodeByteArray();
+                final Key recordKey = new Key(_persistit);
+                System.arraycopy(bytes, 0, recordKey.getEncodedBytes(), 0, bytes.length);
+                recordKey.setEncodedSize(bytes.length);
+                if (!_persistit.getCleanupManager().offer(new CleanupMergeOperands(treeHandle, recordKey))) {
+                    base.releaseMergeFold();
+                }
+            }
+        }
+    }
+
     private boolean pruneAntiValue(final int valueByte, final int p, final Tree tree) {
         if (valueByte == MVV.TYPE_ANTIVALUE) {
             if (p == KEY_BLOCK_START) {
@@ -4117,12 +4540,14 @@ public class Buffer extends SharedResource {
         long rightSibling;
         long timestamp;
         int bufferSize;
+        boolean countedIndex;
         /*
          * Copy all the information needed quickly and then release the buffer.
          */
         boolean claimed = claim(false, Persistit.SHORT_DELAY);
         try {
             bufferSize = _bufferSize;
+            countedIndex = _countedIndex;
             type = _type;
             keyBlockEnd = _keyBlockEnd;
             alloc = _alloc;
@@ -4165,7 +4590,7 @@ public class Buffer extends SharedResource {
         Util.putLong(bytes, TIMESTAMP_OFFSET, timestamp);
         if (page != 0) {
             Util.putByte(bytes, TYPE_OFFSET, type);
-            Util.putByte(bytes, BUFFER_LENGTH_OFFSET, bufferSize / 256);
+            Util.putByte(bytes, BUFFER_LENGTH_OFFSET, bufferSize / 256 | (countedIndex ? COUNTED_INDEX_FLAG : 0));
             Util.putChar(bytes, KEY_BLOCK_END_OFFSET, keyBlockEnd);
             Util.putChar(bytes, FREE_OFFSET, alloc);
             Util.putChar(bytes, SLACK_OFFSET, slack);
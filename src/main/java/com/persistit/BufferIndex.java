@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.util.BitSet;
+
+/**
+ * Set of the indexes of the {@link Buffer}s in a {@link BufferPool} that hold
+ * pages of one {@link Volume}. The pool adds a buffer when it assigns a page
+ * of the volume to it and removes it when the buffer is assigned to another
+ * page or invalidated, so that operations on all pages of a volume, such as
+ * {@link BufferPool#invalidate(Volume)}, examine only that volume's buffers
+ * rather than the entire pool.
+ * <p>
+ * A buffer whose page has been evicted remains a member until the buffer is
+ * reassigned; callers must verify the identity of each buffer after claiming
+ * it.
+ * </p>
+ */
+class BufferIndex {
+
+    private final BitSet _bits = new BitSet();
+
+    private int _size;
+
+    synchronized void add(final int index) {
+        if (!_bits.get(index)) {
+            _bits.set(index);
+            _size++;
+        }
+    }
+
+    synchronized void remove(final int index) {
+        if (_bits.get(index)) {
+            _bits.clear(index);
+            _size--;
+        }
+    }
+
+    synchronized int size() {
+        return _size;
+    }
+
+    /**
+     * @return the member buffer indexes in ascending order
+     */
+    synchronized int[] toArray() {
+        final int[] indexes = new int[_size];
+        int count = 0;
+        for (int index = _bits.nextSetBit(0); index >= 0; index = _bits.nextSetBit(index + 1)) {
+            indexes[count++] = index;
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Compact record of the pages held by a {@link BufferPool}. The PAGE_CACHER
+ * thread periodically saves an inventory so that the pool can be warmed up
+ * when Persistit is restarted.
+ * </p>
+ * <p>
+ * Pages are grouped by volume and sorted by page address, so that warmup can
+ * read contiguous runs of pages with a single I/O operation. The file format
+ * is:
+ * 
+ * <pre>
+ *   int     SIGNATURE
+ *   int     VERSION
+ *   int     buffer size
+ *   int     volume count
+ *   for each volume:
+ *     UTF   volume name
+ *     int   page count
+ *     for each page:
+ *       varint  difference from the previous page address (or from zero)
+ * </pre>
+ * 
+ * A contiguous run of pages therefore occupies one byte per page.
+ * </p>
+ */
+class BufferInventory {
+
+    final static int SIGNATURE = 0x50494E56; // "PINV"
+
+    final static int VERSION = 1;
+
+    private final int _bufferSize;
+
+    private final List<String> _volumeNames = new ArrayList<String>();
+
+    private final List<long[]> _pageLists = new ArrayList<long[]>();
+
+    BufferInventory(final int bufferSize) {
+        _bufferSize = bufferSize;
+    }
+
+    /**
+     * Construct an inventory of the valid, clean pages held by the supplied
+     * buffers. Pages of temporary volumes are omitted because they do not
+     * survive a restart. Buffers are not claimed; a buffer whose identity
+     * changes while it is being examined is skipped.
+     * 
+     * @param bufferSize
+     * @param buffers
+     * @return the inventory
+     */
+    static BufferInventory snapshot(final int bufferSize, final Buffer[] buffers) {
+        final Map<Volume, List<Long>> map = new HashMap<Volume, List<Long>>();
+        for (final Buffer buffer : buffers) {
+            if (buffer == null || !buffer.isValid() || buffer.isDirty() || buffer.isTemporary()) {
+                continue;
+            }
+            final long page = buffer.getPageAddress();
+            final Volume volume = buffer.getVolume();
+            if (volume == null || volume.isTemporary() || page <= 0 || page != buffer.getPageAddress()
+                    || volume != buffer.getVolume()) {
+                continue;
+            }
+            List<Long> list = map.get(volume);
+            if (list == null) {
+                list = new ArrayList<Long>();
+                map.put(volume, list);
+            }
+            list.add(page);
+        }
+        final BufferInventory inventory = new BufferInventory(bufferSize);
+        for (final Map.Entry<Volume, List<Long>> entry : map.entrySet()) {
+            final List<Long> list = entry.getValue();
+            final long[] pages = new long[list.size()];
+            for (int index = 0; index < pages.length; index++) {
+                pages[index] = list.get(index);
+            }
+            inventory.add(entry.getKey().getName(), pages);
+        }
+        return inventory;
+    }
+
+    /**
+     * Add the pages of one volume.
+     * 
+     * @param volumeName
+     * @param pages
+     *            page addresses; this array is sorted in place
+     */
+    void add(final String volumeName, final long[] pages) {
+        Arrays.sort(pages);
+        _volumeNames.add(volumeName);
+        _pageLists.add(pages);
+    }
+
+    int getBufferSize() {
+        return _bufferSize;
+    }
+
+    int getVolumeCount() {
+        return _volumeNames.size();
+    }
+
+    String getVolumeName(final int index) {
+        return _volumeNames.get(index);
+    }
+
+    long[] getPages(final int index) {
+        return _pageLists.get(index);
+    }
+
+    long getPageCount() {
+        long count = 0;
+        for (final long[] pages : _pageLists) {
+            count += pages.length;
+        }
+        return count;
+    }
+
+    /**
+     * Write this inventory to a file. The inventory is first written to a
+     * temporary file which is then renamed, so that an interrupted save does
+     * not destroy the previous inventory.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    void save(final File file) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            os.writeInt(SIGNATURE);
+            os.writeInt(VERSION);
+            os.writeInt(_bufferSize);
+            os.writeInt(_volumeNames.size());
+            for (int index = 0; index < _volumeNames.size(); index++) {
+                final long[] pages = _pageLists.get(index);
+                os.writeUTF(_volumeNames.get(index));
+                os.writeInt(pages.length);
+                long previous = 0;
+                for (final long page : pages) {
+                    writeVarLong(os, page - previous);
+                    previous = page;
+                }
+            }
+        } finally {
+            os.close();
+        }
+        if (!temp.renameTo(file)) {
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Read an inventory from a file.
+     * 
+     * @param file
+     * @return the inventory, or <code>null</code> if the file does not exist
+     * @throws IOException
+     *             if the file cannot be read or is not a valid inventory
+     */
+    static BufferInventory load(final File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (is.readInt() != SIGNATURE) {
+                throw new IOException("Not a buffer inventory: " + file);
+            }
+            final int version = is.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported buffer inventory version " + version + ": " + file);
+            }
+            final BufferInventory inventory = new BufferInventory(is.readInt());
+            final int volumeCount = is.readInt();
+            for (int index = 0; index < volumeCount; index++) {
+                final String volumeName = is.readUTF();
+                final int count = is.readInt();
+                if (count < 0) {
+                    throw new IOException("Invalid page count " + count + " in " + file);
+                }
+                final long[] pages = new long[count];
+                long page = 0;
+                for (int i = 0; i < count; i++) {
+                    page += readVarLong(is);
+                    pages[i] = page;
+                }
+                inventory.add(volumeName, pages);
+            }
+            return inventory;
+        } catch (EOFException e) {
+            throw new IOException("Truncated buffer inventory: " + file);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void writeVarLong(final DataOutputStream os, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            os.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        os.writeByte((int) value);
+    }
+
+    private static long readVarLong(final DataInputStream is) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = is.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed buffer inventory");
+    }
+}
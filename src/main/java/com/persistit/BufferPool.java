@@ -16,19 +16,32 @@
 package com.persistit;
 
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.persistit.exception.InUseException;
 import com.persistit.exception.InvalidPageAddressException;
 import com.persistit.exception.InvalidPageStructureException;
+import com.persistit.exception.PersistitClosedException;
 import com.persistit.exception.PersistitException;
 import com.persistit.exception.PersistitIOException;
 import com.persistit.exception.PersistitInterruptedException;
@@ -36,7 +49,6 @@ import com.persistit.exception.RetryException;
 import com.persistit.exception.VolumeClosedException;
 import com.persistit.util.Debug;
 import com.persistit.util.Util;
-import java.io.*;
 
 /**
  * A pool of {@link Buffer} objects, maintained on various lists that permit
@@ -52,6 +64,66 @@ public class BufferPool {
     private final static long DEFAULT_WRITER_POLL_INTERVAL = 5000;
 
     private final static int PAGE_WRITER_TRANCHE_SIZE = 5000;
+
+    /**
+     * Number of threads that load pages from the buffer inventory at startup
+     */
+    private final static int WARMUP_THREADS = 4;
+
+    /**
+     * Maximum number of pages read by one warmup I/O operation
+     */
+    private final static int WARMUP_RUN_PAGES = 32;
+
+    /**
+     * Maximum number of unwanted pages a warmup read may span to avoid
+     * issuing a separate read
+     */
+    private final static int WARMUP_RUN_GAP = 4;
+
+    /**
+     * Number of pending read-ahead requests per read-ahead thread. Requests
+     * submitted when the queue is full are discarded.
+     */
+    private final static int READ_AHEAD_QUEUE_SIZE = 16;
+
+    /**
+     * Maximum number of index pages a read-ahead request examines to find the
+     * page from which to start
+     */
+    private final static int READ_AHEAD_MAX_HOPS = 4;
+
+    /**
+     * Maximum number of pages the PAGE_WRITER writes with one call to
+     * {@link VolumeStorage#writePages(Buffer[], int, ByteBuffer)}. This is
+     * also the smallest share of a tranche given to an additional writer
+     * thread.
+     */
+    private final static int WRITE_BATCH_SIZE = 32;
+
+    /**
+     * Maximum time in milliseconds to wait for a claim on a buffer being
+     * removed from the pool by {@link #setBufferCount(int)}
+     */
+    private final static long RESIZE_CLAIM_TIMEOUT = 5000;
+
+    /**
+     * Time in milliseconds to pause before trying again to acquire all hash
+     * locks when one of them is busy
+     */
+    private final static long RESIZE_LOCK_RETRY_DELAY = 1;
+
+    /**
+     * Maximum number of replacement candidates, as a multiple of the buffer
+     * count, examined before concluding that no buffer is available
+     */
+    private final static int ALLOC_RETRY_LIMIT = 8;
+
+    /**
+     * Number of passes over the replacement candidates, separated by a brief
+     * pause, made before concluding that no buffer is available
+     */
+    private final static int ALLOC_PASS_LIMIT = 10;
     
     /**
      * Sleep time when buffers are exhausted
@@ -77,11 +149,6 @@ public class BufferPool {
      */
     private final static int HASH_LOCKS = 4096;
 
-    /**
-     * Ratio determines which of two volume invalidation algorithms to invoke.
-     */
-    private final static float SMALL_VOLUME_RATIO = 0.1f;
-
     /**
      * Ratio of age-based write priority bump
      */
@@ -93,9 +160,10 @@ public class BufferPool {
     private final Persistit _persistit;
 
     /**
-     * Hash table - fast access to buffer by hash of address.
+     * Hash table - fast access to buffer by hash of address. Replaced while
+     * all hash locks are held when the pool is resized.
      */
-    private final Buffer[] _hashTable;
+    private volatile Buffer[] _hashTable;
 
     /**
      * Locks used to lock hashtable entries.
@@ -103,13 +171,11 @@ public class BufferPool {
     private final ReentrantLock[] _hashLocks;
 
     /**
-     * All Buffers in this pool
+     * All Buffers in this pool. Replaced while all hash locks are held when
+     * the pool is resized; code that is not holding a hash lock should read
+     * this field once and use the length of the array as the buffer count.
      */
-    private final Buffer[] _buffers;
-    /**
-     * Count of Buffers allocated to this pool.
-     */
-    private final int _bufferCount;
+    private volatile Buffer[] _buffers;
 
     /**
      * Size of each buffer
@@ -121,7 +187,7 @@ public class BufferPool {
      * indicate buffers that have been invalidated and are therefore able to be
      * allocated without evicting a valid page.
      */
-    private final AtomicLongArray _availablePagesBits;
+    private volatile AtomicLongArray _availablePagesBits;
 
     private final AtomicBoolean _availablePages = new AtomicBoolean();
 
@@ -131,9 +197,14 @@ public class BufferPool {
     private final int _maxKeys;
 
     /**
-     * Pointer to next location to look for a replacement buffer
+     * Policy that selects buffers to evict
+     */
+    private volatile ReplacementPolicy _replacementPolicy;
+
+    /**
+     * Optional second-level cache of clean pages held outside the heap
      */
-    private final AtomicInteger _clock = new AtomicInteger();
+    private final OffHeapPageCache _pageCache;
 
     /**
      * Count of buffer pool misses (buffer not found in pool)
@@ -155,6 +226,46 @@ public class BufferPool {
      */
     private final AtomicLong _evictCounter = new AtomicLong();
 
+    /**
+     * Count of index pages searched by an Exchange without claiming them
+     */
+    private final AtomicLong _optimisticReadCounter = new AtomicLong();
+
+    /**
+     * Count of optimistic index page searches abandoned because the page was
+     * being modified
+     */
+    private final AtomicLong _optimisticRetryCounter = new AtomicLong();
+
+    /**
+     * Count of lock-free hash table lookups that found a buffer which no
+     * longer held the requested page once it had been claimed
+     */
+    private final AtomicLong _lookupRetryCounter = new AtomicLong();
+
+    /**
+     * Whether {@link #get} searches the hash table without locking before
+     * falling back to the locked search. Cleared only for comparison in
+     * benchmarks.
+     */
+    private volatile boolean _lockFreeLookup = true;
+
+    /**
+     * Count of read-ahead requests submitted by sequential traversals
+     */
+    private final AtomicLong _readAheadRequestCounter = new AtomicLong();
+
+    /**
+     * Count of pages read by read-ahead threads
+     */
+    private final AtomicLong _readAheadPageCounter = new AtomicLong();
+
+    /**
+     * Executor running read-ahead requests, or <code>null</code> if
+     * read-ahead is disabled
+     */
+    private volatile ThreadPoolExecutor _readAheadExecutor;
+
     /**
      * Count of dirty pages
      */
@@ -174,6 +285,33 @@ public class BufferPool {
      * (with n Count of pages written due to being dirty before a checkpoint
      */
     private final AtomicLong _forcedCheckpointWriteCounter = new AtomicLong();
+
+    /**
+     * Count of batches written by the PAGE_WRITER threads
+     */
+    private final AtomicLong _writeBatchCounter = new AtomicLong();
+
+    /**
+     * Count of pages written in batches by the PAGE_WRITER threads
+     */
+    private final AtomicLong _writeBatchPageCounter = new AtomicLong();
+
+    /**
+     * Number of threads sharing each PAGE_WRITER tranche
+     */
+    private volatile int _pageWriterThreads = 1;
+
+    /**
+     * Executor running the additional PAGE_WRITER threads, or
+     * <code>null</code> if there is only one
+     */
+    private volatile ThreadPoolExecutor _writerExecutor;
+
+    /**
+     * Buffers used to assemble runs of adjacent pages of temporary volumes,
+     * one per PAGE_WRITER thread; allocated when first needed
+     */
+    private volatile ByteBuffer[] _writeScratch = new ByteBuffer[1];
     /**
      * Indicates that Persistit has closed this buffer pool.
      */
@@ -211,9 +349,42 @@ public class BufferPool {
      * The PAGE_CACHER IOTaskRunnable
      */
     private PageCacher _cacher;
-        
-    private String _defaultLogPath;
-    
+
+    /**
+     * File in which the PAGE_CACHER saves the {@link BufferInventory}
+     */
+    private volatile File _inventoryFile;
+
+    /**
+     * Threads loading pages listed in the inventory at startup
+     */
+    private volatile Thread[] _warmupThreads;
+
+    /**
+     * Count of warmup threads that have not yet finished
+     */
+    private final AtomicInteger _warmupThreadCount = new AtomicInteger();
+
+    /**
+     * Set when any warmup thread stops before the inventory is exhausted
+     */
+    private final AtomicBoolean _warmupFailed = new AtomicBoolean();
+
+    /**
+     * Index of the next buffer examined by warmup for an unused buffer
+     */
+    private final AtomicInteger _warmupCursor = new AtomicInteger();
+
+    /**
+     * Count of pages listed in the inventory read at startup
+     */
+    private final AtomicLong _warmupPageCounter = new AtomicLong();
+
+    /**
+     * Count of pages loaded by warmup
+     */
+    private final AtomicLong _warmupLoadedCounter = new AtomicLong();
+
     /**
      * Construct a BufferPool with the specified count of <code>Buffer</code>s
      * of the specified size.
@@ -222,8 +393,13 @@ public class BufferPool {
      *            The number of buffers in the pool
      * @param size
      *            The size (in bytes) of each buffer
+     * @param policyName
+     *            Name of the {@link ReplacementPolicy}
+     * @param offHeapMemory
+     *            Size in bytes of the {@link OffHeapPageCache}, or zero for
+     *            none
      */
-    BufferPool(int count, int size, Persistit persistit) {
+    BufferPool(int count, int size, String policyName, long offHeapMemory, Persistit persistit) {
         _persistit = persistit;
         if (count < MINIMUM_POOL_COUNT) {
             throw new IllegalArgumentException("Buffer pool count too small: " + count);
@@ -243,11 +419,10 @@ public class BufferPool {
         if (!ok)
             throw new IllegalArgumentException("Invalid buffer size requested: " + size);
 
-        _bufferCount = count;
         _bufferSize = size;
-        _buffers = new Buffer[_bufferCount];
+        _buffers = new Buffer[count];
         _availablePagesBits = new AtomicLongArray((count + 63) / 64);
-        _hashTable = new Buffer[_bufferCount * HASH_MULTIPLE];
+        _hashTable = new Buffer[hashTableSize(count)];
         _hashLocks = new ReentrantLock[HASH_LOCKS];
         _maxKeys = (_bufferSize - Buffer.HEADER_SIZE) / Buffer.MAX_KEY_RATIO;
         
@@ -262,7 +437,7 @@ public class BufferPool {
         //
         byte[] reserve = new byte[1024 * 1024];
         try {
-            for (int index = 0; index < _bufferCount; index++) {
+            for (int index = 0; index < count; index++) {
                 Buffer buffer = new Buffer(size, index, this, _persistit);
                 _buffers[index] = buffer;
                 buffers++;
@@ -278,53 +453,358 @@ public class BufferPool {
             System.err.print(" bytes free after creating ");
             System.err.print(buffers);
             System.err.print("/");
-            System.err.print(_bufferCount);
+            System.err.print(count);
             System.err.print(" buffers from maximum heap ");
             System.err.println(_persistit.getAvailableHeap());
             throw e;
         }
+        _replacementPolicy = ReplacementPolicy.forName(policyName, _buffers);
+        _pageCache = offHeapMemory > 0 ? new OffHeapPageCache(offHeapMemory, size) : null;
         _writer = new PageWriter();
         _cacher = new PageCacher();
     }
     
-    void warmupBufferPool(String pathName, String fname) throws PersistitException {
-        File file = new File(pathName, fname + ".log");
-        _defaultLogPath = file.getAbsolutePath();
-        
+    /**
+     * <p>
+     * Start loading the pages listed in the {@link BufferInventory} saved by
+     * the previous incarnation, and arrange for the PAGE_CACHER to save a new
+     * inventory periodically.
+     * </p>
+     * <p>
+     * The inventory lists pages sorted by volume and page address. It is
+     * divided into runs of nearby pages, each of which is read with a single
+     * I/O operation, and the runs are distributed among
+     * {@value #WARMUP_THREADS} background threads. This method returns
+     * immediately; pages are loaded only into buffers that have never been
+     * used, so application threads may use the pool while warmup proceeds.
+     * The PAGE_CACHER starts when warmup is complete so that an interrupted
+     * warmup does not replace the inventory with a partial one.
+     * </p>
+     * 
+     * @param pathName
+     *            Directory holding the inventory file
+     */
+    void warmupBufferPool(final String pathName) {
+        _inventoryFile = new File(pathName, "BufferPool_" + _bufferSize + ".inv");
+        _cacherPollInterval = _persistit.getConfiguration().getBufferInventoryPollingInterval();
+        BufferInventory inventory = null;
         try {
-            if (!file.exists()) {
-               file.createNewFile();
-            }
-            
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            String currLine;
-            while ((currLine = reader.readLine()) != null) {
-                String[] info = currLine.split(" ");
-                if (info.length == 2) {
-                    Volume vol = _persistit.getVolume(info[1]);
-                    if (vol != null) {
-                        long page = Long.parseLong(info[0]);
-                    	Buffer buff = get(vol, page, false, true);
-                    	buff.release();
-                    }
+            inventory = BufferInventory.load(_inventoryFile);
+        } catch (IOException e) {
+            _persistit.getLogBase().exception.log(e);
+        }
+        final List<WarmupRun> runs = new ArrayList<WarmupRun>();
+        if (inventory != null && inventory.getBufferSize() == _bufferSize) {
+            for (int index = 0; index < inventory.getVolumeCount(); index++) {
+                final Volume volume = _persistit.getVolume(inventory.getVolumeName(index));
+                if (volume != null && volume.getPool() == this && !volume.isTemporary()) {
+                    addWarmupRuns(runs, volume, inventory.getPages(index));
                 }
             }
-            reader.close();
-            _cacherPollInterval = _persistit.getConfiguration().getBufferInventoryPollingInterval();
+        }
+        if (runs.isEmpty()) {
             _cacher.start();
+            return;
+        }
+        final AtomicInteger nextRun = new AtomicInteger();
+        final Thread[] threads = new Thread[Math.min(WARMUP_THREADS, runs.size())];
+        _warmupFailed.set(false);
+        _warmupThreadCount.set(threads.length);
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    warmup(runs, nextRun);
+                }
+            }, "BUFFER_WARMUP:" + _bufferSize + ":" + index);
+            threads[index].setDaemon(true);
+        }
+        _warmupThreads = threads;
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Divide a sorted array of page addresses into runs that can each be read
+     * with one I/O operation. A run spans at most {@value #WARMUP_RUN_PAGES}
+     * pages and includes gaps of at most {@value #WARMUP_RUN_GAP} unwanted
+     * pages.
+     */
+    private void addWarmupRuns(final List<WarmupRun> runs, final Volume volume, final long[] pages) {
+        int from = 0;
+        while (from < pages.length) {
+            if (pages[from] <= 0) {
+                from++;
+                continue;
+            }
+            int to = from + 1;
+            while (to < pages.length && pages[to] - pages[from] < WARMUP_RUN_PAGES
+                    && pages[to] - pages[to - 1] <= WARMUP_RUN_GAP + 1) {
+                to++;
+            }
+            runs.add(new WarmupRun(volume, pages, from, to));
+            _warmupPageCounter.addAndGet(to - from);
+            from = to;
+        }
+    }
+
+    /**
+     * Body of a warmup thread: load runs until there are none left, the pool
+     * runs out of unused buffers or the pool is closed. The last thread to
+     * finish starts the PAGE_CACHER unless any thread failed.
+     */
+    private void warmup(final List<WarmupRun> runs, final AtomicInteger nextRun) {
+        final ByteBuffer scratch = ByteBuffer.allocate(WARMUP_RUN_PAGES * _bufferSize);
+        boolean completed = false;
+        try {
+            for (;;) {
+                if (_closed.get()) {
+                    break;
+                }
+                final int index = nextRun.getAndIncrement();
+                if (index >= runs.size()) {
+                    completed = true;
+                    break;
+                }
+                final WarmupRun run = runs.get(index);
+                try {
+                    if (!warmupRun(run, scratch)) {
+                        completed = true;
+                        break;
+                    }
+                } catch (InvalidPageAddressException e) {
+                    // The volume has been truncated since the inventory was
+                    // saved; skip the run.
+                }
+            }
+        } catch (PersistitException e) {
+            _persistit.getLogBase().exception.log(e);
+        } finally {
+            if (!completed) {
+                _warmupFailed.set(true);
+            }
+            if (_warmupThreadCount.decrementAndGet() == 0 && !_warmupFailed.get() && !_closed.get()) {
+                _cacher.start();
+            }
+        }
+    }
+
+    /**
+     * Load the pages of one run. Each page not already present is assigned to
+     * an unused buffer which is placed on its hash chain under a writer claim,
+     * exactly as {@link #get(Volume, long, boolean, boolean)} does, so that a
+     * concurrent request for the same page waits for the read to complete.
+     * Pages that have newer images in the journal are read from the journal;
+     * all others are read from the volume with one I/O operation.
+     * 
+     * @return <code>false</code> if the pool has no more unused buffers
+     */
+    private boolean warmupRun(final WarmupRun run, final ByteBuffer scratch) throws PersistitException {
+        final Volume volume = run._volume;
+        final int count = run._to - run._from;
+        final Buffer[] buffers = new Buffer[count];
+        final boolean[] loaded = new boolean[count];
+        boolean exhausted = false;
+        Buffer spare = null;
+        for (int index = 0; index < count; index++) {
+            if (spare == null) {
+                spare = allocWarmupBuffer();
+                if (spare == null) {
+                    exhausted = true;
+                    break;
+                }
+            }
+            if (attachWarmupBuffer(spare, volume, run._pages[run._from + index])) {
+                buffers[index] = spare;
+                spare = null;
+            }
+        }
+        if (spare != null) {
+            spare.release();
+        }
+        try {
+            int first = -1;
+            int last = -1;
+            for (int index = 0; index < count; index++) {
+                final Buffer buffer = buffers[index];
+                if (buffer != null) {
+                    if (_persistit.getJournalManager().readPageFromJournal(buffer)) {
+                        buffer.load();
+                        loaded[index] = true;
+                    } else {
+                        if (first < 0) {
+                            first = index;
+                        }
+                        last = index;
+                    }
+                }
+            }
+            if (first >= 0) {
+                final long firstPage = run._pages[run._from + first];
+                final long lastPage = run._pages[run._from + last];
+                scratch.clear().limit((int) (lastPage - firstPage + 1) * _bufferSize);
+                volume.getStorage().readPages(firstPage, scratch);
+                for (int index = first; index <= last; index++) {
+                    final Buffer buffer = buffers[index];
+                    if (buffer != null && !loaded[index]) {
+                        final int offset = (int) (run._pages[run._from + index] - firstPage) * _bufferSize;
+                        System.arraycopy(scratch.array(), offset, buffer.getBytes(), 0, _bufferSize);
+                        buffer.load();
+                        loaded[index] = true;
+                    }
+                }
+            }
+        } finally {
+            for (int index = 0; index < count; index++) {
+                final Buffer buffer = buffers[index];
+                if (buffer != null) {
+                    if (loaded[index]) {
+                        _warmupLoadedCounter.incrementAndGet();
+                        buffer.releaseTouched();
+                    } else {
+                        invalidate(buffer);
+                        buffer.release();
+                    }
+                }
+            }
+        }
+        return !exhausted;
+    }
+
+    /**
+     * @return the next buffer that holds no page, with a writer claim, or
+     *         <code>null</code> if every buffer has been examined
+     */
+    private Buffer allocWarmupBuffer() throws PersistitInterruptedException {
+        for (;;) {
+            final int index = _warmupCursor.getAndIncrement();
+            final Buffer[] buffers = _buffers;
+            if (index >= buffers.length) {
+                return null;
+            }
+            final Buffer buffer = buffers[index];
+            if ((buffer.getStatus() & SharedResource.CLAIMED_MASK) == 0 && buffer.claim(true, 0)) {
+                if (!buffer.isValid()) {
+                    buffer.clearDirty();
+                    return buffer;
+                }
+                buffer.release();
+            }
         }
-        catch (IOException e) {
-            throw new PersistitException(e);
+    }
+
+    /**
+     * Assign a page to a claimed, unused buffer and place it on its hash chain
+     * unless the page is already present.
+     * 
+     * @return <code>true</code> if the buffer was assigned
+     */
+    private boolean attachWarmupBuffer(final Buffer buffer, final Volume vol, final long page) {
+        final ReentrantLock lock = hashLock(vol, page);
+        lock.lock();
+        try {
+            final int hash = hashIndex(vol, page);
+            for (Buffer b = _hashTable[hash]; b != null; b = b.getNext()) {
+                if (b.getPageAddress() == page && b.getVolume() == vol) {
+                    return false;
+                }
+            }
+            assign(buffer, page, vol, null);
+            buffer.setNext(_hashTable[hash]);
+            _hashTable[hash] = buffer;
+            _replacementPolicy.admit(buffer);
+            buffer.setValid();
+            buffer.clearTemporary();
+            return true;
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * @return <code>true</code> while warmup threads are loading pages
+     */
+    public boolean isWarmupActive() {
+        return _warmupThreadCount.get() > 0;
+    }
+
+    /**
+     * @return Count of pages listed in the inventory used to warm up this
+     *         pool
+     */
+    public long getWarmupPageCounter() {
+        return _warmupPageCounter.get();
+    }
+
+    /**
+     * @return Count of pages loaded so far by warmup
+     */
+    public long getWarmupLoadedCounter() {
+        return _warmupLoadedCounter.get();
+    }
+
     void startThreads() throws PersistitException {
+        final int pageWriterThreads = _persistit.getConfiguration().getPageWriterThreads();
+        _writeScratch = new ByteBuffer[pageWriterThreads];
+        if (pageWriterThreads > 1) {
+            _writerExecutor = newExecutor("PAGE_WRITER:" + _bufferSize + ":", pageWriterThreads - 1,
+                    pageWriterThreads - 1, new ThreadPoolExecutor.AbortPolicy());
+        }
+        _pageWriterThreads = pageWriterThreads;
         _writer.start();
+        final int readAheadThreads = _persistit.getConfiguration().getReadAheadThreads();
+        if (readAheadThreads > 0) {
+            _readAheadExecutor = newExecutor("READ_AHEAD:" + _bufferSize + ":", readAheadThreads, readAheadThreads
+                    * READ_AHEAD_QUEUE_SIZE, new ThreadPoolExecutor.DiscardPolicy());
+        }
+    }
+
+    private ThreadPoolExecutor newExecutor(final String name, final int threads, final int queueSize,
+            final RejectedExecutionHandler handler) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                queueSize), new ThreadFactory() {
+            final AtomicInteger _counter = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + _counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, handler);
     }
 
     void close() {
         _closed.set(true);
+        final Thread[] warmupThreads = _warmupThreads;
+        if (warmupThreads != null) {
+            for (final Thread thread : warmupThreads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            _warmupThreads = null;
+        }
+        final ThreadPoolExecutor executor = _readAheadExecutor;
+        if (executor != null) {
+            _readAheadExecutor = null;
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Persistit.SHORT_DELAY, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         _persistit.waitForIOTaskStop(_writer);
+        final ThreadPoolExecutor writerExecutor = _writerExecutor;
+        if (writerExecutor != null) {
+            _writerExecutor = null;
+            writerExecutor.shutdown();
+        }
         _persistit.waitForIOTaskStop(_cacher);
         _writer = null;
         _cacher = null;
@@ -337,6 +817,16 @@ public class BufferPool {
     void crash() {
         IOTaskRunnable.crash(_writer);
         IOTaskRunnable.crash(_cacher);
+        final ThreadPoolExecutor executor = _readAheadExecutor;
+        if (executor != null) {
+            _readAheadExecutor = null;
+            executor.shutdown();
+        }
+        final ThreadPoolExecutor writerExecutor = _writerExecutor;
+        if (writerExecutor != null) {
+            _writerExecutor = null;
+            writerExecutor.shutdown();
+        }
     }
 
     void flush(final long timestamp) throws PersistitInterruptedException {
@@ -351,14 +841,43 @@ public class BufferPool {
         return _flushTimestamp.get() != 0;
     }
 
+    /**
+     * Compute the hash table index of a page. The size of the hash table
+     * changes when the pool is resized, so the result is meaningful only while
+     * the caller holds the page's {@link #hashLock(Volume, long)}.
+     */
     int hashIndex(Volume vol, long page) {
-        return (int) (((page ^ vol.hashCode()) & Integer.MAX_VALUE) % _hashTable.length);
+        return hashIndex(vol, page, _hashTable.length);
+    }
+
+    /**
+     * @return the size of the hash table for a pool of <code>count</code>
+     *         buffers, rounded up to a multiple of HASH_LOCKS
+     */
+    private static int hashTableSize(final int count) {
+        final long size = (long) count * HASH_MULTIPLE;
+        return (int) Math.min((size + HASH_LOCKS - 1) / HASH_LOCKS * HASH_LOCKS, Integer.MAX_VALUE - HASH_LOCKS + 1);
+    }
+
+    private static int hashIndex(final Volume vol, final long page, final int size) {
+        return (int) (((page ^ vol.hashCode()) & Integer.MAX_VALUE) % size);
+    }
+
+    /**
+     * @return the lock that protects the hash chain holding a page. The
+     *         choice of lock does not depend on the size of the hash table:
+     *         because the table size is a multiple of HASH_LOCKS, all pages
+     *         that share a hash chain share a lock.
+     */
+    ReentrantLock hashLock(final Volume vol, final long page) {
+        return _hashLocks[hashIndex(vol, page, HASH_LOCKS)];
     }
 
     int countInUse(Volume vol, boolean writer) {
         int count = 0;
-        for (int i = 0; i < _bufferCount; i++) {
-            Buffer buffer = _buffers[i];
+        final Buffer[] buffers = _buffers;
+        for (int i = 0; i < buffers.length; i++) {
+            Buffer buffer = buffers[i];
             if ((vol == null || buffer.getVolume() == vol)
                     && ((buffer.getStatus() & SharedResource.CLAIMED_MASK) != 0 && (!writer || (buffer.getStatus() & SharedResource.WRITER_MASK) != 0))) {
                 count++;
@@ -368,7 +887,8 @@ public class BufferPool {
     }
 
     void populateBufferPoolInfo(ManagementImpl.BufferPoolInfo info) {
-        info.bufferCount = _bufferCount;
+        final Buffer[] buffers = _buffers;
+        info.bufferCount = buffers.length;
         info.bufferSize = _bufferSize;
         info.missCount = _missCounter.get();
         info.hitCount = _hitCounter.get();
@@ -378,12 +898,34 @@ public class BufferPool {
         info.writeCount = _writeCounter.get();
         info.forcedCheckpointWriteCount = _forcedCheckpointWriteCounter.get();
         info.forcedWriteCount = _forcedWriteCounter.get();
+        info.replacementPolicy = _replacementPolicy.getName();
+        info.ghostHitCount = _replacementPolicy.getGhostHitCounter();
+        info.ghostMissCount = _replacementPolicy.getGhostMissCounter();
+        info.probationEvictCount = _replacementPolicy.getProbationEvictCounter();
+        info.probationHitCount = _replacementPolicy.getProbationHitCounter();
+        info.protectedHitCount = _replacementPolicy.getProtectedHitCounter();
+        info.optimisticReadCount = _optimisticReadCounter.get();
+        info.optimisticRetryCount = _optimisticRetryCounter.get();
+        info.lookupRetryCount = _lookupRetryCounter.get();
+        info.readAheadRequestCount = _readAheadRequestCounter.get();
+        info.readAheadPageCount = _readAheadPageCounter.get();
+        info.pageWriterThreadCount = _pageWriterThreads;
+        info.writeBatchCount = _writeBatchCounter.get();
+        info.writeBatchPageCount = _writeBatchPageCounter.get();
+        info.warmupPageCount = _warmupPageCounter.get();
+        info.warmupLoadedCount = _warmupLoadedCounter.get();
+        info.warmupActive = isWarmupActive();
+        if (_pageCache != null) {
+            info.offHeapFrameCount = _pageCache.getFrameCount();
+            info.offHeapHitCount = _pageCache.getHitCounter();
+            info.offHeapMissCount = _pageCache.getMissCounter();
+        }
         int validPages = 0;
         int readerClaimedPages = 0;
         int writerClaimedPages = 0;
 
-        for (int index = 0; index < _bufferCount; index++) {
-            Buffer buffer = _buffers[index];
+        for (int index = 0; index < buffers.length; index++) {
+            Buffer buffer = buffers[index];
             int status = buffer.getStatus();
             if ((status & SharedResource.VALID_MASK) != 0)
                 validPages++;
@@ -393,6 +935,7 @@ public class BufferPool {
                 readerClaimedPages++;
         }
         info.validPageCount = validPages;
+        info.bufferShares = bufferShareInfo(buffers);
         info.readerClaimedPageCount = readerClaimedPages;
         info.writerClaimedPageCount = writerClaimedPages;
         info.earliestDirtyTimestamp = getEarliestDirtyTimestamp();
@@ -404,8 +947,9 @@ public class BufferPool {
         int index = 0;
         switch (traveralType) {
         case 0:
-            for (int i = 0; i < _bufferCount; i++) {
-                Buffer buffer = _buffers[i];
+            final Buffer[] buffers = _buffers;
+            for (int i = 0; i < buffers.length; i++) {
+                Buffer buffer = buffers[i];
                 if (selected(buffer, includeMask, excludeMask)) {
                     populateInfo1(array, index, buffer);
                     index++;
@@ -428,32 +972,11 @@ public class BufferPool {
         }
     }
     
-    private void populateWarmupFile() throws PersistitException {
-        File file = new File(_defaultLogPath);
-        
+    private void saveInventory() throws PersistitException {
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-            for (int i = 0; i < _buffers.length; ++i) {
-                Buffer b = _buffers[i];
-                if (b != null && b.isValid() && !b.isDirty()) {
-                    long page = b.getPageAddress();
-                    Volume volume = b.getVolume();
-                    long page2 = b.getPageAddress();
-                    Volume volume2 = b.getVolume();
-                    
-                    // Check if buffer has changed while reading
-                    if (page == page2 && volume == volume2 && volume != null) {
-                        String addr = Long.toString(page);
-                        String vol = volume.getName(); 
-                        writer.append(addr + " " + vol);
-                        writer.newLine();
-                        writer.flush();
-                    }
-                }
-            }
-            writer.close();
+            BufferInventory.snapshot(_bufferSize, _buffers).save(_inventoryFile);
         } catch (IOException e) {
-            throw new PersistitException(e);
+            throw new PersistitIOException(e);
         }
     }
 
@@ -473,7 +996,182 @@ public class BufferPool {
      * @return The count of <code>Buffer</code>s managed by this pool.
      */
     public int getBufferCount() {
-        return _bufferCount;
+        return _buffers.length;
+    }
+
+    /**
+     * <p>
+     * Change the number of <code>Buffer</code>s in this pool while it is in
+     * use. To grow the pool, new buffers are appended to the buffer array and
+     * are immediately available to hold pages. To shrink it, the buffers at
+     * the end of the array are claimed one at a time and their pages evicted:
+     * a dirty page is written first and a clean page is offered to the
+     * {@link OffHeapPageCache}, if there is one.
+     * </p>
+     * <p>
+     * In either case the hash table is then rebuilt for the new size. Threads
+     * looking up pages wait only while the existing hash chains are relinked
+     * into the new table, which involves no I/O.
+     * </p>
+     * <p>
+     * Shrinking fails with an <code>InUseException</code> if another thread
+     * holds a claim on one of the buffers being removed for longer than
+     * {@value #RESIZE_CLAIM_TIMEOUT} milliseconds, or if one of them holds a
+     * volume's head page. The size of the pool is then unchanged, although
+     * some pages may have been evicted.
+     * </p>
+     * 
+     * @param count
+     *            The new number of buffers
+     * @throws PersistitException
+     */
+    public synchronized void setBufferCount(final int count) throws PersistitException {
+        if (count < MINIMUM_POOL_COUNT) {
+            throw new IllegalArgumentException("Buffer pool count too small: " + count);
+        }
+        if (count > MAXIMUM_POOL_COUNT) {
+            throw new IllegalArgumentException("Buffer pool count too large: " + count);
+        }
+        if (_closed.get()) {
+            throw new PersistitClosedException();
+        }
+        if (isWarmupActive()) {
+            throw new IllegalStateException("Cannot resize " + this + " while warmup is active");
+        }
+        final Buffer[] buffers = _buffers;
+        if (count > buffers.length) {
+            final Buffer[] newBuffers = Arrays.copyOf(buffers, count);
+            for (int index = buffers.length; index < count; index++) {
+                newBuffers[index] = new Buffer(_bufferSize, index, this, _persistit);
+            }
+            install(newBuffers);
+            //
+            // Mark the new buffers available so that they are used before any
+            // valid page is evicted.
+            //
+            for (int index = buffers.length; index < count; index++) {
+                markAvailable(newBuffers[index]);
+            }
+            _availablePages.set(true);
+        } else if (count < buffers.length) {
+            //
+            // Stop the replacement policy from offering the buffers being
+            // removed; otherwise threads needing a buffer could find that
+            // every candidate is claimed below.
+            //
+            final Buffer[] newBuffers = Arrays.copyOf(buffers, count);
+            installPolicy(newBuffers);
+            boolean installed = false;
+            int claimed = count;
+            try {
+                while (claimed < buffers.length) {
+                    final Buffer buffer = buffers[claimed];
+                    if (!buffer.claim(true, RESIZE_CLAIM_TIMEOUT)) {
+                        throw new InUseException("Thread " + Thread.currentThread().getName()
+                                + " failed to acquire writer claim on " + buffer + " to resize " + this);
+                    }
+                    claimed++;
+                    if (buffer.isFixed()) {
+                        throw new InUseException("Cannot remove " + buffer + " to resize " + this);
+                    }
+                    if (buffer.isValid()) {
+                        if (buffer.isDirty()) {
+                            buffer.writePage();
+                        }
+                        invalidate(buffer, true);
+                        _evictCounter.incrementAndGet();
+                    } else {
+                        buffer.clearDirty();
+                    }
+                }
+                install(newBuffers);
+                installed = true;
+            } finally {
+                for (int index = count; index < claimed; index++) {
+                    buffers[index].release();
+                }
+                if (!installed) {
+                    installPolicy(buffers);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the buffer array, hash table, available page bit map and
+     * replacement policy with versions sized for a new buffer array. All hash
+     * locks are held while the hash chains are relinked and the new structures
+     * are published; buffers being removed from the pool must already have
+     * been detached from the hash table.
+     */
+    private void install(final Buffer[] buffers) throws PersistitInterruptedException {
+        final Buffer[] hashTable = new Buffer[hashTableSize(buffers.length)];
+        final AtomicLongArray availablePagesBits = new AtomicLongArray((buffers.length + 63) / 64);
+        lockAllHashLocks();
+        try {
+            for (Buffer chain : _hashTable) {
+                while (chain != null) {
+                    final Buffer buffer = chain;
+                    chain = buffer.getNext();
+                    final int hash = hashIndex(buffer.getVolume(), buffer.getPageAddress(), hashTable.length);
+                    buffer.setNext(hashTable[hash]);
+                    hashTable[hash] = buffer;
+                }
+            }
+            final AtomicLongArray oldBits = _availablePagesBits;
+            for (int q = 0; q < oldBits.length() && q < availablePagesBits.length(); q++) {
+                availablePagesBits.set(q, oldBits.get(q));
+            }
+            _hashTable = hashTable;
+            _availablePagesBits = availablePagesBits;
+            _replacementPolicy = _replacementPolicy.resize(buffers);
+            _buffers = buffers;
+        } finally {
+            unlockAllHashLocks();
+        }
+    }
+
+    /**
+     * Replace only the replacement policy with one managing the supplied
+     * buffers.
+     */
+    private void installPolicy(final Buffer[] buffers) throws PersistitInterruptedException {
+        lockAllHashLocks();
+        try {
+            _replacementPolicy = _replacementPolicy.resize(buffers);
+        } finally {
+            unlockAllHashLocks();
+        }
+    }
+
+    /**
+     * Acquire every hash lock. A thread allocating a buffer holds one hash
+     * lock and uses tryLock to detach the evicted page from its own chain,
+     * choosing another buffer if that fails. Holding many hash locks for long
+     * could therefore make allocation fail, so this method never waits for a
+     * lock: if one is busy it releases those it holds, pauses briefly and
+     * starts again.
+     */
+    private void lockAllHashLocks() throws PersistitInterruptedException {
+        for (;;) {
+            int locked = 0;
+            while (locked < HASH_LOCKS && _hashLocks[locked].tryLock()) {
+                locked++;
+            }
+            if (locked == HASH_LOCKS) {
+                return;
+            }
+            while (locked > 0) {
+                _hashLocks[--locked].unlock();
+            }
+            Util.sleep(RESIZE_LOCK_RETRY_DELAY);
+        }
+    }
+
+    private void unlockAllHashLocks() {
+        for (final ReentrantLock lock : _hashLocks) {
+            lock.unlock();
+        }
     }
 
     /**
@@ -529,6 +1227,135 @@ public class BufferPool {
         return _forcedCheckpointWriteCounter.get();
     }
 
+    /**
+     * @return The name of the {@link ReplacementPolicy} used to select pages
+     *         for eviction from this pool.
+     */
+    public String getReplacementPolicyName() {
+        return _replacementPolicy.getName();
+    }
+
+    /**
+     * @return The count of pages read into this pool that were admitted
+     *         directly to the protected set because they had recently been
+     *         evicted from probation. Always zero for the CLOCK policy.
+     */
+    public long getGhostHitCounter() {
+        return _replacementPolicy.getGhostHitCounter();
+    }
+
+    /**
+     * @return The count of pages read into this pool on probation. Always zero
+     *         for the CLOCK policy.
+     */
+    public long getGhostMissCounter() {
+        return _replacementPolicy.getGhostMissCounter();
+    }
+
+    /**
+     * @return The count of valid pages evicted from this pool while still on
+     *         probation. Always zero for the CLOCK policy.
+     */
+    public long getProbationEvictCounter() {
+        return _replacementPolicy.getProbationEvictCounter();
+    }
+
+    /**
+     * @return The count of hits on pages while they were on probation. Always
+     *         zero for the CLOCK policy.
+     */
+    public long getProbationHitCounter() {
+        return _replacementPolicy.getProbationHitCounter();
+    }
+
+    /**
+     * @return The count of hits on pages in the protected set. Always zero for
+     *         the CLOCK policy.
+     */
+    public long getProtectedHitCounter() {
+        return _replacementPolicy.getProtectedHitCounter();
+    }
+
+    /**
+     * @return The count of pool misses satisfied from the off-heap page cache
+     */
+    public long getOffHeapHitCounter() {
+        return _pageCache == null ? 0 : _pageCache.getHitCounter();
+    }
+
+    /**
+     * @return The count of pool misses not found in the off-heap page cache
+     */
+    public long getOffHeapMissCounter() {
+        return _pageCache == null ? 0 : _pageCache.getMissCounter();
+    }
+
+    /**
+     * @return The count of index pages searched without acquiring a claim
+     */
+    public long getOptimisticReadCounter() {
+        return _optimisticReadCounter.get();
+    }
+
+    /**
+     * @return The count of optimistic index page searches that had to be
+     *         repeated with a claim because the page was being modified
+     */
+    public long getOptimisticRetryCounter() {
+        return _optimisticRetryCounter.get();
+    }
+
+    /**
+     * @return The count of lock-free lookups that found a buffer which had
+     *         been assigned to another page by the time it was claimed
+     */
+    public long getLookupRetryCounter() {
+        return _lookupRetryCounter.get();
+    }
+
+    void setLockFreeLookup(final boolean lockFreeLookup) {
+        _lockFreeLookup = lockFreeLookup;
+    }
+
+    /**
+     * @return The number of threads that write dirty pages
+     */
+    public int getPageWriterThreadCount() {
+        return _pageWriterThreads;
+    }
+
+    /**
+     * @return The count of batches of pages written by the PAGE_WRITER
+     *         threads
+     */
+    public long getWriteBatchCounter() {
+        return _writeBatchCounter.get();
+    }
+
+    /**
+     * @return The count of pages written in batches by the PAGE_WRITER
+     *         threads. Divide by {@link #getWriteBatchCounter()} to obtain
+     *         the average batch size.
+     */
+    public long getWriteBatchPageCounter() {
+        return _writeBatchPageCounter.get();
+    }
+
+    /**
+     * @return The count of read-ahead requests submitted by sequential
+     *         traversals
+     */
+    public long getReadAheadRequestCounter() {
+        return _readAheadRequestCounter.get();
+    }
+
+    /**
+     * @return The count of pages read by read-ahead threads
+     */
+    public long getReadAheadPageCounter() {
+        return _readAheadPageCounter.get();
+    }
+
     /**
      * Resets the get and hit counters to zero.
      */
@@ -537,14 +1364,49 @@ public class BufferPool {
         _hitCounter.set(0);
         _newCounter.set(0);
         _evictCounter.set(0);
+        _optimisticReadCounter.set(0);
+        _optimisticRetryCounter.set(0);
+        _lookupRetryCounter.set(0);
+        _readAheadRequestCounter.set(0);
+        _readAheadPageCounter.set(0);
+        _replacementPolicy.resetCounters();
+        if (_pageCache != null) {
+            _pageCache.resetCounters();
+        }
+    }
+
+    ReplacementPolicy getReplacementPolicy() {
+        return _replacementPolicy;
+    }
+
+    OffHeapPageCache getOffHeapPageCache() {
+        return _pageCache;
     }
 
     int getMaxKeys() {
         return _maxKeys;
     }
 
-    private void bumpHitCounter() {
+    /**
+     * Add counts accumulated by an {@link Exchange} to the optimistic read
+     * counters. Exchanges batch these counts to avoid contending on the
+     * counters during every traversal.
+     * 
+     * @param reads
+     * @param retries
+     */
+    void addOptimisticReads(final int reads, final int retries) {
+        if (reads > 0) {
+            _optimisticReadCounter.addAndGet(reads);
+        }
+        if (retries > 0) {
+            _optimisticRetryCounter.addAndGet(retries);
+        }
+    }
+
+    private void bumpHitCounter(final Buffer buffer) {
         _hitCounter.incrementAndGet();
+        _replacementPolicy.hit(buffer);
     }
 
     private void bumpMissCounter() {
@@ -580,103 +1442,54 @@ public class BufferPool {
             return ((double) hitCounter) / ((double) getCounter);
     }
 
-    void incrementDirtyPageCount() {
-        _dirtyPageCount.incrementAndGet();
-    }
-
-    void decrementDirtyPageCount() {
-        _dirtyPageCount.decrementAndGet();
-    }
-
-    int getDirtyPageCount() {
-        return _dirtyPageCount.get();
-    }
-
-    /**
-     * Invalidate all buffers from a specified Volume.
-     * 
-     * @param volume
-     *            The volume
-     * @throws PersistitInterruptedException
-     */
-    boolean invalidate(Volume volume) throws PersistitInterruptedException {
-        final float ratio = (float) volume.getStorage().getNextAvailablePage() / (float) _bufferCount;
-        if (ratio < SMALL_VOLUME_RATIO) {
-            return invalidateSmallVolume(volume);
-        } else {
-            return invalidateLargeVolume(volume);
-        }
-    }
-
-    boolean invalidateSmallVolume(final Volume volume) throws PersistitInterruptedException {
-        boolean result = true;
-        int markedAvailable = 0;
-        for (long page = 1; page < volume.getStorage().getNextAvailablePage(); page++) {
-            int hashIndex = hashIndex(volume, page);
-            _hashLocks[hashIndex % HASH_LOCKS].lock();
-            try {
-                for (Buffer buffer = _hashTable[hashIndex]; buffer != null; buffer = buffer.getNext()) {
-                    if ((buffer.getVolume() == volume || volume == null) && !buffer.isFixed() && buffer.isValid()) {
-                        if (buffer.claim(true, 0)) {
-                            // re-check after claim
-                            boolean invalidated = false;
-                            try {
-                                if ((buffer.getVolume() == volume || volume == null) && !buffer.isFixed()
-                                        && buffer.isValid()) {
-                                    invalidate(buffer);
-                                    invalidated = true;
-                                }
-                            } finally {
-                                buffer.release();
-                            }
-                            if (invalidated) {
-                                int q = buffer.getIndex() / 64;
-                                int p = buffer.getIndex() % 64;
-                                long bits = _availablePagesBits.get(q);
-                                if (_availablePagesBits.compareAndSet(q, bits, bits | (1L << p))) {
-                                    markedAvailable++;
-                                }
-                            }
-                        } else {
-                            result = false;
-                        }
-                    }
-                }
-            } finally {
-                _hashLocks[hashIndex % HASH_LOCKS].unlock();
-            }
-        }
-        if (markedAvailable > 0) {
-            _availablePages.set(true);
-        }
-        return result;
-
+    void incrementDirtyPageCount() {
+        _dirtyPageCount.incrementAndGet();
+    }
+
+    void decrementDirtyPageCount() {
+        _dirtyPageCount.decrementAndGet();
+    }
+
+    int getDirtyPageCount() {
+        return _dirtyPageCount.get();
     }
 
-    boolean invalidateLargeVolume(final Volume volume) throws PersistitInterruptedException {
+    /**
+     * Invalidate all buffers from a specified Volume. Only the buffers listed
+     * in the volume's {@link BufferIndex} are examined.
+     * 
+     * @param volume
+     *            The volume
+     * @return <code>true</code> if every buffer was invalidated;
+     *         <code>false</code> if some could not be claimed
+     * @throws PersistitInterruptedException
+     */
+    boolean invalidate(Volume volume) throws PersistitInterruptedException {
+        if (_pageCache != null) {
+            _pageCache.invalidate(volume);
+        }
         boolean result = true;
         int markedAvailable = 0;
-        for (int index = 0; index < _bufferCount; index++) {
-            Buffer buffer = _buffers[index];
-            if ((buffer.getVolume() == volume || volume == null) && !buffer.isFixed() && buffer.isValid()) {
+        final Buffer[] buffers = _buffers;
+        for (final int index : volume.getBufferIndex().toArray()) {
+            if (index >= buffers.length) {
+                continue;
+            }
+            final Buffer buffer = buffers[index];
+            if (buffer.getVolume() == volume && !buffer.isFixed() && buffer.isValid()) {
                 if (buffer.claim(true, 0)) {
                     // re-check after claim
                     boolean invalidated = false;
                     try {
-                        if ((buffer.getVolume() == volume || volume == null) && !buffer.isFixed() && buffer.isValid()) {
+                        if (buffer.getVolume() == volume && !buffer.isFixed() && buffer.isValid()) {
                             invalidate(buffer);
                             invalidated = true;
                         }
                     } finally {
                         buffer.release();
                     }
-                    if (invalidated) {
-                        int q = buffer.getIndex() / 64;
-                        int p = buffer.getIndex() % 64;
-                        long bits = _availablePagesBits.get(q);
-                        if (_availablePagesBits.compareAndSet(q, bits, bits | (1L << p))) {
-                            markedAvailable++;
-                        }
+                    if (invalidated && markAvailable(buffer)) {
+                        markedAvailable++;
                     }
                 } else {
                     result = false;
@@ -689,10 +1502,25 @@ public class BufferPool {
         return result;
     }
 
+    private boolean markAvailable(final Buffer buffer) {
+        final AtomicLongArray availablePagesBits = _availablePagesBits;
+        final int q = buffer.getIndex() / 64;
+        final int p = buffer.getIndex() % 64;
+        if (q >= availablePagesBits.length()) {
+            return false;
+        }
+        final long bits = availablePagesBits.get(q);
+        return availablePagesBits.compareAndSet(q, bits, bits | (1L << p));
+    }
+
     private void invalidate(Buffer buffer) {
+        invalidate(buffer, false);
+    }
+
+    private void invalidate(final Buffer buffer, final boolean retain) {
         Debug.$assert0.t(buffer.isValid() && buffer.isMine());
 
-        while (!detach(buffer)) {
+        while (!detach(buffer, retain)) {
             //
             // Spin until detach succeeds. Note: this method must not throw an Exception
             // because it is called in at at critical time when cleanup must be done.
@@ -708,15 +1536,92 @@ public class BufferPool {
         }
         buffer.clearValid();
         buffer.clearDirty();
-        buffer.setPageAddressAndVolume(0, null);
+        assign(buffer, 0, null, null);
+    }
+
+    /**
+     * Collect the occupancy of each volume and tree holding pages in the
+     * supplied buffers. Buffers are not claimed, so a buffer being reassigned
+     * may be missed or attributed to its previous owner.
+     */
+    private static Management.BufferShareInfo[] bufferShareInfo(final Buffer[] buffers) {
+        final Set<Volume> volumes = new LinkedHashSet<Volume>();
+        final Set<Tree> trees = new LinkedHashSet<Tree>();
+        for (final Buffer buffer : buffers) {
+            final Volume volume = buffer.getVolume();
+            final Tree tree = buffer.getTree();
+            if (volume != null) {
+                volumes.add(volume);
+            }
+            if (tree != null) {
+                trees.add(tree);
+            }
+        }
+        final List<Management.BufferShareInfo> list = new ArrayList<Management.BufferShareInfo>();
+        for (final Volume volume : volumes) {
+            list.add(new Management.BufferShareInfo(volume, null));
+            for (final Tree tree : trees) {
+                if (tree.getVolume() == volume) {
+                    list.add(new Management.BufferShareInfo(volume, tree));
+                }
+            }
+        }
+        return list.toArray(new Management.BufferShareInfo[list.size()]);
+    }
+
+    /**
+     * Assign a page to a buffer, moving the buffer from the shares of the
+     * tree and volume that owned its previous page to those of the new one.
+     * The caller has a writer claim on the buffer.
+     */
+    private void assign(final Buffer buffer, final long page, final Volume vol, final Tree tree) {
+        final Volume oldVolume = buffer.getVolume();
+        if (oldVolume != vol) {
+            if (oldVolume != null) {
+                oldVolume.getBufferShare().decrement();
+                oldVolume.getBufferIndex().remove(buffer.getIndex());
+            }
+            if (vol != null) {
+                vol.getBufferShare().increment();
+                vol.getBufferIndex().add(buffer.getIndex());
+            }
+        }
+        buffer.setPageAddressAndVolume(page, vol);
+        setTree(buffer, tree);
+    }
+
+    private void setTree(final Buffer buffer, final Tree tree) {
+        final Tree oldTree = buffer.getTree();
+        if (oldTree != tree) {
+            if (oldTree != null) {
+                oldTree.getBufferShare().decrement();
+            }
+            if (tree != null) {
+                tree.getBufferShare().increment();
+            }
+            buffer.setTree(tree);
+        }
     }
 
-    private boolean detach(Buffer buffer) {
-        final int hash = hashIndex(buffer.getVolume(), buffer.getPageAddress());
-        if (!_hashLocks[hash % HASH_LOCKS].tryLock()) {
+    /**
+     * Remove a buffer from its hash chain, optionally first copying its page
+     * into the off-heap page cache (see {@link #retain(Buffer)}). The hash
+     * lock is only tried, so the copy is made only if the buffer is actually
+     * detached.
+     * 
+     * @return <code>true</code> if the buffer was detached, or
+     *         <code>false</code> if another thread holds its hash lock
+     */
+    private boolean detach(final Buffer buffer, final boolean retain) {
+        final ReentrantLock lock = hashLock(buffer.getVolume(), buffer.getPageAddress());
+        if (!lock.tryLock()) {
             return false;
         }
         try {
+            if (retain) {
+                retain(buffer);
+            }
+            final int hash = hashIndex(buffer.getVolume(), buffer.getPageAddress());
 
             // Detach this buffer from the hash table.
             //
@@ -734,7 +1639,7 @@ public class BufferPool {
                 }
             }
         } finally {
-            _hashLocks[hash % HASH_LOCKS].unlock();
+            lock.unlock();
         }
         return true;
     }
@@ -757,13 +1662,86 @@ public class BufferPool {
      * @throws InUseException
      */
     Buffer get(Volume vol, long page, boolean writer, boolean wantRead) throws PersistitException {
-        int hash = hashIndex(vol, page);
+        return get(vol, page, writer, wantRead, null);
+    }
+
+    /**
+     * Get the page as {@link #get(Volume, long, boolean, boolean)} does, on
+     * behalf of a {@link Tree}. The buffer is counted in the
+     * <code>Tree</code>'s {@link BufferShare}, and a buffer needed to read the
+     * page is chosen in accordance with the shares of the <code>Tree</code>
+     * and the <code>Volume</code>.
+     * 
+     * @param vol
+     *            The Volume
+     * @param page
+     *            The address of the page
+     * @param writer
+     *            <i>true</i> if a write lock is required.
+     * @param wantRead
+     *            <i>true</i> if the caller wants the page read from disk.
+     * @param tree
+     *            The Tree to which the page belongs, or <code>null</code> if
+     *            not known
+     * @return Buffer The Buffer describing the buffer containing the page.
+     * @throws InUseException
+     */
+    Buffer get(Volume vol, long page, boolean writer, boolean wantRead, Tree tree) throws PersistitException {
+        final ReentrantLock lock = hashLock(vol, page);
         Buffer buffer = null;
+        //
+        // Most requests find the page already in the pool. Search for it
+        // without the hash lock, then validate its identity once it has been
+        // claimed: a buffer cannot be assigned to another page while another
+        // thread holds a claim on it. The claim is only tried, because until
+        // it is validated the buffer may hold an unrelated page that some
+        // other thread keeps claimed. If the page is not found, the claim is
+        // not granted at once, or the buffer was reassigned before the claim
+        // was granted, search again under the lock.
+        //
+        if (_lockFreeLookup) {
+            buffer = find(vol, page);
+            if (buffer != null) {
+                if (!buffer.claim(writer, 0)) {
+                    _lookupRetryCounter.incrementAndGet();
+                } else if (buffer.isValid() && buffer.getPageAddress() == page && buffer.getVolume() == vol) {
+                    if (tree != null && buffer.getTree() != tree && lock.tryLock()) {
+                        try {
+                            setTree(buffer, tree);
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    vol.getStatistics().bumpGetCounter();
+                    bumpHitCounter(buffer);
+                    return buffer;
+                } else {
+                    buffer.release();
+                    _lookupRetryCounter.incrementAndGet();
+                }
+            }
+        }
 
+        int allocPasses = 0;
+        boolean exhausted = false;
         for (;;) {
+            if (exhausted) {
+                //
+                // Every replacement candidate was busy. The thread holding
+                // them may simply have been descheduled, for example while
+                // acquiring all hash locks to resize the pool. Pause, without
+                // holding the hash lock, and then search again.
+                //
+                if (++allocPasses >= ALLOC_PASS_LIMIT) {
+                    throw new IllegalStateException("No available Buffers");
+                }
+                Util.sleep(RESIZE_LOCK_RETRY_DELAY);
+                exhausted = false;
+            }
             boolean mustClaim = false;
-            _hashLocks[hash % HASH_LOCKS].lock();
+            lock.lock();
             try {
+                final int hash = hashIndex(vol, page);
                 buffer = _hashTable[hash];
                 //
                 // Search for the page
@@ -775,8 +1753,11 @@ public class BufferPool {
                         // Found it - now claim it.
                         //
                         if (buffer.claim(writer, 0)) {
+                            if (tree != null && buffer.getTree() != tree) {
+                                setTree(buffer, tree);
+                            }
                             vol.getStatistics().bumpGetCounter();
-                            bumpHitCounter();
+                            bumpHitCounter(buffer);
                             return buffer;
                         } else {
                             mustClaim = true;
@@ -791,14 +1772,19 @@ public class BufferPool {
                     // Page not found. Allocate an available buffer and read
                     // in the page from the Volume.
                     //
-                    buffer = allocBuffer();
+                    buffer = allocBuffer(vol, tree);
+                    if (buffer == null) {
+                        exhausted = true;
+                        continue;
+                    }
                     Debug.$assert1.t(!buffer.isDirty());
                     Debug.$assert0.t(buffer != _hashTable[hash]);
                     Debug.$assert0.t(buffer.getNext() != buffer);
 
-                    buffer.setPageAddressAndVolume(page, vol);
+                    assign(buffer, page, vol, tree);
                     buffer.setNext(_hashTable[hash]);
                     _hashTable[hash] = buffer;
+                    _replacementPolicy.admit(buffer);
                     //
                     // It's not really valid yet, but it does have a writer
                     // claim on it so no other Thread can access it. In the
@@ -814,7 +1800,7 @@ public class BufferPool {
                     Debug.$assert0.t(buffer.getNext() != buffer);
                 }
             } finally {
-                _hashLocks[hash % HASH_LOCKS].unlock();
+                lock.unlock();
             }
             if (mustClaim) {
                 /*
@@ -836,7 +1822,7 @@ public class BufferPool {
                     // If so, then we're done.
                     //
                     vol.getStatistics().bumpGetCounter();
-                    bumpHitCounter();
+                    bumpHitCounter(buffer);
                     return buffer;
                 }
                 //
@@ -862,9 +1848,10 @@ public class BufferPool {
                 if (wantRead) {
                     boolean loaded = false;
                     try {
-                        Debug.$assert0.t(buffer.getPageAddress() == page && buffer.getVolume() == vol
-                                && hashIndex(buffer.getVolume(), buffer.getPageAddress()) == hash);
-                        buffer.load(vol, page);
+                        Debug.$assert0.t(buffer.getPageAddress() == page && buffer.getVolume() == vol);
+                        if (_pageCache == null || !_pageCache.load(buffer)) {
+                            buffer.load(vol, page);
+                        }
                         loaded = true;
                         vol.getStatistics().bumpGetCounter();
                         bumpMissCounter();
@@ -875,6 +1862,9 @@ public class BufferPool {
                         }
                     }
                 } else {
+                    if (_pageCache != null) {
+                        _pageCache.discard(vol, page);
+                    }
                     buffer.clear();
                     buffer.init(Buffer.PAGE_TYPE_UNALLOCATED);
                     bumpNewCounter();
@@ -907,11 +1897,11 @@ public class BufferPool {
     public Buffer getBufferCopy(Volume vol, long page) throws InvalidPageAddressException,
             InvalidPageStructureException, VolumeClosedException, InUseException, PersistitIOException,
             PersistitInterruptedException {
-        int hash = hashIndex(vol, page);
+        final ReentrantLock lock = hashLock(vol, page);
         Buffer buffer = null;
-        _hashLocks[hash % HASH_LOCKS].lock();
+        lock.lock();
         try {
-            buffer = _hashTable[hash];
+            buffer = _hashTable[hashIndex(vol, page)];
             //
             // Search for the page
             //
@@ -928,7 +1918,7 @@ public class BufferPool {
                 buffer = buffer.getNext();
             }
         } finally {
-            _hashLocks[hash % HASH_LOCKS].unlock();
+            lock.unlock();
         }
         //
         // Didn't find it in the pool, so we'll read a copy.
@@ -943,50 +1933,70 @@ public class BufferPool {
     }
 
     public Buffer getBufferCopy(final int index) throws IllegalArgumentException {
-        if (index < 0 || index >= _bufferCount) {
+        final Buffer[] buffers = _buffers;
+        if (index < 0 || index >= buffers.length) {
             throw new IllegalArgumentException("Index " + index + " is out of range in " + this);
         }
-        return new Buffer(_buffers[index]);
+        return new Buffer(buffers[index]);
     }
 
     /**
      * Returns an available buffer. The replacement policy is to return a buffer
-     * that's already been marked invalid, if available. Otherwise use the Clock
-     * algorithm to choose a page for replacement that is approximately the
-     * least-recently-used page.
+     * that's already been marked invalid, if available. Otherwise the pool's
+     * {@link ReplacementPolicy} supplies candidate pages for replacement.
+     * <p>
+     * Candidates are filtered by the {@link BufferShare}s of the requesting
+     * {@link Tree} and {@link Volume}, and of the candidate's owners: a page
+     * whose tree or volume holds no more than its reserved minimum is passed
+     * over unless it belongs to the requester, and a requester that holds its
+     * maximum share may replace only its own pages. Once a full rotation of
+     * candidates has been passed over the shares are ignored so that
+     * allocation cannot starve.
      * 
+     * @param vol
+     *            the Volume of the page to be read into the buffer
+     * @param tree
+     *            the Tree of the page, or <code>null</code> if not known
      * @return Buffer An available buffer, or <i>null</i> if no buffer is
      *         currently available. The buffer has a writer claim.
      * @throws PersistitException
-     * @throws IllegalStateException
-     *             if there is no available buffer.
      */
 
-    private Buffer allocBuffer() throws PersistitException {
+    private Buffer allocBuffer(final Volume vol, final Tree tree) throws PersistitException {
+        //
+        // The pool cannot be resized while this method runs because the
+        // caller holds a hash lock.
+        //
+        final Buffer[] buffers = _buffers;
+        final AtomicLongArray availablePagesBits = _availablePagesBits;
+        final ReplacementPolicy replacementPolicy = _replacementPolicy;
+        final boolean treeFull = tree != null && tree.getBufferShare().isFull(buffers.length);
+        final boolean volumeFull = vol.getBufferShare().isFull(buffers.length);
         //
         // Start by searching for an invalid page. It's preferable
-        // since no valid page will need to be evicted.
+        // since no valid page will need to be evicted. A tree or volume
+        // that has reached its maximum share recycles its own pages instead.
         //
-        if (_availablePages.get()) {
-            int start = (_clock.get() / 64) * 64;
+        if (_availablePages.get() && !treeFull && !volumeFull) {
+            int start = (replacementPolicy.getClock() / 64) * 64;
             for (int q = start;;) {
                 q += 64;
-                if (q >= _bufferCount) {
+                if (q >= buffers.length) {
                     q = 0;
                 }
-                long bits = _availablePagesBits.get(q / 64);
+                long bits = availablePagesBits.get(q / 64);
                 if (bits != 0) {
-                    for (int p = 0; p < 64; p++) {
+                    for (int p = 0; p < 64 && q + p < buffers.length; p++) {
                         if ((bits & (1L << p)) != 0) {
-                            final Buffer buffer = _buffers[q + p];
+                            final Buffer buffer = buffers[q + p];
                             //
                             // Note: need to verify that there are no claims -
                             // including those of the current thread.
                             //
                             if ((buffer.getStatus() & SharedResource.CLAIMED_MASK) == 0 && buffer.claim(true, 0)) {
                                 if (!buffer.isValid()) {
-                                    bits = _availablePagesBits.get(q / 64);
-                                    if (_availablePagesBits.compareAndSet(q / 64, bits, bits & ~(1L << p))) {
+                                    bits = availablePagesBits.get(q / 64);
+                                    if (availablePagesBits.compareAndSet(q / 64, bits, bits & ~(1L << p))) {
                                         buffer.clearDirty();
                                         return buffer;
                                     }
@@ -1004,67 +2014,294 @@ public class BufferPool {
             _availablePages.set(false);
         }
         //
-        // Look for a page to evict.
+        // Look for a page to evict. A valid candidate that cannot be
+        // detached because another thread holds its hash lock, as happens
+        // briefly while the pool is being resized, is not counted as a retry
+        // (up to a limit).
         //
-        for (int retry = 0; retry < _bufferCount * 2;) {
-            int clock = _clock.get();
-            assert clock < _bufferCount;
-            if (!_clock.compareAndSet(clock, (clock + 1) % _bufferCount)) {
+        int retries = buffers.length * 2;
+        int skipped = 0;
+        for (int retry = 0; retry < retries; retry++) {
+            final Buffer buffer = replacementPolicy.nextCandidate();
+            if (skipped < buffers.length && !isEvictable(buffer, vol, tree, treeFull, volumeFull, buffers.length)) {
+                skipped++;
+                retries++;
                 continue;
             }
-            Buffer buffer = _buffers[clock];
-            if (buffer.isTouched()) {
-                buffer.clearTouched();
-            } else {
-                //
-                // Note: need to verify that there are no claims - including
-                // those of the current thread.
-                //
-                if (!buffer.isFixed() && (buffer.getStatus() & SharedResource.CLAIMED_MASK) == 0
-                        && buffer.claim(true, 0)) {
-                    if (buffer.isDirty()) {
-                        // An invalid dirty buffer is available and does not
-                        // need to be written.
-                        if (!buffer.isValid()) {
-                            buffer.clearDirty();
-                            return buffer;
-                        }
-                        // A dirty valid buffer needs to be written and then
-                        // marked invalid
-                        try {
-                            buffer.writePage();
-                            if (detach(buffer)) {
-                                buffer.clearValid();
-                                _forcedWriteCounter.incrementAndGet();
-                                _evictCounter.incrementAndGet();
-                                _persistit.getIOMeter().chargeEvictPageFromPool(buffer.getVolume(),
-                                        buffer.getPageAddress(), buffer.getBufferSize(), buffer.getIndex());
-                            }
-                        } finally {
-                            if (!buffer.isValid()) {
-                                return buffer;
-                            } else {
-                                buffer.release();
-                            }
-                        }
-                    } else {
-                        if (buffer.isValid() && detach(buffer)) {
+            //
+            // Note: need to verify that there are no claims - including
+            // those of the current thread.
+            //
+            if (!buffer.isFixed() && (buffer.getStatus() & SharedResource.CLAIMED_MASK) == 0
+                    && buffer.claim(true, 0)) {
+                if (buffer.isDirty()) {
+                    // An invalid dirty buffer is available and does not
+                    // need to be written.
+                    if (!buffer.isValid()) {
+                        buffer.clearDirty();
+                        return buffer;
+                    }
+                    // A dirty valid buffer needs to be written and then
+                    // marked invalid
+                    try {
+                        buffer.writePage();
+                        if (detach(buffer, true)) {
                             buffer.clearValid();
+                            _forcedWriteCounter.incrementAndGet();
                             _evictCounter.incrementAndGet();
+                            replacementPolicy.evicted(buffer);
                             _persistit.getIOMeter().chargeEvictPageFromPool(buffer.getVolume(),
                                     buffer.getPageAddress(), buffer.getBufferSize(), buffer.getIndex());
                         }
+                    } finally {
                         if (!buffer.isValid()) {
                             return buffer;
                         } else {
                             buffer.release();
+                            retries = Math.min(retries + 1, buffers.length * ALLOC_RETRY_LIMIT);
+                        }
+                    }
+                } else {
+                    if (buffer.isValid() && detach(buffer, true)) {
+                        buffer.clearValid();
+                        _evictCounter.incrementAndGet();
+                        replacementPolicy.evicted(buffer);
+                        _persistit.getIOMeter().chargeEvictPageFromPool(buffer.getVolume(),
+                                buffer.getPageAddress(), buffer.getBufferSize(), buffer.getIndex());
+                    }
+                    if (!buffer.isValid()) {
+                        return buffer;
+                    } else {
+                        buffer.release();
+                        retries = Math.min(retries + 1, buffers.length * ALLOC_RETRY_LIMIT);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine whether the {@link BufferShare}s of the requester and of the
+     * owners of a candidate buffer permit its page to be evicted.
+     */
+    private static boolean isEvictable(final Buffer buffer, final Volume vol, final Tree tree,
+            final boolean treeFull, final boolean volumeFull, final int poolSize) {
+        final Tree owner = buffer.getTree();
+        final Volume ownerVolume = buffer.getVolume();
+        if (treeFull && owner != tree || volumeFull && ownerVolume != vol) {
+            return false;
+        }
+        if (!buffer.isValid()) {
+            return true;
+        }
+        if (owner != null && owner != tree && owner.getBufferShare().isReserved(poolSize)) {
+            return false;
+        }
+        if (ownerVolume != null && ownerVolume != vol && ownerVolume.getBufferShare().isReserved(poolSize)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if this pool has read-ahead threads
+     */
+    boolean isReadAheadEnabled() {
+        return _readAheadExecutor != null;
+    }
+
+    /**
+     * Indicate whether a page is present in the pool, or is being read into
+     * it, without claiming or reading it.
+     * 
+     * @param vol
+     * @param page
+     * @return <code>true</code> if the page has a buffer
+     */
+    boolean isCached(final Volume vol, final long page) {
+        return find(vol, page) != null;
+    }
+
+    /**
+     * Search the hash table for a buffer holding a page without locking its
+     * hash chain. Chains may be modified while they are being walked, so the
+     * result is only a hint: the buffer must be claimed and its identity
+     * verified before use, and a page that is present may be missed. The walk
+     * is bounded so that a chain observed in the middle of being rearranged
+     * cannot hold the caller indefinitely.
+     * 
+     * @param vol
+     * @param page
+     * @return a buffer that held the page, or <code>null</code>
+     */
+    private Buffer find(final Volume vol, final long page) {
+        final Buffer[] table = _hashTable;
+        Buffer buffer = table[hashIndex(vol, page, table.length)];
+        for (int limit = _buffers.length; buffer != null && limit > 0; limit--) {
+            if (buffer.getPageAddress() == page && buffer.getVolume() == vol) {
+                return buffer;
+            }
+            buffer = buffer.getNext();
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     * Request that the data pages following <code>page</code> be read into
+     * the pool in the background. The request is advisory: it is discarded if
+     * read-ahead is disabled or too many requests are pending.
+     * </p>
+     * <p>
+     * The addresses of the following pages are found in the level-1 index
+     * page that points to <code>page</code>. The search begins at the index
+     * page recorded in <code>parentHint</code> and follows right siblings; the
+     * index page in which <code>page</code> is found is stored back into
+     * <code>parentHint</code> so that the next request for the same traversal
+     * starts there. Pages pointed to by subsequent index pages are included
+     * if the first one does not supply <code>depth</code> pages.
+     * </p>
+     * 
+     * @param vol
+     *            The volume
+     * @param tree
+     *            The tree being traversed
+     * @param parentHint
+     *            Address of a level-1 index page at or to the left of the
+     *            parent of <code>page</code>
+     * @param page
+     *            Address of the data page most recently reached by the
+     *            traversal
+     * @param depth
+     *            Number of following pages to read
+     */
+    void readAhead(final Volume vol, final Tree tree, final AtomicLong parentHint, final long page, final int depth) {
+        final ThreadPoolExecutor executor = _readAheadExecutor;
+        if (executor == null || _closed.get()) {
+            return;
+        }
+        _readAheadRequestCounter.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readAheadPages(vol, tree, parentHint, page, depth);
+                } catch (PersistitException e) {
+                    // Read-ahead is advisory; the traversal will read the
+                    // page itself and report any error.
+                }
+            }
+        });
+    }
+
+    private void readAheadPages(final Volume vol, final Tree tree, final AtomicLong parentHint, final long page,
+            final int depth) throws PersistitException {
+        final long[] pages = new long[depth];
+        int count = 0;
+        boolean found = false;
+        long parentPage = parentHint.get();
+        for (int hop = 0; parentPage > 0 && count < depth && (found || hop < READ_AHEAD_MAX_HOPS); hop++) {
+            if (_closed.get()) {
+                return;
+            }
+            final Buffer parent = get(vol, parentPage, false, true, tree);
+            try {
+                if (parent.getPageType() != Buffer.PAGE_TYPE_INDEX_MIN) {
+                    break;
+                }
+                for (int p = parent.toKeyBlock(0); p != -1 && count < depth; p = parent.nextKeyBlock(p)) {
+                    final long child = parent.getPointer(p);
+                    if (found) {
+                        if (child > 0) {
+                            pages[count++] = child;
+                        }
+                    } else if (child == page) {
+                        found = true;
+                        parentHint.set(parentPage);
+                    }
+                }
+                parentPage = parent.getRightSibling();
+            } finally {
+                parent.release();
+            }
+        }
+        for (int index = 0; index < count && !_closed.get(); index++) {
+            if (!isCached(vol, pages[index])) {
+                get(vol, pages[index], false, true, tree).release();
+                _readAheadPageCounter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Request that pages of a chain linked by right-sibling pointers, such as
+     * the pages of a long record, be read into the pool in the background,
+     * starting with <code>page</code>. The request is advisory: it is
+     * discarded if read-ahead is disabled or too many requests are pending.
+     * 
+     * @param vol
+     *            The volume
+     * @param tree
+     *            The tree that owns the chain
+     * @param page
+     *            Address of the first page to read
+     * @param type
+     *            The page type expected; the chain is not followed past a
+     *            page of any other type
+     * @param depth
+     *            Maximum number of pages to read
+     */
+    void readAheadChain(final Volume vol, final Tree tree, final long page, final int type, final int depth) {
+        final ThreadPoolExecutor executor = _readAheadExecutor;
+        if (executor == null || _closed.get()) {
+            return;
+        }
+        _readAheadRequestCounter.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long next = page;
+                    for (int count = 0; next > 0 && count < depth && !_closed.get(); count++) {
+                        final boolean cached = isCached(vol, next);
+                        final Buffer buffer = get(vol, next, false, true, tree);
+                        try {
+                            if (buffer.getPageType() != type) {
+                                break;
+                            }
+                            next = buffer.getRightSibling();
+                        } finally {
+                            buffer.release();
+                        }
+                        if (!cached) {
+                            _readAheadPageCounter.incrementAndGet();
                         }
                     }
+                } catch (PersistitException e) {
+                    // Read-ahead is advisory; the reader will read the
+                    // page itself and report any error.
                 }
             }
-            retry++;
+        });
+    }
+
+    /**
+     * Copy the page held by a clean buffer that is about to be evicted into
+     * the off-heap page cache, if there is one. This is done under the
+     * buffer's hash lock while the buffer is still on its hash chain, so that
+     * a concurrent {@link #get(Volume, long, boolean, boolean)} for the same
+     * page waits for the eviction to complete and then finds the copy, and
+     * only once the eviction is certain, so that a page is never held both in
+     * the pool and in the cache.
+     * 
+     * @param buffer
+     *            A valid, clean buffer with a writer claim
+     */
+    private void retain(final Buffer buffer) {
+        if (_pageCache != null && !buffer.isTemporary() && !buffer.isDirty()) {
+            _pageCache.store(buffer);
         }
-        throw new IllegalStateException("No available Buffers");
     }
 
     enum Result {
@@ -1099,7 +2336,8 @@ public class BufferPool {
      *         polling cycle
      */
     boolean shouldWritePages() {
-        int cleanCount = _bufferCount - _dirtyPageCount.get();
+        final int bufferCount = _buffers.length;
+        int cleanCount = bufferCount - _dirtyPageCount.get();
         if (getEarliestDirtyTimestamp() < _flushTimestamp.get()) {
             return true;
         }
@@ -1109,36 +2347,144 @@ public class BufferPool {
         if (cleanCount < _pageWriterTrancheSize * 2) {
             return true;
         }
-        if (cleanCount < _bufferCount / 8) {
+        if (cleanCount < bufferCount / 8) {
             return true;
         }
         return false;
     }
 
+    /**
+     * Select a tranche of dirty buffers, sort it by volume and page address
+     * and write it. When the pool has several PAGE_WRITER threads the sorted
+     * tranche is divided into contiguous shares of at least
+     * {@value #WRITE_BATCH_SIZE} pages, one per thread, and this method
+     * returns after every share has been written.
+     * 
+     * @param priorities
+     * @param selectedBuffers
+     * @throws PersistitException
+     */
     void writeDirtyBuffers(final int[] priorities, final BufferHolder[] selectedBuffers) throws PersistitException {
-        int count = selectDirtyBuffers(priorities, selectedBuffers);
+        final int count = selectDirtyBuffers(priorities, selectedBuffers);
         if (count > 0) {
             Arrays.sort(selectedBuffers, 0, count);
-            for (int index = 0; index < count; index++) {
-                final BufferHolder holder = selectedBuffers[index];
+            final ThreadPoolExecutor executor = _writerExecutor;
+            final int shares = executor == null ? 1 : Math.min(_pageWriterThreads, (count + WRITE_BATCH_SIZE - 1)
+                    / WRITE_BATCH_SIZE);
+            if (shares <= 1) {
+                writeSelectedBuffers(selectedBuffers, 0, count, 0);
+                return;
+            }
+            final CountDownLatch latch = new CountDownLatch(shares - 1);
+            final AtomicReference<PersistitException> failure = new AtomicReference<PersistitException>();
+            for (int share = 1; share < shares; share++) {
+                final int from = (int) ((long) count * share / shares);
+                final int to = (int) ((long) count * (share + 1) / shares);
+                final int scratchIndex = share;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            writeSelectedBuffers(selectedBuffers, from, to, scratchIndex);
+                        } catch (PersistitException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            try {
+                writeSelectedBuffers(selectedBuffers, 0, count / shares, 0);
+            } finally {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new PersistitInterruptedException(e);
+                }
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+    }
+
+    /**
+     * Write the selected buffers in the range <code>from</code> (inclusive)
+     * to <code>to</code> (exclusive). Buffers that can be claimed without
+     * waiting and are still dirty are gathered into batches of up to
+     * {@value #WRITE_BATCH_SIZE} pages of the same volume.
+     */
+    private void writeSelectedBuffers(final BufferHolder[] holders, final int from, final int to,
+            final int scratchIndex) throws PersistitException {
+        final Buffer[] batch = new Buffer[Math.min(WRITE_BATCH_SIZE, to - from)];
+        int count = 0;
+        try {
+            for (int index = from; index < to; index++) {
+                final BufferHolder holder = holders[index];
                 final Buffer buffer = holder._buffer;
                 if (buffer.claim(true, 0)) {
-                    try {
-                        if (holder.matches(buffer) && buffer.isDirty() && buffer.isValid()) {
-                            buffer.writePage();
+                    if (holder.matches(buffer) && buffer.isDirty() && buffer.isValid()) {
+                        if (count > 0 && (count == batch.length || buffer.getVolume() != batch[0].getVolume())) {
+                            final int size = count;
+                            count = 0;
+                            writeBatch(batch, size, scratchIndex);
                         }
-                    } finally {
+                        batch[count++] = buffer;
+                    } else {
                         buffer.release();
                     }
                 }
             }
+            if (count > 0) {
+                final int size = count;
+                count = 0;
+                writeBatch(batch, size, scratchIndex);
+            }
+        } finally {
+            for (int index = 0; index < count; index++) {
+                batch[index].release();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of claimed buffers belonging to one volume, then release
+     * them.
+     */
+    private void writeBatch(final Buffer[] batch, final int count, final int scratchIndex) throws PersistitException {
+        try {
+            _persistit.checkFatal();
+            final Volume volume = batch[0].getVolume();
+            for (int index = 0; index < count; index++) {
+                batch[index].prepareWrite();
+            }
+            volume.getStorage().writePages(batch, count, volume.isTemporary() ? writeScratch(scratchIndex) : null);
+            for (int index = 0; index < count; index++) {
+                batch[index].writeCompleted();
+            }
+            _writeBatchCounter.incrementAndGet();
+            _writeBatchPageCounter.addAndGet(count);
+        } finally {
+            for (int index = 0; index < count; index++) {
+                batch[index].release();
+                batch[index] = null;
+            }
         }
     }
 
+    private ByteBuffer writeScratch(final int index) {
+        final ByteBuffer[] scratch = _writeScratch;
+        if (scratch[index] == null) {
+            scratch[index] = ByteBuffer.allocate(WRITE_BATCH_SIZE * _bufferSize);
+        }
+        return scratch[index];
+    }
+
     int selectDirtyBuffers(final int[] priorities, final BufferHolder[] holders) throws PersistitException {
         Debug.suspend();
         int count = 0;
-        final int clock = _clock.get();
+        final int clock = _replacementPolicy.getClock();
 
         final long checkpointTimestamp = _persistit.getCurrentCheckpoint().getTimestamp();
         final long currentTimestamp = _persistit.getCurrentTimestamp();
@@ -1147,8 +2493,9 @@ public class BufferPool {
         long flushTimestamp = _flushTimestamp.get();
 
         boolean flushed = true;
-        for (int index = clock; index < clock + _bufferCount; index++) {
-            final Buffer buffer = _buffers[index % _bufferCount];
+        final Buffer[] buffers = _buffers;
+        for (int index = clock; index < clock + buffers.length; index++) {
+            final Buffer buffer = buffers[index % buffers.length];
             long timestamp = buffer.getTimestamp();
             /*
              * The following is subtle timing dance. If the buffer claim is
@@ -1250,15 +2597,16 @@ public class BufferPool {
         // compute "distance" between this buffer and the clock. A larger
         // distance results in lower priority.
         //
-        int distance = (buffer.getIndex() - _clock.get() + _bufferCount) % _bufferCount;
+        final int bufferCount = _buffers.length;
+        int distance = (buffer.getIndex() - _replacementPolicy.getClock() + bufferCount) % bufferCount;
         int age = 0;
         //
         // If this buffer has been touched, then it won't be evicted for at
-        // least another _bufferCount cycles, and its distance is therefore
+        // least another bufferCount cycles, and its distance is therefore
         // increased.
         //
         if ((status & Buffer.TOUCHED_MASK) != 0) {
-            distance += _bufferCount;
+            distance += bufferCount;
         }
 
         if (!buffer.isTemporary()) {
@@ -1280,14 +2628,31 @@ public class BufferPool {
             // Temporary buffer - don't write it at all until the clock goes
             // through at least a full cycle.
             //
-            if (distance > _bufferCount) {
+            if (distance > bufferCount) {
                 return 0;
             }
         }
         //
         // Bias to a large positive integer (magnitude doesn't matter)
         //
-        return _bufferCount * 2 - distance + age;
+        return bufferCount * 2 - distance + age;
+    }
+
+    /**
+     * A run of nearby pages of one volume listed in the buffer inventory
+     */
+    private static class WarmupRun {
+        private final Volume _volume;
+        private final long[] _pages;
+        private final int _from;
+        private final int _to;
+
+        private WarmupRun(final Volume volume, final long[] pages, final int from, final int to) {
+            _volume = volume;
+            _pages = pages;
+            _from = from;
+            _to = to;
+        }
     }
 
     static class BufferHolder implements Comparable<BufferHolder> {
@@ -1407,7 +2772,7 @@ public class BufferPool {
 
         @Override
         public void runTask() throws Exception {
-            populateWarmupFile();
+            saveInventory();
         }
         
         @Override
@@ -1423,7 +2788,7 @@ public class BufferPool {
 
     @Override
     public String toString() {
-        return "BufferPool[" + _bufferCount + "@" + _bufferSize + (_closed.get() ? ":closed" : "") + "]";
+        return "BufferPool[" + _buffers.length + "@" + _bufferSize + (_closed.get() ? ":closed" : "") + "]";
     }
 
     /**
@@ -18,6 +18,7 @@ package com.persistit;
 import java.rmi.RemoteException;
 
 import com.persistit.Management.BufferPoolInfo;
+import com.persistit.exception.PersistitException;
 import com.persistit.mxbeans.BufferPoolMXBean;
 import com.persistit.mxbeans.Description;
 
@@ -89,6 +90,20 @@ class BufferPoolMXBeanImpl implements BufferPoolMXBean {
         return recent().getBufferCount();
     }
 
+    /**
+     * Change the count of <code>Buffer</code>s managed by this pool.
+     * 
+     * @param count
+     *            The new count
+     * @throws PersistitException
+     */
+    @Override
+    @Description("Return the count of Buffer managed by this pool")
+    public void setBufferCount(final int count) throws PersistitException {
+        _persistit.getBufferPool(_bufferSize).setBufferCount(count);
+        _recent = new BufferPoolInfo();
+    }
+
     /**
      * Return the count of lookup operations for pages images that resulted in a
      * physical disk read operation. This number, in comparison with the hit
@@ -242,4 +257,184 @@ class BufferPoolMXBeanImpl implements BufferPoolMXBean {
         return recent().getEarliestDirtyTimestamp();
     }
 
+    /**
+     * @return The name of the policy used to select pages for eviction
+     */
+    @Override
+    @Description("The name of the policy used to select pages for eviction")
+    public String getReplacementPolicy() {
+        return recent().getReplacementPolicy();
+    }
+
+    /**
+     * @return Count of pages re-read after eviction from probation
+     */
+    @Override
+    @Description("Count of pages re-read after eviction from probation and admitted to the protected set")
+    public long getGhostHitCount() {
+        return recent().getGhostHitCount();
+    }
+
+    /**
+     * @return Count of pages admitted on probation
+     */
+    @Override
+    @Description("Count of pages admitted on probation")
+    public long getGhostMissCount() {
+        return recent().getGhostMissCount();
+    }
+
+    /**
+     * @return Count of valid pages evicted while still on probation
+     */
+    @Override
+    @Description("Count of valid pages evicted while still on probation")
+    public long getProbationEvictCount() {
+        return recent().getProbationEvictCount();
+    }
+
+    /**
+     * @return Count of hits on pages while they were on probation
+     */
+    @Override
+    @Description("Count of hits on pages while they were on probation")
+    public long getProbationHitCount() {
+        return recent().getProbationHitCount();
+    }
+
+    /**
+     * @return Count of hits on pages in the protected set
+     */
+    @Override
+    @Description("Count of hits on pages in the protected set")
+    public long getProtectedHitCount() {
+        return recent().getProtectedHitCount();
+    }
+
+    /**
+     * @return Number of page frames in the off-heap page cache
+     */
+    @Override
+    @Description("Number of page frames in the off-heap page cache")
+    public int getOffHeapFrameCount() {
+        return recent().getOffHeapFrameCount();
+    }
+
+    /**
+     * @return Count of pool misses satisfied from the off-heap page cache
+     */
+    @Override
+    @Description("Count of pool misses satisfied from the off-heap page cache")
+    public long getOffHeapHitCount() {
+        return recent().getOffHeapHitCount();
+    }
+
+    /**
+     * @return Count of pool misses not found in the off-heap page cache
+     */
+    @Override
+    @Description("Count of pool misses not found in the off-heap page cache")
+    public long getOffHeapMissCount() {
+        return recent().getOffHeapMissCount();
+    }
+
+    /**
+     * @return Count of index pages searched without acquiring a claim
+     */
+    @Override
+    @Description("Count of index pages searched without acquiring a claim")
+    public long getOptimisticReadCount() {
+        return recent().getOptimisticReadCount();
+    }
+
+    /**
+     * @return Count of optimistic index page searches repeated with a claim
+     */
+    @Override
+    @Description("Count of optimistic index page searches repeated with a claim")
+    public long getOptimisticRetryCount() {
+        return recent().getOptimisticRetryCount();
+    }
+
+    /**
+     * @return Count of lock-free page lookups repeated under a lock
+     */
+    @Override
+    @Description("Count of lock-free page lookups repeated under a lock")
+    public long getLookupRetryCount() {
+        return recent().getLookupRetryCount();
+    }
+
+    /**
+     * @return Count of pages listed in the warmup inventory
+     */
+    @Override
+    @Description("Count of pages listed in the warmup inventory")
+    public long getWarmupPageCount() {
+        return recent().getWarmupPageCount();
+    }
+
+    /**
+     * @return Count of pages read by the warmup process
+     */
+    @Override
+    @Description("Count of pages read by the warmup process")
+    public long getWarmupLoadedCount() {
+        return recent().getWarmupLoadedCount();
+    }
+
+    /**
+     * @return <code>true</code> while the pool is being warmed up
+     */
+    @Override
+    @Description("True while the pool is being warmed up")
+    public boolean isWarmupActive() {
+        return recent().isWarmupActive();
+    }
+
+    /**
+     * @return Count of requests to read pages ahead of sequential traversals
+     */
+    @Override
+    @Description("Count of requests to read pages ahead of sequential traversals")
+    public long getReadAheadRequestCount() {
+        return recent().getReadAheadRequestCount();
+    }
+
+    /**
+     * @return Count of pages read by read-ahead threads
+     */
+    @Override
+    @Description("Count of pages read by read-ahead threads")
+    public long getReadAheadPageCount() {
+        return recent().getReadAheadPageCount();
+    }
+
+    /**
+     * @return Number of threads that write dirty pages
+     */
+    @Override
+    @Description("Number of threads that write dirty pages")
+    public int getPageWriterThreadCount() {
+        return recent().getPageWriterThreadCount();
+    }
+
+    /**
+     * @return Count of batches of pages written by the page writer threads
+     */
+    @Override
+    @Description("Count of batches of pages written by the page writer threads")
+    public long getWriteBatchCount() {
+        return recent().getWriteBatchCount();
+    }
+
+    /**
+     * @return Count of pages written in batches by the page writer threads
+     */
+    @Override
+    @Description("Count of pages written in batches by the page writer threads")
+    public long getWriteBatchPageCount() {
+        return recent().getWriteBatchPageCount();
+    }
+
 }
@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The share of a {@link BufferPool} reserved for, and permitted to, the pages
+ * of one {@link Tree} or {@link Volume}. Each share has a minimum and a maximum
+ * expressed as a percentage of the buffers in the pool, and counts the buffers
+ * currently assigned to pages it owns.
+ * </p>
+ * <p>
+ * The pool's eviction loop does not evict a page belonging to a share that
+ * holds no more than its minimum, unless the page is requested for the same
+ * share; and a share that holds at least its maximum replaces one of its own
+ * pages rather than displacing another. These limits are advisory: when every
+ * candidate is protected the pool ignores them rather than fail to allocate a
+ * buffer. The default share, with a minimum of 0% and a maximum of 100%,
+ * imposes no limit.
+ * </p>
+ * <p>
+ * Shares are runtime settings; they are not saved with the volume.
+ * </p>
+ */
+class BufferShare {
+
+    private volatile int _minimumPercent;
+
+    private volatile int _maximumPercent = 100;
+
+    private final AtomicInteger _bufferCount = new AtomicInteger();
+
+    /**
+     * Set the limits of this share.
+     * 
+     * @param minimumPercent
+     *            percentage of the pool reserved for this share
+     * @param maximumPercent
+     *            largest percentage of the pool this share may occupy
+     * @throws IllegalArgumentException
+     *             unless 0 &lt;= minimumPercent &lt;= maximumPercent &lt;= 100
+     *             and maximumPercent &gt; 0
+     */
+    void set(final int minimumPercent, final int maximumPercent) {
+        if (minimumPercent < 0 || maximumPercent <= 0 || maximumPercent > 100 || minimumPercent > maximumPercent) {
+            throw new IllegalArgumentException("Invalid buffer share minimum=" + minimumPercent + "% maximum="
+                    + maximumPercent + "%");
+        }
+        _minimumPercent = minimumPercent;
+        _maximumPercent = maximumPercent;
+    }
+
+    int getMinimumPercent() {
+        return _minimumPercent;
+    }
+
+    int getMaximumPercent() {
+        return _maximumPercent;
+    }
+
+    int getBufferCount() {
+        return _bufferCount.get();
+    }
+
+    void increment() {
+        _bufferCount.incrementAndGet();
+    }
+
+    void decrement() {
+        _bufferCount.decrementAndGet();
+    }
+
+    /**
+     * @param poolSize
+     *            count of buffers in the pool
+     * @return <code>true</code> if evicting a page of this share would leave
+     *         it with less than its reserved minimum
+     */
+    boolean isReserved(final int poolSize) {
+        final int minimum = _minimumPercent;
+        return minimum > 0 && (long) _bufferCount.get() * 100 <= (long) minimum * poolSize;
+    }
+
+    /**
+     * @param poolSize
+     *            count of buffers in the pool
+     * @return <code>true</code> if this share occupies at least its maximum
+     */
+    boolean isFull(final int poolSize) {
+        final int maximum = _maximumPercent;
+        return maximum < 100 && (long) _bufferCount.get() * 100 >= (long) maximum * poolSize;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferShare(min=" + _minimumPercent + "% max=" + _maximumPercent + "% count=" + _bufferCount.get()
+                + ")";
+    }
+}
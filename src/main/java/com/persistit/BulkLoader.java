@@ -0,0 +1,480 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static com.persistit.Buffer.HEADER_SIZE;
+import static com.persistit.Buffer.KEYBLOCK_LENGTH;
+import static com.persistit.Buffer.PAGE_TYPE_DATA;
+import static com.persistit.Buffer.TAILBLOCK_FACTOR;
+import static com.persistit.Buffer.TAILBLOCK_HDR_SIZE_COUNTED_INDEX;
+import static com.persistit.Buffer.TAILBLOCK_HDR_SIZE_DATA;
+import static com.persistit.Buffer.TAILBLOCK_HDR_SIZE_INDEX;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.persistit.ValueHelper.RawValueWriter;
+import com.persistit.exception.PersistitException;
+import com.persistit.util.Debug;
+
+/**
+ * <p>
+ * Builds the content of an empty {@link Tree} from records supplied in
+ * ascending key order. Rather than inserting each record through
+ * {@link Exchange#store()}, which searches the tree and splits pages as they
+ * fill, a <code>BulkLoader</code> appends records to a data page until the
+ * page reaches the target fill factor, then starts a new page and appends a
+ * separator key to the index level above it. Index levels are built bottom-up
+ * in the same way. Each page is therefore written exactly once, when it is
+ * complete, and pages are filled to a predictable level rather than being
+ * left half full by splits.
+ * </p>
+ * <p>
+ * Pages built by the loader are not reachable until {@link #finish()}
+ * replaces the empty root page of the <code>Tree</code> with the root of the
+ * new tree and updates the volume's directory in one step. The
+ * <code>Tree</code> must be empty when the loader is created and must not be
+ * modified by any other thread until <code>finish</code> completes. If
+ * loading is abandoned, {@link #abort()} returns the pages already built,
+ * including the LONG_RECORD pages of long values, to the volume's garbage
+ * chain.
+ * </p>
+ * <p>
+ * Records are stored as primordial values, as if by an <code>Exchange</code>
+ * on which {@link Exchange#ignoreTransactions()} had been called: they are
+ * immediately visible to every transaction and are not journaled as
+ * individual updates. The completed pages are written to the journal through
+ * the {@link BufferPool} in the usual way. If the <code>Tree</code> has
+ * record counts (see {@link Tree#enableRecordCounts()}) each separator key is
+ * written with the number of records in the page it points to.
+ * </p>
+ * <p>
+ * A <code>BulkLoader</code> is not thread-safe.
+ * </p>
+ */
+public class BulkLoader {
+
+    /**
+     * Default fraction of each page filled with records
+     */
+    public final static float DEFAULT_FILL_FACTOR = 1.0f;
+
+    private final Persistit _persistit;
+
+    private final Exchange _exchange;
+
+    private final Tree _tree;
+
+    private final boolean _counted;
+
+    private final Volume _volume;
+
+    private final float _fillFactor;
+
+    private final Key _lastKey;
+
+    private final List<Level> _levels = new ArrayList<Level>();
+
+    private long _recordCount;
+
+    private boolean _done;
+
+    /**
+     * Level of the tree under construction. Records and separator keys are
+     * held in the pending key and value until the next key is known so that
+     * room for the edge key that ends a page can always be reserved.
+     */
+    private class Level {
+
+        private final int _level;
+
+        private final int _tailHeaderSize;
+
+        private final Key _pendingKey = new Key(_persistit);
+
+        private final Value _pendingValue = new Value(_persistit);
+
+        private final RawValueWriter _valueWriter = new RawValueWriter();
+
+        private final Value _edgeValue = new Value(_persistit);
+
+        private final RawValueWriter _edgeWriter = new RawValueWriter();
+
+        private boolean _pending;
+
+        /**
+         * First page of the LONG_RECORD chain of the pending record, or zero.
+         * Once the record is placed in a data page, the chain is freed with
+         * that page.
+         */
+        private long _pendingLongRecord;
+
+        private Buffer _buffer;
+
+        private long _leftmostPage;
+
+        private int _pageCount;
+
+        /**
+         * Number of records below the entries placed in the current page
+         */
+        private long _pageRecords;
+
+        /**
+         * Number of records in the page the pending pointer points to
+         */
+        private long _pendingRecords;
+
+        Level(final int level) {
+            _level = level;
+            _tailHeaderSize = level == 0 ? TAILBLOCK_HDR_SIZE_DATA
+                    : _counted ? TAILBLOCK_HDR_SIZE_COUNTED_INDEX : TAILBLOCK_HDR_SIZE_INDEX;
+            _valueWriter.init(_pendingValue);
+            _edgeValue.setPointerValue(-1);
+            _edgeWriter.init(_edgeValue);
+        }
+
+        /**
+         * Add a record (at level 0) or a pointer (at index levels). The
+         * previously added entry is placed first, now that the key that
+         * follows it is known.
+         */
+        void add(final Key key, final Value value, final long longRecordPage) throws PersistitException {
+            if (_pending) {
+                place(key);
+            }
+            key.copyTo(_pendingKey);
+            _pendingValue.putEncodedBytes(value.getEncodedBytes(), 0, value.getEncodedSize());
+            _pendingLongRecord = longRecordPage;
+            _pending = true;
+        }
+
+        void addPointer(final Key key, final long pointer) throws PersistitException {
+            if (_pending) {
+                place(key);
+            }
+            key.copyTo(_pendingKey);
+            _pendingValue.setPointerValue(pointer);
+            _pending = true;
+        }
+
+        /**
+         * Place the pending entry in the current page, or if it does not fit,
+         * end the current page with the pending key as its edge key and start
+         * a new page with the pending entry.
+         * 
+         * @param nextKey
+         *            the key that will follow the pending entry
+         */
+        private void place(final Key nextKey) throws PersistitException {
+            if (_buffer == null) {
+                startPage();
+            } else if (!fits(nextKey)) {
+                final Buffer left = _buffer;
+                final long leftRecords = _pageRecords;
+                putEdge(left, _pendingKey);
+                startPage();
+                left.setRightSibling(_buffer.getPageAddress());
+                release(left);
+                final Level parent = parent();
+                parent._pendingRecords = leftRecords;
+                parent.addPointer(_pendingKey, _buffer.getPageAddress());
+            }
+            put(_buffer, _pendingKey);
+            _pendingLongRecord = 0;
+            _pending = false;
+        }
+
+        /**
+         * End this level: place the pending entry and terminate the rightmost
+         * page with the right guard key.
+         */
+        void finish() throws PersistitException {
+            if (_pending) {
+                place(Key.RIGHT_GUARD_KEY);
+            }
+            if (_buffer == null) {
+                startPage();
+            }
+            putEdge(_buffer, Key.RIGHT_GUARD_KEY);
+            release(_buffer);
+            _buffer = null;
+            if (_levels.size() > _level + 1) {
+                _levels.get(_level + 1)._pendingRecords = _pageRecords;
+            }
+        }
+
+        void abort() throws PersistitException {
+            if (_buffer != null) {
+                //
+                // The LONG_RECORD chains of a garbage data page are freed
+                // when the page is reused, except for that of its edge key.
+                // Terminate the open page so that its last record is not
+                // taken for an edge key.
+                //
+                try {
+                    putEdge(_buffer, Key.RIGHT_GUARD_KEY);
+                } finally {
+                    release(_buffer);
+                    _buffer = null;
+                }
+            }
+            if (_leftmostPage != 0) {
+                _volume.getStructure().deallocateGarbageChain(_leftmostPage, 0);
+                _leftmostPage = 0;
+            }
+            if (_pendingLongRecord != 0) {
+                _volume.getStructure().deallocateGarbageChain(_pendingLongRecord, 0);
+                _pendingLongRecord = 0;
+            }
+        }
+
+        private boolean fits(final Key nextKey) {
+            final int available = _buffer.getAvailableSize();
+            final int capacity = _buffer.getBufferSize() - HEADER_SIZE;
+            final int recordSize = tailSize(_pendingKey.getEncodedSize()
+                    + (_level == 0 ? _pendingValue.getEncodedSize() : 0));
+            final int edgeSize = tailSize(nextKey.getEncodedSize());
+            if (_buffer.getKeyCount() + 2 >= _volume.getPool().getMaxKeys()) {
+                return false;
+            }
+            if (recordSize + edgeSize > available) {
+                return false;
+            }
+            return capacity - available + recordSize <= capacity * _fillFactor;
+        }
+
+        /**
+         * @return an upper bound on the space occupied by a key block and a
+         *         tail block holding the specified number of key and value
+         *         bytes
+         */
+        private int tailSize(final int size) {
+            return KEYBLOCK_LENGTH + ((size + _tailHeaderSize + TAILBLOCK_FACTOR - 1) & ~(TAILBLOCK_FACTOR - 1));
+        }
+
+        private void startPage() throws PersistitException {
+            _buffer = _volume.getStructure().allocPage(_tree);
+            _buffer.writePageOnCheckpoint(timestamp());
+            _buffer.init(PAGE_TYPE_DATA + _level, _counted);
+            _pageRecords = 0;
+            if (_leftmostPage == 0) {
+                _leftmostPage = _buffer.getPageAddress();
+                if (_level == 0) {
+                    _buffer.putValue(Key.LEFT_GUARD_KEY, ValueHelper.EMPTY_VALUE_WRITER);
+                }
+            }
+            _pageCount++;
+        }
+
+        private void put(final Buffer buffer, final Key key) throws PersistitException {
+            final int result = buffer.putValue(key, _valueWriter);
+            if (result == -1) {
+                throw new IllegalStateException("Record for key " + key + " does not fit in " + buffer);
+            }
+            if (_level == 0) {
+                _pageRecords++;
+            } else {
+                _pageRecords += _pendingRecords;
+                if (buffer.isCountedIndexPage()) {
+                    buffer.setRecordCounts(result & Buffer.P_MASK, _pendingRecords, 0);
+                }
+            }
+        }
+
+        private void putEdge(final Buffer buffer, final Key key) throws PersistitException {
+            if (buffer.putValue(key, _level == 0 ? ValueHelper.EMPTY_VALUE_WRITER : _edgeWriter) == -1) {
+                throw new IllegalStateException("Edge key " + key + " does not fit in " + buffer);
+            }
+        }
+
+        private Level parent() {
+            if (_levels.size() == _level + 1) {
+                final Level parent = new Level(_level + 1);
+                _levels.add(parent);
+                Key.LEFT_GUARD_KEY.copyTo(parent._pendingKey);
+                parent._pendingValue.setPointerValue(_leftmostPage);
+                parent._pending = true;
+            }
+            return _levels.get(_level + 1);
+        }
+    }
+
+    /**
+     * Construct a <code>BulkLoader</code> that fills pages completely.
+     * 
+     * @param exchange
+     *            an <code>Exchange</code> on the empty <code>Tree</code> to
+     *            load
+     * @throws PersistitException
+     */
+    public BulkLoader(final Exchange exchange) throws PersistitException {
+        this(exchange, DEFAULT_FILL_FACTOR);
+    }
+
+    /**
+     * Construct a <code>BulkLoader</code>.
+     * 
+     * @param exchange
+     *            an <code>Exchange</code> on the empty <code>Tree</code> to
+     *            load
+     * @param fillFactor
+     *            fraction of each page to fill, greater than 0.0 and no
+     *            larger than 1.0. Pages with room to spare absorb later
+     *            insertions without splitting.
+     * @throws IllegalArgumentException
+     *             if the fill factor is out of range
+     * @throws IllegalStateException
+     *             if the <code>Tree</code> is not empty
+     * @throws PersistitException
+     */
+    public BulkLoader(final Exchange exchange, final float fillFactor) throws PersistitException {
+        if (!(fillFactor > 0.0f && fillFactor <= 1.0f)) {
+            throw new IllegalArgumentException("Fill factor must be in (0.0, 1.0]: " + fillFactor);
+        }
+        _exchange = exchange;
+        _persistit = exchange.getPersistitInstance();
+        _tree = exchange.getTree();
+        _counted = _tree.hasRecordCounts();
+        _volume = exchange.getVolume();
+        _fillFactor = fillFactor;
+        _lastKey = new Key(_persistit);
+        if (!_volume.getStructure().isTreeEmpty(_tree)) {
+            throw new IllegalStateException("Tree " + _tree.getName() + " in volume " + _volume.getName()
+                    + " is not empty");
+        }
+        _levels.add(new Level(0));
+    }
+
+    /**
+     * @return the <code>Tree</code> being loaded
+     */
+    public Tree getTree() {
+        return _tree;
+    }
+
+    /**
+     * @return the number of records appended so far
+     */
+    public long getRecordCount() {
+        return _recordCount;
+    }
+
+    /**
+     * Append a record. The key must be greater than the key of every
+     * previously appended record. Neither the key nor the value is modified.
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @throws IllegalArgumentException
+     *             if the key is not greater than the previous key
+     * @throws IllegalStateException
+     *             if the loader has finished or been aborted
+     * @throws PersistitException
+     */
+    public void append(final Key key, final Value value) throws PersistitException {
+        if (_done) {
+            throw new IllegalStateException("BulkLoader for " + _tree.getName() + " is closed");
+        }
+        key.testValidForStoreAndFetch(_volume.getPageSize());
+        if (_recordCount > 0 && key.compareTo(_lastKey) <= 0) {
+            throw new IllegalArgumentException("Key " + key + " is not greater than previous key " + _lastKey);
+        }
+        key.copyTo(_lastKey);
+        final Value stored = _exchange.compressForStore(value);
+        if (stored.getEncodedSize() > _exchange.maxValueSize(key.getEncodedSize())) {
+            //
+            // Long values are stored in a chain of LONG_RECORD pages before
+            // the descriptor is added to the data page.
+            //
+            final long page = _exchange.getLongRecordHelper().storeLongRecord(stored, false);
+            boolean added = false;
+            try {
+                _levels.get(0).add(key, stored, page);
+                added = true;
+            } finally {
+                stored.changeLongRecordMode(false);
+                if (!added) {
+                    _volume.getStructure().deallocateGarbageChain(page, 0);
+                }
+            }
+        } else {
+            _levels.get(0).add(key, stored, 0);
+        }
+        _tree.bloomFilterAdd(key);
+        _recordCount++;
+    }
+
+    /**
+     * Complete the index levels and install the new tree as the content of
+     * the <code>Tree</code>.
+     * 
+     * @throws IllegalStateException
+     *             if the loader has finished or been aborted, or if the
+     *             <code>Tree</code> was modified while it was being loaded
+     * @throws PersistitException
+     */
+    public void finish() throws PersistitException {
+        if (_done) {
+            throw new IllegalStateException("BulkLoader for " + _tree.getName() + " is closed");
+        }
+        boolean attached = false;
+        try {
+            for (int level = 0; level < _levels.size(); level++) {
+                _levels.get(level).finish();
+            }
+            final Level top = _levels.get(_levels.size() - 1);
+            Debug.$assert0.t(top._pageCount == 1);
+            _volume.getStructure().replaceEmptyTreeRoot(_tree, top._leftmostPage);
+            attached = true;
+        } finally {
+            _done = true;
+            if (!attached) {
+                abortLevels();
+            }
+        }
+    }
+
+    /**
+     * Abandon loading and release the pages built so far. The
+     * <code>Tree</code> remains empty.
+     * 
+     * @throws PersistitException
+     */
+    public void abort() throws PersistitException {
+        if (!_done) {
+            _done = true;
+            abortLevels();
+        }
+    }
+
+    private void abortLevels() throws PersistitException {
+        for (final Level level : _levels) {
+            level.abort();
+        }
+    }
+
+    private void release(final Buffer buffer) {
+        buffer.setDirtyAtTimestamp(timestamp());
+        buffer.releaseTouched();
+    }
+
+    private long timestamp() {
+        return _persistit.getTimestampAllocator().updateTimestamp();
+    }
+}
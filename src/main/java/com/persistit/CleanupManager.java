@@ -17,6 +17,7 @@ package com.persistit;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
@@ -28,6 +29,7 @@ import com.persistit.AlertMonitor.AlertLevel;
 import com.persistit.AlertMonitor.Event;
 import com.persistit.exception.PersistitException;
 import com.persistit.mxbeans.CleanupManagerMXBean;
+import com.persistit.util.Util;
 
 class CleanupManager extends IOTaskRunnable implements CleanupManagerMXBean {
 
@@ -266,6 +268,70 @@ class CleanupManager extends IOTaskRunnable implements CleanupManagerMXBean {
         }
     }
 
+    static class CleanupMergeOperands extends CleanupTreePage {
+        final byte[] _keyBytes;
+
+        CleanupMergeOperands(final int treeHandle, final Key key) {
+            super(treeHandle, 0);
+            _keyBytes = Arrays.copyOf(key.getEncodedBytes(), key.getEncodedSize());
+        }
+
+        @Override
+        public void performAction(final Persistit persistit) throws PersistitException {
+            final Exchange exchange = getExchange(persistit);
+            if (exchange != null) {
+                //
+                // An action offered while pruning names the operand tree
+                //
+                final Tree base = exchange.getTree().getMergeBaseTree();
+                if (base != null) {
+                    exchange.init(base);
+                }
+                try {
+                    if (exchange.getTree().getMergeOperator() != null) {
+                        final Key key = exchange.getKey();
+                        System.arraycopy(_keyBytes, 0, key.getEncodedBytes(), 0, _keyBytes.length);
+                        key.setEncodedSize(_keyBytes.length);
+                        exchange.foldMergeOperands();
+                    }
+                } finally {
+                    exchange.getTree().releaseMergeFold();
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return super.equals(other) && Arrays.equals(_keyBytes, ((CleanupMergeOperands) other)._keyBytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return _treeHandle * 31 + Arrays.hashCode(_keyBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s on key %s tree handle [%,d]", getClass().getSimpleName(),
+                    Util.hexDump(_keyBytes), _treeHandle);
+        }
+    }
+
+    static class CleanupRecount extends CleanupTreePage {
+
+        CleanupRecount(final int treeHandle, final long page) {
+            super(treeHandle, page);
+        }
+
+        @Override
+        public void performAction(final Persistit persistit) throws PersistitException {
+            final Exchange exchange = getExchange(persistit);
+            if (exchange != null) {
+                exchange.fixRecordCounts(_page);
+            }
+        }
+    }
+
     static class CleanupIndexHole extends CleanupTreePage {
         int _level;
 
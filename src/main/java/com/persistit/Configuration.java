@@ -134,6 +134,29 @@ public class Configuration {
      * specified memory allocation, including overhead for FastIndex elements.
      */
     public final static String BUFFER_MEM_PROPERTY_NAME = "buffer.memory.";
+    /**
+     * Property name prefix for specifying the page replacement policy of a
+     * buffer pool. The full property name should be one of "1024", "2048",
+     * "4096", "8192" or "16384" appended to this string, e.g.,
+     * "buffer.policy.8192". The value is either "CLOCK" (the default) or "2Q",
+     * a scan-resistant policy that protects frequently used pages from being
+     * displaced by long traversals.
+     */
+    public final static String BUFFER_POLICY_PROPERTY_NAME = "buffer.policy.";
+    /**
+     * Property name prefix for specifying the size of an off-heap page cache
+     * backing a buffer pool. The full property name should be one of "1024",
+     * "2048", "4096", "8192" or "16384" appended to this string, e.g.,
+     * "buffer.offheap.8192". The value is a memory size such as "4G". Clean
+     * pages evicted from the buffer pool are copied into direct memory outside
+     * the Java heap and are copied back into the pool on a subsequent miss,
+     * avoiding a read from the journal or volume file. The pool's own buffers
+     * remain on the heap, so this does not reduce the heap needed by the pool.
+     * The default is zero, meaning no off-heap page cache. The JVM's maximum
+     * direct memory size must be large enough to accommodate the requested
+     * size.
+     */
+    public final static String BUFFER_OFFHEAP_PROPERTY_NAME = "buffer.offheap.";
     /**
      * Property name prefix for specifying Volumes. The full property name
      * should be a unique ordinal number appended to this string, e.g.,
@@ -287,6 +310,38 @@ public class Configuration {
      */
     public final static String JOIN_POLICY_PROPERTY_NAME = "joinpolicy";
 
+    /**
+     * Property name to specify the number of threads each {@link BufferPool}
+     * uses to read pages ahead of sequential traversals.
+     */
+    public final static String READ_AHEAD_THREADS_PROPERTY_NAME = "readaheadthreads";
+
+    /**
+     * Default number of read-ahead threads per {@link BufferPool}
+     */
+    public final static int DEFAULT_READ_AHEAD_THREADS = 2;
+
+    /**
+     * Maximum number of read-ahead threads per {@link BufferPool}
+     */
+    public final static int MAXIMUM_READ_AHEAD_THREADS = 64;
+
+    /**
+     * Property name to specify the number of threads each {@link BufferPool}
+     * uses to write dirty pages.
+     */
+    public final static String PAGE_WRITER_THREADS_PROPERTY_NAME = "pagewriterthreads";
+
+    /**
+     * Default number of page writer threads per {@link BufferPool}
+     */
+    public final static int DEFAULT_PAGE_WRITER_THREADS = 2;
+
+    /**
+     * Maximum number of page writer threads per {@link BufferPool}
+     */
+    public final static int MAXIMUM_PAGE_WRITER_THREADS = 64;
+
     private final static SplitPolicy DEFAULT_SPLIT_POLICY = SplitPolicy.PACK_BIAS;
     private final static JoinPolicy DEFAULT_JOIN_POLICY = JoinPolicy.EVEN_BIAS;
     private final static CommitPolicy DEFAULT_TRANSACTION_COMMIT_POLICY = CommitPolicy.SOFT;
@@ -359,6 +414,8 @@ public class Configuration {
         private long maximumMemory;
         private long reservedMemory;
         private float fraction;
+        private String replacementPolicy = ReplacementPolicy.CLOCK;
+        private long offHeapMemory;
 
         private void reset() {
             minimumCount = 0;
@@ -481,6 +538,51 @@ public class Configuration {
             this.fraction = fraction;
         }
 
+        /**
+         * @return the name of the page replacement policy
+         */
+        public String getReplacementPolicy() {
+            return replacementPolicy;
+        }
+
+        /**
+         * Set the name of the policy used to select pages for eviction from
+         * the buffer pool: either "CLOCK" or "2Q" (case insensitive).
+         * 
+         * @param replacementPolicy
+         *            the policy name to set
+         * @throws IllegalArgumentException
+         *             if the name is not a recognized policy
+         */
+        public void setReplacementPolicy(String replacementPolicy) {
+            this.replacementPolicy = ReplacementPolicy.checkName(replacementPolicy);
+        }
+
+        /**
+         * @return the size in bytes of the off-heap page cache, or zero if
+         *         there is none
+         */
+        public long getOffHeapMemory() {
+            return offHeapMemory;
+        }
+
+        /**
+         * Set the size of the off-heap page cache used to retain clean pages
+         * evicted from the buffer pool. A value of zero disables the cache.
+         * 
+         * @param offHeapMemory
+         *            the size in bytes to set
+         * @throws IllegalArgumentException
+         *             if the value is negative or nonzero but smaller than one
+         *             page
+         */
+        public void setOffHeapMemory(long offHeapMemory) {
+            if (offHeapMemory < 0 || (offHeapMemory > 0 && offHeapMemory < bufferSize)) {
+                throw new IllegalArgumentException("Invalid off-heap page cache size: " + offHeapMemory);
+            }
+            this.offHeapMemory = offHeapMemory;
+        }
+
         /**
          * Compute the buffer count determined by the constraints of this
          * <code>BufferPoolConfiguration</code> given the supplied
@@ -523,6 +625,12 @@ public class Configuration {
                         displayableLongValue(minimumMemory), displayableLongValue(maximumMemory),
                         displayableLongValue(reservedMemory), fraction));
             }
+            if (!ReplacementPolicy.CLOCK.equals(replacementPolicy)) {
+                sb.append(String.format(",policy=%s", replacementPolicy));
+            }
+            if (offHeapMemory != 0) {
+                sb.append(String.format(",offheap=%s", displayableLongValue(offHeapMemory)));
+            }
             sb.append(')');
             return sb.toString();
         }
@@ -635,6 +743,8 @@ public class Configuration {
     private String bufferInventoryPathName;
     private long bufferInventoryPollInterval = 3000000; // default five minute polling
     private boolean ignoreMissingVolumes;
+    private int readAheadThreads = DEFAULT_READ_AHEAD_THREADS;
+    private int pageWriterThreads = DEFAULT_PAGE_WRITER_THREADS;
     private String tmpVolDir;
     private int tmpVolPageSize;
     private long tmpVolMaxSize;
@@ -724,6 +834,8 @@ public class Configuration {
         setJournalSize(getLongProperty(JOURNAL_BLOCKSIZE_PROPERTY_NAME, JournalManager.DEFAULT_BLOCK_SIZE));
         setLogFile(getProperty(LOGFILE_PROPERTY_NAME));
         setLogging(getProperty(LOGGING_PROPERTIES_NAME));
+        setPageWriterThreads(getIntegerProperty(PAGE_WRITER_THREADS_PROPERTY_NAME, DEFAULT_PAGE_WRITER_THREADS));
+        setReadAheadThreads(getIntegerProperty(READ_AHEAD_THREADS_PROPERTY_NAME, DEFAULT_READ_AHEAD_THREADS));
         setTmpVolDir(getProperty(TEMPORARY_VOLUME_DIR_PROPERTY_NAME));
         setTmpVolPageSize(getIntegerProperty(TEMPORARY_VOLUME_PAGE_SIZE_PROPERTY_NAME, 0));
         setTmpVolMaxSize(getLongProperty(TEMPORARY_VOLUME_MAX_SIZE_PROPERTY_NAME, MAXIMUM_TEMP_VOL_MAX_SIZE));
@@ -745,9 +857,13 @@ public class Configuration {
 
             final String countPropertyName = BUFFERS_PROPERTY_NAME + size;
             final String memPropertyName = BUFFER_MEM_PROPERTY_NAME + size;
+            final String policyPropertyName = BUFFER_POLICY_PROPERTY_NAME + size;
+            final String offHeapPropertyName = BUFFER_OFFHEAP_PROPERTY_NAME + size;
 
             String countSpec = getProperty(countPropertyName);
             String memSpec = getProperty(memPropertyName);
+            String policySpec = getProperty(policyPropertyName);
+            String offHeapSpec = getProperty(offHeapPropertyName);
             int count = 0;
             final BufferPoolConfiguration bpc = bufferPoolMap.get(size);
 
@@ -766,6 +882,8 @@ public class Configuration {
             } else if (count == 0) {
                 bpc.reset();
             }
+            bpc.setReplacementPolicy(policySpec == null ? ReplacementPolicy.CLOCK : policySpec);
+            bpc.setOffHeapMemory(offHeapSpec == null ? 0 : parseLongProperty(offHeapPropertyName, offHeapSpec));
         }
     }
 
@@ -788,7 +906,9 @@ public class Configuration {
     }
 
     final static int bufferSizeFromPropertyName(final String propertyName) {
-        if (propertyName.startsWith(BUFFERS_PROPERTY_NAME) || propertyName.startsWith(BUFFER_MEM_PROPERTY_NAME)) {
+        if (propertyName.startsWith(BUFFERS_PROPERTY_NAME) || propertyName.startsWith(BUFFER_MEM_PROPERTY_NAME)
+                || propertyName.startsWith(BUFFER_POLICY_PROPERTY_NAME)
+                || propertyName.startsWith(BUFFER_OFFHEAP_PROPERTY_NAME)) {
             String[] s = propertyName.split("\\.");
             try {
                 int size = Integer.parseInt(s[2]);
@@ -1895,4 +2015,65 @@ public class Configuration {
     public void setIgnoreMissingVolumes(boolean ignoreMissingVolumes) {
         this.ignoreMissingVolumes = ignoreMissingVolumes;
     }
+
+    /**
+     * Return the value defined by {@link #setReadAheadThreads(int)}
+     * 
+     * @return the number of read-ahead threads per buffer pool
+     */
+    public int getReadAheadThreads() {
+        return readAheadThreads;
+    }
+
+    /**
+     * <p>
+     * Set the number of threads each {@link BufferPool} uses to read pages
+     * ahead of an {@link Exchange} that traverses consecutive data pages. When
+     * an <code>Exchange</code> moves from a page to its right sibling several
+     * times in succession, the pool reads the following sibling pages, found
+     * in the parent index page, on these threads so that the traversal does
+     * not wait for each page in turn. The value zero disables read-ahead.
+     * </p>
+     * <p>
+     * Default value is {@value #DEFAULT_READ_AHEAD_THREADS}<br />
+     * Property name is {@value #READ_AHEAD_THREADS_PROPERTY_NAME}
+     * </p>
+     * 
+     * @param readAheadThreads
+     *            the number of read-ahead threads per buffer pool
+     */
+    public void setReadAheadThreads(int readAheadThreads) {
+        this.readAheadThreads = Util.rangeCheck(readAheadThreads, 0, MAXIMUM_READ_AHEAD_THREADS);
+    }
+
+    /**
+     * Return the value defined by {@link #setPageWriterThreads(int)}
+     * 
+     * @return the number of page writer threads per buffer pool
+     */
+    public int getPageWriterThreads() {
+        return pageWriterThreads;
+    }
+
+    /**
+     * <p>
+     * Set the number of threads each {@link BufferPool} uses to write dirty
+     * pages. The PAGE_WRITER thread selects a tranche of dirty pages, sorts it
+     * by volume and page address, and divides it among this many threads;
+     * each thread writes its share in batches of pages with the fewest
+     * possible I/O operations. More threads help keep the supply of clean
+     * buffers ahead of a heavy update load so that application threads rarely
+     * need to write pages themselves.
+     * </p>
+     * <p>
+     * Default value is {@value #DEFAULT_PAGE_WRITER_THREADS}<br />
+     * Property name is {@value #PAGE_WRITER_THREADS_PROPERTY_NAME}
+     * </p>
+     * 
+     * @param pageWriterThreads
+     *            the number of page writer threads per buffer pool
+     */
+    public void setPageWriterThreads(int pageWriterThreads) {
+        this.pageWriterThreads = Util.rangeCheck(pageWriterThreads, 1, MAXIMUM_PAGE_WRITER_THREADS);
+    }
 }
@@ -36,18 +36,26 @@ import static com.persistit.Key.maxStorableKeySize;
 import static com.persistit.util.SequencerConstants.*;
 import static com.persistit.util.ThreadSequencer.sequence;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.persistit.CleanupManager.CleanupMergeOperands;
 import com.persistit.Key.Direction;
 import com.persistit.MVV.PrunedVersion;
 import com.persistit.ValueHelper.MVVValueWriter;
 import com.persistit.ValueHelper.RawValueWriter;
+import com.persistit.exception.ConversionException;
 import com.persistit.exception.CorruptVolumeException;
 import com.persistit.exception.InUseException;
 import com.persistit.exception.PersistitException;
 import com.persistit.exception.PersistitInterruptedException;
 import com.persistit.exception.ReadOnlyVolumeException;
+import com.persistit.exception.RebalanceException;
 import com.persistit.exception.RetryException;
 import com.persistit.exception.RollbackException;
 import com.persistit.exception.TreeNotFoundException;
@@ -245,11 +253,40 @@ public class Exchange {
      * Upper bound on horizontal page searches.
      */
     final static int MAX_WALK_RIGHT = 50;
+    /**
+     * Number of optimistic index page reads or retries accumulated locally
+     * before they are added to the {@link BufferPool}'s counters.
+     */
+    private final static int OPTIMISTIC_COUNT_INTERVAL = 256;
+    /**
+     * Number of consecutive moves to a right sibling page after which a
+     * traversal is considered sequential and pages are read ahead.
+     */
+    private final static int READ_AHEAD_THRESHOLD = 3;
+    /**
+     * Initial and maximum number of pages requested by one read-ahead.
+     */
+    private final static int READ_AHEAD_MIN_DEPTH = 4;
+    private final static int READ_AHEAD_MAX_DEPTH = 64;
 
     private final static int LEFT_CLAIMED = 1;
 
     private final static int RIGHT_CLAIMED = 2;
 
+    /**
+     * Outcomes of {@link #compactDataPage(int)}
+     */
+    final static int COMPACT_DONE = 0;
+    final static int COMPACT_NEXT = 1;
+    final static int COMPACT_JOINED = 2;
+    /**
+     * Number of merge operands a fetch may find for one key before it asks the
+     * {@link CleanupManager} to fold them into the stored value
+     */
+    final static int MERGE_FOLD_THRESHOLD = 16;
+    private final static int MERGE_FOLD_RETRY_COUNT = 10;
+    private final static long MERGE_FOLD_RETRY_DELAY = 1;
+
     private Persistit _persistit;
 
     private final Key _key;
@@ -281,7 +318,25 @@ public class Exchange {
     private boolean _ignoreTransactions;
     private boolean _ignoreMVCCFetch;
     private boolean _storeCausedSplit;
+    private boolean _storeSkipped;
+    /*
+     * Paths of a Tree with record counts whose index entries must be
+     * recounted before the outermost update releases its claim on the Tree.
+     * Each key is followed down to the data page holding it or, if its
+     * _recountBefore flag is set, to the page preceding it.
+     */
+    private final List<Key> _recountKeys = new ArrayList<Key>();
+    private boolean[] _recountBefore = new boolean[4];
+    private int _recountCount;
+    private int _recountDepth;
     private int _keysVisitedDuringTraverse;
+    private int _optimisticReadCount;
+    private int _optimisticRetryCount;
+    private long _readAheadPage;
+    private int _readAheadRun;
+    private int _readAheadDepth;
+    private int _readAheadRemaining;
+    private final AtomicLong _readAheadParent = new AtomicLong();
 
     private Object _appCache;
 
@@ -291,6 +346,15 @@ public class Exchange {
     private final RawValueWriter _rawValueWriter = new RawValueWriter();
     private final MVVValueWriter _mvvValueWriter = new MVVValueWriter();
     private LongRecordHelper _longRecordHelper;
+    private Exchange _mergeExchange;
+    private Key _mergePrefix;
+    private Key _mergeOrigin;
+    private Key _mergeStart;
+    private Key _mergeCandidate;
+    private Value _mergeValue;
+
+    private ValueCompressor _valueCompressor;
+    private Value _compressedValue;
 
     private volatile Thread _thread;
 
@@ -562,13 +626,17 @@ public class Exchange {
         }
 
         private void update(Buffer buffer, Key key, int foundAt) {
+            update(buffer, key, foundAt, buffer.getGeneration());
+        }
+
+        private void update(Buffer buffer, Key key, int foundAt, long bufferGeneration) {
             Debug.$assert0.t(_level + PAGE_TYPE_DATA == buffer.getPageType());
             // Debug.$assert0.t(foundAt == -1 || (foundAt & EXACT_MASK) == 0
             // || Buffer.decodeDepth(foundAt) == key.getEncodedSize());
 
             _page = buffer.getPageAddress();
             _buffer = buffer;
-            _bufferGeneration = buffer.getGeneration();
+            _bufferGeneration = bufferGeneration;
 
             if (key == _key && foundAt > 0 && !buffer.isAfterRightEdge(foundAt)) {
                 _keyGeneration = key.getGeneration();
@@ -997,6 +1065,17 @@ public class Exchange {
         return _storeCausedSplit;
     }
 
+    /**
+     * Internal value that, if <code>true</code>, indicates the
+     * {@link ValueUpdater} supplied to the last store operation declined to
+     * store a value. Reset on every call to a store method.
+     * 
+     * @return storeSkipped
+     */
+    boolean getStoreSkipped() {
+        return _storeSkipped;
+    }
+
     /**
      * Internal value that is a counter of the total loops of the inner loop of
      * {@link #traverse(com.persistit.Key.Direction, boolean, int, int, int)}.
@@ -1122,6 +1201,19 @@ public class Exchange {
                             + oldPageAddress + " key=<" + key.toString() + "> " + " invalid page address");
                 }
 
+                if (currentLevel > toLevel) {
+                    final long childPageAddress = optimisticIndexPointer(key, pageAddress, currentLevel);
+                    if (childPageAddress != -1) {
+                        if (oldBuffer != null) {
+                            oldBuffer.releaseTouched();
+                            oldBuffer = null;
+                        }
+                        oldPageAddress = pageAddress;
+                        pageAddress = childPageAddress;
+                        continue;
+                    }
+                }
+
                 foundAt = searchLevel(key, false, pageAddress, currentLevel, writer && currentLevel == toLevel);
                 if (oldBuffer != null) {
                     oldBuffer.releaseTouched();
@@ -1173,6 +1265,119 @@ public class Exchange {
         }
     }
 
+    /**
+     * Attempt to find the child pointer for a key in an index page without
+     * claiming the page. This is possible only when the
+     * <code>LevelCache</code> for the level still refers to the page from a
+     * previous traversal. The page is searched under an optimistic stamp (see
+     * {@link SharedResource#getOptimisticStamp()}); if a writer claims the
+     * page during the search, if the page's <code>FastIndex</code> is not
+     * known to be valid, or if the key lies beyond the page's right edge, the
+     * caller must fall back to {@link #searchLevel}. Pages cannot be
+     * removed from the tree while the caller holds its reader claim on the
+     * <code>Tree</code>, and a concurrent split can only move keys to a right
+     * sibling, which <code>searchLevel</code> handles at the next level down.
+     * 
+     * @param key
+     *            Key to search for
+     * @param pageAddress
+     *            The address of the index page
+     * @param currentLevel
+     *            current level in the tree
+     * @return the child page address, or -1 if the optimistic read failed
+     */
+    private long optimisticIndexPointer(final Key key, final long pageAddress, final int currentLevel) {
+        final LevelCache lc = _levelCache[currentLevel];
+        final Buffer buffer = lc._buffer;
+        if (buffer == null || lc._page != pageAddress || _cachedTreeGeneration != _tree.getGeneration()) {
+            return -1;
+        }
+        final long stamp = buffer.getOptimisticStamp();
+        if (stamp == -1) {
+            countOptimisticRead(false);
+            return -1;
+        }
+        final long generation = buffer.getGeneration();
+        int foundAt = -1;
+        long childPageAddress = -1;
+        if (buffer.getPageAddress() == pageAddress && buffer.getVolume() == _volume
+                && buffer.getPageType() == currentLevel + PAGE_TYPE_DATA) {
+            foundAt = lc._foundAt;
+            if (foundAt == -1 || generation != lc._bufferGeneration || key != _key
+                    || key.getGeneration() != lc._keyGeneration) {
+                foundAt = buffer.findKeyOptimistic(key);
+            }
+            if (foundAt != -1 && !buffer.isAfterRightEdge(foundAt) && !buffer.isBeforeLeftEdge(foundAt)) {
+                int p = foundAt & P_MASK;
+                if ((foundAt & EXACT_MASK) == 0) {
+                    p -= KEYBLOCK_LENGTH;
+                }
+                childPageAddress = buffer.getPointerOptimistic(p);
+            }
+        }
+        if (childPageAddress <= 0 || childPageAddress >= MAX_VALID_PAGE_ADDR
+                || !buffer.validateOptimisticStamp(stamp)) {
+            countOptimisticRead(false);
+            return -1;
+        }
+        lc.update(buffer, key, foundAt, generation);
+        if (!buffer.isTouched()) {
+            buffer.setTouched();
+        }
+        countOptimisticRead(true);
+        return childPageAddress;
+    }
+
+    private void countOptimisticRead(final boolean success) {
+        if (success) {
+            if (++_optimisticReadCount >= OPTIMISTIC_COUNT_INTERVAL) {
+                _pool.addOptimisticReads(_optimisticReadCount, 0);
+                _optimisticReadCount = 0;
+            }
+        } else {
+            if (++_optimisticRetryCount >= OPTIMISTIC_COUNT_INTERVAL) {
+                _pool.addOptimisticReads(0, _optimisticRetryCount);
+                _optimisticRetryCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Called when a traversal moves from a data page to its right sibling.
+     * After {@value #READ_AHEAD_THRESHOLD} consecutive moves the traversal is
+     * treated as sequential and the {@link BufferPool} is asked to read the
+     * following pages in the background. A new request is issued when half of
+     * the previous one has been consumed. If the traversal reaches a page that
+     * has not yet been requested it is outrunning the read-ahead, so the
+     * number of pages requested is doubled, up to
+     * {@value #READ_AHEAD_MAX_DEPTH}.
+     * 
+     * @param page
+     *            address of the page being left
+     * @param rightSibling
+     *            address of the page being entered
+     */
+    private void readAhead(final long page, final long rightSibling) {
+        if (page != _readAheadPage) {
+            _readAheadRun = 0;
+            _readAheadDepth = READ_AHEAD_MIN_DEPTH;
+            _readAheadRemaining = 0;
+            _readAheadParent.set(_levelCache[1]._page);
+        }
+        _readAheadPage = rightSibling;
+        if (++_readAheadRun < READ_AHEAD_THRESHOLD || !_pool.isReadAheadEnabled() || _tree.getDepth() < 2) {
+            return;
+        }
+        if (_readAheadRemaining > 0 && !_pool.isCached(_volume, rightSibling)) {
+            _readAheadDepth = Math.min(_readAheadDepth * 2, READ_AHEAD_MAX_DEPTH);
+            _readAheadRemaining = 0;
+        }
+        if (--_readAheadRemaining <= _readAheadDepth / 2) {
+            _pool.readAhead(_volume, _tree, _readAheadParent, rightSibling, _readAheadDepth);
+            _readAheadRemaining = _readAheadDepth;
+        }
+    }
+
     /**
      * Search for the key in the specified page (data or index). This method
      * gets and claims the identified page. If the key is found to be after the
@@ -1217,7 +1422,7 @@ public class Exchange {
                 }
 
                 if (buffer == null) {
-                    buffer = _pool.get(_volume, pageAddress, writer, true);
+                    buffer = _pool.get(_volume, pageAddress, writer, true, _tree);
                 }
                 checkPageType(buffer, currentLevel + PAGE_TYPE_DATA, true);
 
@@ -1267,7 +1472,10 @@ public class Exchange {
     }
 
     /**
-     * Inserts or replaces a data value in the database.
+     * Inserts or replaces a data value in the database. If a
+     * {@link MergeOperator} is registered for the <code>Tree</code> the merge
+     * operands of the key are removed, in the active transaction or in one of
+     * their own, so that the stored value replaces the merged value.
      * 
      * @param key
      *            The key to store.
@@ -1277,7 +1485,7 @@ public class Exchange {
      * @throws PersistitException
      *             Upon error
      */
-    Exchange store(Key key, Value value) throws PersistitException {
+    Exchange store(final Key key, final Value value) throws PersistitException {
         assertCorrectThread(true);
         _persistit.checkClosed();
         if (_volume.isReadOnly()) {
@@ -1287,14 +1495,27 @@ public class Exchange {
         if (!isDirectoryExchange()) {
             _persistit.checkSuspended();
         }
+        if (_tree.getMergeOperator() != null) {
+            runMergeTransaction(new TransactionRunnable() {
+                @Override
+                public void runTransaction() throws PersistitException {
+                    removeMergeOperands(key);
+                    storeValue(key, value);
+                }
+            });
+        } else {
+            storeValue(key, value);
+        }
+        return this;
+    }
+
+    private void storeValue(final Key key, final Value value) throws PersistitException {
         // TODO: directoryExchange, and lots of tests, don't use transactions.
         // Skip MVCC for now.
         int options = StoreOptions.WAIT;
         options |= (!_ignoreTransactions && _transaction.isActive()) ? StoreOptions.MVCC : 0;
-        storeInternal(key, value, 0, options);
+        storeInternal(key, compressForStore(value), 0, options);
         _treeHolder.verifyReleased();
-
-        return this;
     }
 
     /**
@@ -1320,6 +1541,41 @@ public class Exchange {
      *             uponError
      */
     boolean storeInternal(Key key, Value value, int level, int options) throws PersistitException {
+        return storeInternal(key, value, level, options, null);
+    }
+
+    /**
+     * Inserts or replaces a data value in the database, optionally computing
+     * the value from the current one with a {@link ValueUpdater}. When an
+     * updater is supplied, the current value of the record visible to this
+     * <code>Exchange</code> is fetched into <code>value</code> while the data
+     * page is claimed, the updater modifies it, and the result is written to
+     * the same page under the same claim. If the result must be stored as a
+     * LONG_RECORD, the claim is released while the LONG_RECORD chain is
+     * written and the update is repeated; the chain is used only if the
+     * updater produces the same result again.
+     * 
+     * @param key
+     *            The key to store.
+     * @param value
+     *            The value to store, or if <code>updater</code> is not
+     *            <code>null</code>, the Value into which the current value is
+     *            fetched and then updated.
+     * @param level
+     *            The level of the backing tree to start the insert at.
+     * @param options
+     *            Bit flag integer controlling various internal behavior. See
+     *            members of {@link StoreOptions} for details.
+     * @param updater
+     *            The <code>ValueUpdater</code>, or <code>null</code> to store
+     *            <code>value</code> as supplied.
+     * @return <code>true</code> if <b>any version</b> of the key already
+     *         existed
+     * @throws PersistitException
+     *             uponError
+     */
+    boolean storeInternal(Key key, Value value, int level, int options, final ValueUpdater updater)
+            throws PersistitException {
 
         final boolean doMVCC = (options & StoreOptions.MVCC) > 0;
         final boolean doFetch = (options & StoreOptions.FETCH) > 0;
@@ -1328,16 +1584,28 @@ public class Exchange {
         Debug.$assert0.t(key != _spareKey1);
 
         _storeCausedSplit = false;
+        _storeSkipped = false;
+        final Key updateKey = key;
         boolean treeClaimRequired = false;
         boolean treeClaimAcquired = false;
         boolean treeWriterClaimRequired = false;
         boolean committed = false;
         boolean incrementMVVCount = false;
+        //
+        // An update of a tree with record counts holds the writer claim on
+        // the Tree until the counts on the paths it changed are corrected.
+        //
+        final boolean counted = _tree.hasRecordCounts();
+        if (counted) {
+            treeClaimRequired = true;
+            treeWriterClaimRequired = true;
+        }
 
         final int maxSimpleValueSize = maxValueSize(key.getEncodedSize());
         final Value spareValue = _persistit.getThreadLocalValue();
         assert !(doMVCC & value == spareValue || doFetch && value == _spareValue) : "storeInternal may be use the supplied Value: "
                 + value;
+        Debug.$assert0.t(updater == null || !doFetch && level == 0);
 
         //
         // First insert the record in the data page
@@ -1356,8 +1624,16 @@ public class Exchange {
         //
         long newLongRecordPointer = 0;
         long newLongRecordPointerMVV = 0;
+        //
+        // The value computed by an updater is written through newValue. If
+        // it must be stored as a LONG_RECORD, longValue holds the content for
+        // which the newLongRecordPointer chain was written.
+        //
+        Value newValue = value;
+        Value longValue = null;
+        boolean reviseLongRecord = false;
 
-        boolean isLongRecord = value.getEncodedSize() > maxSimpleValueSize;
+        boolean isLongRecord = updater == null && value.getEncodedSize() > maxSimpleValueSize;
         if (isLongRecord) {
             //
             // This method may delay significantly for I/O and must
@@ -1366,12 +1642,17 @@ public class Exchange {
             newLongRecordPointer = getLongRecordHelper().storeLongRecord(value, _transaction.isActive());
         }
 
-        if (!_ignoreTransactions && ((options & StoreOptions.DONT_JOURNAL) == 0)) {
+        final boolean doJournal = !_ignoreTransactions && ((options & StoreOptions.DONT_JOURNAL) == 0);
+        if (doJournal && updater == null) {
             _transaction.store(this, key, value);
         }
 
         boolean keyExisted = false;
 
+        if (counted) {
+            beginRecount();
+            addRecountKey(key, false);
+        }
         try {
 
             Value valueToStore = value;
@@ -1392,6 +1673,28 @@ public class Exchange {
                     newLongRecordPointerMVV = 0;
                     spareValue.changeLongRecordMode(false);
                 }
+                if (reviseLongRecord) {
+                    //
+                    // The updater's last result did not match the LONG_RECORD
+                    // chain, if any. Replace the chain while no page is
+                    // claimed, then repeat the update.
+                    //
+                    reviseLongRecord = false;
+                    if (newLongRecordPointer != 0) {
+                        _volume.getStructure().deallocateGarbageChain(newLongRecordPointer, 0);
+                        newLongRecordPointer = 0;
+                    }
+                    final Value stored = compressForStore(value);
+                    if (stored.getEncodedSize() > maxSimpleValueSize) {
+                        if (longValue == null) {
+                            longValue = new Value(_persistit);
+                        }
+                        longValue.changeLongRecordMode(false);
+                        stored.copyTo(longValue);
+                        newLongRecordPointer = getLongRecordHelper().storeLongRecord(longValue,
+                                _transaction.isActive());
+                    }
+                }
 
                 if (treeClaimRequired && !treeClaimAcquired) {
                     if (!_treeHolder.claim(treeWriterClaimRequired)) {
@@ -1427,6 +1730,9 @@ public class Exchange {
                     int foundAt = -1;
                     LevelCache lc = _levelCache[level];
                     buffer = quicklyReclaimBuffer(lc, true);
+                    if (buffer == null && level == 0 && _tree.isAppendMode()) {
+                        buffer = reclaimRightEdgeBuffer(lc);
+                    }
 
                     if (buffer != null) {
                         //
@@ -1457,6 +1763,38 @@ public class Exchange {
                             oldLongRecordPointer = buffer.fetchLongRecordPointer(foundAt);
                         }
 
+                        if (updater != null) {
+                            buffer.fetch(foundAt, value);
+                            fetchFromValueInternal(value, Integer.MAX_VALUE, buffer);
+                            if (!updater.update(key, value)) {
+                                _storeSkipped = true;
+                                break;
+                            }
+                            //
+                            // The updater sees and leaves the expanded value;
+                            // the record holds its compressed form.
+                            //
+                            final Value stored = compressForStore(value);
+                            if (stored.getEncodedSize() > maxSimpleValueSize) {
+                                if (newLongRecordPointer == 0 || !isLongRecordContent(longValue, stored)) {
+                                    reviseLongRecord = true;
+                                    buffer.releaseTouched();
+                                    buffer = null;
+                                    continue;
+                                }
+                                newValue = longValue;
+                            } else {
+                                if (newLongRecordPointer != 0) {
+                                    reviseLongRecord = true;
+                                    buffer.releaseTouched();
+                                    buffer = null;
+                                    continue;
+                                }
+                                newValue = stored;
+                            }
+                            valueToStore = newValue;
+                        }
+
                         if (doFetch || doMVCC) {
                             buffer.fetch(foundAt, spareValue);
                             if (oldLongRecordPointer != 0) {
@@ -1480,7 +1818,7 @@ public class Exchange {
 
                         if (doMVCC) {
                             valueToStore = spareValue;
-                            int valueSize = value.getEncodedSize();
+                            int valueSize = newValue.getEncodedSize();
                             /*
                              * If key didn't exist the value is truly
                              * non-existent and not just undefined/zero length
@@ -1520,7 +1858,7 @@ public class Exchange {
 
                             long versionHandle = TransactionIndex.tss2vh(_transaction.getStartTimestamp(), tStep);
                             int storedLength = MVV.storeVersion(spareBytes, 0, spareSize, spareBytes.length,
-                                    versionHandle, value.getEncodedBytes(), 0, valueSize);
+                                    versionHandle, newValue.getEncodedBytes(), 0, valueSize);
 
                             incrementMVVCount = (storedLength & MVV.STORE_EXISTED_MASK) == 0;
                             storedLength &= MVV.STORE_LENGTH_MASK;
@@ -1571,6 +1909,7 @@ public class Exchange {
                     if (buffer.isDataPage()) {
                         if (!keyExisted) {
                             _tree.bumpChangeCount();
+                            _tree.bloomFilterAdd(key);
                         }
                         assert buffer.isDirty() : "Buffer must be dirty";
                         committed = true;
@@ -1578,6 +1917,9 @@ public class Exchange {
                             _transaction.getTransactionStatus().incrementMvvCount();
                         }
                         Buffer.deallocatePrunedVersions(_persistit, _volume, prunedVersions);
+                        if (!splitRequired && _tree.isAppendMode() && buffer.getRightSibling() == 0) {
+                            _tree.setRightEdge(buffer);
+                        }
                     }
 
                     buffer.releaseTouched();
@@ -1604,6 +1946,10 @@ public class Exchange {
                         // what's in the LevelCache
                         //
                         key.bumpGeneration();
+                        if (counted) {
+                            addRecountKey(key, false);
+                            addRecountKey(key, true);
+                        }
                         //
                         // And now cycle back to insert the key/pointer pair
                         // into the next higher index level.
@@ -1660,10 +2006,19 @@ public class Exchange {
                     }
                 }
             }
+            if (committed && updater != null && doJournal) {
+                _transaction.store(this, updateKey, newValue);
+            }
         } finally {
-            if (treeClaimAcquired) {
-                _treeHolder.release();
-                treeClaimAcquired = false;
+            try {
+                if (counted) {
+                    endRecount(treeClaimAcquired);
+                }
+            } finally {
+                if (treeClaimAcquired) {
+                    _treeHolder.release();
+                    treeClaimAcquired = false;
+                }
             }
 
             value.changeLongRecordMode(false);
@@ -1692,13 +2047,33 @@ public class Exchange {
         }
         _volume.getStatistics().bumpStoreCounter();
         _tree.getStatistics().bumpStoreCounter();
-        if (doFetch || doMVCC) {
+        if (doFetch || doMVCC || updater != null) {
             _volume.getStatistics().bumpFetchCounter();
             _tree.getStatistics().bumpFetchCounter();
         }
         return keyExisted;
     }
 
+    /**
+     * @return <code>true</code> if the LONG_RECORD content held by
+     *         <code>longValue</code> is identical to the encoded bytes of
+     *         <code>value</code>
+     */
+    private static boolean isLongRecordContent(final Value longValue, final Value value) {
+        final int size = value.getEncodedSize();
+        if (!longValue.isLongRecordMode() || longValue.getLongSize() != size) {
+            return false;
+        }
+        final byte[] longBytes = longValue.getLongBytes();
+        final byte[] bytes = value.getEncodedBytes();
+        for (int i = 0; i < size; i++) {
+            if (longBytes[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private long timestamp() {
         return _persistit.getTimestampAllocator().updateTimestamp();
     }
@@ -1707,11 +2082,11 @@ public class Exchange {
 
         Buffer buffer = null;
         try {
-            buffer = _volume.getStructure().allocPage();
+            buffer = _volume.getStructure().allocPage(_tree);
             final long timestamp = timestamp();
             buffer.writePageOnCheckpoint(timestamp);
 
-            buffer.init(PAGE_TYPE_INDEX_MIN + _tree.getDepth() - 1);
+            buffer.init(PAGE_TYPE_INDEX_MIN + _tree.getDepth() - 1, _tree.hasRecordCounts());
 
             long newTopPage = buffer.getPageAddress();
             long leftSiblingPointer = _tree.getRootPageAddr();
@@ -1787,7 +2162,7 @@ public class Exchange {
                 //
                 // Allocate a new page
                 //
-                rightSibling = _volume.getStructure().allocPage();
+                rightSibling = _volume.getStructure().allocPage(_tree);
 
                 timestamp = timestamp();
                 buffer.writePageOnCheckpoint(timestamp);
@@ -1796,7 +2171,7 @@ public class Exchange {
                 Debug.$assert0.t(rightSibling.getPageAddress() != 0);
                 Debug.$assert0.t(rightSibling != buffer);
 
-                rightSibling.init(buffer.getPageType());
+                rightSibling.init(buffer.getPageType(), buffer.isCountedIndexPage());
                 // debug
                 //
                 // Split the page. As a side-effect, this will bump the
@@ -1805,7 +2180,8 @@ public class Exchange {
                 // (appropriately) invalid.
                 //
 
-                int at = buffer.split(rightSibling, key, valueWriter, foundAt, _spareKey1, sequence, _splitPolicy);
+                final SplitPolicy policy = _tree.isAppendMode() ? SplitPolicy.APPEND_BIAS : _splitPolicy;
+                int at = buffer.split(rightSibling, key, valueWriter, foundAt, _spareKey1, sequence, policy);
                 if (at < 0) {
                     lc.updateInsert(rightSibling, key, -at);
                 } else {
@@ -1854,6 +2230,31 @@ public class Exchange {
         return null;
     }
 
+    /**
+     * For a tree in append mode, attempt to reclaim the rightmost data page
+     * remembered by the tree as of its most recent append, possibly by
+     * another <code>Exchange</code>. On success the page becomes the cached
+     * page of the supplied level cache and the buffer is returned with a
+     * writer claim; otherwise returns <code>null</code> and the caller
+     * searches the tree.
+     */
+    private Buffer reclaimRightEdgeBuffer(final LevelCache lc) throws PersistitException {
+        final Tree.RightEdge edge = _tree.getRightEdge();
+        if (edge == null) {
+            return null;
+        }
+        lc._buffer = edge._buffer;
+        lc._page = edge._page;
+        lc._bufferGeneration = edge._generation;
+        lc._keyGeneration = -1;
+        lc._foundAt = -1;
+        final Buffer buffer = quicklyReclaimBuffer(lc, true);
+        if (buffer == null) {
+            lc.invalidate();
+        }
+        return buffer;
+    }
+
     /**
      * <p>
      * Performs generalized tree traversal. The direction value indicates
@@ -1977,6 +2378,18 @@ public class Exchange {
      */
     private boolean traverse(final Direction direction, final boolean deep, final int minimumBytes,
             final int minKeyDepth, final int matchUpToIndex) throws PersistitException {
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            return mergeTraverse(operator, direction, deep, minimumBytes, minKeyDepth, matchUpToIndex);
+        }
+        return traverseInternal(direction, deep, minimumBytes, minKeyDepth, matchUpToIndex);
+    }
+
+    /**
+     * Traverse the stored records, without regard to merge operands.
+     */
+    private boolean traverseInternal(final Direction direction, final boolean deep, final int minimumBytes,
+            final int minKeyDepth, final int matchUpToIndex) throws PersistitException {
         assertCorrectThread(true);
         _persistit.checkClosed();
 
@@ -2080,7 +2493,8 @@ public class Exchange {
 
                         Debug.$assert0.t(rightSiblingPage >= 0 && rightSiblingPage <= MAX_VALID_PAGE_ADDR);
                         if (rightSiblingPage > 0) {
-                            Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true);
+                            readAhead(buffer.getPageAddress(), rightSiblingPage);
+                            Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true, _tree);
                             buffer.releaseTouched();
                             //
                             // Reset foundAtNext to point to the first key block
@@ -2234,6 +2648,184 @@ public class Exchange {
         }
     }
 
+    /**
+     * Traverse a tree having a {@link MergeOperator}. The keys visited are
+     * those of the stored records and of the records that have only merge
+     * operands, in key order, and a key whose merged value is undefined is
+     * skipped, so that a key is found if and only if {@link #fetch()} would
+     * return a defined value for it. The value fetched is the merged value. A
+     * shallow traversal is derived from a deep one: the nearest key beyond the
+     * current key and its logical children is truncated to a sibling of the
+     * current key.
+     */
+    private boolean mergeTraverse(final MergeOperator operator, final Direction direction, final boolean deep,
+            final int minimumBytes, final int minKeyDepth, final int matchUpToIndex) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+
+        final boolean doFetch = minimumBytes > 0;
+        final boolean doModify = minimumBytes >= 0;
+        final boolean reverse = (direction == LT) || (direction == LTEQ);
+        final Value value = doFetch ? _value : _spareValue;
+
+        if (direction == EQ) {
+            if (_key.getEncodedSize() == 0) {
+                return false;
+            }
+            mergeFetch(operator, value);
+            return value.isDefined();
+        }
+        if (_mergeOrigin == null) {
+            _mergeOrigin = new Key(_persistit);
+            _mergeStart = new Key(_persistit);
+            _mergeCandidate = new Key(_persistit);
+        }
+        if (_key.getEncodedSize() == 0) {
+            if (reverse) {
+                _key.appendAfter();
+            } else {
+                _key.appendBefore();
+            }
+        }
+        _key.testValidForTraverse();
+
+        final Key origin = _mergeOrigin;
+        _key.copyTo(origin);
+        _key.copyTo(_mergeStart);
+        Direction deepDirection = direction;
+        if (!deep && !origin.isSpecial()) {
+            //
+            // Start beyond the logical children of the current key
+            //
+            if (direction == GT) {
+                _mergeStart.appendAfter();
+            } else if (direction == LTEQ) {
+                _mergeStart.appendAfter();
+                deepDirection = LT;
+            }
+        }
+        boolean found = mergeTraverseDeep(operator, deepDirection, value, origin, deep ? minKeyDepth : 0,
+                deep ? matchUpToIndex : 0);
+
+        if (found && !deep) {
+            int parentIndex = origin.previousElementIndex(origin.getEncodedSize());
+            if (parentIndex < 0) {
+                parentIndex = 0;
+            }
+            found = _key.getEncodedSize() > parentIndex && origin.compareKeyFragment(_key, 0, parentIndex) == 0;
+            if (found) {
+                final int index = _key.nextElementIndex(parentIndex);
+                if (index <= 0) {
+                    found = false;
+                } else if (index != _key.getEncodedSize()) {
+                    //
+                    // Found a logical child of a sibling: fetch the
+                    // sibling's own value
+                    //
+                    _key.setEncodedSize(index);
+                    if (doFetch) {
+                        mergeFetch(operator, value);
+                    }
+                }
+            }
+        }
+
+        if (!doModify) {
+            origin.copyTo(_key);
+        } else if (!found) {
+            if (deep) {
+                _key.setEncodedSize(0);
+            } else {
+                origin.copyTo(_key);
+            }
+            _key.cut();
+            if (reverse) {
+                _key.appendAfter();
+            } else {
+                _key.appendBefore();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the nearest key from <code>_mergeStart</code> in the supplied
+     * direction whose merged value is defined. Each step takes the nearer of
+     * the next stored key and the next key having merge operands, then
+     * fetches its merged value into <code>value</code>.
+     * 
+     * @return <code>true</code>, with the key in <code>_key</code>, if there
+     *         is such a key and it satisfies <code>minKeyDepth</code> and
+     *         <code>matchUpToIndex</code>
+     */
+    private boolean mergeTraverseDeep(final MergeOperator operator, Direction direction, final Value value,
+            final Key origin, final int minKeyDepth, final int matchUpToIndex) throws PersistitException {
+        final boolean reverse = (direction == LT) || (direction == LTEQ);
+        final Key start = _mergeStart;
+        final Key candidate = _mergeCandidate;
+        int visited = 0;
+        try {
+            for (;;) {
+                visited++;
+                start.copyTo(_key);
+                boolean found = traverseInternal(direction, true, 0, 0, 0);
+                if (nearestMergeOperandKey(start, direction, candidate)) {
+                    final int compare = candidate.compareTo(_key);
+                    if (!found || (reverse ? compare > 0 : compare < 0)) {
+                        candidate.copyTo(_key);
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+                if (minKeyDepth > 0 && _key.getDepth() < minKeyDepth || matchUpToIndex > 0
+                        && origin.compareKeyFragment(_key, 0, matchUpToIndex) != 0) {
+                    return false;
+                }
+                mergeFetch(operator, value);
+                if (value.isDefined()) {
+                    return true;
+                }
+                _key.copyTo(start);
+                direction = reverse ? LT : GT;
+            }
+        } finally {
+            _keysVisitedDuringTraverse = visited;
+        }
+    }
+
+    /**
+     * Find the key of the nearest record from <code>from</code> in the
+     * supplied direction that has merge operands. Since an operand key begins
+     * with the encoded bytes of its record's key as a byte array segment, the
+     * operand keys of the records beyond <code>from</code> follow its operand
+     * key prefix, or that prefix extended by {@link Key#AFTER}.
+     * 
+     * @return <code>true</code>, with the record key in <code>key</code>, if
+     *         there is such a record
+     */
+    private boolean nearestMergeOperandKey(final Key from, final Direction direction, final Key key)
+            throws PersistitException {
+        final Exchange operands = mergeOperandExchange(false);
+        if (operands == null) {
+            return false;
+        }
+        final Key operandKey = operands._key;
+        operandKey.clear().appendByteArray(from.getEncodedBytes(), 0, from.getEncodedSize());
+        if (direction == GT || direction == LTEQ) {
+            operandKey.appendAfter();
+        }
+        final boolean reverse = (direction == LT) || (direction == LTEQ);
+        if (!operands.traverse(reverse ? LT : GT, true, 0)) {
+            return false;
+        }
+        final byte[] bytes = operandKey.reset().decodeByteArray();
+        System.arraycopy(bytes, 0, key.getEncodedBytes(), 0, bytes.length);
+        key.setEncodedSize(bytes.length);
+        return true;
+    }
+
     /**
      * <p>
      * Performs generalized tree traversal constrained by a supplied
@@ -2409,38 +3001,835 @@ public class Exchange {
     }
 
     /**
-     * Determines whether the current key has a logical sibling successor,
-     * without changing the state of <code>Key</code> or <code>Value</code>.
-     * This method is equivalent to {@link #next()} except that no state is
-     * changed.
-     * 
-     * @return <code>true</code> if the key has a successor
+     * Fills a {@link RecordBatch} with the records that follow the current key
+     * in key order. This method is equivalent to repeatedly calling
+     * {@link #next(boolean) next(true)} and copying each key and value into the
+     * batch, except that each data page is searched and claimed only once:
+     * under one reader claim every visible record on the page is copied into
+     * the batch, and the scan then moves directly to the right sibling page.
+     * Values are resolved for the current transaction as by {@link #fetch()}.
+     * <p>
+     * The batch is cleared first, then filled until it holds
+     * {@link RecordBatch#getCapacity()} records or the end of the tree is
+     * reached. Upon return the <code>Exchange</code>'s <code>Key</code> holds
+     * the key of the last record copied, so that the next call continues the
+     * scan; if no record was copied the <code>Key</code> is set to
+     * {@link Key#AFTER}. The <code>Exchange</code>'s <code>Value</code> is not
+     * modified.
+     * </p>
+     * <p>
+     * On a <code>Tree</code> with a {@link MergeOperator} the batch is filled
+     * one key at a time by {@link #next(boolean) next(true)}, which applies
+     * each key's merge operands.
+     * </p>
      * 
+     * @param batch
+     *            the <code>RecordBatch</code> to fill
+     * @return the number of records copied into the batch
      * @throws PersistitException
      */
-    public boolean hasNext() throws PersistitException {
-        return traverse(GT, false, -1);
+    public int nextBatch(RecordBatch batch) throws PersistitException {
+        return nextBatch(batch, null);
     }
 
     /**
-     * Determines whether the current key has a successor within the subset of
-     * all keys defined by a <code>KeyFilter</code>. This method does not change
-     * the state of <code>Key</code> or <code>Value</code>.
-     * 
-     * @return <code>true</code> if the key has a successor
+     * Fills a {@link RecordBatch} with the records that follow the current key
+     * and are selected by a {@link KeyFilter}. See
+     * {@link #nextBatch(RecordBatch)}. The scan ends when the filter reports
+     * that no subsequent key can be selected. A run of keys the filter does not
+     * select is skipped with a new search rather than by visiting each record.
      * 
+     * @param batch
+     *            the <code>RecordBatch</code> to fill
+     * @param filter
+     *            the <code>KeyFilter</code>, or <code>null</code> to select
+     *            all keys
+     * @return the number of records copied into the batch
      * @throws PersistitException
      */
-    public boolean hasNext(KeyFilter filter) throws PersistitException {
-        if (filter == null)
-            return hasNext();
-        _key.copyTo(_spareKey2);
-        boolean result = traverse(GT, filter, 0);
-        _spareKey2.copyTo(_key);
-        return result;
-    }
+    public int nextBatch(RecordBatch batch, KeyFilter filter) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        batch.clear();
+        if (_key.getEncodedSize() == 0) {
+            _key.appendBefore();
+        }
+        _key.testValidForTraverse();
+        if (_tree.getMergeOperator() != null) {
+            return mergeNextBatch(batch, filter);
+        }
+        checkLevelCache();
 
-    /**
+        final Value value = _spareValue;
+        Buffer buffer = null;
+        try {
+            int foundAt = search(_key, false);
+            buffer = _levelCache[0]._buffer;
+            while (!batch.isFull()) {
+                foundAt = buffer.nextKey(_key, foundAt);
+                if (buffer.isAfterRightEdge(foundAt)) {
+                    final long rightSiblingPage = buffer.getRightSibling();
+                    Debug.$assert0.t(rightSiblingPage >= 0 && rightSiblingPage <= MAX_VALID_PAGE_ADDR);
+                    if (rightSiblingPage == 0) {
+                        break;
+                    }
+                    readAhead(buffer.getPageAddress(), rightSiblingPage);
+                    final Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true, _tree);
+                    buffer.releaseTouched();
+                    buffer = rightSibling;
+                    checkPageType(buffer, PAGE_TYPE_DATA, false);
+                    foundAt = buffer.toKeyBlock(0);
+                    continue;
+                }
+                if (_key.isLeftEdge()) {
+                    continue;
+                }
+                if (filter != null && !filter.selected(_key)) {
+                    _key.copyTo(_spareKey1);
+                    if (!filter.next(_spareKey1, GT)) {
+                        break;
+                    }
+                    if (_spareKey1.compareTo(_key) > 0) {
+                        //
+                        // Skip to the next key the filter can select. A
+                        // non-exact position makes nextKey return the key at
+                        // that position rather than its successor.
+                        //
+                        _spareKey1.copyTo(_key);
+                        buffer.releaseTouched();
+                        buffer = null;
+                        foundAt = search(_key, false) & ~EXACT_MASK;
+                        buffer = _levelCache[0]._buffer;
+                    }
+                    continue;
+                }
+                if (fetchFromBufferInternal(buffer, value, foundAt, Integer.MAX_VALUE) && value.isDefined()) {
+                    batch.add(_key, value);
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+        final int count = batch.getCount();
+        if (count > 0) {
+            batch.getKey(count - 1, _key);
+        } else {
+            _key.clear().appendAfter();
+        }
+        _volume.getStatistics().bumpTraverseCounter();
+        _tree.getStatistics().bumpTraverseCounter();
+        return count;
+    }
+
+    /**
+     * Counts the records whose keys are greater than or equal to
+     * <code>start</code> and less than <code>end</code>. The result is the
+     * number of keys {@link #next(boolean) next(true)} would visit in that
+     * range for the current transaction, but the count is computed a page at
+     * a time from the page's keyblock count, without decoding keys. Only
+     * records that carry multi-version values need to be examined
+     * individually.
+     * <p>
+     * On a <code>Tree</code> with record counts (see
+     * {@link Tree#enableRecordCounts()}) each index entry holds the number of
+     * records below it, and the count descends from the root, reading only
+     * the pages on the paths to the two ends of the range plus any page whose
+     * subtree holds MVVs; the cost is logarithmic in the size of the tree.
+     * The count is then a snapshot: writers are excluded while it is taken.
+     * On other trees the data pages of the range are walked, one buffer claim
+     * per page, and the cost is linear in the size of the range; for an
+     * estimate over a large range use
+     * {@link #computeHistogram(Key, Key, int, int, KeyFilter, int)} instead.
+     * </p>
+     * <p>
+     * When the data pages are walked, as with a sequence of <code>next</code>
+     * calls, the count reflects each page as it is visited; it is not a
+     * snapshot of the whole range if other threads modify the tree
+     * concurrently. Neither the <code>Key</code> nor
+     * the <code>Value</code> of this <code>Exchange</code> is modified. On a
+     * <code>Tree</code> with a {@link MergeOperator} the keys are counted one
+     * at a time, as by <code>next(true)</code>, since a key's merge operands
+     * determine whether it has a value.
+     * </p>
+     * 
+     * @param start
+     *            the lower bound, inclusive; an empty key or {@link Key#BEFORE}
+     *            denotes the beginning of the tree
+     * @param end
+     *            the upper bound, exclusive; an empty key or {@link Key#AFTER}
+     *            denotes the end of the tree
+     * @return the number of records in the range
+     * @throws PersistitException
+     */
+    public long countKeys(final Key start, final Key end) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        final Key from = start.getEncodedSize() == 0 ? Key.LEFT_GUARD_KEY : start;
+        final Key to = end.getEncodedSize() == 0 ? Key.RIGHT_GUARD_KEY : end;
+        if (from.compareTo(to) >= 0) {
+            return 0;
+        }
+        if (_tree.getMergeOperator() != null) {
+            return mergeCountKeys(start, to);
+        }
+        checkLevelCache();
+
+        long count = 0;
+        Buffer buffer = null;
+        try {
+            if (_tree.hasRecordCounts()) {
+                count = countRecords(from, to);
+            } else {
+                final int foundAt = search(from, false);
+                buffer = _levelCache[0]._buffer;
+                int p = foundAt & P_MASK;
+                if ((foundAt & EXACT_MASK) != 0 && from.isLeftEdge()) {
+                    p += KEYBLOCK_LENGTH;
+                }
+                for (;;) {
+                    //
+                    // The last keyblock of every data page is the right edge key
+                    // and is counted, if at all, in the right sibling.
+                    //
+                    final int last = buffer.getKeyBlockEnd() - KEYBLOCK_LENGTH;
+                    final int limit = buffer.findKey(to) & P_MASK;
+                    count += countVisibleRecords(buffer, p, Math.min(limit, last));
+                    if (limit <= last) {
+                        break;
+                    }
+                    final Buffer rightSibling = claimRightSibling(buffer);
+                    buffer.releaseTouched();
+                    buffer = rightSibling;
+                    if (buffer == null) {
+                        break;
+                    }
+                    p = Buffer.KEY_BLOCK_START;
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+        _volume.getStatistics().bumpTraverseCounter();
+        _tree.getStatistics().bumpTraverseCounter();
+        return count;
+    }
+
+    /**
+     * Advances past the specified number of records following the current
+     * key. The result is the same as calling {@link #next(boolean) next(true)}
+     * <code>count</code> times, but records are counted as in
+     * {@link #countKeys(Key, Key)} rather than traversed key by key, and only
+     * the key of the final record is decoded. On a <code>Tree</code> with
+     * record counts whole subtrees are skipped by their index entries' counts,
+     * so that the cost is logarithmic in the size of the tree; otherwise it
+     * is linear in <code>count</code>, one buffer claim per data page
+     * skipped. For example, the first record of the tenth page of a listing
+     * with fifty records per page is found by
+     * 
+     * <pre>
+     * <code>
+     *   exchange.clear().skip(9 * 50 + 1);
+     * </code>
+     * </pre>
+     * 
+     * If that record exists, the <code>Exchange</code>'s <code>Key</code> is
+     * set to its key, its value is fetched into the <code>Value</code> and
+     * this method returns <code>true</code>. Otherwise, as with
+     * <code>next</code>, the <code>Key</code> is set to {@link Key#BEFORE} and
+     * this method returns <code>false</code>. On a <code>Tree</code> with a
+     * {@link MergeOperator} the records are skipped one at a time by
+     * <code>next(true)</code>, which applies each key's merge operands.
+     * 
+     * @param count
+     *            the number of records to advance, at least one
+     * @return <code>true</code> if there is a record to advance to
+     * @throws PersistitException
+     */
+    public boolean skip(final long count) throws PersistitException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        if (_key.getEncodedSize() == 0) {
+            _key.appendBefore();
+        }
+        _key.testValidForTraverse();
+        if (_tree.getMergeOperator() != null) {
+            for (long skipped = 1; skipped < count; skipped++) {
+                if (!traverse(GT, true, 0)) {
+                    return false;
+                }
+            }
+            return traverse(GT, true, Integer.MAX_VALUE);
+        }
+        checkLevelCache();
+
+        long remaining = count;
+        boolean found = false;
+        Buffer buffer = null;
+        try {
+            if (_tree.hasRecordCounts()) {
+                found = skipRecords(count);
+            } else {
+                final int foundAt = search(_key, false);
+                buffer = _levelCache[0]._buffer;
+                int p = foundAt & P_MASK;
+                if ((foundAt & EXACT_MASK) != 0) {
+                    p += KEYBLOCK_LENGTH;
+                }
+                for (;;) {
+                    final int last = buffer.getKeyBlockEnd() - KEYBLOCK_LENGTH;
+                    final int visible = countVisibleRecords(buffer, p, last);
+                    if (visible >= remaining) {
+                        final int q = findVisibleRecord(buffer, p, last, (int) remaining);
+                        //
+                        // Reconstruct the key from the beginning of the page:
+                        // previousKey with a depth of zero assumes no known prefix
+                        //
+                        buffer.previousKey(_key, q + KEYBLOCK_LENGTH);
+                        fetchFromBufferInternal(buffer, _value, q | EXACT_MASK, Integer.MAX_VALUE);
+                        found = true;
+                        break;
+                    }
+                    remaining -= visible;
+                    final Buffer rightSibling = claimRightSibling(buffer);
+                    buffer.releaseTouched();
+                    buffer = rightSibling;
+                    if (buffer == null) {
+                        break;
+                    }
+                    p = Buffer.KEY_BLOCK_START;
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+        if (!found) {
+            _key.clear().appendBefore();
+        }
+        _volume.getStatistics().bumpTraverseCounter();
+        _tree.getStatistics().bumpTraverseCounter();
+        return found;
+    }
+
+    /**
+     * Claims the right sibling of a claimed data page, which remains claimed.
+     * 
+     * @return the right sibling, or <code>null</code> if the supplied page is
+     *         the rightmost page of the tree
+     */
+    private Buffer claimRightSibling(final Buffer buffer) throws PersistitException {
+        final long rightSiblingPage = buffer.getRightSibling();
+        Debug.$assert0.t(rightSiblingPage >= 0 && rightSiblingPage <= MAX_VALID_PAGE_ADDR);
+        if (rightSiblingPage == 0) {
+            return null;
+        }
+        readAhead(buffer.getPageAddress(), rightSiblingPage);
+        final Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true, _tree);
+        checkPageType(rightSibling, PAGE_TYPE_DATA, true);
+        return rightSibling;
+    }
+
+    /**
+     * Counts the records of a <code>Tree</code> with record counts from
+     * <code>from</code> (inclusive) to <code>to</code> (exclusive) by
+     * descending from the root. The reader claim on the <code>Tree</code>
+     * keeps writers, which update the counts under the writer claim, out
+     * until the count is complete.
+     */
+    private long countRecords(final Key from, final Key to) throws PersistitException {
+        if (!_treeHolder.claim(false)) {
+            Debug.$assert0.t(false);
+            throw new InUseException("Thread " + Thread.currentThread().getName() + " failed to get reader claim on "
+                    + _tree);
+        }
+        try {
+            return countRecords(_tree.getRootPageAddr(), _tree.getDepth() - 1, from, to);
+        } finally {
+            _treeHolder.release();
+        }
+    }
+
+    /**
+     * Counts the records in the subtree rooted at a page. An index entry
+     * whose subtree lies wholly within the range and holds no MVVs
+     * contributes its record count; other entries are counted by descending
+     * into the page they point to, which happens for at most the pages on
+     * the paths to the two ends of the range and the subtrees holding MVVs.
+     *
+     * @param from
+     *            the lower bound, inclusive, or <code>null</code> if the
+     *            subtree lies wholly above it
+     * @param to
+     *            the upper bound, exclusive, or <code>null</code> if the
+     *            subtree lies wholly below it
+     */
+    private long countRecords(final long page, final int level, final Key from, final Key to)
+            throws PersistitException {
+        final Buffer buffer = _pool.get(_volume, page, false, true, _tree);
+        try {
+            checkPageType(buffer, level + PAGE_TYPE_DATA, false);
+            final int last = buffer.getKeyBlockEnd() - KEYBLOCK_LENGTH;
+            if (level == 0) {
+                int p = buffer.firstRecordKeyBlock();
+                if (from != null) {
+                    p = Math.max(p, buffer.findKey(from) & P_MASK);
+                }
+                final int limit = to == null ? last : Math.min(buffer.findKey(to) & P_MASK, last);
+                return countVisibleRecords(buffer, p, limit);
+            }
+            int first = Buffer.KEY_BLOCK_START;
+            boolean fromWithin = false;
+            if (from != null) {
+                final int foundAt = buffer.findKey(from);
+                if ((foundAt & EXACT_MASK) == 0) {
+                    first = Math.max(first, (foundAt & P_MASK) - KEYBLOCK_LENGTH);
+                    fromWithin = true;
+                } else {
+                    first = foundAt & P_MASK;
+                }
+            }
+            int lastEntry = last - KEYBLOCK_LENGTH;
+            boolean toWithin = false;
+            if (to != null) {
+                final int foundAt = buffer.findKey(to);
+                if ((foundAt & P_MASK) <= last) {
+                    lastEntry = (foundAt & P_MASK) - KEYBLOCK_LENGTH;
+                    toWithin = (foundAt & EXACT_MASK) == 0;
+                }
+            }
+            long count = 0;
+            for (int p = first; p <= lastEntry; p += KEYBLOCK_LENGTH) {
+                final Key childFrom = p == first && fromWithin ? from : null;
+                final Key childTo = p == lastEntry && toWithin ? to : null;
+                if (childFrom == null && childTo == null && buffer.isCountedIndexPage()
+                        && buffer.getVersionedCount(p) == 0) {
+                    count += buffer.getRecordCount(p);
+                } else {
+                    count += countRecords(buffer.getPointer(p), level - 1, childFrom, childTo);
+                }
+            }
+            return count;
+        } finally {
+            buffer.releaseTouched();
+        }
+    }
+
+    /**
+     * Advances the <code>Key</code> past the specified number of records of a
+     * <code>Tree</code> with record counts by descending from the root,
+     * skipping each subtree that lies wholly after the key, holds no MVVs and
+     * has fewer records than remain to be skipped.
+     *
+     * @return <code>true</code> if there is a record to advance to, in which
+     *         case the <code>Key</code> and <code>Value</code> hold it
+     */
+    private boolean skipRecords(final long count) throws PersistitException {
+        if (!_treeHolder.claim(false)) {
+            Debug.$assert0.t(false);
+            throw new InUseException("Thread " + Thread.currentThread().getName() + " failed to get reader claim on "
+                    + _tree);
+        }
+        try {
+            return skipRecords(_tree.getRootPageAddr(), _tree.getDepth() - 1, _key, count) < 0;
+        } finally {
+            _treeHolder.release();
+        }
+    }
+
+    /**
+     * Skips records in the subtree rooted at a page.
+     *
+     * @param from
+     *            the key after which to start, exclusive, or
+     *            <code>null</code> if the subtree lies wholly after it
+     * @param remaining
+     *            the number of records still to be skipped, at least one
+     * @return the number of records skipped in the subtree, or -1 if the
+     *         record to advance to was found there
+     */
+    private long skipRecords(final long page, final int level, final Key from, final long remaining)
+            throws PersistitException {
+        final Buffer buffer = _pool.get(_volume, page, false, true, _tree);
+        try {
+            checkPageType(buffer, level + PAGE_TYPE_DATA, false);
+            final int last = buffer.getKeyBlockEnd() - KEYBLOCK_LENGTH;
+            if (level == 0) {
+                int p = buffer.firstRecordKeyBlock();
+                if (from != null) {
+                    final int foundAt = buffer.findKey(from);
+                    p = Math.max(p, (foundAt & P_MASK) + ((foundAt & EXACT_MASK) != 0 ? KEYBLOCK_LENGTH : 0));
+                }
+                final int visible = countVisibleRecords(buffer, p, last);
+                if (visible < remaining) {
+                    return visible;
+                }
+                final int q = findVisibleRecord(buffer, p, last, (int) remaining);
+                buffer.previousKey(_key, q + KEYBLOCK_LENGTH);
+                fetchFromBufferInternal(buffer, _value, q | EXACT_MASK, Integer.MAX_VALUE);
+                return -1;
+            }
+            int first = Buffer.KEY_BLOCK_START;
+            if (from != null) {
+                final int foundAt = buffer.findKey(from);
+                first = foundAt & P_MASK;
+                if ((foundAt & EXACT_MASK) == 0) {
+                    first = Math.max(first - KEYBLOCK_LENGTH, Buffer.KEY_BLOCK_START);
+                }
+            }
+            long skipped = 0;
+            for (int p = first; p < last; p += KEYBLOCK_LENGTH) {
+                final Key childFrom = p == first ? from : null;
+                if (childFrom == null && buffer.isCountedIndexPage() && buffer.getVersionedCount(p) == 0
+                        && buffer.getRecordCount(p) < remaining - skipped) {
+                    skipped += buffer.getRecordCount(p);
+                } else {
+                    final long result = skipRecords(buffer.getPointer(p), level - 1, childFrom, remaining - skipped);
+                    if (result < 0) {
+                        return -1;
+                    }
+                    skipped += result;
+                }
+            }
+            return skipped;
+        } finally {
+            buffer.releaseTouched();
+        }
+    }
+
+    /**
+     * Counts the records visible to the current transaction in keyblocks
+     * <code>from</code> (inclusive) through <code>to</code> (exclusive) of a
+     * claimed data page. When the page holds no MVVs every record except a
+     * primordial anti-value awaiting removal at the left edge is visible, so
+     * the count follows from the keyblock offsets alone.
+     */
+    private int countVisibleRecords(final Buffer buffer, int from, final int to) throws PersistitException {
+        if (from == Buffer.KEY_BLOCK_START && from < to && buffer.isPrimordialAntiValue(from)) {
+            from += KEYBLOCK_LENGTH;
+        }
+        if (from >= to) {
+            return 0;
+        }
+        if (buffer.getMvvCount() == 0) {
+            return (to - from) / KEYBLOCK_LENGTH;
+        }
+        int count = 0;
+        for (int p = from; p < to; p += KEYBLOCK_LENGTH) {
+            if (isVisibleRecord(buffer, p)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the keyblock of the <code>n</code>th record visible to the
+     *         current transaction in keyblocks <code>from</code> (inclusive)
+     *         through <code>to</code> (exclusive) of a claimed data page, or
+     *         -1 if there are fewer
+     */
+    private int findVisibleRecord(final Buffer buffer, int from, final int to, int n) throws PersistitException {
+        if (from == Buffer.KEY_BLOCK_START && from < to && buffer.isPrimordialAntiValue(from)) {
+            from += KEYBLOCK_LENGTH;
+        }
+        if (buffer.getMvvCount() == 0) {
+            final int p = from + (n - 1) * KEYBLOCK_LENGTH;
+            return p < to ? p : -1;
+        }
+        for (int p = from; p < to; p += KEYBLOCK_LENGTH) {
+            if (isVisibleRecord(buffer, p) && --n == 0) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isVisibleRecord(final Buffer buffer, final int p) throws PersistitException {
+        return buffer.isPrimordialValue(p) || fetchFromBufferInternal(buffer, _spareValue, p | EXACT_MASK, -1);
+    }
+
+    /**
+     * <p>
+     * Passes the value associated with the current key to a
+     * {@link RawRecordVisitor} without copying it into the <code>Value</code>.
+     * The visitor receives the encoded bytes of the version visible to the
+     * current transaction directly from the page holding the record, under
+     * the reader claim used to find it. Only a LONG_RECORD value, or one
+     * compressed under {@link Tree#setCompressionThreshold(int)}, is first
+     * assembled in a buffer private to this <code>Exchange</code>, as is the
+     * merged value of a record of a <code>Tree</code> with a
+     * {@link MergeOperator}.
+     * </p>
+     * <p>
+     * Neither the <code>Key</code> nor the <code>Value</code> of this
+     * <code>Exchange</code> is modified.
+     * </p>
+     * 
+     * @param visitor
+     *            the <code>RawRecordVisitor</code>
+     * @return the result of the visitor, or <code>false</code> if there is no
+     *         value associated with the current key
+     * @throws PersistitException
+     */
+    public boolean fetch(final RawRecordVisitor visitor) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final Value value = mergeValue();
+            mergeFetch(operator, value);
+            return value.isDefined() && visitor.visit(_key, value.getEncodedBytes(), 0, value.getEncodedSize());
+        }
+        _volume.getStatistics().bumpFetchCounter();
+        _tree.getStatistics().bumpFetchCounter();
+        final BloomFilter filter = _tree.getBloomFilter();
+        if (filter != null && !filter.mightContain(_key)) {
+            return false;
+        }
+        Buffer buffer = null;
+        try {
+            final int foundAt = search(_key, false);
+            buffer = _levelCache[0]._buffer;
+            return (foundAt & EXACT_MASK) != 0 && visitRecord(buffer, foundAt, visitor);
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+    }
+
+    /**
+     * <p>
+     * Advances to the next record, in the order {@link #next(boolean)
+     * next(true)} visits them, that a {@link RawRecordVisitor} accepts. Each
+     * record visible to the current transaction is passed to the visitor as in
+     * {@link #fetch(RawRecordVisitor)}, while the page holding it remains
+     * claimed, so a scan that filters records copies nothing for those the
+     * visitor rejects. Keys are advanced in place from one record to the next
+     * within each page.
+     * </p>
+     * <p>
+     * If a record is accepted, the <code>Exchange</code>'s <code>Key</code> is
+     * set to its key and this method returns <code>true</code>; the
+     * <code>Value</code> is not modified, so {@link #fetch()} must be called if
+     * a copy of the accepted value is needed. Otherwise, as with
+     * <code>next</code>, the <code>Key</code> is set to {@link Key#BEFORE} and
+     * this method returns <code>false</code>.
+     * </p>
+     * <p>
+     * On a <code>Tree</code> with a {@link MergeOperator} the records are
+     * visited one key at a time by <code>next(true)</code>, and each is passed
+     * to the visitor with its merge operands applied.
+     * </p>
+     * 
+     * @param visitor
+     *            the <code>RawRecordVisitor</code>
+     * @return <code>true</code> if a record was accepted
+     * @throws PersistitException
+     */
+    public boolean next(final RawRecordVisitor visitor) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        if (_key.getEncodedSize() == 0) {
+            _key.appendBefore();
+        }
+        _key.testValidForTraverse();
+        if (_tree.getMergeOperator() != null) {
+            //
+            // Traversing without fetching leaves the merged value of each
+            // key found in _spareValue
+            //
+            while (traverse(GT, true, 0)) {
+                if (visitor.visit(_key, _spareValue.getEncodedBytes(), 0, _spareValue.getEncodedSize())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        checkLevelCache();
+
+        boolean found = false;
+        Buffer buffer = null;
+        try {
+            int foundAt = search(_key, false);
+            buffer = _levelCache[0]._buffer;
+            for (;;) {
+                foundAt = buffer.traverse(_key, GT, foundAt);
+                if (buffer.isAfterRightEdge(foundAt)) {
+                    final Buffer rightSibling = claimRightSibling(buffer);
+                    if (rightSibling == null) {
+                        break;
+                    }
+                    buffer.releaseTouched();
+                    buffer = rightSibling;
+                    foundAt = buffer.traverse(_key, GT, buffer.toKeyBlock(0));
+                }
+                if (_key.isRightEdge()) {
+                    break;
+                }
+                if (visitRecord(buffer, foundAt, visitor)) {
+                    _levelCache[0].update(buffer, _key, foundAt);
+                    found = true;
+                    break;
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+        if (!found) {
+            _key.clear().appendBefore();
+        }
+        _volume.getStatistics().bumpTraverseCounter();
+        _tree.getStatistics().bumpTraverseCounter();
+        return found;
+    }
+
+    /**
+     * Fill a batch on a <code>Tree</code> with a {@link MergeOperator} by
+     * traversing key by key, restoring the <code>Exchange</code>'s
+     * <code>Value</code> afterward.
+     */
+    private int mergeNextBatch(final RecordBatch batch, final KeyFilter filter) throws PersistitException {
+        final Value saved = mergeValue();
+        _value.copyTo(saved);
+        try {
+            while (!batch.isFull() && traverse(GT, filter, Integer.MAX_VALUE)) {
+                batch.add(_key, _value);
+            }
+        } finally {
+            saved.copyTo(_value);
+        }
+        final int count = batch.getCount();
+        if (count > 0) {
+            batch.getKey(count - 1, _key);
+        } else {
+            _key.clear().appendAfter();
+        }
+        return count;
+    }
+
+    /**
+     * Count the keys of a <code>Tree</code> with a {@link MergeOperator} from
+     * <code>start</code>, inclusive, to <code>end</code>, exclusive, by
+     * traversing key by key, restoring the <code>Exchange</code>'s
+     * <code>Key</code> afterward.
+     */
+    private long mergeCountKeys(final Key start, final Key end) throws PersistitException {
+        _key.copyTo(_spareKey2);
+        final Key limit = end == _key ? _spareKey2 : end;
+        long count = 0;
+        try {
+            if (start.getEncodedSize() == 0) {
+                _key.clear().appendBefore();
+            } else if (start != _key) {
+                start.copyTo(_key);
+            }
+            for (boolean found = traverse(GTEQ, true, 0); found && _key.compareTo(limit) < 0; found = traverse(GT,
+                    true, 0)) {
+                count++;
+            }
+        } finally {
+            _spareKey2.copyTo(_key);
+        }
+        return count;
+    }
+
+    /**
+     * Selects the version of the record at <code>foundAt</code> visible to the
+     * current transaction and passes it to the visitor in place. A
+     * LONG_RECORD or compressed value is assembled in
+     * <code>_spareValue</code>.
+     * 
+     * @return <code>false</code> if no version is visible, otherwise the
+     *         result of the visitor
+     */
+    private boolean visitRecord(final Buffer buffer, final int foundAt, final RawRecordVisitor visitor)
+            throws PersistitException {
+        final byte[] bytes = buffer.getBytes();
+        final long at = buffer.at(foundAt);
+        int offset = (int) (at >>> 32);
+        int length = (int) at;
+        if (!_ignoreMVCCFetch) {
+            if (MVV.isArrayMVV(bytes, offset, length)) {
+                final int treeHandle = _tree.getHandle();
+                assert treeHandle != 0 : "MVV found in a temporary tree " + _tree;
+                buffer.enqueuePruningAction(treeHandle);
+                if (_transaction.isActive()) {
+                    _mvvVisitor.initInternal(_transaction.getTransactionStatus(), _transaction.getStep(),
+                            MvvVisitor.Usage.FETCH);
+                } else {
+                    _mvvVisitor.initInternal(null, 0, MvvVisitor.Usage.FETCH);
+                }
+                MVV.visitAllVersions(_mvvVisitor, bytes, offset, length);
+                if (!_mvvVisitor.foundVersion()) {
+                    return false;
+                }
+                offset = _mvvVisitor.getOffset();
+                length = _mvvVisitor.getLength();
+            }
+            if (length == 1 && bytes[offset] == MVV.TYPE_ANTIVALUE) {
+                return false;
+            }
+        }
+        if (Buffer.isLongRecord(bytes, offset, length) || ValueCompressor.isCompressed(bytes, offset, length)) {
+            buffer.fetch(foundAt | EXACT_MASK, _spareValue);
+            if (!fetchFromValueInternal(_spareValue, Integer.MAX_VALUE, buffer)) {
+                return false;
+            }
+            return visitor.visit(_key, _spareValue.getEncodedBytes(), 0, _spareValue.getEncodedSize());
+        }
+        return visitor.visit(_key, bytes, offset, length);
+    }
+
+    /**
+     * Determines whether the current key has a logical sibling successor,
+     * without changing the state of <code>Key</code> or <code>Value</code>.
+     * This method is equivalent to {@link #next()} except that no state is
+     * changed.
+     * 
+     * @return <code>true</code> if the key has a successor
+     * 
+     * @throws PersistitException
+     */
+    public boolean hasNext() throws PersistitException {
+        return traverse(GT, false, -1);
+    }
+
+    /**
+     * Determines whether the current key has a successor within the subset of
+     * all keys defined by a <code>KeyFilter</code>. This method does not change
+     * the state of <code>Key</code> or <code>Value</code>.
+     * 
+     * @return <code>true</code> if the key has a successor
+     * 
+     * @throws PersistitException
+     */
+    public boolean hasNext(KeyFilter filter) throws PersistitException {
+        if (filter == null)
+            return hasNext();
+        _key.copyTo(_spareKey2);
+        boolean result = traverse(GT, filter, 0);
+        _spareKey2.copyTo(_key);
+        return result;
+    }
+
+    /**
      * Determines whether the current key has a logical sibling successor,
      * without changing the state of <code>Key</code> or <code>Value</code>.
      * This method is equivalent to {@link #next(boolean)} except that no state
@@ -2524,7 +3913,24 @@ public class Exchange {
      * @throws PersistitException
      */
     public boolean isValueDefined() throws PersistitException {
-        return traverse(EQ, true, -1);
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final Value value = mergeValue();
+            mergeFetch(operator, value);
+            return value.isDefined();
+        }
+        final BloomFilter filter = _tree.getBloomFilter();
+        if (filter == null || _key.getEncodedSize() == 0) {
+            return traverse(EQ, true, -1);
+        }
+        if (!filter.mightContain(_key)) {
+            return false;
+        }
+        final boolean defined = traverse(EQ, true, -1);
+        if (!defined) {
+            filter.falsePositive();
+        }
+        return defined;
     }
 
     /**
@@ -2554,7 +3960,10 @@ public class Exchange {
      * </pre>
      * 
      * </blockquote> except that this operation is performed atomically, without
-     * need for external synchronization.
+     * need for external synchronization. If a {@link MergeOperator} is
+     * registered for the <code>Tree</code> the value returned is the merged
+     * value, and the fetch, the removal of the key's merge operands and the
+     * store are performed in the active transaction or in one of their own.
      * 
      * @return This <code>Exchange</code> to permit method call chaining
      * @throws PersistitException
@@ -2567,13 +3976,337 @@ public class Exchange {
         }
         _persistit.checkSuspended();
         _key.testValidForStoreAndFetch(_volume.getPageSize());
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final Value previous = mergeValue();
+            runMergeTransaction(new TransactionRunnable() {
+                @Override
+                public void runTransaction() throws PersistitException {
+                    mergeFetch(operator, previous);
+                    removeMergeOperands(_key);
+                    storeValue(_key, _value);
+                }
+            });
+            previous.copyTo(_value);
+            return this;
+        }
         int options = StoreOptions.WAIT | StoreOptions.FETCH;
         options |= (!_ignoreTransactions && _transaction.isActive()) ? StoreOptions.MVCC : 0;
-        storeInternal(_key, _value, 0, options);
+        storeInternal(_key, compressForStore(_value), 0, options);
         _spareValue.copyTo(_value);
         return this;
     }
 
+    /**
+     * Fetches the value associated with the current <code>Key</code>, passes
+     * it to a {@link ValueUpdater} and stores the result. This is equivalent to
+     * the code: <blockquote>
+     * 
+     * <pre>
+     *  <i>exchange</i>.fetch();
+     *  if (<i>updater</i>.update(<i>exchange</i>.getKey(), <i>exchange</i>.getValue())) {
+     *      <i>exchange</i>.store();
+     *  }
+     * </pre>
+     * 
+     * </blockquote> except that the record is located only once and the value
+     * is read, computed and written under a single claim on the data page, so
+     * that no other thread can modify the record in between. Within a
+     * transaction the new value is stored as a version of the record and
+     * journaled like any other store, and a write-write conflict with a
+     * concurrent transaction is handled as it is by {@link #store()}.
+     * <p>
+     * Upon return the <code>Exchange</code>'s <code>Value</code> holds the
+     * value computed by the updater or, if the updater declined to store, the
+     * value it was given. See {@link ValueUpdater} for the restrictions on the
+     * updater.
+     * </p>
+     * <p>
+     * If a {@link MergeOperator} is registered for the <code>Tree</code>, the
+     * merge operands of the key are first folded into the stored value, so
+     * that the updater is given the same value {@link #fetch()} would return.
+     * The fold and the update are then performed in the active transaction or,
+     * if there is none, in a transaction of their own.
+     * </p>
+     * 
+     * @param updater
+     *            the <code>ValueUpdater</code> that computes the new value
+     * @return <code>true</code> if a value was stored, or <code>false</code>
+     *         if the updater declined to store
+     * @throws PersistitException
+     */
+    public boolean update(final ValueUpdater updater) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        if (_volume.isReadOnly()) {
+            throw new ReadOnlyVolumeException(_volume.toString());
+        }
+        _persistit.checkSuspended();
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final boolean[] stored = new boolean[1];
+            runMergeTransaction(new TransactionRunnable() {
+                @Override
+                public void runTransaction() throws PersistitException {
+                    foldMergeOperands(operator);
+                    stored[0] = updateInternal(updater);
+                }
+            });
+            return stored[0];
+        }
+        return updateInternal(updater);
+    }
+
+    private boolean updateInternal(final ValueUpdater updater) throws PersistitException {
+        int options = StoreOptions.WAIT;
+        options |= (!_ignoreTransactions && _transaction.isActive()) ? StoreOptions.MVCC : 0;
+        storeInternal(_key, _value, 0, options, updater);
+        _treeHolder.verifyReleased();
+        return !_storeSkipped;
+    }
+
+    /**
+     * <p>
+     * Writes the <code>Exchange</code>'s <code>Value</code> as a merge operand
+     * for the current <code>Key</code>. The operand is combined with the
+     * record's value by the {@link MergeOperator} registered for the
+     * <code>Tree</code> when the record is fetched, and is folded into the
+     * stored value later, either by the {@link CleanupManager} or by
+     * {@link #foldMergeOperands()}. Unlike {@link #update(ValueUpdater)} this
+     * method neither reads the record nor stores a version of it, so
+     * concurrent transactions may write operands for the same key without
+     * write-write conflicts.
+     * </p>
+     * <p>
+     * Operands are applied by {@link #fetch()}, {@link #fetchAll(Key[], Value[])}
+     * , {@link #isValueDefined()}, {@link #update(ValueUpdater)} and the
+     * traversal methods such as {@link #next(boolean)}, which also visit keys
+     * that have only merge operands. They are discarded when the record is
+     * replaced by {@link #store()} or {@link #fetchAndStore()}, and are
+     * removed with the record by {@link #remove()},
+     * {@link #remove(Key.Direction)}, {@link #removeAll()} and
+     * {@link #removeKeyRange(Key, Key)}. The page-at-a-time methods
+     * {@link #nextBatch(RecordBatch)}, {@link #countKeys(Key, Key)} and
+     * {@link #skip(long)}, and the {@link RawRecordVisitor} methods, cannot
+     * apply operands in place; on such a <code>Tree</code> they proceed one
+     * key at a time instead.
+     * </p>
+     * 
+     * @return This <code>Exchange</code> to permit method call chaining
+     * @throws PersistitException
+     * @throws IllegalStateException
+     *             if no <code>MergeOperator</code> is registered for the
+     *             <code>Tree</code>
+     */
+    public Exchange mergeStore() throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        if (_tree.getMergeOperator() == null) {
+            throw new IllegalStateException("No MergeOperator registered for " + _tree);
+        }
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        final Exchange operands = mergeOperandExchange(true);
+        _mergePrefix.copyTo(operands._key);
+        operands._key.append(timestamp());
+        operands.store(operands._key, _value);
+        return this;
+    }
+
+    /**
+     * Folds the merge operands of the current <code>Key</code> into its stored
+     * value: applies them with the <code>Tree</code>'s {@link MergeOperator},
+     * stores the result, or removes the record if the result is undefined, and
+     * removes the operands. If a transaction is active the fold is part of it;
+     * otherwise it runs in a transaction of its own. Upon return the
+     * <code>Exchange</code>'s <code>Value</code> holds the folded value.
+     * 
+     * @return the number of operands folded
+     * @throws PersistitException
+     * @throws IllegalStateException
+     *             if no <code>MergeOperator</code> is registered for the
+     *             <code>Tree</code>
+     */
+    public int foldMergeOperands() throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator == null) {
+            throw new IllegalStateException("No MergeOperator registered for " + _tree);
+        }
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        final int[] folded = new int[1];
+        runMergeTransaction(new TransactionRunnable() {
+            @Override
+            public void runTransaction() throws PersistitException {
+                folded[0] = foldMergeOperands(operator);
+            }
+        });
+        return folded[0];
+    }
+
+    /**
+     * Run the supplied <code>TransactionRunnable</code> in the active
+     * transaction or, if there is none, in a transaction of its own.
+     */
+    private void runMergeTransaction(final TransactionRunnable runnable) throws PersistitException {
+        if (_ignoreTransactions || _transaction.isActive()) {
+            runnable.runTransaction();
+        } else {
+            _transaction.run(runnable, MERGE_FOLD_RETRY_COUNT, MERGE_FOLD_RETRY_DELAY, false);
+        }
+    }
+
+    private int foldMergeOperands(final MergeOperator operator) throws PersistitException {
+        searchAndFetchInternal(_value, Integer.MAX_VALUE);
+        final Exchange operands = mergeOperandExchange(false);
+        if (operands == null) {
+            return 0;
+        }
+        int count = 0;
+        _mergePrefix.copyTo(operands._key);
+        operands._key.append(BEFORE);
+        while (nextMergeOperand(operands)) {
+            operator.merge(_key, _value, operands._value);
+            operands.remove();
+            count++;
+        }
+        if (count > 0) {
+            if (_value.isDefined()) {
+                storeValue(_key, _value);
+            } else {
+                removeInternal(EQ, false);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fetch the stored value and apply the merge operands of the current key.
+     * A key without operands is fetched as usual. Otherwise, outside of a
+     * transaction, the value and its operands are read again within a
+     * transaction of their own so that a concurrent fold is either entirely
+     * visible or not at all. The operands are looked for first: a fold that
+     * removes them also stores their result, which the fetch then sees.
+     */
+    private void mergeFetch(final MergeOperator operator, final Value value) throws PersistitException {
+        final Exchange operands = mergeOperandExchange(false);
+        if (operands != null) {
+            _mergePrefix.copyTo(operands._key);
+            operands._key.append(BEFORE);
+        }
+        if (operands == null || !nextMergeOperand(operands)) {
+            searchAndFetchInternal(value, Integer.MAX_VALUE);
+            return;
+        }
+        final boolean snapshot = !_ignoreTransactions && !_transaction.isActive();
+        if (snapshot) {
+            _transaction.begin();
+        }
+        try {
+            searchAndFetchInternal(value, Integer.MAX_VALUE);
+            int count = 0;
+            _mergePrefix.copyTo(operands._key);
+            operands._key.append(BEFORE);
+            while (nextMergeOperand(operands)) {
+                operator.merge(_key, value, operands._value);
+                count++;
+            }
+            if (count >= MERGE_FOLD_THRESHOLD && !_volume.isTemporary() && _tree.reserveMergeFold()) {
+                final int treeHandle = _persistit.getJournalManager().handleForTree(_tree);
+                if (!_persistit.getCleanupManager().offer(new CleanupMergeOperands(treeHandle, _key))) {
+                    _tree.releaseMergeFold();
+                }
+            }
+            if (snapshot) {
+                _transaction.commit();
+            }
+        } finally {
+            if (snapshot) {
+                _transaction.end();
+            }
+        }
+    }
+
+    /**
+     * Advance the supplied operand <code>Exchange</code> to the next operand
+     * of the key held in <code>_mergePrefix</code>.
+     */
+    private boolean nextMergeOperand(final Exchange operands) throws PersistitException {
+        return operands.next(true)
+                && operands._key.firstUniqueByteIndex(_mergePrefix) == _mergePrefix.getEncodedSize();
+    }
+
+    /**
+     * Remove the merge operands of the keys from <code>key1</code>, inclusive,
+     * to <code>key2</code>, exclusive. An operand key begins with a byte array
+     * segment holding the encoded bytes of its record's key. That encoding
+     * preserves the order of the bytes, so the operands of the range are
+     * those between the operand key prefixes formed from the two bounds.
+     */
+    private boolean removeMergeOperands(final Key key1, final Key key2) throws PersistitException {
+        final Exchange operands = mergeOperandExchange(false);
+        if (operands == null) {
+            return false;
+        }
+        operands._key.clear().appendByteArray(key1.getEncodedBytes(), 0, key1.getEncodedSize());
+        _mergePrefix.clear().appendByteArray(key2.getEncodedBytes(), 0, key2.getEncodedSize());
+        return operands.removeKeyRange(operands._key, _mergePrefix);
+    }
+
+    /**
+     * Remove the merge operands of a single key: those from its operand key
+     * prefix, inclusive, to that of the key nudged deeper, exclusive, as
+     * {@link #remove()} does.
+     */
+    private boolean removeMergeOperands(final Key key) throws PersistitException {
+        key.copyTo(_spareKey3);
+        key.copyTo(_spareKey4);
+        _spareKey4.nudgeDeeper();
+        return removeMergeOperands(_spareKey3, _spareKey4);
+    }
+
+    /**
+     * Return an <code>Exchange</code> on the tree holding this tree's merge
+     * operands and set <code>_mergePrefix</code> to the operand key prefix of
+     * the current key.
+     * 
+     * @param create
+     *            whether to create the operand tree if it does not exist
+     * @return the <code>Exchange</code>, or <code>null</code> if the operand
+     *         tree does not exist and <code>create</code> is
+     *         <code>false</code>
+     */
+    private Exchange mergeOperandExchange(final boolean create) throws PersistitException {
+        final Tree tree = _tree.getMergeOperandTree(create);
+        if (tree == null) {
+            return null;
+        }
+        if (_mergeExchange == null) {
+            _mergeExchange = new Exchange(tree);
+            _mergePrefix = new Key(_persistit);
+        } else if (_mergeExchange._tree != tree) {
+            _mergeExchange.init(tree);
+        }
+        if (_ignoreTransactions) {
+            _mergeExchange.ignoreTransactions();
+        }
+        _mergePrefix.clear().appendByteArray(_key.getEncodedBytes(), 0, _key.getEncodedSize());
+        return _mergeExchange;
+    }
+
+    /**
+     * @return the <code>Value</code> into which merge methods that must not
+     *         disturb the <code>Exchange</code>'s own <code>Value</code> fetch
+     *         a merged value
+     */
+    private Value mergeValue() {
+        if (_mergeValue == null) {
+            _mergeValue = new Value(_persistit, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+        }
+        return _mergeValue;
+    }
+
     /**
      * Fetches the value associated with the current <code>Key</code> into the
      * <code>Exchange</code>'s <code>Value</code>. The <code>Value</code> object
@@ -2691,46 +4424,278 @@ public class Exchange {
     }
 
     /**
-     * <p>
-     * Fetches or partially fetches the value associated with the current
-     * <code>Key</code> into the supplied <code>Value</code> object (instead of
-     * the <code>Exchange</code>'s assigned <code>Value</code>). The
-     * <code>Value</code> object reflects the fetched state. If there is no
-     * value associated with the key then {@link Value#isDefined} is false.
-     * Otherwise the value may be retrieved using {@link Value#get} and other
-     * methods of <code>Value</code>.
-     * </p>
-     * <p>
-     * This method sets an lower bound on the number of bytes to be fetched. In
-     * particular, it may be useful to retrieve only a small fraction of a very
-     * long record such as the serialization of an image. Upon successful
-     * completion of this method, at least <code>minimumBytes</code> of the
-     * <code>Value</code> object will accurately reflect the value stored in the
-     * database. This might allow an application to determine whether to
-     * retrieve the rest of the value using the {@link #fetch()} operation.
-     * </p>
+     * <p>
+     * Fetches or partially fetches the value associated with the current
+     * <code>Key</code> into the supplied <code>Value</code> object (instead of
+     * the <code>Exchange</code>'s assigned <code>Value</code>). The
+     * <code>Value</code> object reflects the fetched state. If there is no
+     * value associated with the key then {@link Value#isDefined} is false.
+     * Otherwise the value may be retrieved using {@link Value#get} and other
+     * methods of <code>Value</code>.
+     * </p>
+     * <p>
+     * This method sets an lower bound on the number of bytes to be fetched. In
+     * particular, it may be useful to retrieve only a small fraction of a very
+     * long record such as the serialization of an image. Upon successful
+     * completion of this method, at least <code>minimumBytes</code> of the
+     * <code>Value</code> object will accurately reflect the value stored in the
+     * database. This might allow an application to determine whether to
+     * retrieve the rest of the value using the {@link #fetch()} operation.
+     * </p>
+     * <p>
+     * If a {@link MergeOperator} is registered for the <code>Tree</code>, any
+     * merge operands written for the key by {@link #mergeStore()} are applied
+     * to the fetched value, which is then always fetched in full.
+     * </p>
+     * 
+     * @param value
+     *            the <code>Value</code> into which the database value should be
+     *            fetched.
+     * @param minimumBytes
+     *            specifies a length at which Persistit will truncate the
+     *            returned value.
+     * 
+     * 
+     * @return This <code>Exchange</code> to permit method call chaining
+     * @throws PersistitException
+     */
+    public Exchange fetch(Value value, int minimumBytes) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        if (minimumBytes < 0) {
+            minimumBytes = 0;
+        }
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            mergeFetch(operator, value);
+            return this;
+        }
+        final BloomFilter filter = _tree.getBloomFilter();
+        if (filter != null && !filter.mightContain(_key)) {
+            value.clear();
+            _volume.getStatistics().bumpFetchCounter();
+            _tree.getStatistics().bumpFetchCounter();
+            return this;
+        }
+        searchAndFetchInternal(value, minimumBytes);
+        if (filter != null && !value.isDefined()) {
+            filter.falsePositive();
+        }
+        return this;
+    }
+
+    /**
+     * <p>
+     * Returns an <code>InputStream</code> that reads the elements of the
+     * <code>byte</code> array associated with the current <code>Key</code>,
+     * such as one written by {@link #storeStream()} or stored with
+     * {@link Value#put(byte[])}. Unlike {@link #fetch()}, which copies an
+     * entire LONG_RECORD value into the <code>Value</code>, the stream reads
+     * the pages of a long record one at a time as it is consumed, so values
+     * larger than the <code>Value</code>'s maximum size can be read with
+     * memory bounded by the page size.
+     * </p>
+     * <p>
+     * The version visible to the current transaction, or the latest committed
+     * version if no transaction is active, is read. A concurrent store or
+     * remove of the record outside of a transaction may deallocate the pages
+     * of the long record while the stream is being read. The stream detects
+     * this by fetching the record again after each page is read, and throws
+     * an <code>IOException</code> rather than return bytes from pages no
+     * longer part of the record. A value compressed under
+     * {@link Tree#setCompressionThreshold(int)} is expanded in memory before
+     * it is read.
+     * </p>
+     * 
+     * @return the <code>InputStream</code>, or <code>null</code> if there is
+     *         no value associated with the current <code>Key</code>
+     * @throws PersistitException
+     * @throws ConversionException
+     *             if the value is not a <code>byte</code> array
+     */
+    public InputStream fetchStream() throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        Value value = new Value(_persistit);
+        if (!searchAndFetchInternal(value, -1) || !value.isDefined()) {
+            return null;
+        }
+        final boolean compressed = isLongRecord(value) ? ValueCompressor.isCompressed(value.getEncodedBytes(),
+                Buffer.LONGREC_PREFIX_OFFSET, Buffer.LONGREC_PREFIX_SIZE) : ValueCompressor.isCompressed(
+                value.getEncodedBytes(), 0, value.getEncodedSize());
+        if (compressed) {
+            value = new Value(_persistit, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+            if (!searchAndFetchInternal(value, Integer.MAX_VALUE) || !value.isDefined()) {
+                return null;
+            }
+        }
+        return new LongRecordInputStream(this, value);
+    }
+
+    /**
+     * <p>
+     * Returns an <code>OutputStream</code> that stores the bytes written to
+     * it as a <code>byte</code> array associated with the current
+     * <code>Key</code>. The value replaces any existing value when the stream
+     * is closed, and may then be read with {@link #fetchStream()} or fetched
+     * as a <code>byte</code> array with {@link #fetch()}. Pages of a long
+     * record are allocated and written as bytes are written to the stream, so
+     * values larger than the <code>Value</code>'s maximum size can be stored
+     * with memory bounded by the page size.
+     * </p>
+     * <p>
+     * The key is captured when this method is called; the
+     * <code>Exchange</code> may be used for other operations while the stream
+     * is open, but the stream must be closed by the thread that owns the
+     * <code>Exchange</code>. If a transaction is active when this method is
+     * called the value must be no larger than {@link Value#MAXIMUM_SIZE} and
+     * the stream must be closed before the transaction commits. If the stream
+     * is not closed the pages it has written are not reclaimed.
+     * </p>
+     * 
+     * @return the <code>OutputStream</code>
+     * @throws PersistitException
+     */
+    public OutputStream storeStream() throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        if (_volume.isReadOnly()) {
+            throw new ReadOnlyVolumeException(_volume.toString());
+        }
+        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        return new LongRecordOutputStream(this);
+    }
+
+    /**
+     * Fetches the values associated with a batch of keys. This method is
+     * equivalent to invoking {@link #fetch(Value)} once for each key, with
+     * the <code>Exchange</code>'s <code>Key</code> set to
+     * <code>keys[i]</code> and <code>values[i]</code> as the target, except
+     * that the keys are visited in key order and the claim on each data page
+     * is held while all the keys that fall within that page are fetched. A
+     * batch of keys that fall on a small number of pages is therefore
+     * satisfied with one search per distinct page rather than one per key.
+     * Upon completion <code>values[i]</code> holds the value associated with
+     * <code>keys[i]</code>, or is undefined if there is none. Neither the
+     * <code>Exchange</code>'s <code>Key</code> nor its <code>Value</code> is
+     * modified. If a {@link MergeOperator} is registered for the
+     * <code>Tree</code> each key is fetched, and its merge operands applied,
+     * exactly as by <code>fetch(Value)</code>.
+     * 
+     * @param keys
+     *            the keys to fetch, in any order
+     * @param values
+     *            the <code>Value</code> objects into which the corresponding
+     *            values are fetched
+     * @return the number of keys having an associated value
+     * @throws IllegalArgumentException
+     *             if the arrays differ in length
+     * @throws PersistitException
+     */
+    public int fetchAll(Key[] keys, Value[] values) throws PersistitException {
+        return fetchAll(keys, values, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fetches or partially fetches the values associated with a batch of keys.
+     * See {@link #fetchAll(Key[], Value[])} and {@link #fetch(Value, int)}.
      * 
-     * @param value
-     *            the <code>Value</code> into which the database value should be
-     *            fetched.
+     * @param keys
+     *            the keys to fetch, in any order
+     * @param values
+     *            the <code>Value</code> objects into which the corresponding
+     *            values are fetched
      * @param minimumBytes
      *            specifies a length at which Persistit will truncate the
-     *            returned value.
-     * 
-     * 
-     * @return This <code>Exchange</code> to permit method call chaining
+     *            returned values.
+     * @return the number of keys having an associated value
+     * @throws IllegalArgumentException
+     *             if the arrays differ in length
      * @throws PersistitException
      */
-    public Exchange fetch(Value value, int minimumBytes) throws PersistitException {
+    public int fetchAll(final Key[] keys, final Value[] values, int minimumBytes) throws PersistitException {
         assertCorrectThread(true);
         _persistit.checkClosed();
-
-        _key.testValidForStoreAndFetch(_volume.getPageSize());
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Key array length " + keys.length + " differs from Value array length "
+                    + values.length);
+        }
+        for (final Key key : keys) {
+            key.testValidForStoreAndFetch(_volume.getPageSize());
+        }
         if (minimumBytes < 0) {
             minimumBytes = 0;
         }
-        searchAndFetchInternal(value, minimumBytes);
-        return this;
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final Key key = new Key(_key);
+            int count = 0;
+            try {
+                for (int index = 0; index < keys.length; index++) {
+                    keys[index].copyTo(_key);
+                    mergeFetch(operator, values[index]);
+                    if (values[index].isDefined()) {
+                        count++;
+                    }
+                }
+            } finally {
+                key.copyTo(_key);
+            }
+            return count;
+        }
+        final Integer[] order = new Integer[keys.length];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+
+        final BloomFilter filter = _tree.getBloomFilter();
+        int count = 0;
+        Buffer buffer = null;
+        try {
+            for (final int index : order) {
+                final Key key = keys[index];
+                final Value value = values[index];
+                _volume.getStatistics().bumpFetchCounter();
+                _tree.getStatistics().bumpFetchCounter();
+                if (filter != null && !filter.mightContain(key)) {
+                    value.clear();
+                    continue;
+                }
+                int foundAt = -1;
+                if (buffer != null) {
+                    foundAt = buffer.findKey(key);
+                    if (buffer.isBeforeLeftEdge(foundAt) || buffer.isAfterRightEdge(foundAt)) {
+                        buffer.releaseTouched();
+                        buffer = null;
+                    }
+                }
+                if (buffer == null) {
+                    foundAt = search(key, false);
+                    buffer = _levelCache[0]._buffer;
+                }
+                fetchFromBufferInternal(buffer, value, foundAt, minimumBytes);
+                if (value.isDefined()) {
+                    count++;
+                } else if (filter != null) {
+                    filter.falsePositive();
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+        return count;
     }
 
     /**
@@ -2782,10 +4747,12 @@ public class Exchange {
          */
         if (!_ignoreMVCCFetch) {
             /*
-             * Must fetch entire record as it *could* be an MVV, and reading
-             * partial MVV is not supported (need all for correct version)
+             * Must fetch entire record if it is an MVV, as reading partial MVV
+             * is not supported (need all for correct version)
              */
-            fetchFixupForLongRecords(value, Integer.MAX_VALUE);
+            if (isLongMVV(value)) {
+                fetchFixupForLongRecords(value, Integer.MAX_VALUE);
+            }
             if (MVV.isArrayMVV(value.getEncodedBytes(), 0, value.getEncodedSize())) {
                 if (bufferForPruning != null) {
                     final int treeHandle = _tree.getHandle();
@@ -2793,8 +4760,8 @@ public class Exchange {
                     bufferForPruning.enqueuePruningAction(treeHandle);
                 }
                 visible = mvccFetch(value, minimumBytes);
-                fetchFixupForLongRecords(value, minimumBytes);
             }
+            fetchFixupForLongRecords(value, minimumBytes);
             if (value.isDefined() && value.isAntiValue()) {
                 value.clear();
                 visible = false;
@@ -2815,18 +4782,61 @@ public class Exchange {
      * @param minimumBytes
      *            If >= 0 and stored value is a LONG_RECORD, fetch at least this
      *            many bytes.
+     * @return <code>true</code> if a version was visible
      * @throws PersistitException
      *             As thrown from {@link #search(Key, boolean)}
      */
-    private void searchAndFetchInternal(Value value, int minimumBytes) throws PersistitException {
+    private boolean searchAndFetchInternal(Value value, int minimumBytes) throws PersistitException {
         Buffer buffer = null;
         try {
             int foundAt = search(_key, false);
             LevelCache lc = _levelCache[0];
             buffer = lc._buffer;
-            fetchFromBufferInternal(buffer, value, foundAt, minimumBytes);
+            final boolean visible = fetchFromBufferInternal(buffer, value, foundAt, minimumBytes);
             _volume.getStatistics().bumpFetchCounter();
             _tree.getStatistics().bumpFetchCounter();
+            return visible;
+        } finally {
+            if (buffer != null) {
+                buffer.releaseTouched();
+            }
+            _treeHolder.verifyReleased();
+        }
+    }
+
+    /**
+     * Add every key in this <code>Exchange</code>'s <code>Tree</code> to the
+     * supplied Bloom filter. Data pages are visited from left to right, each
+     * claimed before its left sibling is released, so that no join or
+     * rebalance operation can move keys from a page not yet visited into one
+     * already visited. Keys of records that are not visible to any
+     * transaction, such as uncommitted or removed records, are added too.
+     * 
+     * @param filter
+     *            the <code>BloomFilter</code>
+     * @throws PersistitException
+     */
+    void populateBloomFilter(final BloomFilter filter) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        Buffer buffer = null;
+        try {
+            search(LEFT_GUARD_KEY, false);
+            buffer = _levelCache[0]._buffer;
+            for (;;) {
+                for (int p = buffer.getKeyBlockStart(); p < buffer.getKeyBlockEnd(); p += KEYBLOCK_LENGTH) {
+                    buffer.nextKey(_spareKey1, p);
+                    filter.add(_spareKey1);
+                }
+                final long rightSiblingPage = buffer.getRightSibling();
+                if (rightSiblingPage == 0) {
+                    break;
+                }
+                final Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true, _tree);
+                buffer.releaseTouched();
+                buffer = rightSibling;
+                checkPageType(buffer, PAGE_TYPE_DATA, false);
+            }
         } finally {
             if (buffer != null) {
                 buffer.releaseTouched();
@@ -2835,6 +4845,19 @@ public class Exchange {
         }
     }
 
+    /**
+     * Fetch the value associated with the current key, leaving a LONG_RECORD
+     * descriptor in place rather than reading the chain.
+     * 
+     * @param value
+     *            the <code>Value</code> to receive the value or descriptor
+     * @return <code>true</code> if a version was visible
+     * @throws PersistitException
+     */
+    boolean fetchDescriptor(final Value value) throws PersistitException {
+        return searchAndFetchInternal(value, -1);
+    }
+
     boolean isLongRecord(Value value) {
         return value.isDefined() && Buffer.isLongRecord(value.getEncodedBytes(), 0, value.getEncodedSize());
     }
@@ -2844,13 +4867,25 @@ public class Exchange {
     }
 
     void fetchFixupForLongRecords(Value value, int minimumBytes) throws PersistitException {
-        if (minimumBytes >= 0 && isLongRecord(value)) {
-            //
-            // This will potential require numerous pages: the buffer
-            // claim is held for the duration to prevent a non-atomic
-            // update.
-            //
-            getLongRecordHelper().fetchLongRecord(value, minimumBytes);
+        if (minimumBytes >= 0) {
+            if (isLongRecord(value)) {
+                //
+                // A compressed record can only be expanded whole
+                //
+                if (ValueCompressor.isCompressed(value.getEncodedBytes(), Buffer.LONGREC_PREFIX_OFFSET,
+                        Buffer.LONGREC_PREFIX_SIZE)) {
+                    minimumBytes = Integer.MAX_VALUE;
+                }
+                //
+                // This will potential require numerous pages: the buffer
+                // claim is held for the duration to prevent a non-atomic
+                // update.
+                //
+                getLongRecordHelper().fetchLongRecord(value, minimumBytes);
+            }
+            if (value.isDefined() && ValueCompressor.isCompressed(value.getEncodedBytes(), 0, value.getEncodedSize())) {
+                getValueCompressor().expand(value);
+            }
         }
     }
 
@@ -2889,6 +4924,19 @@ public class Exchange {
         assertCorrectThread(true);
         _persistit.checkClosed();
         _persistit.checkSuspended();
+        final MergeOperator operator = _tree.getMergeOperator();
+        if (operator != null) {
+            final Value value = mergeValue();
+            runMergeTransaction(new TransactionRunnable() {
+                @Override
+                public void runTransaction() throws PersistitException {
+                    mergeFetch(operator, value);
+                    removeInternal(EQ, false);
+                }
+            });
+            value.copyTo(_value);
+            return _value.isDefined();
+        }
         _spareValue.clear();
         boolean result = removeInternal(EQ, true);
         _spareValue.copyTo(_value);
@@ -2925,19 +4973,26 @@ public class Exchange {
         clear();
 
         _value.clear();
+        final Tree operandTree = _tree.getMergeOperandTree(false);
         /*
          * Remove from directory tree.
          */
         _volume.getStructure().removeTree(_tree);
 
+        if (operandTree != null) {
+            new Exchange(operandTree).removeTree();
+        }
+
         initCache();
     }
 
     /**
      * Remove a single key/value pair from the this <code>Exchange</code>'s
-     * <code>Tree</code>.
+     * <code>Tree</code>. If a {@link MergeOperator} is registered for the
+     * <code>Tree</code> the merge operands of the key are removed as well.
      * 
-     * @return <code>true</code> if there was a key/value pair to remove
+     * @return <code>true</code> if there was a key/value pair or a merge
+     *         operand to remove
      * @throws PersistitException
      */
     public boolean remove() throws PersistitException {
@@ -2945,7 +5000,9 @@ public class Exchange {
     }
 
     /**
-     * Remove all keys in this <code>Exchange</code>'s <code>Tree</code>.
+     * Remove all keys in this <code>Exchange</code>'s <code>Tree</code>. If a
+     * {@link MergeOperator} is registered for the <code>Tree</code> all merge
+     * operands are removed as well.
      * 
      * @return <code>true</code> if there were key/value pairs removed
      * @throws PersistitException
@@ -2972,6 +5029,8 @@ public class Exchange {
      * <dd>Remove the record associated with the current key AND its logical
      * children.</dd>
      * </dl>
+     * If a {@link MergeOperator} is registered for the <code>Tree</code> the
+     * merge operands of the removed keys are removed as well.
      * 
      * @param direction
      *            One of Key.EQ, Key.GT, Key.GTEQ
@@ -3014,14 +5073,20 @@ public class Exchange {
             }
         }
 
-        final boolean result = removeKeyRangeInternal(_spareKey3, _spareKey4, fetchFirst);
+        boolean result = false;
+        if (_tree.getMergeOperator() != null) {
+            result = removeMergeOperands(_spareKey3, _spareKey4);
+        }
+        result |= removeKeyRangeInternal(_spareKey3, _spareKey4, fetchFirst);
         _treeHolder.verifyReleased();
         return result;
     }
 
     /**
      * Removes all records with keys falling between <code>key1</code> and
-     * </code>key2</code>, left-inclusive.
+     * </code>key2</code>, left-inclusive. If a {@link MergeOperator} is
+     * registered for the <code>Tree</code> the merge operands of the keys in
+     * the range are removed as well.
      * 
      * @param key1
      *            Start of the deletion range. No record with a key smaller than
@@ -3059,7 +5124,11 @@ public class Exchange {
             throw new IllegalArgumentException("Second key must be greater than the first");
         }
 
-        final boolean result = removeKeyRangeInternal(_spareKey3, _spareKey4, false);
+        boolean result = false;
+        if (_tree.getMergeOperator() != null) {
+            result = removeMergeOperands(_spareKey3, _spareKey4);
+        }
+        result |= removeKeyRangeInternal(_spareKey3, _spareKey4, false);
         _treeHolder.verifyReleased();
         return result;
     }
@@ -3172,12 +5241,28 @@ public class Exchange {
 
         boolean deallocationRequired = true; // assume until proven false
         boolean tryQuickDelete = true;
+        final boolean counted = _tree.hasRecordCounts();
+        boolean countClaimAcquired = false;
 
         if (!_ignoreTransactions) {
             _transaction.remove(this, key1, key2);
         }
 
         try {
+            if (counted) {
+                //
+                // Hold the writer claim on the Tree until the record counts
+                // on the paths changed by the removal are corrected.
+                //
+                if (!_treeHolder.claim(true)) {
+                    Debug.$assert0.t(false);
+                    throw new InUseException("Thread " + Thread.currentThread().getName()
+                            + " failed to get writer claim on " + _tree);
+                }
+                countClaimAcquired = true;
+                beginRecount();
+                addRecountKey(key1, false);
+            }
             //
             // Retry here to get an exclusive Tree latch in the occasional case
             // where pages are being joined.
@@ -3377,6 +5462,14 @@ public class Exchange {
                             Debug.$assert0.t(_tree.isMine() && buffer1.isMine() && buffer2.isMine());
                             boolean rebalanced = buffer1.join(buffer2, foundAt1, foundAt2, _spareKey1, _spareKey2,
                                     _joinPolicy);
+                            if (rebalanced && counted) {
+                                //
+                                // Records may have moved either way across
+                                // the new separator
+                                //
+                                addRecountKey(_spareKey1, false);
+                                addRecountKey(_spareKey1, true);
+                            }
                             if (buffer1.isDataPage()) {
                                 _tree.bumpChangeCount();
                             }
@@ -3525,6 +5618,13 @@ public class Exchange {
                 _treeHolder.release();
                 treeClaimAcquired = false;
             }
+            if (countClaimAcquired) {
+                try {
+                    endRecount(true);
+                } finally {
+                    _treeHolder.release();
+                }
+            }
         }
 
         _volume.getStatistics().bumpRemoveCounter();
@@ -3572,6 +5672,164 @@ public class Exchange {
         }
     }
 
+    /**
+     * <p>
+     * Try to join the data page containing the current key with its right
+     * sibling. The two pages are joined only when they share a parent index
+     * page and their combined content, less the edge key they share, fits in
+     * <code>targetSize</code> bytes. The right page is then unlinked from the
+     * index and returned to the garbage chain.
+     * </p>
+     * <p>
+     * This method is used by {@link TreeCompactor} to walk a tree from left to
+     * right. It does not change the current key when pages were joined, so
+     * that the caller may try to join the next sibling into the same page.
+     * Otherwise it sets the current key to the first key of the next page to
+     * examine.
+     * </p>
+     * 
+     * @param targetSize
+     *            upper bound on the number of bytes the joined page may occupy
+     * @return {@link #COMPACT_JOINED} if two pages were joined,
+     *         {@link #COMPACT_NEXT} if the caller should move on to the next
+     *         page, or {@link #COMPACT_DONE} if the current page is the
+     *         rightmost page of the tree
+     * @throws PersistitException
+     */
+    int compactDataPage(final int targetSize) throws PersistitException {
+        assertCorrectThread(true);
+        _persistit.checkClosed();
+        _persistit.checkSuspended();
+        if (_volume.isReadOnly()) {
+            throw new ReadOnlyVolumeException(_volume.toString());
+        }
+        if (!_treeHolder.claim(true)) {
+            Debug.$assert0.t(false);
+            throw new InUseException("Thread " + Thread.currentThread().getName() + " failed to get writer claim on "
+                    + _tree);
+        }
+        Buffer parent = null;
+        Buffer left = null;
+        Buffer right = null;
+        long garbagePage = 0;
+        long garbageEnd = 0;
+        final boolean counted = _tree.hasRecordCounts();
+        if (counted) {
+            beginRecount();
+            addRecountKey(_key, false);
+        }
+        try {
+            checkLevelCache();
+            if (_cacheDepth < 2) {
+                return COMPACT_DONE;
+            }
+            final int foundAt = searchTree(_key, 1, true);
+            parent = _levelCache[1]._buffer;
+            final int p = (foundAt & EXACT_MASK) == 0 ? parent.previousKeyBlock(foundAt) : foundAt & P_MASK;
+            final int pRight = parent.nextKeyBlock(p);
+            Debug.$assert0.t(p != -1);
+            if (pRight == -1 || parent.nextKeyBlock(pRight) == -1) {
+                //
+                // The right sibling is indexed by the next parent page, or
+                // there is none.
+                //
+                if (parent.getRightSibling() == 0) {
+                    return COMPACT_DONE;
+                }
+                parent.keyAt(parent.getKeyBlockEnd() - KEYBLOCK_LENGTH, _key);
+                return COMPACT_NEXT;
+            }
+            left = _pool.get(_volume, parent.getPointer(p), true, true, _tree);
+            checkPageType(left, PAGE_TYPE_DATA, false);
+            right = _pool.get(_volume, parent.getPointer(pRight), true, true, _tree);
+            checkPageType(right, PAGE_TYPE_DATA, false);
+            Debug.$assert0.t(left.getRightSibling() == right.getPageAddress());
+
+            if (left.getKeyCount() < 2 || left.getKeyCount() + right.getKeyCount() > _pool.getMaxKeys()
+                    || left.inUseSize() + right.inUseSize() + Buffer.KEY_BLOCK_START >= targetSize) {
+                parent.keyAt(pRight, _key);
+                return COMPACT_NEXT;
+            }
+
+            final long timestamp = timestamp();
+            parent.writePageOnCheckpoint(timestamp);
+            left.writePageOnCheckpoint(timestamp);
+            right.writePageOnCheckpoint(timestamp);
+            //
+            // Remove the left page's edge key, which duplicates the first key
+            // of the right page, and move all records from the right page.
+            //
+            final boolean rebalanced;
+            try {
+                rebalanced = left.join(right, left.getKeyBlockEnd() - KEYBLOCK_LENGTH, Buffer.KEY_BLOCK_START,
+                        _spareKey1, _spareKey2, _joinPolicy);
+            } catch (RebalanceException e) {
+                //
+                // Neither page was changed.
+                //
+                parent.keyAt(pRight, _key);
+                return COMPACT_NEXT;
+            }
+            if (rebalanced) {
+                //
+                // The JoinPolicy divided the records between the two pages
+                // rather than joining them. The right page is kept and must
+                // be re-indexed under its new first key, held in _spareKey1.
+                //
+                _spareKey1.copyTo(_key);
+                if (counted) {
+                    addRecountKey(_spareKey1, false);
+                    addRecountKey(_spareKey1, true);
+                }
+                parent.removeKeys(pRight, pRight | EXACT_MASK, _spareKey2);
+                parent.setDirtyAtTimestamp(timestamp);
+                left.setDirtyAtTimestamp(timestamp);
+                right.setDirtyAtTimestamp(timestamp);
+                _spareValue.setPointerValue(right.getPageAddress());
+                _spareValue.setPointerPageType(right.getPageType());
+                _rawValueWriter.init(_spareValue);
+                if (parent.putValue(_spareKey1, _rawValueWriter, parent.findKey(_spareKey1), false) == -1) {
+                    _spareKey1.copyTo(_spareKey2);
+                    storeInternal(_spareKey2, _spareValue, 1, StoreOptions.NONE);
+                }
+                return COMPACT_NEXT;
+            }
+            parent.removeKeys(pRight, pRight | EXACT_MASK, _spareKey1);
+
+            parent.setDirtyAtTimestamp(timestamp);
+            left.setDirtyAtTimestamp(timestamp);
+            right.setDirtyAtTimestamp(timestamp);
+            garbagePage = right.getPageAddress();
+            garbageEnd = left.getRightSibling();
+            return COMPACT_JOINED;
+        } finally {
+            if (right != null) {
+                right.releaseTouched();
+            }
+            if (left != null) {
+                left.releaseTouched();
+            }
+            if (parent != null) {
+                parent.releaseTouched();
+            }
+            _levelCache[1].invalidate();
+            try {
+                if (garbagePage != 0) {
+                    _tree.bumpGeneration();
+                    _volume.getStructure().deallocateGarbageChain(garbagePage, garbageEnd);
+                }
+            } finally {
+                try {
+                    if (counted) {
+                        endRecount(true);
+                    }
+                } finally {
+                    _treeHolder.release();
+                }
+            }
+        }
+    }
+
     private boolean isKeyRangeAntiValue(final Buffer buffer1, final int foundAt1, final Buffer buffer2,
             final int foundAt2) {
         if (buffer1.getKeyBlockEnd() != (foundAt1 & P_MASK) + KEYBLOCK_LENGTH) {
@@ -3629,7 +5887,7 @@ public class Exchange {
                 if (rightPageAddress == 0) {
                     break;
                 }
-                buffer = _pool.get(_volume, buffer.getRightSibling(), true, true);
+                buffer = _pool.get(_volume, buffer.getRightSibling(), true, true, _tree);
                 oldBuffer.release();
             }
 
@@ -3644,7 +5902,7 @@ public class Exchange {
     boolean prune(final long page) throws PersistitException {
         Buffer buffer = null;
         try {
-            buffer = _pool.get(_volume, page, true, true);
+            buffer = _pool.get(_volume, page, true, true, _tree);
             return buffer.pruneMvvValues(_tree, true);
         } finally {
             if (buffer != null) {
@@ -3657,7 +5915,7 @@ public class Exchange {
         _ignoreTransactions = true;
         Buffer buffer = null;
         try {
-            buffer = _pool.get(_volume, page, false, true);
+            buffer = _pool.get(_volume, page, false, true, _tree);
             buffer.clearEnqueuedForPruning();
             long at = buffer.at(Buffer.KEY_BLOCK_START);
             if (at > 0) {
@@ -3684,11 +5942,11 @@ public class Exchange {
     boolean fixIndexHole(final long page, final int level) throws PersistitException {
         _ignoreTransactions = true;
         Buffer buffer = null;
-        if (!_treeHolder.claim(false, Persistit.SHORT_DELAY)) {
+        if (!_treeHolder.claim(_tree.hasRecordCounts(), Persistit.SHORT_DELAY)) {
             return false;
         }
         try {
-            buffer = _pool.get(_volume, page, false, true);
+            buffer = _pool.get(_volume, page, false, true, _tree);
             buffer.nextKey(_spareKey2, buffer.toKeyBlock(0));
             _value.setPointerValue(page);
             _value.setPointerPageType(buffer.getPageType());
@@ -3702,6 +5960,167 @@ public class Exchange {
         }
     }
 
+    /**
+     * Recount the index entries above a data page of a <code>Tree</code> with
+     * record counts after pruning has changed the page. The page may since
+     * have been joined or even reused; the path to its first key is recounted
+     * in any case.
+     * 
+     * @param page
+     *            the data page address
+     * @return <code>true</code> if the page was still a data page
+     * @throws PersistitException
+     */
+    boolean fixRecordCounts(final long page) throws PersistitException {
+        if (!_tree.hasRecordCounts()) {
+            return false;
+        }
+        Buffer buffer = null;
+        try {
+            buffer = _pool.get(_volume, page, false, true, _tree);
+            if (!buffer.isDataPage() || buffer.getKeyCount() < 2) {
+                return false;
+            }
+            buffer.keyAt(Buffer.KEY_BLOCK_START, _spareKey1);
+        } finally {
+            if (buffer != null) {
+                buffer.release();
+            }
+        }
+        if (!_treeHolder.claim(true, Persistit.SHORT_DELAY)) {
+            return false;
+        }
+        try {
+            fixRecordCounts(_spareKey1, false);
+            return true;
+        } finally {
+            _treeHolder.release();
+        }
+    }
+
+    /**
+     * Start an update of a <code>Tree</code> with record counts. The caller
+     * holds, or is about to acquire, the writer claim on the
+     * <code>Tree</code>, and must call {@link #endRecount(boolean)} before
+     * releasing it.
+     */
+    private void beginRecount() {
+        _recountDepth++;
+    }
+
+    /**
+     * Note that the index entries on the path to a key, or to the page
+     * preceding it, may no longer match the records below them.
+     * 
+     * @param key
+     *            the key
+     * @param before
+     *            <code>true</code> to note the path to the data page
+     *            preceding <code>key</code>, for example the left page of a
+     *            split whose right page begins with <code>key</code>
+     */
+    private void addRecountKey(final Key key, final boolean before) {
+        if (_recountCount == _recountKeys.size()) {
+            _recountKeys.add(new Key(_persistit));
+        }
+        if (_recountCount == _recountBefore.length) {
+            _recountBefore = Arrays.copyOf(_recountBefore, _recountCount * 2);
+        }
+        key.copyTo(_recountKeys.get(_recountCount));
+        _recountBefore[_recountCount++] = before;
+    }
+
+    /**
+     * End an update of a <code>Tree</code> with record counts. The outermost
+     * update recounts the paths noted by it and by the updates it invoked.
+     * 
+     * @param fix
+     *            <code>false</code> if the update failed before acquiring
+     *            its claim on the <code>Tree</code>
+     * @throws PersistitException
+     */
+    private void endRecount(final boolean fix) throws PersistitException {
+        if (--_recountDepth == 0) {
+            try {
+                for (int index = 0; fix && index < _recountCount; index++) {
+                    fixRecordCounts(_recountKeys.get(index), _recountBefore[index]);
+                }
+            } finally {
+                _recountCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Set the record counts of the index entries on the path to a key from
+     * the totals of the pages they point to, working upward from the data
+     * page. The caller holds the writer claim on the <code>Tree</code>, so no
+     * other thread can change the counts or the shape of the tree. If the key
+     * does not lie within a page the path leads to, as when a page is missing
+     * from its parent, the entries above that page are marked as uncounted.
+     * 
+     * @param key
+     *            the key
+     * @param before
+     *            <code>true</code> to follow the path to the data page
+     *            preceding <code>key</code>
+     * @throws PersistitException
+     */
+    private void fixRecordCounts(final Key key, final boolean before) throws PersistitException {
+        Debug.$assert0.t(_tree.isMine());
+        final int depth = _tree.getDepth();
+        if (depth < 2) {
+            return;
+        }
+        final Buffer[] buffers = new Buffer[depth];
+        final int[] entries = new int[depth];
+        long page = _tree.getRootPageAddr();
+        int bottom = 0;
+        try {
+            for (int level = depth; --level >= 0;) {
+                final Buffer buffer = _pool.get(_volume, page, level > 0, true, _tree);
+                buffers[level] = buffer;
+                checkPageType(buffer, level + PAGE_TYPE_DATA, false);
+                if (level == 0) {
+                    break;
+                }
+                final int foundAt = buffer.findKey(key);
+                int p = foundAt & P_MASK;
+                if (before || (foundAt & EXACT_MASK) == 0) {
+                    p -= KEYBLOCK_LENGTH;
+                }
+                if (p < Buffer.KEY_BLOCK_START || p >= buffer.getKeyBlockEnd() - KEYBLOCK_LENGTH) {
+                    bottom = level + 1;
+                    break;
+                }
+                entries[level] = p;
+                page = buffer.getPointer(p);
+            }
+            final long timestamp = timestamp();
+            for (int level = Math.max(bottom, 1); level < depth; level++) {
+                final Buffer buffer = buffers[level];
+                final int p = entries[level];
+                if (!buffer.isCountedIndexPage()) {
+                    continue;
+                }
+                final long records = level == bottom ? 0 : buffers[level - 1].subtreeRecords();
+                final int versioned = level == bottom ? Buffer.UNKNOWN_VERSIONED_COUNT : buffers[level - 1]
+                        .subtreeVersioned();
+                if (buffer.getRecordCount(p) != records || buffer.getVersionedCount(p) != versioned) {
+                    buffer.writePageOnCheckpoint(timestamp);
+                    buffer.setRecordCounts(p, records, versioned);
+                    buffer.setDirtyAtTimestamp(timestamp);
+                }
+            }
+        } finally {
+            for (int level = 0; level < depth; level++) {
+                if (buffers[level] != null) {
+                    buffers[level].releaseTouched();
+                }
+            }
+        }
+    }
+
     private void checkPageType(Buffer buffer, int expectedType, boolean releaseOnFailure) throws PersistitException {
         int type = buffer.getPageType();
         if (type != expectedType) {
@@ -3755,6 +6174,32 @@ public class Exchange {
         return _longRecordHelper;
     }
 
+    ValueCompressor getValueCompressor() {
+        if (_valueCompressor == null) {
+            _valueCompressor = new ValueCompressor();
+        }
+        return _valueCompressor;
+    }
+
+    /**
+     * Return the value to write in place of <code>value</code>: a compressed
+     * copy if the <code>Tree</code> has a compression threshold, the value
+     * reaches it and compression makes the value smaller, otherwise
+     * <code>value</code> itself.
+     * 
+     * @see Tree#setCompressionThreshold(int)
+     */
+    Value compressForStore(final Value value) {
+        final int threshold = _tree.getCompressionThreshold();
+        if (threshold == 0 || value.getEncodedSize() < threshold) {
+            return value;
+        }
+        if (_compressedValue == null) {
+            _compressedValue = new Value(_persistit, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+        }
+        return getValueCompressor().compress(value, _compressedValue) ? _compressedValue : value;
+    }
+
     /**
      * Allows for all MVV contents to be returned through the Value object
      * during fetch. This can then be displayed conveniently through
@@ -3830,7 +6275,7 @@ public class Exchange {
                 if (buffer.isAfterRightEdge(foundAt)) {
                     long rightSiblingPage = buffer.getRightSibling();
                     if (rightSiblingPage > 0) {
-                        Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true);
+                        Buffer rightSibling = _pool.get(_volume, rightSiblingPage, false, true, _tree);
                         buffer.releaseTouched();
                         //
                         // Reset foundAtNext to point to the first key block
@@ -152,6 +152,12 @@ class FastIndex {
      */
     private boolean _isValid;
 
+    /**
+     * Incremented before and after each recomputation, so that a search made
+     * without a claim on the buffer can detect one
+     */
+    private volatile int _version;
+
     /**
      * The buffer this fast index is associated with.
      */
@@ -189,72 +195,81 @@ class FastIndex {
         _isValid = false;
     }
 
+    int getVersion() {
+        return _version;
+    }
+
     void recompute() {
-        if (_buffer.isDataPage() || _buffer.isIndexPage()) {
-            int start = _buffer.getKeyBlockStart();
-            int end = _buffer.getKeyBlockEnd();
+        _version++;
+        try {
+            if (_buffer.isDataPage() || _buffer.isIndexPage()) {
+                int start = _buffer.getKeyBlockStart();
+                int end = _buffer.getKeyBlockEnd();
+
+                int ebc0 = 0;
+                int runCountFixupIndex = 0;
+                int crossCountFixupIndex = -1;
+
+                int lastIndex = (end - start) / Buffer.KEYBLOCK_LENGTH;
+
+                for (int i = 0, p = start; i <= lastIndex; i++, p += Buffer.KEYBLOCK_LENGTH) {
+                    int ebc;
+                    if (i < lastIndex || i == 0) {
+                        int kbData = _buffer.getInt(p);
+                        ebc = Buffer.decodeKeyBlockEbc(kbData);
+                    } else {
+                        ebc = -1;
+                    }
 
-            int ebc0 = 0;
-            int runCountFixupIndex = 0;
-            int crossCountFixupIndex = -1;
+                    if (ebc != ebc0) {
+                        int runCount = i - runCountFixupIndex - 1;
+                        putRunCount(runCountFixupIndex, runCount);
+                        runCountFixupIndex = i;
 
-            int lastIndex = (end - start) / Buffer.KEYBLOCK_LENGTH;
+                        if (ebc > ebc0) {
+                            //
+                            // If not true then the ebc for the very first KeyBlock
+                            // is non-zero, which is wrong.
+                            //
+                            putRunCount(i - 1, crossCountFixupIndex);
+                            crossCountFixupIndex = i - 1;
+                        } else { // ebc < ebc0 */
+                            //
+                            // Now we need to walk back through the linked list of
+                            // findex array elements that need to have their
+                            // crossCount field updated.
+                            //
+                            for (int j = crossCountFixupIndex; j != -1;) {
+                                int ccFixupEbc = getEbc(j);
 
-            for (int i = 0, p = start; i <= lastIndex; i++, p += Buffer.KEYBLOCK_LENGTH) {
-                int ebc;
-                if (i < lastIndex || i == 0) {
-                    int kbData = _buffer.getInt(p);
-                    ebc = Buffer.decodeKeyBlockEbc(kbData);
-                } else {
-                    ebc = -1;
-                }
+                                if (ebc <= ccFixupEbc) {
+                                    int crossCount = -(i - j - 1);
 
-                if (ebc != ebc0) {
-                    int runCount = i - runCountFixupIndex - 1;
-                    putRunCount(runCountFixupIndex, runCount);
-                    runCountFixupIndex = i;
+                                    crossCountFixupIndex = getRunCount(j);
+                                    putRunCount(j, crossCount);
+                                    j = crossCountFixupIndex;
+                                } else {
+                                    crossCountFixupIndex = j;
+                                    break;
+                                }
 
-                    if (ebc > ebc0) {
-                        //
-                        // If not true then the ebc for the very first KeyBlock
-                        // is non-zero, which is wrong.
-                        //
-                        putRunCount(i - 1, crossCountFixupIndex);
-                        crossCountFixupIndex = i - 1;
-                    } else { // ebc < ebc0 */
-                        //
-                        // Now we need to walk back through the linked list of
-                        // findex array elements that need to have their
-                        // crossCount field updated.
-                        //
-                        for (int j = crossCountFixupIndex; j != -1;) {
-                            int ccFixupEbc = getEbc(j);
-
-                            if (ebc <= ccFixupEbc) {
-                                int crossCount = -(i - j - 1);
-
-                                crossCountFixupIndex = getRunCount(j);
-                                putRunCount(j, crossCount);
-                                j = crossCountFixupIndex;
-                            } else {
-                                crossCountFixupIndex = j;
-                                break;
                             }
-
                         }
-                    }
 
-                    ebc0 = ebc;
-                } else {
-                    putRunCount(i, 0);
+                        ebc0 = ebc;
+                    } else {
+                        putRunCount(i, 0);
+                    }
                 }
+                if (Debug.ENABLED) {
+                    verify();
+                }
+                _isValid = true;
+            } else {
+                _isValid = false;
             }
-            if (Debug.ENABLED) {
-                verify();
-            }
-            _isValid = true;
-        } else {
-            _isValid = false;
+        } finally {
+            _version++;
         }
     }
 
@@ -957,6 +957,11 @@ public class IntegrityCheck extends Task {
 
                         // Recursively check the subtree.
                         checkTree(key, page, child, level - 1, tree);
+
+                        if (buffer.isCountedIndexPage() && _edgePages[level - 1] == child
+                                && _edgeBuffers[level - 1] != null) {
+                            checkRecordCounts(buffer, foundAt, _edgeBuffers[level - 1], level);
+                        }
                     }
                 } else {
                     throw new RuntimeException("should never happen!");
@@ -976,6 +981,29 @@ public class IntegrityCheck extends Task {
         }
     }
 
+    /**
+     * Verify the record counts of an index entry against the page it points
+     * to. A count of versioned records may exceed the true count, since
+     * pruning leaves it stale until the entry is recounted, but a count of
+     * zero must be exact.
+     */
+    private void checkRecordCounts(final Buffer buffer, final int foundAt, final Buffer child, final int level) {
+        if (child.isIndexPage() && !child.isCountedIndexPage()) {
+            addFault("Index page without record counts below a page with record counts", child.getPageAddress(),
+                    level - 1, 0);
+            return;
+        }
+        final long records = buffer.getRecordCount(foundAt);
+        final int versioned = buffer.getVersionedCount(foundAt);
+        final long childRecords = child.subtreeRecords();
+        final int childVersioned = child.subtreeVersioned();
+        if (versioned < childVersioned || versioned == 0 && records != childRecords) {
+            addFault(String.format("Record counts %,d/%,d do not match %,d/%,d in child page %,d", records,
+                    versioned, childRecords, childVersioned, child.getPageAddress()), buffer.getPageAddress(), level,
+                    foundAt);
+        }
+    }
+
     private void checkGarbage(final long garbageRootPage) throws PersistitException {
         long garbagePageAddress = garbageRootPage;
         boolean first = true;
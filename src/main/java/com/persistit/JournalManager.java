@@ -1001,72 +1001,104 @@ class JournalManager implements JournalManagerMXBean, VolumeHandleLookup {
     }
 
     void writePageToJournal(final Buffer buffer) throws PersistitException {
-
-        final Volume volume;
-        final int recordSize;
-
+        final long address;
         synchronized (this) {
+            address = appendPageToJournal(buffer);
+        }
+        _persistit.getIOMeter().chargeWritePageToJournal(buffer.getVolume(), buffer.getPageAddress(),
+                buffer.getBufferSize(), address, urgency(), buffer.getIndex());
+    }
 
-            if (!buffer.isTemporary() && buffer.getTimestamp() < _lastValidCheckpoint.getTimestamp()) {
-                _persistit.getLogBase().lateWrite.log(_lastValidCheckpoint, buffer);
+    /**
+     * Write several page images to the journal under one acquisition of this
+     * <code>JournalManager</code>'s monitor. The page images therefore occupy
+     * a contiguous range of journal addresses.
+     * 
+     * @param buffers
+     * @param count
+     * @throws PersistitException
+     */
+    void writePagesToJournal(final Buffer[] buffers, final int count) throws PersistitException {
+        final long[] addresses = new long[count];
+        synchronized (this) {
+            for (int index = 0; index < count; index++) {
+                addresses[index] = appendPageToJournal(buffers[index]);
             }
+        }
+        final int urgency = urgency();
+        for (int index = 0; index < count; index++) {
+            final Buffer buffer = buffers[index];
+            _persistit.getIOMeter().chargeWritePageToJournal(buffer.getVolume(), buffer.getPageAddress(),
+                    buffer.getBufferSize(), addresses[index], urgency, buffer.getIndex());
+        }
+    }
 
-            volume = buffer.getVolume();
-            int handle = handleForVolume(volume);
-            int leftSize;
-            int rightSize;
-            if (buffer.isDataPage() || buffer.isIndexPage() || buffer.isGarbagePage()) {
-                leftSize = buffer.getKeyBlockEnd();
-                rightSize = buffer.getBufferSize() - buffer.getAlloc();
-            } else {
-                leftSize = 0;
-                rightSize = buffer.getBufferSize();
-            }
+    /**
+     * Append a PA record holding the page image to the write buffer and record
+     * it in the page map. The caller must hold this
+     * <code>JournalManager</code>'s monitor.
+     * 
+     * @return the journal address of the record
+     */
+    private long appendPageToJournal(final Buffer buffer) throws PersistitException {
+        if (!buffer.isTemporary() && buffer.getTimestamp() < _lastValidCheckpoint.getTimestamp()) {
+            _persistit.getLogBase().lateWrite.log(_lastValidCheckpoint, buffer);
+        }
 
-            recordSize = PA.OVERHEAD + leftSize + rightSize;
+        final Volume volume = buffer.getVolume();
+        int handle = handleForVolume(volume);
+        int leftSize;
+        int rightSize;
+        if (buffer.isDataPage() || buffer.isIndexPage() || buffer.isGarbagePage()) {
+            leftSize = buffer.getKeyBlockEnd();
+            rightSize = buffer.getBufferSize() - buffer.getAlloc();
+        } else {
+            leftSize = 0;
+            rightSize = buffer.getBufferSize();
+        }
 
-            prepareWriteBuffer(recordSize);
-            Debug.$assert1.t(_writeBuffer.remaining() >= recordSize);
+        final int recordSize = PA.OVERHEAD + leftSize + rightSize;
 
-            final long address = _currentAddress;
-            final int position = _writeBuffer.position();
-
-            JournalRecord.putLength(_writeBuffer, recordSize);
-            PA.putVolumeHandle(_writeBuffer, handle);
-            PA.putType(_writeBuffer);
-            JournalRecord.putTimestamp(_writeBuffer, buffer.isTemporary() ? -1 : buffer.getTimestamp());
-            PA.putLeftSize(_writeBuffer, leftSize);
-            PA.putBufferSize(_writeBuffer, buffer.getBufferSize());
-            PA.putPageAddress(_writeBuffer, buffer.getPageAddress());
-            advance(PA.OVERHEAD);
-
-            if (leftSize > 0) {
-                _writeBuffer.put(buffer.getBytes(), 0, leftSize);
-                _writeBuffer.put(buffer.getBytes(), buffer.getBufferSize() - rightSize, rightSize);
-            } else {
-                _writeBuffer.put(buffer.getBytes());
-            }
-            Debug.$assert0.t(_writeBuffer.position() - position == recordSize);
-            _currentAddress += recordSize - PA.OVERHEAD;
+        prepareWriteBuffer(recordSize);
+        Debug.$assert1.t(_writeBuffer.remaining() >= recordSize);
 
-            final PageNode pageNode = new PageNode(handle, buffer.getPageAddress(), address, buffer.getTimestamp());
-            _pageList.add(pageNode);
-            PageNode oldPageNode = _pageMap.put(pageNode, pageNode);
+        final long address = _currentAddress;
+        final int position = _writeBuffer.position();
 
-            if (oldPageNode != null) {
-                assert oldPageNode.getTimestamp() <= pageNode.getTimestamp();
-            }
-            long checkpointTimestamp = _persistit.getTimestampAllocator().getProposedCheckpointTimestamp();
-            if (oldPageNode != null && oldPageNode.getTimestamp() > checkpointTimestamp
-                    && buffer.getTimestamp() > checkpointTimestamp) {
-                oldPageNode.invalidate();
-                oldPageNode = oldPageNode.getPrevious();
-            }
-            pageNode.setPrevious(oldPageNode);
-            _writePageCount++;
+        JournalRecord.putLength(_writeBuffer, recordSize);
+        PA.putVolumeHandle(_writeBuffer, handle);
+        PA.putType(_writeBuffer);
+        JournalRecord.putTimestamp(_writeBuffer, buffer.isTemporary() ? -1 : buffer.getTimestamp());
+        PA.putLeftSize(_writeBuffer, leftSize);
+        PA.putBufferSize(_writeBuffer, buffer.getBufferSize());
+        PA.putPageAddress(_writeBuffer, buffer.getPageAddress());
+        advance(PA.OVERHEAD);
+
+        if (leftSize > 0) {
+            _writeBuffer.put(buffer.getBytes(), 0, leftSize);
+            _writeBuffer.put(buffer.getBytes(), buffer.getBufferSize() - rightSize, rightSize);
+        } else {
+            _writeBuffer.put(buffer.getBytes());
         }
-        _persistit.getIOMeter().chargeWritePageToJournal(volume, buffer.getPageAddress(), buffer.getBufferSize(),
-                _currentAddress - recordSize, urgency(), buffer.getIndex());
+        Debug.$assert0.t(_writeBuffer.position() - position == recordSize);
+        _currentAddress += recordSize - PA.OVERHEAD;
+
+        final PageNode pageNode = new PageNode(handle, buffer.getPageAddress(), address, buffer.getTimestamp());
+        _pageList.add(pageNode);
+        PageNode oldPageNode = _pageMap.put(pageNode, pageNode);
+
+        if (oldPageNode != null) {
+            assert oldPageNode.getTimestamp() <= pageNode.getTimestamp();
+        }
+        long checkpointTimestamp = _persistit.getTimestampAllocator().getProposedCheckpointTimestamp();
+        if (oldPageNode != null && oldPageNode.getTimestamp() > checkpointTimestamp
+                && buffer.getTimestamp() > checkpointTimestamp) {
+            oldPageNode.invalidate();
+            oldPageNode = oldPageNode.getPrevious();
+        }
+        pageNode.setPrevious(oldPageNode);
+        _writePageCount++;
+        return address;
     }
 
     /**
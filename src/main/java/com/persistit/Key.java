@@ -2571,6 +2571,71 @@ public final class Key implements Comparable<Object> {
         return decodeString(false, sb);
     }
 
+    /**
+     * Decodes the next key segment as a <code>String</code> into the supplied
+     * <code>char</code> array and advances the index to the next key segment.
+     * Unlike {@link #decodeString()} this method allocates no objects, so it
+     * is suitable for decoding many keys in a loop.
+     * 
+     * @param chars
+     *            The array to receive the characters
+     * @param offset
+     *            Index in <code>chars</code> of the first character
+     * @return The number of characters decoded
+     * @throws ConversionException
+     *             if the next key segment value is not a String, or if it does
+     *             not fit in the array.
+     */
+    public int decodeString(final char[] chars, final int offset) {
+        int index = decodeStringStart(_index);
+        int count = 0;
+        while (index < _size && _bytes[index] != 0) {
+            if (offset + count >= chars.length) {
+                throw new ConversionException("String segment at position " + _index
+                        + " does not fit in array of length " + chars.length);
+            }
+            final int decoded = decodeStringChar(index);
+            chars[offset + count++] = (char) decoded;
+            index = decoded >>> 16;
+        }
+        _index = index + 1;
+        return count;
+    }
+
+    /**
+     * Compares the next key segment, which must be a <code>String</code>, with
+     * the supplied <code>CharSequence</code> without decoding the segment or
+     * allocating any objects. The index is not advanced. Because
+     * <code>String</code> key segments collate by the numeric values of their
+     * character codes, the result agrees with the ordering of keys containing
+     * the two strings.
+     * 
+     * @param s
+     *            The <code>CharSequence</code> to compare
+     * @return a negative integer, zero or a positive integer as the segment is
+     *         less than, equal to or greater than <code>s</code>
+     * @throws ConversionException
+     *             if the next key segment value is not a String.
+     */
+    public int compareString(final CharSequence s) {
+        int index = decodeStringStart(_index);
+        final int length = s.length();
+        for (int i = 0;; i++) {
+            if (index >= _size || _bytes[index] == 0) {
+                return i < length ? -1 : 0;
+            }
+            if (i == length) {
+                return 1;
+            }
+            final int decoded = decodeStringChar(index);
+            final int difference = (char) decoded - s.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+            index = decoded >>> 16;
+        }
+    }
+
     /**
      * Decodes the next key segment as a <code>java.util.Date</code>, advances
      * the index to the next key segment and returns the result.
@@ -3478,54 +3543,80 @@ public final class Key implements Comparable<Object> {
      * @param sb
      */
     private Appendable decodeString(boolean quoted, Appendable sb) {
-        int index = _index;
-        int c1 = _bytes[index++] & 0xFF;
+        int index = decodeStringStart(_index);
+        while (index < _size && _bytes[index] != 0) {
+            final int decoded = decodeStringChar(index);
+            final char c = (char) decoded;
+            if (quoted) {
+                Util.appendQuotedChar(sb, c);
+            } else {
+                Util.append(sb, c);
+            }
+            index = decoded >>> 16;
+        }
+        _index = index + 1;
+        return sb;
+    }
+
+    /**
+     * @param index
+     *            index of the String lead-in byte
+     * @return index of the first encoded character
+     * @throws ConversionException
+     *             if the segment at <code>index</code> is not a String
+     */
+    private int decodeStringStart(final int index) {
+        final int c1 = _bytes[index] & 0xFF;
         if (c1 != TYPE_STRING) {
-            throw new ConversionException("Invalid String lead-in byte (" + c1 + ") at position " + (index - 1)
+            throw new ConversionException("Invalid String lead-in byte (" + c1 + ") at position " + index
                     + " in key");
         }
+        return index + 1;
+    }
 
-        while ((c1 = _bytes[index++] & 0xFF) != 0 && index <= _size) {
-            char c = 0;
-            // Handle encoded NUL and SOH bytes
-            if (c1 == 0x01) {
-                int c2 = _bytes[index++] & 0xFF;
-                if (c2 >= 0x0020 && c2 <= 0x0021) {
-                    c = (char) (c2 - 0x0020);
-                } else {
-                    throw new ConversionException("String decoding exception at position " + (index - 1));
-                }
+    /**
+     * Decodes one character of a String segment.
+     * 
+     * @param index
+     *            index of the first byte of the encoded character
+     * @return the character in the low 16 bits, and the index of the byte
+     *         following its encoding in the high bits
+     */
+    private int decodeStringChar(int index) {
+        final int c1 = _bytes[index++] & 0xFF;
+        char c = 0;
+        // Handle encoded NUL and SOH bytes
+        if (c1 == 0x01) {
+            int c2 = _bytes[index++] & 0xFF;
+            if (c2 >= 0x0020 && c2 <= 0x0021) {
+                c = (char) (c2 - 0x0020);
+            } else {
+                throw new ConversionException("String decoding exception at position " + (index - 1));
             }
+        }
 
-            // 7-bit ASCII
-            else if (c1 <= 0x7F) {
-                c = (char) c1;
-            }
+        // 7-bit ASCII
+        else if (c1 <= 0x7F) {
+            c = (char) c1;
+        }
 
-            else if (c1 > 0xC0 && c1 <= 0xDF) {
-                int c2 = _bytes[index++] & 0xFF;
-                if (c2 >= 0x80 && c2 <= 0xBF) {
-                    c = (char) (((c1 & 0x1F) << 6) | ((c2 & 0x3F) << 0));
-                } else {
-                    throw new ConversionException("String decoding exception at position " + (index - 1));
-                }
-            } else if (c1 >= 0xE0 && c1 <= 0xEF) {
-                int c2 = _bytes[index++] & 0xFF;
-                int c3 = _bytes[index++] & 0xFF;
-                if (c2 >= 0x80 && c2 <= 0xBF && c3 >= 0x80 && c3 <= 0xBF) {
-                    c = (char) (((c1 & 0x0F) << 12) | ((c2 & 0x3F) << 6) | ((c3 & 0x3F) << 0));
-                }
+        else if (c1 > 0xC0 && c1 <= 0xDF) {
+            int c2 = _bytes[index++] & 0xFF;
+            if (c2 >= 0x80 && c2 <= 0xBF) {
+                c = (char) (((c1 & 0x1F) << 6) | ((c2 & 0x3F) << 0));
             } else {
                 throw new ConversionException("String decoding exception at position " + (index - 1));
             }
-            if (quoted) {
-                Util.appendQuotedChar(sb, c);
-            } else {
-                Util.append(sb, c);
+        } else if (c1 >= 0xE0 && c1 <= 0xEF) {
+            int c2 = _bytes[index++] & 0xFF;
+            int c3 = _bytes[index++] & 0xFF;
+            if (c2 >= 0x80 && c2 <= 0xBF && c3 >= 0x80 && c3 <= 0xBF) {
+                c = (char) (((c1 & 0x0F) << 12) | ((c2 & 0x3F) << 6) | ((c3 & 0x3F) << 0));
             }
+        } else {
+            throw new ConversionException("String decoding exception at position " + (index - 1));
         }
-        _index = index;
-        return sb;
+        return (index << 16) | c;
     }
 
     private Key endSegment(int size) {
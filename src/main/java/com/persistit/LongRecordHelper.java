@@ -93,7 +93,8 @@ class LongRecordHelper {
                     corrupt("Invalid LONG_RECORD remaining size=" + remainingSize + " of " + rawSize + " in page "
                             + page);
                 }
-                buffer = _volume.getPool().get(_volume, page, false, true);
+                buffer = _volume.getPool().get(_volume, page, false, true,
+                        _exchange == null ? null : _exchange.getTree());
                 if (buffer.getPageType() != PAGE_TYPE_LONG_RECORD) {
                     corrupt("LONG_RECORD chain is invalid at page " + page + " - invalid page type: " + buffer);
                 }
@@ -180,7 +181,7 @@ class LongRecordHelper {
         try {
             for (;;) {
                 while (offset >= LONGREC_PREFIX_SIZE) {
-                    buffer = _volume.getStructure().allocPage();
+                    buffer = _volume.getStructure().allocPage(_exchange == null ? null : _exchange.getTree());
                     final long timestamp = _persistit.getTimestampAllocator().updateTimestamp();
                     buffer.writePageOnCheckpoint(timestamp);
                     buffer.init(PAGE_TYPE_LONG_RECORD);
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static com.persistit.Buffer.HEADER_SIZE;
+import static com.persistit.Buffer.LONGREC_PREFIX_OFFSET;
+import static com.persistit.Buffer.LONGREC_PREFIX_SIZE;
+import static com.persistit.Buffer.PAGE_TYPE_LONG_RECORD;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.persistit.exception.ConversionException;
+import com.persistit.exception.CorruptVolumeException;
+import com.persistit.exception.PersistitException;
+import com.persistit.util.Util;
+
+/**
+ * <p>
+ * <code>InputStream</code> over the elements of a <code>byte</code> array
+ * value, returned by {@link Exchange#fetchStream()}. If the value is a
+ * LONG_RECORD the pages of its chain are read one at a time as the stream is
+ * consumed, so that no more than one page of the record is held in memory
+ * regardless of its size. Each page is copied out of its buffer and the claim
+ * released before the bytes are returned to the caller. The
+ * {@link BufferPool} is asked to read the following pages of the chain in the
+ * background, {@value #READ_AHEAD_DEPTH} pages at a time.
+ * </p>
+ * <p>
+ * The stream reads the chain as it was when the value was fetched. Outside
+ * of a transaction a concurrent store or remove of the record may deallocate
+ * the chain and its pages may then be reused. Therefore after each page is
+ * copied the record is fetched again and its LONG_RECORD descriptor compared
+ * with the one the stream was opened with; if it differs the bytes copied
+ * may belong to some other page and reading the stream fails with an
+ * <code>IOException</code> caused by a {@link CorruptVolumeException}.
+ * </p>
+ */
+class LongRecordInputStream extends InputStream {
+
+    /**
+     * Number of chain pages requested from the <code>BufferPool</code> in
+     * each read-ahead request
+     */
+    final static int READ_AHEAD_DEPTH = 16;
+
+    private final Volume _volume;
+    private final Tree _tree;
+
+    private Exchange _exchange;
+    private byte[] _descriptor;
+    private Value _check;
+
+    private byte[] _head;
+    private int _headPosition;
+    private int _headSize;
+
+    private byte[] _segment;
+    private int _segmentPosition;
+    private int _segmentSize;
+
+    private long _page;
+    private int _remaining;
+    private int _readAheadRemaining;
+
+    private final byte[] _oneByte = new byte[1];
+    private boolean _closed;
+
+    /**
+     * Construct a stream over a value fetched with its LONG_RECORD descriptor,
+     * if any, left in place.
+     * 
+     * @param exchange
+     *            the <code>Exchange</code> that fetched the value
+     * @param value
+     *            the value or LONG_RECORD descriptor
+     * @throws ConversionException
+     *             if the value is not a <code>byte</code> array
+     */
+    LongRecordInputStream(final Exchange exchange, final Value value) {
+        _volume = exchange.getVolume();
+        _tree = exchange.getTree();
+        final byte[] bytes = value.getEncodedBytes();
+        final int size = value.getEncodedSize();
+        if (exchange.isLongRecord(value)) {
+            if (!Value.isByteArrayPrefix(bytes, LONGREC_PREFIX_OFFSET, LONGREC_PREFIX_SIZE)) {
+                throw new ConversionException("Value is not a byte array");
+            }
+            _head = new byte[LONGREC_PREFIX_SIZE];
+            System.arraycopy(bytes, LONGREC_PREFIX_OFFSET, _head, 0, LONGREC_PREFIX_SIZE);
+            _headSize = LONGREC_PREFIX_SIZE;
+            _remaining = Buffer.decodeLongRecordDescriptorSize(bytes, 0) - LONGREC_PREFIX_SIZE;
+            _page = Buffer.decodeLongRecordDescriptorPointer(bytes, 0);
+            _segment = new byte[_volume.getPageSize() - HEADER_SIZE];
+            _descriptor = new byte[size];
+            System.arraycopy(bytes, 0, _descriptor, 0, size);
+            _exchange = new Exchange(_tree);
+            exchange.getKey().copyTo(_exchange.getKey());
+            _check = new Value(exchange.getPersistitInstance());
+        } else {
+            if (!Value.isByteArrayPrefix(bytes, 0, size)) {
+                throw new ConversionException("Value is not a byte array");
+            }
+            _head = new byte[size];
+            System.arraycopy(bytes, 0, _head, 0, size);
+            _headSize = size;
+        }
+        _headPosition = Value.BYTE_ARRAY_PREFIX_SIZE;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(_oneByte, 0, 1) == 1 ? _oneByte[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int offset, final int length) throws IOException {
+        if (offset < 0 || length < 0 || length > b.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        checkClosed();
+        if (length == 0) {
+            return 0;
+        }
+        if (_headPosition < _headSize) {
+            final int count = Math.min(length, _headSize - _headPosition);
+            System.arraycopy(_head, _headPosition, b, offset, count);
+            _headPosition += count;
+            return count;
+        }
+        if (_segmentPosition == _segmentSize) {
+            if (_remaining == 0) {
+                return -1;
+            }
+            try {
+                nextSegment();
+            } catch (PersistitException e) {
+                throw new IOException(e);
+            }
+        }
+        final int count = Math.min(length, _segmentSize - _segmentPosition);
+        System.arraycopy(_segment, _segmentPosition, b, offset, count);
+        _segmentPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        checkClosed();
+        return _headSize - _headPosition + _segmentSize - _segmentPosition;
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        _head = null;
+        _segment = null;
+        _exchange = null;
+        _check = null;
+    }
+
+    private void checkClosed() throws IOException {
+        if (_closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Copy the next page of the chain into <code>_segment</code>, verify that
+     * the record still refers to the same chain and, when half of the pages
+     * last requested have been consumed, request read-ahead of the pages that
+     * follow.
+     */
+    private void nextSegment() throws PersistitException {
+        if (_page == 0) {
+            throw new CorruptVolumeException("LONG_RECORD chain ends with " + _remaining + " bytes remaining");
+        }
+        final Buffer buffer = _volume.getPool().get(_volume, _page, false, true, _tree);
+        final int size;
+        try {
+            if (buffer.getPageType() != PAGE_TYPE_LONG_RECORD) {
+                throw new CorruptVolumeException("LONG_RECORD chain is invalid at page " + _page
+                        + " - invalid page type: " + buffer);
+            }
+            size = Math.min(buffer.getBufferSize() - HEADER_SIZE, _remaining);
+            System.arraycopy(buffer.getBytes(), HEADER_SIZE, _segment, 0, size);
+            _page = buffer.getRightSibling();
+        } finally {
+            buffer.releaseTouched();
+        }
+        if (!_exchange.fetchDescriptor(_check) || _check.getEncodedSize() != _descriptor.length
+                || !Util.bytesEqual(_check.getEncodedBytes(), 0, _descriptor)) {
+            throw new CorruptVolumeException("LONG_RECORD for key " + _exchange.getKey()
+                    + " was changed by a concurrent update while being read");
+        }
+        _remaining -= size;
+        _segmentPosition = 0;
+        _segmentSize = size;
+        if (_remaining > 0 && --_readAheadRemaining <= READ_AHEAD_DEPTH / 2) {
+            _volume.getPool().readAheadChain(_volume, _tree, _page, PAGE_TYPE_LONG_RECORD, READ_AHEAD_DEPTH);
+            _readAheadRemaining = READ_AHEAD_DEPTH;
+        }
+    }
+}
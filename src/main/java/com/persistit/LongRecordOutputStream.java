@@ -0,0 +1,247 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static com.persistit.Buffer.HEADER_SIZE;
+import static com.persistit.Buffer.LONGREC_PREFIX_OFFSET;
+import static com.persistit.Buffer.LONGREC_PREFIX_SIZE;
+import static com.persistit.Buffer.LONGREC_SIZE;
+import static com.persistit.Buffer.PAGE_TYPE_LONG_RECORD;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.persistit.exception.PersistitException;
+
+/**
+ * <p>
+ * <code>OutputStream</code> returned by {@link Exchange#storeStream()} that
+ * writes the elements of a <code>byte</code> array value. Unlike
+ * {@link LongRecordHelper#storeLongRecord(Value, boolean)}, which writes a
+ * LONG_RECORD chain from a value held entirely in memory, this class fills the
+ * pages of the chain from left to right as bytes are written, so that no more
+ * than one page of the record is held in memory regardless of its size.
+ * </p>
+ * <p>
+ * Each page is allocated, and linked from its left sibling, before it is
+ * filled; until then it is an empty LONG_RECORD page. The chain therefore
+ * remains well formed at every step and is returned to the garbage chain in
+ * its entirety if the stream fails. As in <code>storeLongRecord</code>, a
+ * page filled within a transaction is written to the journal immediately so
+ * that recovery can rebuild the record.
+ * </p>
+ * <p>
+ * {@link #close()} stores the record: as an ordinary value if it turned out
+ * to be small enough, otherwise as a LONG_RECORD descriptor pointing to the
+ * chain.
+ * </p>
+ */
+class LongRecordOutputStream extends OutputStream {
+
+    private final Persistit _persistit;
+    private final Exchange _exchange;
+    private final Volume _volume;
+    private final Tree _tree;
+    private final Key _key;
+    private final boolean _inTxn;
+    private final int _maximumSize;
+
+    private byte[] _head = new byte[LONGREC_PREFIX_SIZE];
+    private int _headSize;
+
+    private byte[] _segment;
+    private int _segmentSize;
+
+    private int _size;
+    private long _firstPage;
+    private long _currentPage;
+
+    private final byte[] _oneByte = new byte[1];
+    private boolean _closed;
+
+    LongRecordOutputStream(final Exchange exchange) {
+        _persistit = exchange.getPersistitInstance();
+        _exchange = exchange;
+        _volume = exchange.getVolume();
+        _tree = exchange.getTree();
+        _key = new Key(exchange.getKey());
+        _inTxn = exchange.getTransaction().isActive();
+        /*
+         * Recovery rebuilds a LONG_RECORD written by a transaction in a Value
+         */
+        _maximumSize = _inTxn ? Value.MAXIMUM_SIZE : Integer.MAX_VALUE;
+        _segment = new byte[_volume.getPageSize() - HEADER_SIZE];
+        Value.encodeByteArrayPrefix(_head, 0);
+        _headSize = Value.BYTE_ARRAY_PREFIX_SIZE;
+        _size = _headSize;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        _oneByte[0] = (byte) b;
+        write(_oneByte, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || length > b.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (_closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length > _maximumSize - _size) {
+            abort();
+            throw new IOException("Value larger than " + _maximumSize + " bytes cannot be stored in a transaction");
+        }
+        try {
+            while (length > 0) {
+                final int count;
+                if (_headSize < _head.length) {
+                    count = Math.min(length, _head.length - _headSize);
+                    System.arraycopy(b, offset, _head, _headSize, count);
+                    _headSize += count;
+                } else {
+                    if (_segmentSize == _segment.length) {
+                        writeSegment(false);
+                    }
+                    count = Math.min(length, _segment.length - _segmentSize);
+                    System.arraycopy(b, offset, _segment, _segmentSize, count);
+                    _segmentSize += count;
+                }
+                offset += count;
+                length -= count;
+                _size += count;
+            }
+        } catch (PersistitException e) {
+            abort();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write any remaining bytes and store the record under the key the
+     * <code>Exchange</code> held when the stream was created. This method
+     * must be called in the thread that owns the <code>Exchange</code>.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        try {
+            final Value value = new Value(_persistit);
+            if (_firstPage == 0 && _size <= _exchange.maxValueSize(_key.getEncodedSize())) {
+                value.ensureFit(_size);
+                System.arraycopy(_head, 0, value.getEncodedBytes(), 0, _headSize);
+                System.arraycopy(_segment, 0, value.getEncodedBytes(), _headSize, _segmentSize);
+                value.setEncodedSize(_size);
+            } else {
+                writeSegment(true);
+                final byte[] descriptor = new byte[LONGREC_SIZE];
+                Buffer.writeLongRecordDescriptor(descriptor, _size, _firstPage);
+                System.arraycopy(_head, 0, descriptor, LONGREC_PREFIX_OFFSET, LONGREC_PREFIX_SIZE);
+                value.putEncodedBytes(descriptor, 0, LONGREC_SIZE);
+            }
+            _exchange.store(_key, value);
+            _firstPage = 0;
+        } catch (PersistitException e) {
+            throw new IOException(e);
+        } finally {
+            abort();
+        }
+    }
+
+    /**
+     * Return the chain written so far, if it has not been stored, to the
+     * garbage chain and release the stream's memory.
+     */
+    private void abort() throws IOException {
+        _closed = true;
+        _head = null;
+        _segment = null;
+        if (_firstPage != 0) {
+            final long page = _firstPage;
+            _firstPage = 0;
+            try {
+                _volume.getStructure().deallocateGarbageChain(page, 0);
+            } catch (PersistitException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Write <code>_segment</code> into the page allocated for it, first
+     * allocating the page that follows unless this is the last segment.
+     */
+    private void writeSegment(final boolean last) throws PersistitException {
+        if (_currentPage == 0) {
+            _currentPage = allocatePage();
+            _firstPage = _currentPage;
+        }
+        final long next = last ? 0 : allocatePage();
+        boolean linked = false;
+        try {
+            final Buffer buffer = _volume.getPool().get(_volume, _currentPage, true, true, _tree);
+            try {
+                final long timestamp = _persistit.getTimestampAllocator().updateTimestamp();
+                buffer.writePageOnCheckpoint(timestamp);
+                buffer.init(PAGE_TYPE_LONG_RECORD);
+                System.arraycopy(_segment, 0, buffer.getBytes(), HEADER_SIZE, _segmentSize);
+                final int end = HEADER_SIZE + _segmentSize;
+                if (end < buffer.getBufferSize()) {
+                    buffer.clearBytes(end, buffer.getBufferSize());
+                }
+                buffer.setRightSibling(next);
+                buffer.setDirtyAtTimestamp(timestamp);
+                linked = true;
+                if (_inTxn) {
+                    buffer.writePage();
+                }
+            } finally {
+                buffer.releaseTouched();
+            }
+        } finally {
+            if (next != 0 && !linked) {
+                _volume.getStructure().deallocateGarbageChain(next, 0);
+            }
+        }
+        _currentPage = next;
+        _segmentSize = 0;
+    }
+
+    /**
+     * Allocate an empty LONG_RECORD page to be filled by a later call to
+     * {@link #writeSegment(boolean)}.
+     * 
+     * @return the page address
+     */
+    private long allocatePage() throws PersistitException {
+        final Buffer buffer = _volume.getStructure().allocPage(_tree);
+        try {
+            final long timestamp = _persistit.getTimestampAllocator().updateTimestamp();
+            buffer.writePageOnCheckpoint(timestamp);
+            buffer.init(PAGE_TYPE_LONG_RECORD);
+            buffer.clearBytes(HEADER_SIZE, buffer.getBufferSize());
+            buffer.setRightSibling(0);
+            buffer.setDirtyAtTimestamp(timestamp);
+            return buffer.getPageAddress();
+        } finally {
+            buffer.releaseTouched();
+        }
+    }
+}
@@ -90,6 +90,20 @@ public interface Management extends Remote, ManagementMXBean {
      */
     public BufferPoolInfo[] getBufferPoolInfoArray() throws RemoteException;
 
+    /**
+     * Change the number of buffers in the buffer pool having the specified
+     * buffer size while Persistit is running. Shrinking a pool evicts the
+     * pages held by the buffers being removed; it fails if one of them
+     * remains in use.
+     * 
+     * @param bufferSize
+     *            The buffer size of the pool
+     * @param count
+     *            The new number of buffers
+     * @throws RemoteException
+     */
+    public void setBufferCount(int bufferSize, int count) throws RemoteException;
+
     /**
      * Return an array containing a <code>RecordInfo</code> element for each
      * record in the page specified by <code>volumeName</code> and
@@ -937,6 +951,27 @@ public interface Management extends Remote, ManagementMXBean {
         int readerClaimedPageCount;
         int writerClaimedPageCount;
         long earliestDirtyTimestamp;
+        String replacementPolicy;
+        long ghostHitCount;
+        long ghostMissCount;
+        long probationEvictCount;
+        long probationHitCount;
+        long protectedHitCount;
+        int offHeapFrameCount;
+        long optimisticReadCount;
+        long optimisticRetryCount;
+        long lookupRetryCount;
+        long offHeapHitCount;
+        long offHeapMissCount;
+        long warmupPageCount;
+        long warmupLoadedCount;
+        boolean warmupActive;
+        long readAheadRequestCount;
+        long readAheadPageCount;
+        int pageWriterThreadCount;
+        long writeBatchCount;
+        long writeBatchPageCount;
+        BufferShareInfo[] bufferShares = new BufferShareInfo[0];
 
         public BufferPoolInfo() {
 
@@ -944,11 +979,21 @@ public interface Management extends Remote, ManagementMXBean {
 
         @ConstructorProperties({ "bufferSize", "bufferCount", "missCount", "hitCount", "newCount", "evictCount",
                 "writeCount", "forcedWriteCount", "forcedCheckpointWriteCount", "validPageCount", "dirtyPageCount",
-                "readerClaimedPageCount", "writerClaimedPageCount", "earliestDirtyTimestamp" })
+                "readerClaimedPageCount", "writerClaimedPageCount", "earliestDirtyTimestamp", "replacementPolicy",
+                "ghostHitCount", "ghostMissCount", "probationEvictCount", "offHeapFrameCount", "offHeapHitCount",
+                "offHeapMissCount", "optimisticReadCount", "optimisticRetryCount", "warmupPageCount",
+                "warmupLoadedCount", "warmupActive", "readAheadRequestCount", "readAheadPageCount",
+                "pageWriterThreadCount", "writeBatchCount", "writeBatchPageCount", "lookupRetryCount",
+                "probationHitCount", "protectedHitCount", "bufferShares" })
         public BufferPoolInfo(int bufferSize, int bufferCount, long missCount, long hitCount, long newCount,
                 long writeCount, long evictCount, long forcedWriteCount, long forcedCheckpointWriteCount,
                 long readCounter, int validPageCount, int dirtyPageCount, int readerClaimedPageCount,
-                int writerClaimedPageCount, long earliestDirtyTimestamp) {
+                int writerClaimedPageCount, long earliestDirtyTimestamp, String replacementPolicy, long ghostHitCount,
+                long ghostMissCount, long probationEvictCount, int offHeapFrameCount, long offHeapHitCount,
+                long offHeapMissCount, long optimisticReadCount, long optimisticRetryCount, long warmupPageCount,
+                long warmupLoadedCount, boolean warmupActive, long readAheadRequestCount, long readAheadPageCount,
+                int pageWriterThreadCount, long writeBatchCount, long writeBatchPageCount, long lookupRetryCount,
+                long probationHitCount, long protectedHitCount, BufferShareInfo[] bufferShares) {
             super();
             this.bufferSize = bufferSize;
             this.bufferCount = bufferCount;
@@ -964,6 +1009,27 @@ public interface Management extends Remote, ManagementMXBean {
             this.readerClaimedPageCount = readerClaimedPageCount;
             this.writerClaimedPageCount = writerClaimedPageCount;
             this.earliestDirtyTimestamp = earliestDirtyTimestamp;
+            this.replacementPolicy = replacementPolicy;
+            this.ghostHitCount = ghostHitCount;
+            this.ghostMissCount = ghostMissCount;
+            this.probationEvictCount = probationEvictCount;
+            this.probationHitCount = probationHitCount;
+            this.protectedHitCount = protectedHitCount;
+            this.offHeapFrameCount = offHeapFrameCount;
+            this.offHeapHitCount = offHeapHitCount;
+            this.offHeapMissCount = offHeapMissCount;
+            this.optimisticReadCount = optimisticReadCount;
+            this.optimisticRetryCount = optimisticRetryCount;
+            this.warmupPageCount = warmupPageCount;
+            this.warmupLoadedCount = warmupLoadedCount;
+            this.warmupActive = warmupActive;
+            this.readAheadRequestCount = readAheadRequestCount;
+            this.readAheadPageCount = readAheadPageCount;
+            this.pageWriterThreadCount = pageWriterThreadCount;
+            this.writeBatchCount = writeBatchCount;
+            this.writeBatchPageCount = writeBatchPageCount;
+            this.lookupRetryCount = lookupRetryCount;
+            this.bufferShares = bufferShares;
         }
 
         /**
@@ -1117,6 +1183,308 @@ public interface Management extends Remote, ManagementMXBean {
         public long getEarliestDirtyTimestamp() {
             return earliestDirtyTimestamp;
         }
+
+        /**
+         * @return Name of the page replacement policy used by this pool
+         */
+        public String getReplacementPolicy() {
+            return replacementPolicy;
+        }
+
+        /**
+         * Return the count of pages admitted to the protected set of a 2Q
+         * pool because they had recently been evicted from probation.
+         * 
+         * @return The ghost hit count
+         */
+        public long getGhostHitCount() {
+            return ghostHitCount;
+        }
+
+        /**
+         * Return the count of pages admitted on probation to a 2Q pool.
+         * 
+         * @return The ghost miss count
+         */
+        public long getGhostMissCount() {
+            return ghostMissCount;
+        }
+
+        /**
+         * Return the count of valid pages evicted from a 2Q pool while still
+         * on probation. A high value relative to the evict count indicates
+         * the policy is absorbing scans without disturbing the working set.
+         * 
+         * @return The probation evict count
+         */
+        public long getProbationEvictCount() {
+            return probationEvictCount;
+        }
+
+        /**
+         * Return the count of hits on pages of a 2Q pool while they were on
+         * probation. Such hits do not protect a page from eviction.
+         * 
+         * @return The probation hit count
+         */
+        public long getProbationHitCount() {
+            return probationHitCount;
+        }
+
+        /**
+         * Return the count of hits on pages in the protected set of a 2Q pool.
+         * Compared with the probation hit count this shows how much of the
+         * hit rate is served by the working set.
+         * 
+         * @return The protected hit count
+         */
+        public long getProtectedHitCount() {
+            return protectedHitCount;
+        }
+
+        /**
+         * Return the number of page frames in the off-heap page cache backing
+         * this pool, or zero if there is none.
+         * 
+         * @return The off-heap frame count
+         */
+        public int getOffHeapFrameCount() {
+            return offHeapFrameCount;
+        }
+
+        /**
+         * Return the count of pool misses satisfied by copying a page from the
+         * off-heap page cache.
+         * 
+         * @return The off-heap hit count
+         */
+        public long getOffHeapHitCount() {
+            return offHeapHitCount;
+        }
+
+        /**
+         * Return the count of pool misses for which the page was not found in
+         * the off-heap page cache and had to be read from the journal or
+         * volume.
+         * 
+         * @return The off-heap miss count
+         */
+        public long getOffHeapMissCount() {
+            return offHeapMissCount;
+        }
+
+        /**
+         * Return the count of index pages searched during a tree traversal
+         * without acquiring a claim on the page.
+         * 
+         * @return The optimistic read count
+         */
+        public long getOptimisticReadCount() {
+            return optimisticReadCount;
+        }
+
+        /**
+         * Return the count of optimistic index page searches that were
+         * abandoned because another thread was modifying the page, and which
+         * were then repeated with a claim.
+         * 
+         * @return The optimistic retry count
+         */
+        public long getOptimisticRetryCount() {
+            return optimisticRetryCount;
+        }
+
+        /**
+         * Return the count of pages found by a lock-free search of the hash
+         * table whose buffers had been reassigned to other pages by the time
+         * they were claimed. Each such request is repeated under a lock.
+         * 
+         * @return The lookup retry count
+         */
+        public long getLookupRetryCount() {
+            return lookupRetryCount;
+        }
+
+        /**
+         * Return the number of pages listed in the buffer inventory from which
+         * this pool was warmed up when Persistit started.
+         * 
+         * @return The warmup page count
+         */
+        public long getWarmupPageCount() {
+            return warmupPageCount;
+        }
+
+        /**
+         * Return the number of pages read into this pool so far by the warmup
+         * process.
+         * 
+         * @return The warmup loaded count
+         */
+        public long getWarmupLoadedCount() {
+            return warmupLoadedCount;
+        }
+
+        /**
+         * Indicate whether the warmup process is still running.
+         * 
+         * @return <code>true</code> if the pool is being warmed up
+         */
+        public boolean isWarmupActive() {
+            return warmupActive;
+        }
+
+        /**
+         * Return the count of requests to read pages ahead of a sequential
+         * traversal.
+         * 
+         * @return The read-ahead request count
+         */
+        public long getReadAheadRequestCount() {
+            return readAheadRequestCount;
+        }
+
+        /**
+         * Return the count of pages read into this pool by read-ahead threads.
+         * 
+         * @return The read-ahead page count
+         */
+        public long getReadAheadPageCount() {
+            return readAheadPageCount;
+        }
+
+        /**
+         * Return the number of threads that write dirty pages from this pool.
+         * 
+         * @return The page writer thread count
+         */
+        public int getPageWriterThreadCount() {
+            return pageWriterThreadCount;
+        }
+
+        /**
+         * Return the count of batches of pages written by the page writer
+         * threads. Each batch holds pages of one volume and is written with as
+         * few I/O operations as possible.
+         * 
+         * @return The write batch count
+         */
+        public long getWriteBatchCount() {
+            return writeBatchCount;
+        }
+
+        /**
+         * Return the count of pages written in batches by the page writer
+         * threads. The ratio of this value to {@link #getWriteBatchCount()}
+         * is the average batch size.
+         * 
+         * @return The write batch page count
+         */
+        public long getWriteBatchPageCount() {
+            return writeBatchPageCount;
+        }
+
+        /**
+         * Return the occupancy and the configured shares of the volumes and
+         * trees whose pages are held in this pool.
+         * 
+         * @return An array of <code>BufferShareInfo</code>, one per volume
+         *         and one per tree
+         */
+        public BufferShareInfo[] getBufferShares() {
+            return bufferShares;
+        }
+    }
+
+    /**
+     * Exposes the number of buffers in a {@link BufferPool} holding pages of
+     * one {@link Volume} or {@link Tree}, together with the minimum and
+     * maximum shares of the pool configured for it by
+     * {@link Volume#setBufferShare(int, int)} or
+     * {@link Tree#setBufferShare(int, int)}.
+     */
+    public static class BufferShareInfo implements Serializable {
+        public final static long serialVersionUID = -2375468207316512841L;
+
+        String volumeName;
+        String treeName;
+        int bufferCount;
+        int minimumShare;
+        int maximumShare;
+
+        BufferShareInfo(final Volume volume, final Tree tree) {
+            final BufferShare share = tree == null ? volume.getBufferShare() : tree.getBufferShare();
+            volumeName = volume.getName();
+            treeName = tree == null ? null : tree.getName();
+            bufferCount = share.getBufferCount();
+            minimumShare = share.getMinimumPercent();
+            maximumShare = share.getMaximumPercent();
+        }
+
+        @ConstructorProperties({ "volumeName", "treeName", "bufferCount", "minimumShare", "maximumShare" })
+        public BufferShareInfo(String volumeName, String treeName, int bufferCount, int minimumShare,
+                int maximumShare) {
+            this.volumeName = volumeName;
+            this.treeName = treeName;
+            this.bufferCount = bufferCount;
+            this.minimumShare = minimumShare;
+            this.maximumShare = maximumShare;
+        }
+
+        /**
+         * Return the name of the <code>Volume</code>.
+         * 
+         * @return the volume name
+         */
+        public String getVolumeName() {
+            return volumeName;
+        }
+
+        /**
+         * Return the name of the <code>Tree</code>, or <code>null</code> if
+         * this element describes the <code>Volume</code> as a whole.
+         * 
+         * @return the tree name
+         */
+        public String getTreeName() {
+            return treeName;
+        }
+
+        /**
+         * Return the count of buffers holding pages of the
+         * <code>Volume</code> or <code>Tree</code>.
+         * 
+         * @return the buffer count
+         */
+        public int getBufferCount() {
+            return bufferCount;
+        }
+
+        /**
+         * Return the percentage of the pool reserved for the
+         * <code>Volume</code> or <code>Tree</code>.
+         * 
+         * @return the minimum share
+         */
+        public int getMinimumShare() {
+            return minimumShare;
+        }
+
+        /**
+         * Return the largest percentage of the pool the <code>Volume</code>
+         * or <code>Tree</code> may occupy.
+         * 
+         * @return the maximum share
+         */
+        public int getMaximumShare() {
+            return maximumShare;
+        }
+
+        @Override
+        public String toString() {
+            return (treeName == null ? volumeName : volumeName + ":" + treeName) + " buffers=" + bufferCount
+                    + " share=" + minimumShare + "%-" + maximumShare + "%";
+        }
     }
 
     /**
@@ -1796,6 +2164,8 @@ public interface Management extends Remote, ManagementMXBean {
         long _traverseCounter;
         long _storeCounter;
         long _removeCounter;
+        long _bloomFilterNegativeCounter;
+        long _bloomFilterFalsePositiveCounter;
 
         TreeInfo(Tree tree) {
             super();
@@ -1811,12 +2181,19 @@ public interface Management extends Remote, ManagementMXBean {
             this._traverseCounter = stats.getTraverseCounter();
             this._storeCounter = stats.getStoreCounter();
             this._removeCounter = stats.getRemoveCounter();
+            final BloomFilter filter = tree.getBloomFilter();
+            if (filter != null) {
+                this._bloomFilterNegativeCounter = filter.getNegativeCount();
+                this._bloomFilterFalsePositiveCounter = filter.getFalsePositiveCount();
+            }
         }
 
         @ConstructorProperties({ "name", "index", "rootPageAddress", "depth", "volumePathName", "status",
-                "writerThreadName", "fetchCounter", "traverseCounter", "storeCounter", "removeCounter" })
+                "writerThreadName", "fetchCounter", "traverseCounter", "storeCounter", "removeCounter",
+                "bloomFilterNegativeCounter", "bloomFilterFalsePositiveCounter" })
         public TreeInfo(String name, long rootPageAddress, int depth, String volumePathName, String status,
-                String writerThreadName, long fetchCounter, long traverseCounter, long storeCounter, long removeCounter) {
+                String writerThreadName, long fetchCounter, long traverseCounter, long storeCounter, long removeCounter,
+                long bloomFilterNegativeCounter, long bloomFilterFalsePositiveCounter) {
             super();
             this.name = name;
             this.rootPageAddress = rootPageAddress;
@@ -1828,7 +2205,8 @@ public interface Management extends Remote, ManagementMXBean {
             this._traverseCounter = traverseCounter;
             this._storeCounter = storeCounter;
             this._removeCounter = removeCounter;
-
+            this._bloomFilterNegativeCounter = bloomFilterNegativeCounter;
+            this._bloomFilterFalsePositiveCounter = bloomFilterFalsePositiveCounter;
         }
 
         /**
@@ -1900,6 +2278,34 @@ public interface Management extends Remote, ManagementMXBean {
             return _removeCounter;
         }
 
+        /**
+         * @return the count of lookups for keys that the <code>Tree</code>'s
+         *         Bloom filter reported as definitely absent, avoiding a search
+         *         of the tree. See {@link Tree#enableBloomFilter(long)}.
+         */
+        public long getBloomFilterNegativeCounter() {
+            return _bloomFilterNegativeCounter;
+        }
+
+        /**
+         * @return the count of lookups for keys that had no value but that
+         *         the <code>Tree</code>'s Bloom filter did not reject
+         */
+        public long getBloomFilterFalsePositiveCounter() {
+            return _bloomFilterFalsePositiveCounter;
+        }
+
+        /**
+         * @return the fraction of lookups for keys having no value that the
+         *         <code>Tree</code>'s Bloom filter failed to reject, or zero if
+         *         the <code>Tree</code> has no Bloom filter or there have been
+         *         no such lookups
+         */
+        public double getBloomFilterFalsePositiveRate() {
+            final long total = _bloomFilterNegativeCounter + _bloomFilterFalsePositiveCounter;
+            return total == 0 ? 0.0d : (double) _bloomFilterFalsePositiveCounter / total;
+        }
+
         /**
          * Return the status code for this Tree.
          * 
@@ -355,6 +355,30 @@ class ManagementImpl implements Management {
         return result;
     }
 
+    /**
+     * Change the number of buffers in the buffer pool having the specified
+     * buffer size. See {@link BufferPool#setBufferCount(int)}.
+     * 
+     * @param bufferSize
+     *            The buffer size of the pool
+     * @param count
+     *            The new number of buffers
+     * @throws RemoteException
+     */
+    @Override
+    public void setBufferCount(int bufferSize, int count) throws RemoteException {
+        final BufferPool pool = _persistit.getBufferPoolHashMap().get(bufferSize);
+        if (pool == null) {
+            throw new WrappedRemoteException(new IllegalArgumentException("No buffer pool for buffer size "
+                    + bufferSize));
+        }
+        try {
+            pool.setBufferCount(count);
+        } catch (PersistitException e) {
+            throw new WrappedRemoteException(e);
+        }
+    }
+
     @Override
     public JournalInfo getJournalInfo() {
         final JournalInfo info = new JournalInfo();
@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.exception.PersistitException;
+
+/**
+ * Interface for application logic that combines merge operands written by
+ * {@link Exchange#mergeStore()} into the value of a record. Register an
+ * implementation for a {@link Tree} with
+ * {@link Tree#setMergeOperator(MergeOperator)}.
+ * <p>
+ * Operands are applied in the order in which they were written, to the value
+ * stored in the tree or to an undefined value if there is none. Operands
+ * written by concurrent transactions become visible in the order the
+ * transactions commit, which may differ from the order in which they were
+ * written; an operator whose result does not depend on the order of its
+ * operands, such as a sum or a set union, therefore gives the same result
+ * regardless of how transactions interleave.
+ * </p>
+ */
+public interface MergeOperator {
+    /**
+     * Apply one operand to a value. This method is called while fetching and
+     * while folding operands into the stored value, so it must not perform
+     * Persistit operations.
+     * 
+     * @param key
+     *            the key of the record, which must not be modified
+     * @param value
+     *            the value to which the operand is applied, which may be
+     *            undefined; modify it in place
+     * @param operand
+     *            the operand, as written by <code>mergeStore</code>
+     * @throws PersistitException
+     */
+    public void merge(Key key, Value value, Value operand) throws PersistitException;
+}
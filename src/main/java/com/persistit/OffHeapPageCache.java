@@ -0,0 +1,441 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.persistit.exception.InvalidPageStructureException;
+import com.persistit.util.Debug;
+
+/**
+ * <p>
+ * Second-level victim cache of clean pages held outside the Java heap. A
+ * {@link BufferPool} may be configured with an <code>OffHeapPageCache</code>
+ * (see {@link Configuration#BUFFER_OFFHEAP_PROPERTY_NAME}). When a valid page
+ * is evicted from the pool its image is copied into a frame of a
+ * direct-memory slab; when the pool later misses on that page the image is
+ * copied back instead of being read from the journal or volume file.
+ * </p>
+ * <p>
+ * This cache saves I/O, not heap. Every page the pool holds still occupies
+ * the heap <code>byte[]</code> of its {@link Buffer}, and every access to a
+ * page goes through that array, so the heap size and garbage collection cost
+ * of the pool itself are unchanged. A page moves between the pool and the
+ * slab only by copying: one page copy per eviction of a clean page and one
+ * per miss satisfied here. What the slab adds is room for pages beyond the
+ * pool, which costs no garbage collection work.
+ * </p>
+ * <p>
+ * A page is held either in the <code>BufferPool</code> or in this cache, never
+ * both: a page is removed from this cache when it is loaded back into the pool
+ * or when a new page image is created at the same address. Because only clean
+ * pages are stored, an image in this cache is always identical to the durable
+ * image and may be discarded at any time.
+ * </p>
+ * <p>
+ * Frames are divided among up to {@value #STRIPES} stripes, each with its own
+ * lock, hash table and recycling order; a page belongs to the stripe selected
+ * by its hash. Copying a page image therefore blocks only threads that use
+ * the same stripe. Within a stripe, frames are recycled in
+ * least-recently-stored order.
+ * </p>
+ * <p>
+ * The slab is allocated as a small number of direct <code>ByteBuffer</code>
+ * chunks, each holding up to {@value #CHUNK_SIZE} bytes. A frame is described
+ * only by its index; the index arrays are the only per-frame heap overhead. The
+ * JVM's direct memory limit (<code>-XX:MaxDirectMemorySize</code>) must be
+ * large enough to hold the slab.
+ * </p>
+ */
+class OffHeapPageCache {
+
+    final static int CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Maximum number of stripes
+     */
+    final static int STRIPES = 16;
+
+    /**
+     * Minimum number of frames in a stripe
+     */
+    final static int MIN_STRIPE_FRAMES = 64;
+
+    private final static int NIL = -1;
+
+    private final int _pageSize;
+
+    private final int _frameCount;
+
+    private final int _framesPerChunk;
+
+    private final ByteBuffer[] _chunks;
+
+    private final Stripe[] _stripes;
+
+    /*
+     * Identity of the page held by each frame. A frame with page address -1 is
+     * free.
+     */
+    private final long[] _volumeIds;
+
+    private final long[] _pages;
+
+    /*
+     * Links of the hash chains of each stripe
+     */
+    private final int[] _hashNext;
+
+    /*
+     * Doubly-linked lists of occupied frames of each stripe in order of
+     * storage; free frames are linked through _lruNext.
+     */
+    private final int[] _lruPrev;
+
+    private final int[] _lruNext;
+
+    private final AtomicLong _hitCounter = new AtomicLong();
+
+    private final AtomicLong _missCounter = new AtomicLong();
+
+    private final AtomicLong _storeCounter = new AtomicLong();
+
+    /**
+     * A contiguous range of frames with its own lock, which is the
+     * <code>Stripe</code> itself. All fields and all per-frame array elements
+     * of the stripe's frames are guarded by that lock.
+     */
+    private class Stripe {
+
+        private final int _first;
+
+        private final int _count;
+
+        /*
+         * Hash table of frame chains keyed by (volumeId, page)
+         */
+        private final int[] _hashTable;
+
+        private int _lruHead = NIL;
+
+        private int _lruTail = NIL;
+
+        private int _free;
+
+        private int _occupied;
+
+        Stripe(final int first, final int count) {
+            _first = first;
+            _count = count;
+            _hashTable = new int[count * 2];
+            clear();
+        }
+
+        private void clear() {
+            for (int index = 0; index < _hashTable.length; index++) {
+                _hashTable[index] = NIL;
+            }
+            final int end = _first + _count;
+            for (int frame = _first; frame < end; frame++) {
+                _pages[frame] = -1;
+                _volumeIds[frame] = 0;
+                _hashNext[frame] = NIL;
+                _lruPrev[frame] = NIL;
+                _lruNext[frame] = frame + 1 < end ? frame + 1 : NIL;
+            }
+            _free = _first;
+            _lruHead = NIL;
+            _lruTail = NIL;
+            _occupied = 0;
+        }
+
+        private int slot(final long volumeId, final long page) {
+            return (hash(volumeId, page) / _stripes.length) % _hashTable.length;
+        }
+
+        private int find(final long volumeId, final long page) {
+            for (int frame = _hashTable[slot(volumeId, page)]; frame != NIL; frame = _hashNext[frame]) {
+                if (_pages[frame] == page && _volumeIds[frame] == volumeId) {
+                    return frame;
+                }
+            }
+            return NIL;
+        }
+
+        private int allocate(final long volumeId, final long page) {
+            if (_free == NIL) {
+                remove(_lruHead);
+            }
+            final int frame = _free;
+            _free = _lruNext[frame];
+            _occupied++;
+            _volumeIds[frame] = volumeId;
+            _pages[frame] = page;
+            final int slot = slot(volumeId, page);
+            _hashNext[frame] = _hashTable[slot];
+            _hashTable[slot] = frame;
+            return frame;
+        }
+
+        private void remove(final int frame) {
+            final int slot = slot(_volumeIds[frame], _pages[frame]);
+            if (_hashTable[slot] == frame) {
+                _hashTable[slot] = _hashNext[frame];
+            } else {
+                int prev = _hashTable[slot];
+                while (_hashNext[prev] != frame) {
+                    prev = _hashNext[prev];
+                }
+                _hashNext[prev] = _hashNext[frame];
+            }
+            unlinkLru(frame);
+            _hashNext[frame] = NIL;
+            _pages[frame] = -1;
+            _volumeIds[frame] = 0;
+            _lruNext[frame] = _free;
+            _free = frame;
+            _occupied--;
+        }
+
+        private void invalidate(final long volumeId) {
+            for (int frame = _lruHead; frame != NIL;) {
+                final int next = _lruNext[frame];
+                if (_volumeIds[frame] == volumeId) {
+                    remove(frame);
+                }
+                frame = next;
+            }
+        }
+
+        private void linkLru(final int frame) {
+            _lruPrev[frame] = _lruTail;
+            _lruNext[frame] = NIL;
+            if (_lruTail == NIL) {
+                _lruHead = frame;
+            } else {
+                _lruNext[_lruTail] = frame;
+            }
+            _lruTail = frame;
+        }
+
+        private void unlinkLru(final int frame) {
+            final int prev = _lruPrev[frame];
+            final int next = _lruNext[frame];
+            if (prev == NIL) {
+                _lruHead = next;
+            } else {
+                _lruNext[prev] = next;
+            }
+            if (next == NIL) {
+                _lruTail = prev;
+            } else {
+                _lruPrev[next] = prev;
+            }
+            _lruPrev[frame] = NIL;
+            _lruNext[frame] = NIL;
+        }
+    }
+
+    /**
+     * Construct a cache for pages of the specified size, allocating as many
+     * frames as will fit in the specified amount of memory.
+     * 
+     * @param memory
+     *            Size of the slab in bytes
+     * @param pageSize
+     *            Size of each page
+     * @throws IllegalArgumentException
+     *             if the memory size does not allow at least one frame
+     */
+    OffHeapPageCache(final long memory, final int pageSize) {
+        final long frames = memory / pageSize;
+        if (frames < 1 || frames > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Invalid off-heap page cache size: " + memory);
+        }
+        _pageSize = pageSize;
+        _frameCount = (int) frames;
+        _framesPerChunk = CHUNK_SIZE / pageSize;
+        final int chunkCount = (_frameCount + _framesPerChunk - 1) / _framesPerChunk;
+        _chunks = new ByteBuffer[chunkCount];
+        for (int index = 0; index < chunkCount; index++) {
+            final int framesInChunk = Math.min(_framesPerChunk, _frameCount - index * _framesPerChunk);
+            _chunks[index] = ByteBuffer.allocateDirect(framesInChunk * pageSize);
+        }
+        _volumeIds = new long[_frameCount];
+        _pages = new long[_frameCount];
+        _hashNext = new int[_frameCount];
+        _lruPrev = new int[_frameCount];
+        _lruNext = new int[_frameCount];
+        _stripes = new Stripe[Math.max(1, Math.min(STRIPES, _frameCount / MIN_STRIPE_FRAMES))];
+        int first = 0;
+        for (int index = 0; index < _stripes.length; index++) {
+            final int count = (_frameCount - first) / (_stripes.length - index);
+            _stripes[index] = new Stripe(first, count);
+            first += count;
+        }
+    }
+
+    /**
+     * Copy the image of the page held by the supplied <code>Buffer</code>
+     * into a frame, displacing the least recently stored page of its stripe
+     * if necessary. The caller must hold a writer claim on the buffer and the
+     * buffer must not be dirty.
+     * 
+     * @param buffer
+     */
+    void store(final Buffer buffer) {
+        Debug.$assert1.t(buffer.isMine() && !buffer.isDirty());
+        final long volumeId = buffer.getVolumeId();
+        final long page = buffer.getPageAddress();
+        if (volumeId == 0 || page == 0) {
+            return;
+        }
+        final Stripe stripe = stripe(volumeId, page);
+        synchronized (stripe) {
+            int frame = stripe.find(volumeId, page);
+            if (frame == NIL) {
+                frame = stripe.allocate(volumeId, page);
+            } else {
+                stripe.unlinkLru(frame);
+            }
+            stripe.linkLru(frame);
+            final ByteBuffer bb = frameBuffer(frame);
+            bb.put(buffer.getBytes(), 0, _pageSize);
+        }
+        _storeCounter.incrementAndGet();
+    }
+
+    /**
+     * Attempt to load the page identified by the supplied
+     * <code>Buffer</code>'s volume and page address from this cache. If the
+     * page is found its image is copied into the buffer, the frame is
+     * released, and the buffer's fields are loaded from the image.
+     * 
+     * @param buffer
+     * @return <code>true</code> if the page was found
+     * @throws InvalidPageStructureException
+     */
+    boolean load(final Buffer buffer) throws InvalidPageStructureException {
+        final long volumeId = buffer.getVolumeId();
+        final long page = buffer.getPageAddress();
+        final Stripe stripe = stripe(volumeId, page);
+        synchronized (stripe) {
+            final int frame = stripe.find(volumeId, page);
+            if (frame == NIL) {
+                _missCounter.incrementAndGet();
+                return false;
+            }
+            final ByteBuffer bb = frameBuffer(frame);
+            bb.get(buffer.getBytes(), 0, _pageSize);
+            stripe.remove(frame);
+        }
+        _hitCounter.incrementAndGet();
+        buffer.load();
+        return true;
+    }
+
+    /**
+     * Discard the image of the specified page, if present.
+     * 
+     * @param volume
+     * @param page
+     */
+    void discard(final Volume volume, final long page) {
+        final long volumeId = volume.getId();
+        final Stripe stripe = stripe(volumeId, page);
+        synchronized (stripe) {
+            final int frame = stripe.find(volumeId, page);
+            if (frame != NIL) {
+                stripe.remove(frame);
+            }
+        }
+    }
+
+    /**
+     * Discard all pages belonging to the specified volume, or all pages if
+     * the volume is <code>null</code>.
+     * 
+     * @param volume
+     */
+    void invalidate(final Volume volume) {
+        for (final Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                if (volume == null) {
+                    stripe.clear();
+                } else {
+                    stripe.invalidate(volume.getId());
+                }
+            }
+        }
+    }
+
+    int getFrameCount() {
+        return _frameCount;
+    }
+
+    int getStripeCount() {
+        return _stripes.length;
+    }
+
+    int getOccupiedCount() {
+        int occupied = 0;
+        for (final Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                occupied += stripe._occupied;
+            }
+        }
+        return occupied;
+    }
+
+    long getHitCounter() {
+        return _hitCounter.get();
+    }
+
+    long getMissCounter() {
+        return _missCounter.get();
+    }
+
+    long getStoreCounter() {
+        return _storeCounter.get();
+    }
+
+    void resetCounters() {
+        _hitCounter.set(0);
+        _missCounter.set(0);
+        _storeCounter.set(0);
+    }
+
+    private int hash(final long volumeId, final long page) {
+        return (int) ((page ^ (volumeId * 31)) & Integer.MAX_VALUE);
+    }
+
+    private Stripe stripe(final long volumeId, final long page) {
+        return _stripes[hash(volumeId, page) % _stripes.length];
+    }
+
+    private ByteBuffer frameBuffer(final int frame) {
+        final ByteBuffer bb = _chunks[frame / _framesPerChunk].duplicate();
+        final int position = (frame % _framesPerChunk) * _pageSize;
+        bb.limit(position + _pageSize).position(position);
+        return bb;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapPageCache[" + getOccupiedCount() + "/" + _frameCount + "@" + _pageSize + "]";
+    }
+}
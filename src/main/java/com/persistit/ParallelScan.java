@@ -0,0 +1,356 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static com.persistit.Key.GT;
+import static com.persistit.Key.GTEQ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.persistit.KeyHistogram.KeyCount;
+import com.persistit.exception.PersistitException;
+import com.persistit.exception.PersistitInterruptedException;
+
+/**
+ * <p>
+ * Scans a range of keys in a {@link Tree} on several threads at once. The
+ * range is divided into partitions of roughly equal size using separator keys
+ * taken from the index pages of the tree: the scan starts with the level just
+ * below the root and descends one level at a time until it finds enough
+ * separator keys to form the requested number of partitions. Because every
+ * index key bounds a page of the level below it, the partitions contain
+ * similar numbers of pages, and reading the separators touches only a small
+ * fraction of the tree.
+ * </p>
+ * <p>
+ * Each partition is then scanned by a worker thread using its own
+ * {@link Exchange}, and every record is passed to a {@link RecordVisitor}.
+ * Partitions are scanned in no particular order, and the visitor is invoked
+ * concurrently from several threads, so it must be thread-safe. Within one
+ * partition records are visited in key order.
+ * </p>
+ * <p>
+ * Workers read outside of any transaction the calling thread may have begun;
+ * each sees the committed state of the tree as of the moment it reads each
+ * record, as does an ordinary <code>Exchange</code> used outside a
+ * transaction.
+ * </p>
+ */
+public class ParallelScan {
+
+    /**
+     * Default number of partitions per worker thread. Using more partitions
+     * than threads evens out the work when some partitions are more costly to
+     * scan than others.
+     */
+    public final static int DEFAULT_PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * Callback invoked for each record visited by a <code>ParallelScan</code>
+     */
+    public static interface RecordVisitor {
+        /**
+         * Visit one record. The supplied <code>Exchange</code> belongs to the
+         * worker thread; its <code>Key</code> and <code>Value</code> hold the
+         * record and are valid only until this method returns. The
+         * <code>Exchange</code> must not be used to modify the tree.
+         * 
+         * @param exchange
+         *            the worker's <code>Exchange</code>
+         * @return <code>true</code> to continue the scan, or
+         *         <code>false</code> to stop all workers
+         * @throws PersistitException
+         */
+        boolean visit(Exchange exchange) throws PersistitException;
+    }
+
+    private final Persistit _persistit;
+
+    private final Exchange _exchange;
+
+    private final Tree _tree;
+
+    private int _threadCount = Runtime.getRuntime().availableProcessors();
+
+    private int _partitionCount = _threadCount * DEFAULT_PARTITIONS_PER_THREAD;
+
+    /**
+     * Construct a <code>ParallelScan</code> over the <code>Tree</code> of the
+     * supplied <code>Exchange</code>. The <code>Exchange</code> is used by the
+     * calling thread to compute partitions; the workers use their own.
+     * 
+     * @param exchange
+     *            an <code>Exchange</code> on the tree to scan
+     */
+    public ParallelScan(final Exchange exchange) {
+        _exchange = exchange;
+        _persistit = exchange.getPersistitInstance();
+        _tree = exchange.getTree();
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreadCount() {
+        return _threadCount;
+    }
+
+    /**
+     * Set the number of worker threads. The default is the number of
+     * available processors; a larger number may be useful when the tree is
+     * not cached and the storage device serves concurrent reads well.
+     * 
+     * @param threadCount
+     *            the number of worker threads
+     */
+    public void setThreadCount(final int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        _threadCount = threadCount;
+    }
+
+    /**
+     * @return the number of partitions the range is divided into
+     */
+    public int getPartitionCount() {
+        return _partitionCount;
+    }
+
+    /**
+     * Set the number of partitions the range is divided into. The default is
+     * {@value #DEFAULT_PARTITIONS_PER_THREAD} per thread of the default thread
+     * count. Fewer partitions are used if the tree has too few index keys in
+     * the range.
+     * 
+     * @param partitionCount
+     *            the number of partitions
+     */
+    public void setPartitionCount(final int partitionCount) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive: " + partitionCount);
+        }
+        _partitionCount = partitionCount;
+    }
+
+    /**
+     * Compute the keys that divide a range into partitions. Each returned key
+     * is the first key of one partition after the first; the keys are in
+     * ascending order and lie strictly between <code>start</code> and
+     * <code>end</code>. The list is empty if the tree has no index level or
+     * the range spans a single page.
+     * 
+     * @param start
+     *            the first key of the range, or <code>null</code> for the
+     *            beginning of the tree
+     * @param end
+     *            the last key of the range, or <code>null</code> for the end
+     *            of the tree
+     * @param partitionCount
+     *            the desired number of partitions
+     * @return the list of separator keys, at most
+     *         <code>partitionCount - 1</code> long
+     * @throws PersistitException
+     */
+    public List<Key> partition(final Key start, final Key end, final int partitionCount) throws PersistitException {
+        final List<Key> separators = new ArrayList<Key>();
+        final int wanted = partitionCount - 1;
+        if (wanted <= 0) {
+            return separators;
+        }
+        KeyHistogram histogram = null;
+        for (int level = _tree.getDepth() - 1; level > 0; level--) {
+            histogram = _exchange.computeHistogram(start, end, wanted, 0, null, level);
+            if (histogram.getKeyCount() >= partitionCount) {
+                break;
+            }
+        }
+        if (histogram == null) {
+            return separators;
+        }
+        Key previous = start;
+        for (final KeyCount sample : histogram.getSamples()) {
+            final Key key = new Key(_persistit);
+            System.arraycopy(sample.getBytes(), 0, key.getEncodedBytes(), 0, sample.getBytes().length);
+            key.setEncodedSize(sample.getBytes().length);
+            if (key.isRightEdge() || end != null && key.compareTo(end) > 0) {
+                break;
+            }
+            if (previous == null || key.compareTo(previous) > 0) {
+                separators.add(key);
+                previous = key;
+            }
+        }
+        return separators;
+    }
+
+    /**
+     * Visit every record in the tree. See {@link #scan(Key, Key, RecordVisitor)}.
+     * 
+     * @param visitor
+     *            the <code>RecordVisitor</code>
+     * @return the number of records visited
+     * @throws PersistitException
+     */
+    public long scan(final RecordVisitor visitor) throws PersistitException {
+        return scan(null, null, visitor);
+    }
+
+    /**
+     * Visit every record with a key between <code>start</code> and
+     * <code>end</code>, inclusive, using {@link #getThreadCount()} worker
+     * threads. This method returns when every partition has been scanned, a
+     * visitor has returned <code>false</code>, or a worker has failed. In the
+     * last case the exception thrown by the first failing worker is rethrown
+     * after the remaining workers have stopped.
+     * 
+     * @param start
+     *            the first key, or <code>null</code> for the beginning of the
+     *            tree
+     * @param end
+     *            the last key, or <code>null</code> for the end of the tree
+     * @param visitor
+     *            the <code>RecordVisitor</code>
+     * @return the number of records visited
+     * @throws PersistitException
+     */
+    public long scan(final Key start, final Key end, final RecordVisitor visitor) throws PersistitException {
+        final List<Key> separators = partition(start, end, _partitionCount);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicLong visited = new AtomicLong();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        final ExecutorService executor = newExecutor(Math.min(_threadCount, separators.size() + 1));
+        try {
+            for (int index = 0; index <= separators.size(); index++) {
+                final Key from = index == 0 ? start : separators.get(index - 1);
+                final Key to = index == separators.size() ? end : separators.get(index);
+                final boolean inclusive = index == separators.size();
+                futures.add(executor.submit(new Partition(from, to, inclusive, visitor, stopped, visited)));
+            }
+            PersistitException failure = null;
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final InterruptedException e) {
+                    stopped.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new PersistitInterruptedException(e);
+                } catch (final ExecutionException e) {
+                    stopped.set(true);
+                    if (failure == null) {
+                        final Throwable cause = e.getCause();
+                        if (cause instanceof PersistitException) {
+                            failure = (PersistitException) cause;
+                        } else if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        } else {
+                            throw new RuntimeException(cause);
+                        }
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            stopped.set(true);
+            executor.shutdown();
+        }
+        return visited.get();
+    }
+
+    private ExecutorService newExecutor(final int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            final AtomicInteger _counter = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "PARALLEL_SCAN:" + _tree.getName() + ":"
+                        + _counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Scans the keys from <code>_from</code> (inclusive) to <code>_to</code>
+     * (exclusive unless <code>_inclusive</code>).
+     */
+    private class Partition implements Callable<Void> {
+
+        private final Key _from;
+
+        private final Key _to;
+
+        private final boolean _inclusive;
+
+        private final RecordVisitor _visitor;
+
+        private final AtomicBoolean _stopped;
+
+        private final AtomicLong _visited;
+
+        Partition(final Key from, final Key to, final boolean inclusive, final RecordVisitor visitor,
+                final AtomicBoolean stopped, final AtomicLong visited) {
+            _from = from;
+            _to = to;
+            _inclusive = inclusive;
+            _visitor = visitor;
+            _stopped = stopped;
+            _visited = visited;
+        }
+
+        @Override
+        public Void call() throws PersistitException {
+            final Exchange exchange = new Exchange(_tree);
+            final Key key = exchange.getKey();
+            Key.Direction direction = GTEQ;
+            if (_from == null) {
+                key.append(Key.BEFORE);
+                direction = GT;
+            } else {
+                _from.copyTo(key);
+            }
+            while (!_stopped.get() && exchange.traverse(direction, true)) {
+                direction = GT;
+                if (_to != null) {
+                    final int compare = key.compareTo(_to);
+                    if (compare > 0 || compare == 0 && !_inclusive) {
+                        break;
+                    }
+                }
+                _visited.incrementAndGet();
+                if (!_visitor.visit(exchange)) {
+                    _stopped.set(true);
+                }
+            }
+            return null;
+        }
+    }
+}
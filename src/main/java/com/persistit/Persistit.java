@@ -589,15 +589,15 @@ public class Persistit {
                 initializeVolumes();
                 startJournal();
                 startBufferPools();
-                if (_configuration.getBufferInventoryPathName() != null) {
-                    warmupBufferPools();
-                }
                 finishRecovery();
                 startCheckpointManager();
                 startTransactionIndexPollTask();
                 flush();
                 _checkpointManager.checkpoint();
                 _journalManager.pruneObsoleteTransactions(true);
+                if (_configuration.getBufferInventoryPathName() != null) {
+                    warmupBufferPools();
+                }
 
                 startCleanupManager();
                 _initialized.set(true);
@@ -654,7 +654,8 @@ public class Persistit {
             if (poolSize > 0) {
                 final int bufferSize = config.getBufferSize();
                 _logBase.allocateBuffers.log(poolSize, bufferSize);
-                BufferPool pool = new BufferPool(poolSize, bufferSize, this);
+                BufferPool pool = new BufferPool(poolSize, bufferSize, config.getReplacementPolicy(),
+                        config.getOffHeapMemory(), this);
                 _bufferPoolTable.put(bufferSize, pool);
                 if (_configuration.isJmxEnabled()) {
                     registerBufferPoolMXBean(bufferSize);
@@ -720,10 +721,10 @@ public class Persistit {
         }
     }
     
-    void warmupBufferPools() throws PersistitException {
+    void warmupBufferPools() {
         String pathName = _configuration.getBufferInventoryPathName();
         for (final BufferPool pool : _bufferPoolTable.values()) {
-            pool.warmupBufferPool(pathName, pool.toString());
+            pool.warmupBufferPool(pathName);
         }
     }
 
@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.exception.PersistitException;
+
+/**
+ * Interface for application logic that inspects records in place. Use this
+ * interface in conjunction with the
+ * {@link Exchange#fetch(RawRecordVisitor)} and
+ * {@link Exchange#next(RawRecordVisitor)} methods, which supply the encoded
+ * bytes of each value directly from the page holding it rather than copying
+ * them into a {@link Value}. Unlike {@link ParallelScan.RecordVisitor}, which
+ * receives an <code>Exchange</code> holding a copy of each record, a
+ * <code>RawRecordVisitor</code> sees only the raw encoded value.
+ */
+public interface RawRecordVisitor {
+    /**
+     * <p>
+     * Inspect a record. The encoded value occupies <code>length</code> bytes of
+     * <code>bytes</code> starting at <code>offset</code>, in the form the
+     * {@link Value} would hold after {@link Exchange#fetch()}. The version
+     * visible to the current transaction has already been selected from a
+     * multi-version value. The bytes usually belong to the page itself; they
+     * must not be modified and are valid only for the duration of the call.
+     * </p>
+     * <p>
+     * This method is called while Persistit holds a reader claim on the page
+     * containing the record, so it must be brief and must not perform other
+     * Persistit operations.
+     * </p>
+     * 
+     * @param key
+     *            the key of the record, which must not be modified
+     * @param bytes
+     *            array containing the encoded value
+     * @param offset
+     *            offset of the first byte of the encoded value
+     * @param length
+     *            length of the encoded value
+     * @return <code>true</code> to accept the record
+     * @throws PersistitException
+     */
+    public boolean visit(Key key, byte[] bytes, int offset, int length) throws PersistitException;
+}
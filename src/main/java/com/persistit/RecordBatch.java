@@ -0,0 +1,219 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.util.Debug;
+
+/**
+ * <p>
+ * A reusable container for a batch of key/value pairs filled by
+ * {@link Exchange#nextBatch(RecordBatch, KeyFilter)}. The encoded bytes of
+ * the keys are stored end to end in one array and the encoded bytes of the
+ * values in another; the offset of each record's key and value within those
+ * arrays is held in a parallel array of offsets. Applications may either copy
+ * individual records into a <code>Key</code> and <code>Value</code> with
+ * {@link #getKey(int, Key)} and {@link #getValue(int, Value)}, or read the
+ * encoded bytes directly.
+ * </p>
+ * <p>
+ * The backing arrays grow as needed and are retained when the batch is
+ * cleared, so a single <code>RecordBatch</code> can be used for an entire
+ * scan without further allocation once it has reached its working size.
+ * </p>
+ */
+public class RecordBatch {
+
+    /**
+     * Default maximum number of records in a batch
+     */
+    public final static int DEFAULT_CAPACITY = 1000;
+
+    private final static int INITIAL_BYTES_PER_RECORD = 64;
+
+    private final int _capacity;
+
+    private int _count;
+
+    private byte[] _keyBytes;
+
+    private byte[] _valueBytes;
+
+    private final int[] _keyOffsets;
+
+    private final int[] _valueOffsets;
+
+    public RecordBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            maximum number of records in the batch
+     */
+    public RecordBatch(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        _capacity = capacity;
+        _keyOffsets = new int[capacity + 1];
+        _valueOffsets = new int[capacity + 1];
+        _keyBytes = new byte[capacity * INITIAL_BYTES_PER_RECORD];
+        _valueBytes = new byte[capacity * INITIAL_BYTES_PER_RECORD];
+    }
+
+    /**
+     * Remove all records from the batch
+     */
+    public void clear() {
+        _count = 0;
+    }
+
+    /**
+     * @return the number of records in the batch
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * @return the maximum number of records in the batch
+     */
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * @return <code>true</code> if the batch holds its maximum number of
+     *         records
+     */
+    public boolean isFull() {
+        return _count >= _capacity;
+    }
+
+    /**
+     * Copy the key of a record into the supplied <code>Key</code>.
+     * 
+     * @param index
+     *            index of the record, from 0 to {@link #getCount()} - 1
+     * @param key
+     *            the <code>Key</code> to modify
+     * @return the supplied <code>Key</code>
+     */
+    public Key getKey(final int index, final Key key) {
+        checkIndex(index);
+        final int size = getKeySize(index);
+        System.arraycopy(_keyBytes, _keyOffsets[index], key.getEncodedBytes(), 0, size);
+        key.setEncodedSize(size);
+        return key;
+    }
+
+    /**
+     * Copy the value of a record into the supplied <code>Value</code>.
+     * 
+     * @param index
+     *            index of the record, from 0 to {@link #getCount()} - 1
+     * @param value
+     *            the <code>Value</code> to modify
+     * @return the supplied <code>Value</code>
+     */
+    public Value getValue(final int index, final Value value) {
+        checkIndex(index);
+        value.putEncodedBytes(_valueBytes, _valueOffsets[index], getValueSize(index));
+        return value;
+    }
+
+    /**
+     * @return the array holding the encoded keys of all records
+     */
+    public byte[] getKeyBytes() {
+        return _keyBytes;
+    }
+
+    /**
+     * @return offset within {@link #getKeyBytes()} of the key of a record
+     */
+    public int getKeyOffset(final int index) {
+        checkIndex(index);
+        return _keyOffsets[index];
+    }
+
+    /**
+     * @return encoded size of the key of a record
+     */
+    public int getKeySize(final int index) {
+        checkIndex(index);
+        return _keyOffsets[index + 1] - _keyOffsets[index];
+    }
+
+    /**
+     * @return the array holding the encoded values of all records
+     */
+    public byte[] getValueBytes() {
+        return _valueBytes;
+    }
+
+    /**
+     * @return offset within {@link #getValueBytes()} of the value of a record
+     */
+    public int getValueOffset(final int index) {
+        checkIndex(index);
+        return _valueOffsets[index];
+    }
+
+    /**
+     * @return encoded size of the value of a record
+     */
+    public int getValueSize(final int index) {
+        checkIndex(index);
+        return _valueOffsets[index + 1] - _valueOffsets[index];
+    }
+
+    void add(final Key key, final Value value) {
+        Debug.$assert0.t(_count < _capacity);
+        final int keyStart = _keyOffsets[_count];
+        final int keySize = key.getEncodedSize();
+        _keyBytes = ensureFit(_keyBytes, keyStart + keySize);
+        System.arraycopy(key.getEncodedBytes(), 0, _keyBytes, keyStart, keySize);
+        _keyOffsets[_count + 1] = keyStart + keySize;
+
+        final int valueStart = _valueOffsets[_count];
+        final int valueSize = value.getEncodedSize();
+        _valueBytes = ensureFit(_valueBytes, valueStart + valueSize);
+        System.arraycopy(value.getEncodedBytes(), 0, _valueBytes, valueStart, valueSize);
+        _valueOffsets[_count + 1] = valueStart + valueSize;
+        _count++;
+    }
+
+    private static byte[] ensureFit(final byte[] bytes, final int size) {
+        if (size <= bytes.length) {
+            return bytes;
+        }
+        final byte[] newBytes = new byte[Math.max(size, bytes.length * 2)];
+        System.arraycopy(bytes, 0, newBytes, 0, bytes.length);
+        return newBytes;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= _count) {
+            throw new IndexOutOfBoundsException("Index " + index + " not in batch of " + _count + " records");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordBatch(" + _count + "/" + _capacity + ")";
+    }
+}
@@ -0,0 +1,605 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Policy used by a {@link BufferPool} to choose a <code>Buffer</code> to
+ * evict when a page must be read or created and there is no invalid buffer
+ * available. Each <code>BufferPool</code> has its own instance, selected by
+ * name through {@link Configuration.BufferPoolConfiguration#setReplacementPolicy(String)}.
+ * </p>
+ * <p>
+ * The policy supplies candidates; the <code>BufferPool</code> is responsible
+ * for claiming, writing and detaching the selected buffer. The policy is
+ * informed when a buffer receives a new page ({@link #admit(Buffer)}) and when
+ * a valid page is evicted ({@link #evicted(Buffer)}). Hits are reported
+ * through {@link #hit(Buffer)} only to be counted; replacement decisions rely
+ * on the TOUCHED bit set by {@link Buffer#releaseTouched()}. Hit counts are
+ * striped by thread so that the hit path does not contend on a single
+ * counter.
+ * </p>
+ * <p>
+ * Two policies are implemented:
+ * <dl>
+ * <dt>CLOCK</dt>
+ * <dd>The classic single-bit second-chance algorithm. This is the default.</dd>
+ * <dt>2Q</dt>
+ * <dd>A scan-resistant variant of the 2Q algorithm (Johnson and Shasha). A
+ * newly read page is placed on a probationary FIFO queue; hits on the page
+ * while it is on probation do not protect it. When a probationary page is
+ * evicted, its (volume, page) identity is remembered on a "ghost" list. A page
+ * read again while its identity is on the ghost list is admitted directly to
+ * the protected set, which is managed by CLOCK. A long traversal over a cold
+ * tree therefore recycles the probationary buffers rather than displacing the
+ * working set.</dd>
+ * </dl>
+ * </p>
+ */
+abstract class ReplacementPolicy {
+
+    final static String CLOCK = "CLOCK";
+
+    final static String TWO_QUEUE = "2Q";
+
+    private final static String[] NAMES = { CLOCK, TWO_QUEUE };
+
+    /**
+     * Number of stripes of the hit counters
+     */
+    private final static int HIT_STRIPES = 16;
+
+    /**
+     * Distance between adjacent hit counters, chosen so that each stripe
+     * occupies its own cache line
+     */
+    private final static int HIT_STRIDE = 8;
+
+    protected final Buffer[] _buffers;
+
+    protected final int _bufferCount;
+
+    /**
+     * Pointer to next location to look for a replacement buffer
+     */
+    protected final AtomicInteger _clock = new AtomicInteger();
+
+    /**
+     * Count of pages admitted to the protected set because they were found on
+     * the ghost list
+     */
+    protected final AtomicLong _ghostHitCounter = new AtomicLong();
+
+    /**
+     * Count of pages admitted on probation
+     */
+    protected final AtomicLong _ghostMissCounter = new AtomicLong();
+
+    /**
+     * Count of valid pages evicted while on probation
+     */
+    protected final AtomicLong _probationEvictCounter = new AtomicLong();
+
+    /**
+     * Striped counts of hits on probationary pages, followed by striped counts
+     * of hits on protected pages
+     */
+    private final AtomicLongArray _hitCounters = new AtomicLongArray(HIT_STRIPES * HIT_STRIDE * 2);
+
+    /**
+     * Validate a policy name.
+     * 
+     * @param name
+     *            Case-insensitive policy name
+     * @return the canonical name
+     * @throws IllegalArgumentException
+     *             if there is no such policy
+     */
+    static String checkName(final String name) {
+        for (final String n : NAMES) {
+            if (n.equalsIgnoreCase(name)) {
+                return n;
+            }
+        }
+        throw new IllegalArgumentException("No such ReplacementPolicy " + name);
+    }
+
+    /**
+     * Construct a new policy instance to manage the supplied buffers.
+     * 
+     * @param name
+     *            Case-insensitive policy name
+     * @param buffers
+     *            The buffers of a <code>BufferPool</code>
+     * @return the policy
+     */
+    static ReplacementPolicy forName(final String name, final Buffer[] buffers) {
+        final String canonical = checkName(name);
+        if (TWO_QUEUE.equals(canonical)) {
+            return new TwoQueue(buffers);
+        } else {
+            return new Clock(buffers);
+        }
+    }
+
+    protected ReplacementPolicy(final Buffer[] buffers) {
+        _buffers = buffers;
+        _bufferCount = buffers.length;
+    }
+
+    /**
+     * Construct a policy of the same kind to manage a resized array of
+     * buffers. Buffers present in both arrays have the same index. The new
+     * policy inherits the counters and as much of the replacement state of
+     * this one as still applies. The caller must ensure that no other thread
+     * is using this policy while the new one is constructed.
+     * 
+     * @param buffers
+     *            The new buffers of the <code>BufferPool</code>
+     * @return the new policy
+     */
+    ReplacementPolicy resize(final Buffer[] buffers) {
+        final ReplacementPolicy policy = forName(getName(), buffers);
+        policy._clock.set(_clock.get() % buffers.length);
+        policy._ghostHitCounter.set(_ghostHitCounter.get());
+        policy._ghostMissCounter.set(_ghostMissCounter.get());
+        policy._probationEvictCounter.set(_probationEvictCounter.get());
+        for (int index = 0; index < _hitCounters.length(); index++) {
+            policy._hitCounters.set(index, _hitCounters.get(index));
+        }
+        return policy;
+    }
+
+    /**
+     * @return name of the policy
+     */
+    abstract String getName();
+
+    /**
+     * Supply the next buffer the <code>BufferPool</code> should attempt to
+     * evict. The buffer is not claimed and may turn out to be unusable, in
+     * which case the caller simply asks for another candidate.
+     * 
+     * @return a candidate buffer
+     */
+    abstract Buffer nextCandidate();
+
+    /**
+     * Called when a buffer has been assigned a new page. The buffer's volume
+     * and page address have already been set and the caller holds a writer
+     * claim.
+     * 
+     * @param buffer
+     */
+    void admit(final Buffer buffer) {
+    }
+
+    /**
+     * Called after a valid page has been detached from the hash table to make
+     * room for another page. The buffer still holds the volume and page address
+     * of the evicted page.
+     * 
+     * @param buffer
+     */
+    void evicted(final Buffer buffer) {
+    }
+
+    /**
+     * Called when a page is found in the pool. The caller holds a claim on
+     * the buffer.
+     * 
+     * @param buffer
+     */
+    void hit(final Buffer buffer) {
+    }
+
+    /**
+     * @return current position of the clock hand, used by the PAGE_WRITER to
+     *         estimate how soon a dirty buffer is likely to be evicted
+     */
+    int getClock() {
+        return _clock.get();
+    }
+
+    long getGhostHitCounter() {
+        return _ghostHitCounter.get();
+    }
+
+    long getGhostMissCounter() {
+        return _ghostMissCounter.get();
+    }
+
+    long getProbationEvictCounter() {
+        return _probationEvictCounter.get();
+    }
+
+    long getProbationHitCounter() {
+        return sumHitCounters(false);
+    }
+
+    long getProtectedHitCounter() {
+        return sumHitCounters(true);
+    }
+
+    void resetCounters() {
+        _ghostHitCounter.set(0);
+        _ghostMissCounter.set(0);
+        _probationEvictCounter.set(0);
+        for (int index = 0; index < _hitCounters.length(); index++) {
+            _hitCounters.set(index, 0);
+        }
+    }
+
+    protected void bumpHitCounter(final boolean isProtected) {
+        final int stripe = (int) Thread.currentThread().getId() & (HIT_STRIPES - 1);
+        _hitCounters.incrementAndGet(((isProtected ? HIT_STRIPES : 0) + stripe) * HIT_STRIDE);
+    }
+
+    private long sumHitCounters(final boolean isProtected) {
+        long sum = 0;
+        for (int stripe = 0; stripe < HIT_STRIPES; stripe++) {
+            sum += _hitCounters.get(((isProtected ? HIT_STRIPES : 0) + stripe) * HIT_STRIDE);
+        }
+        return sum;
+    }
+
+    /**
+     * Advance the clock hand by one position.
+     * 
+     * @return the position before the hand was moved
+     */
+    protected int tick() {
+        for (;;) {
+            final int clock = _clock.get();
+            assert clock < _bufferCount;
+            if (_clock.compareAndSet(clock, (clock + 1) % _bufferCount)) {
+                return clock;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Single-bit second-chance replacement.
+     */
+    static class Clock extends ReplacementPolicy {
+
+        Clock(final Buffer[] buffers) {
+            super(buffers);
+        }
+
+        @Override
+        String getName() {
+            return CLOCK;
+        }
+
+        @Override
+        Buffer nextCandidate() {
+            Buffer buffer = null;
+            for (int step = 0; step < _bufferCount * 2; step++) {
+                buffer = _buffers[tick()];
+                if (buffer.isTouched()) {
+                    buffer.clearTouched();
+                } else {
+                    return buffer;
+                }
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Scan-resistant 2Q replacement with a CLOCK-managed protected set. None
+     * of the methods block: per-buffer state is held in atomic arrays, the
+     * probationary FIFO is a bounded lock-free ring and the ghost list is a
+     * set-associative table of page fingerprints.
+     */
+    static class TwoQueue extends ReplacementPolicy {
+
+        private final static int NONE = 0;
+        private final static int PROBATION = 1;
+        private final static int PROTECTED = 2;
+
+        /**
+         * Fraction of the pool reserved for probationary pages, expressed as a
+         * divisor. The values recommended by Johnson and Shasha are 25% of the
+         * pool for probationary pages and a ghost list holding identities for
+         * 50% of the pool.
+         */
+        private final static int PROBATION_DIVISOR = 4;
+
+        private final static int GHOST_DIVISOR = 2;
+
+        /**
+         * Number of slots in each set of the ghost table. A fingerprint is
+         * stored in any free slot of its set, or else replaces a slot chosen
+         * by its own bits.
+         */
+        private final static int GHOST_WAYS = 4;
+
+        private final static long FINGERPRINT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+        /**
+         * Queue membership of each buffer: NONE, PROBATION or PROTECTED
+         */
+        private final AtomicIntegerArray _queue;
+
+        /**
+         * 1 if the buffer's index is on the FIFO. Guarantees that each index
+         * appears on the FIFO at most once, so the ring never fills.
+         */
+        private final AtomicIntegerArray _onFifo;
+
+        /*
+         * Bounded multi-producer, multi-consumer ring holding the FIFO of
+         * probationary buffer indexes. The sequence number of each slot tells
+         * whether it is ready to be written or read at a given position.
+         */
+        private final int[] _fifo;
+
+        private final AtomicLongArray _fifoSequence;
+
+        private final int _fifoMask;
+
+        private final AtomicLong _fifoHead = new AtomicLong();
+
+        private final AtomicLong _fifoTail = new AtomicLong();
+
+        private final AtomicInteger _probationCount = new AtomicInteger();
+
+        /**
+         * Index of the first buffer that has never been offered as a
+         * candidate. Until every buffer has been used there is no reason to
+         * evict anything.
+         */
+        private final AtomicInteger _unused = new AtomicInteger();
+
+        private final int _probationLimit;
+
+        /**
+         * Fingerprints of pages recently evicted from probation; zero marks a
+         * free slot.
+         */
+        private final AtomicLongArray _ghosts;
+
+        private final int _ghostMask;
+
+        TwoQueue(final Buffer[] buffers) {
+            super(buffers);
+            _queue = new AtomicIntegerArray(_bufferCount);
+            _onFifo = new AtomicIntegerArray(_bufferCount);
+            final int fifoSize = powerOfTwo(_bufferCount);
+            _fifo = new int[fifoSize];
+            _fifoSequence = new AtomicLongArray(fifoSize);
+            for (int position = 0; position < fifoSize; position++) {
+                _fifoSequence.set(position, position);
+            }
+            _fifoMask = fifoSize - 1;
+            _probationLimit = Math.max(1, _bufferCount / PROBATION_DIVISOR);
+            final int ghostSize = powerOfTwo(Math.max(GHOST_WAYS, _bufferCount / GHOST_DIVISOR));
+            _ghosts = new AtomicLongArray(ghostSize);
+            _ghostMask = ghostSize - 1;
+        }
+
+        @Override
+        String getName() {
+            return TWO_QUEUE;
+        }
+
+        @Override
+        Buffer nextCandidate() {
+            if (_unused.get() < _bufferCount) {
+                final int index = _unused.getAndIncrement();
+                if (index < _bufferCount) {
+                    return _buffers[index];
+                }
+            }
+            if (_probationCount.get() > _probationLimit) {
+                int index;
+                while ((index = dequeue()) >= 0) {
+                    _onFifo.set(index, 0);
+                    if (_queue.get(index) == PROBATION) {
+                        //
+                        // Requeue at the tail. If the buffer is evicted, the
+                        // new page admitted to it will be placed on probation
+                        // and already be at the tail. If the buffer is in use
+                        // it will be offered again later.
+                        //
+                        enqueue(index);
+                        return _buffers[index];
+                    }
+                }
+            }
+            Buffer buffer = null;
+            for (int step = 0; step < _bufferCount * 2; step++) {
+                final int index = tick();
+                buffer = _buffers[index];
+                if (_queue.get(index) == PROBATION) {
+                    continue;
+                }
+                if (buffer.isTouched()) {
+                    buffer.clearTouched();
+                } else {
+                    return buffer;
+                }
+            }
+            return buffer;
+        }
+
+        @Override
+        ReplacementPolicy resize(final Buffer[] buffers) {
+            final TwoQueue policy = (TwoQueue) super.resize(buffers);
+            final int count = Math.min(_bufferCount, policy._bufferCount);
+            policy._unused.set(Math.min(_unused.get(), count));
+            for (long position = _fifoHead.get(); position < _fifoTail.get(); position++) {
+                final int index = _fifo[(int) position & _fifoMask];
+                if (index < count && _queue.get(index) == PROBATION) {
+                    policy._queue.set(index, PROBATION);
+                    policy._probationCount.incrementAndGet();
+                    policy.enqueue(index);
+                }
+            }
+            for (int index = 0; index < count; index++) {
+                if (_queue.get(index) == PROTECTED) {
+                    policy._queue.set(index, PROTECTED);
+                }
+            }
+            for (int slot = 0; slot <= _ghostMask; slot++) {
+                final long fingerprint = _ghosts.get(slot);
+                if (fingerprint != 0) {
+                    policy.remember(fingerprint);
+                }
+            }
+            return policy;
+        }
+
+        @Override
+        void admit(final Buffer buffer) {
+            final int index = buffer.getIndex();
+            if (index >= _bufferCount) {
+                // removed from the pool by a resize
+                return;
+            }
+            if (forget(fingerprint(buffer))) {
+                if (_queue.getAndSet(index, PROTECTED) == PROBATION) {
+                    _probationCount.decrementAndGet();
+                }
+                _ghostHitCounter.incrementAndGet();
+            } else {
+                if (_queue.getAndSet(index, PROBATION) != PROBATION) {
+                    _probationCount.incrementAndGet();
+                }
+                enqueue(index);
+                _ghostMissCounter.incrementAndGet();
+            }
+        }
+
+        @Override
+        void evicted(final Buffer buffer) {
+            final int index = buffer.getIndex();
+            if (index >= _bufferCount) {
+                return;
+            }
+            if (_queue.getAndSet(index, NONE) == PROBATION) {
+                _probationCount.decrementAndGet();
+                remember(fingerprint(buffer));
+                _probationEvictCounter.incrementAndGet();
+            }
+        }
+
+        @Override
+        void hit(final Buffer buffer) {
+            final int index = buffer.getIndex();
+            if (index < _bufferCount) {
+                final int queue = _queue.get(index);
+                if (queue != NONE) {
+                    bumpHitCounter(queue == PROTECTED);
+                }
+            }
+        }
+
+        int getProbationCount() {
+            return _probationCount.get();
+        }
+
+        boolean isProtected(final Buffer buffer) {
+            return buffer.getIndex() < _bufferCount && _queue.get(buffer.getIndex()) == PROTECTED;
+        }
+
+        /**
+         * Add an index to the tail of the FIFO unless it is already there.
+         */
+        private void enqueue(final int index) {
+            if (!_onFifo.compareAndSet(index, 0, 1)) {
+                return;
+            }
+            for (;;) {
+                final long position = _fifoTail.get();
+                final int slot = (int) position & _fifoMask;
+                if (_fifoSequence.get(slot) == position && _fifoTail.compareAndSet(position, position + 1)) {
+                    _fifo[slot] = index;
+                    _fifoSequence.set(slot, position + 1);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Remove the index at the head of the FIFO.
+         * 
+         * @return the index, or -1 if the FIFO is empty
+         */
+        private int dequeue() {
+            for (;;) {
+                final long position = _fifoHead.get();
+                final int slot = (int) position & _fifoMask;
+                final long sequence = _fifoSequence.get(slot);
+                if (sequence < position + 1) {
+                    return -1;
+                }
+                if (sequence == position + 1 && _fifoHead.compareAndSet(position, position + 1)) {
+                    final int index = _fifo[slot];
+                    _fifoSequence.set(slot, position + _fifoMask + 1);
+                    return index;
+                }
+            }
+        }
+
+        private void remember(final long fingerprint) {
+            final int set = (int) (fingerprint >>> 32) & _ghostMask & -GHOST_WAYS;
+            for (int way = 0; way < GHOST_WAYS; way++) {
+                final long existing = _ghosts.get(set + way);
+                if (existing == fingerprint || existing == 0 && _ghosts.compareAndSet(set + way, 0, fingerprint)) {
+                    return;
+                }
+            }
+            _ghosts.set(set + ((int) fingerprint & (GHOST_WAYS - 1)), fingerprint);
+        }
+
+        private boolean forget(final long fingerprint) {
+            final int set = (int) (fingerprint >>> 32) & _ghostMask & -GHOST_WAYS;
+            for (int way = 0; way < GHOST_WAYS; way++) {
+                if (_ghosts.get(set + way) == fingerprint && _ghosts.compareAndSet(set + way, fingerprint, 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static long fingerprint(final Buffer buffer) {
+            final long fingerprint = (buffer.getVolumeId() * FINGERPRINT_MULTIPLIER ^ buffer.getPageAddress())
+                    * FINGERPRINT_MULTIPLIER;
+            return fingerprint == 0 ? 1 : fingerprint;
+        }
+
+        private static int powerOfTwo(final int count) {
+            int size = 1;
+            while (size < count) {
+                size <<= 1;
+            }
+            return size;
+        }
+    }
+}
@@ -93,6 +93,12 @@ class SharedResource {
     private static class Sync extends AbstractQueuedSynchronizer {
         private static final long serialVersionUID = 1L;
 
+        /**
+         * Incremented each time a writer claim is granted. Only the thread
+         * holding the exclusive claim modifies this field.
+         */
+        private volatile long _writerVersion;
+
         @Override
         protected boolean tryAcquire(int arg) {
             assert arg == 1;
@@ -111,6 +117,7 @@ class SharedResource {
                     return false;
                 } else if (compareAndSetState(state, (state | WRITER_MASK) + 1)) {
                     setExclusiveOwnerThread(thisThread);
+                    _writerVersion++;
                     return true;
                 }
                 ACQUIRE_LOOPS.incrementAndGet();
@@ -158,6 +165,7 @@ class SharedResource {
                     return false;
                 } else if (compareAndSetState(state, state | WRITER_MASK)) {
                     setExclusiveOwnerThread(thisThread);
+                    _writerVersion++;
                     return true;
                 }
                 ACQUIRE_LOOPS.incrementAndGet();
@@ -371,6 +379,39 @@ class SharedResource {
         return _generation.get();
     }
 
+    /**
+     * Begin an optimistic read of this resource. The caller may read the
+     * resource's content without holding a claim and must then call
+     * {@link #validateOptimisticStamp(long)} with the returned value; the
+     * content read is usable only if validation succeeds. Because any writer
+     * claim granted after this method returns changes the stamp, successful
+     * validation proves no other thread modified the content during the read.
+     * 
+     * @return a stamp, or -1 if the resource is currently writer-claimed or
+     *         invalid, in which case the caller must acquire a claim
+     */
+    long getOptimisticStamp() {
+        final long version = _sync._writerVersion;
+        final int state = _sync.state();
+        if ((state & (WRITER_MASK | VALID_MASK)) != VALID_MASK) {
+            return -1;
+        }
+        return version;
+    }
+
+    /**
+     * Complete an optimistic read started by {@link #getOptimisticStamp()}.
+     * 
+     * @param stamp
+     *            value returned by <code>getOptimisticStamp</code>
+     * @return <code>true</code> if no writer claim was granted since the
+     *         stamp was acquired and none is held now
+     */
+    boolean validateOptimisticStamp(final long stamp) {
+        final int state = _sync.state();
+        return (state & (WRITER_MASK | VALID_MASK)) == VALID_MASK && _sync._writerVersion == stamp;
+    }
+
     void setTemporary() {
         _sync.setBitsInState(TEMPORARY_MASK);
     }
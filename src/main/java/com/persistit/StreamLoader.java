@@ -55,6 +55,7 @@ public class StreamLoader extends Task {
     protected TreeSelector _treeSelector;
     protected boolean _createMissingVolumes;
     protected boolean _createMissingTrees;
+    protected boolean _bulkLoad;
     protected ImportHandler _handler;
 
     @Cmd("load")
@@ -63,6 +64,7 @@ public class StreamLoader extends Task {
             @Arg("_flag|r|Use regular expressions in tree selector") boolean regex,
             @Arg("_flag|n|Don't create missing Volumes (Default is to create them)") boolean dontCreateVolumes,
             @Arg("_flag|t|Don't create missing Trees (Default is to create them)") boolean dontCreateTrees,
+            @Arg("_flag|b|Bulk load records into empty Trees") boolean bulkLoad,
             @Arg("_flag|v|verbose") boolean verbose) throws Exception {
 
         StreamLoader task = new StreamLoader();
@@ -70,6 +72,7 @@ public class StreamLoader extends Task {
         task._treeSelector = TreeSelector.parseSelector(treeSelectorString, regex, '\\');
         task._createMissingVolumes = !dontCreateVolumes;
         task._createMissingTrees = !dontCreateTrees;
+        task._bulkLoad = bulkLoad;
         task.setMessageLogVerbosity(verbose ? LOG_VERBOSE : LOG_NORMAL);
         return task;
     }
@@ -98,6 +101,21 @@ public class StreamLoader extends Task {
         _dis.close();
     }
 
+    /**
+     * Determine whether the records of each <code>Tree</code> that is empty
+     * when loading of its records begins are loaded by a {@link BulkLoader}.
+     * 
+     * @param bulkLoad
+     *            <code>true</code> to bulk load empty Trees
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        _bulkLoad = bulkLoad;
+    }
+
+    public boolean isBulkLoad() {
+        return _bulkLoad;
+    }
+
     public void load() throws IOException, PersistitException {
         load(new TreeSelector(), true, true);
     }
@@ -105,6 +123,7 @@ public class StreamLoader extends Task {
     public void load(TreeSelector treeSelector, boolean createMissingVolumes, boolean createMissingTrees)
             throws IOException, PersistitException {
         _handler = new ImportHandler(_persistit, treeSelector, createMissingVolumes, createMissingTrees);
+        _handler.setBulkLoad(_bulkLoad);
         load(_handler);
         close();
     }
@@ -226,6 +245,7 @@ public class StreamLoader extends Task {
             }
 
         }
+        handler.finishBulkLoad();
         postMessage(String.format("DONE - processed %,d data records and %,d other records", _dataRecordCount,
                 _otherRecordCount), Task.LOG_NORMAL);
     }
@@ -246,6 +266,8 @@ public class StreamLoader extends Task {
         protected KeyFilter _keyFilter;
         protected boolean _createMissingVolumes;
         protected boolean _createMissingTrees;
+        protected boolean _bulkLoad;
+        protected BulkLoader _bulkLoader;
 
         public ImportHandler(Persistit persistit) {
             this(persistit, new TreeSelector(), true, true);
@@ -259,6 +281,37 @@ public class StreamLoader extends Task {
             _createMissingVolumes = createMissingVolumes;
         }
 
+        /**
+         * Determine whether records for a <code>Tree</code> that is empty
+         * when its tree record is read are loaded by a {@link BulkLoader}
+         * rather than stored one at a time. The records in a stream written
+         * by {@link StreamSaver} are in key order within each
+         * <code>Tree</code>.
+         * 
+         * @param bulkLoad
+         *            <code>true</code> to bulk load empty Trees
+         */
+        public void setBulkLoad(boolean bulkLoad) {
+            _bulkLoad = bulkLoad;
+        }
+
+        public boolean isBulkLoad() {
+            return _bulkLoad;
+        }
+
+        /**
+         * Complete the <code>Tree</code> being bulk loaded, if any.
+         * 
+         * @throws PersistitException
+         */
+        protected void finishBulkLoad() throws PersistitException {
+            if (_bulkLoader != null) {
+                final BulkLoader loader = _bulkLoader;
+                _bulkLoader = null;
+                loader.finish();
+            }
+        }
+
         public void handleFillRecord() throws PersistitException {
         }
 
@@ -266,6 +319,10 @@ public class StreamLoader extends Task {
             if (_keyFilter == null || _keyFilter.selected(key)) {
                 if (_volume == null || _tree == null)
                     return;
+                if (_bulkLoader != null) {
+                    _bulkLoader.append(key, value);
+                    return;
+                }
                 if (_exchange == null) {
                     _exchange = _persistit.getExchange(_volume, _tree.getName(), false);
                 }
@@ -282,6 +339,7 @@ public class StreamLoader extends Task {
 
         public void handleVolumeIdRecord(long volumeId, long initialPages, long extensionPages, long maximumPages,
                 int bufferSize, String path, String name) throws PersistitException {
+            finishBulkLoad();
             Exchange oldExchange = _exchange;
             _exchange = null;
             _volume = null;
@@ -306,6 +364,7 @@ public class StreamLoader extends Task {
         }
 
         public void handleTreeIdRecord(String treeName) throws PersistitException {
+            finishBulkLoad();
             Exchange oldExchange = _exchange;
             _exchange = null;
             _tree = null;
@@ -325,6 +384,12 @@ public class StreamLoader extends Task {
             }
             _keyFilter = _treeSelector.keyFilter(_volume.getName(), treeName);
 
+            if (_bulkLoad && _tree != null && _volume.getStructure().isTreeEmpty(_tree)) {
+                if (_exchange == null) {
+                    _exchange = _persistit.getExchange(_volume, _tree.getName(), false);
+                }
+                _bulkLoader = new BulkLoader(_exchange);
+            }
         }
 
         public void handleTimeStampRecord(long timeStamp) throws PersistitException {
@@ -346,12 +411,14 @@ public class StreamLoader extends Task {
         }
 
         public void handleEndRecord() throws PersistitException {
+            finishBulkLoad();
         }
 
         public void handleExceptionRecord(String exceptionString) throws PersistitException {
         }
 
         public void handleCompletionRecord() throws PersistitException {
+            finishBulkLoad();
         }
 
     }
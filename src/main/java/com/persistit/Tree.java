@@ -20,6 +20,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.persistit.exception.CorruptVolumeException;
+import com.persistit.exception.InUseException;
 import com.persistit.exception.PersistitException;
 import com.persistit.util.Debug;
 import com.persistit.util.Util;
@@ -60,6 +61,21 @@ public class Tree extends SharedResource {
     final static int MAX_SERIALIZED_SIZE = 512;
     final static int MAX_TREE_NAME_SIZE = 256;
     final static int MAX_ACCUMULATOR_COUNT = 64;
+    /**
+     * Prefix of the name of the tree that holds the merge operands of this
+     * tree
+     */
+    final static String MERGE_OPERAND_TREE_PREFIX = "_merge.";
+    /**
+     * Maximum number of fold actions that may be waiting in the
+     * {@link CleanupManager} for one tree
+     */
+    final static int MAX_PENDING_MERGE_FOLDS = 1000;
+    /**
+     * Flag in the stored <code>Tree</code> record indicating that index
+     * entries carry subtree record counts
+     */
+    final static int RECORD_COUNTS_FLAG = 1;
 
     private final String _name;
     private final Volume _volume;
@@ -72,6 +88,33 @@ public class Tree extends SharedResource {
     private Accumulator[] _accumulators = new Accumulator[MAX_ACCUMULATOR_COUNT];
 
     private final TreeStatistics _treeStatistics = new TreeStatistics();
+    private final BufferShare _bufferShare = new BufferShare();
+    private volatile boolean _appendMode;
+    private volatile RightEdge _rightEdge;
+    private volatile BloomFilter _bloomFilter;
+    private volatile MergeOperator _mergeOperator;
+    private volatile int _compressionThreshold;
+    private volatile Tree _mergeOperandTree;
+    private volatile boolean _recordCounts;
+    private volatile Tree _mergeBaseTree;
+    private final AtomicInteger _pendingMergeFolds = new AtomicInteger();
+
+    /**
+     * The rightmost data page as of the last append, and the generation of
+     * the buffer holding it at that time. The page is still the rightmost
+     * leaf if the buffer still holds it and its generation is unchanged.
+     */
+    static class RightEdge {
+        final Buffer _buffer;
+        final long _page;
+        final long _generation;
+
+        RightEdge(final Buffer buffer) {
+            _buffer = buffer;
+            _page = buffer.getPageAddress();
+            _generation = buffer.getGeneration();
+        }
+    }
 
     Tree(final Persistit persistit, Volume volume, String name) {
         super(persistit);
@@ -166,7 +209,8 @@ public class Tree extends SharedResource {
         Util.putShort(bytes, index + 16, _depth);
         Util.putShort(bytes, index + 18, nameBytes.length);
         Util.putBytes(bytes, index + 20, nameBytes);
-        return 20 + nameBytes.length;
+        Util.putShort(bytes, index + 20 + nameBytes.length, _recordCounts ? RECORD_COUNTS_FLAG : 0);
+        return 22 + nameBytes.length;
     }
 
     /**
@@ -186,6 +230,12 @@ public class Tree extends SharedResource {
         _rootPageAddr = Util.getLong(bytes, index);
         _changeCount.set(Util.getLong(bytes, index + 8));
         _depth = Util.getShort(bytes, index + 16);
+        //
+        // Records written by earlier versions end with the name
+        //
+        if (length == nameLength + 22) {
+            _recordCounts = (Util.getShort(bytes, index + 20 + nameLength) & RECORD_COUNTS_FLAG) != 0;
+        }
         return length;
     }
 
@@ -200,7 +250,7 @@ public class Tree extends SharedResource {
             // Derive the index depth
             Buffer buffer = null;
             try {
-                buffer = getVolume().getStructure().getPool().get(_volume, rootPageAddr, false, true);
+                buffer = getVolume().getStructure().getPool().get(_volume, rootPageAddr, false, true, this);
                 int type = buffer.getPageType();
                 if (type < Buffer.PAGE_TYPE_DATA || type > Buffer.PAGE_TYPE_INDEX_MAX) {
                     throw new CorruptVolumeException(String.format("Tree root page %,d has invalid type %s",
@@ -226,6 +276,10 @@ public class Tree extends SharedResource {
         _depth = -1;
         _rootPageAddr = -1;
         _generation.set(-1);
+        _rightEdge = null;
+        _bloomFilter = null;
+        _mergeOperandTree = null;
+        _mergeBaseTree = null;
     }
 
     /**
@@ -237,6 +291,343 @@ public class Tree extends SharedResource {
         return _treeStatistics;
     }
 
+    /**
+     * Set the share of its {@link BufferPool} reserved for and permitted to
+     * the pages of this <code>Tree</code>. The pool avoids evicting pages of
+     * this <code>Tree</code> while it holds no more than
+     * <code>minimumPercent</code> of the pool's buffers, and recycles its own
+     * pages rather than displacing others once it holds
+     * <code>maximumPercent</code>. The setting is not persistent.
+     * 
+     * @param minimumPercent
+     *            percentage of the pool reserved for this <code>Tree</code>
+     * @param maximumPercent
+     *            largest percentage of the pool this <code>Tree</code> may
+     *            occupy
+     * @throws IllegalArgumentException
+     *             unless 0 &lt;= minimumPercent &lt;= maximumPercent &lt;= 100
+     *             and maximumPercent &gt; 0
+     */
+    public void setBufferShare(final int minimumPercent, final int maximumPercent) {
+        _bufferShare.set(minimumPercent, maximumPercent);
+    }
+
+    /**
+     * @return the percentage of the buffer pool reserved for this
+     *         <code>Tree</code>
+     */
+    public int getBufferShareMinimum() {
+        return _bufferShare.getMinimumPercent();
+    }
+
+    /**
+     * @return the largest percentage of the buffer pool this
+     *         <code>Tree</code> may occupy
+     */
+    public int getBufferShareMaximum() {
+        return _bufferShare.getMaximumPercent();
+    }
+
+    /**
+     * @return the count of buffers currently holding pages of this
+     *         <code>Tree</code>
+     */
+    public int getBufferOccupancy() {
+        return _bufferShare.getBufferCount();
+    }
+
+    BufferShare getBufferShare() {
+        return _bufferShare;
+    }
+
+    /**
+     * Set whether this <code>Tree</code> is in append mode. Use append mode
+     * for trees whose keys are inserted mostly in ascending order, such as
+     * keys allocated from a {@link Accumulator.Type#SEQ} accumulator or a
+     * timestamp. In append mode:
+     * <ul>
+     * <li>The <code>Tree</code> remembers its rightmost data page, and an
+     * {@link Exchange} storing a key that belongs on that page inserts it
+     * there directly rather than searching from the root. If the page has
+     * been modified by any other means since it was remembered, the
+     * <code>Exchange</code> searches the tree as usual.</li>
+     * <li>Pages split with
+     * {@link com.persistit.policy.SplitPolicy#APPEND_BIAS}, so that a page
+     * filled by appending records is left full rather than partly empty.</li>
+     * </ul>
+     * The setting is not persistent.
+     * 
+     * @param appendMode
+     *            <code>true</code> to enable append mode
+     */
+    public void setAppendMode(final boolean appendMode) {
+        _appendMode = appendMode;
+        if (!appendMode) {
+            _rightEdge = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this <code>Tree</code> is in append mode
+     * @see #setAppendMode(boolean)
+     */
+    public boolean isAppendMode() {
+        return _appendMode;
+    }
+
+    RightEdge getRightEdge() {
+        return _rightEdge;
+    }
+
+    void setRightEdge(final Buffer buffer) {
+        _rightEdge = new RightEdge(buffer);
+    }
+
+    /**
+     * <p>
+     * Build an in-memory Bloom filter over the keys of this <code>Tree</code>
+     * and use it to answer {@link Exchange#fetch()} and
+     * {@link Exchange#isValueDefined()} for keys that have never been stored
+     * without searching the tree. This suits trees where most lookups are for
+     * absent keys. The filter is sized for <code>expectedKeys</code> keys at
+     * ten bits per key, for a false-positive rate of about 1% when that many
+     * keys are present.
+     * </p>
+     * <p>
+     * This method scans every data page of the tree to populate the filter,
+     * while concurrent updates add their keys as they are stored. The filter
+     * is consulted only once the scan is complete. Calling this method again
+     * replaces the filter with a new one; do so when the tree has grown well
+     * beyond the size the filter was built for, or when many records have
+     * been removed, since a Bloom filter cannot forget removed keys. See
+     * {@link Management.TreeInfo#getBloomFilterFalsePositiveRate()}. The
+     * filter is not persistent.
+     * </p>
+     * 
+     * @param expectedKeys
+     *            the number of keys the filter is sized for
+     * @throws PersistitException
+     */
+    public void enableBloomFilter(final long expectedKeys) throws PersistitException {
+        final BloomFilter filter = new BloomFilter(expectedKeys, BloomFilter.DEFAULT_BITS_PER_KEY);
+        _bloomFilter = filter;
+        new Exchange(this).populateBloomFilter(filter);
+        filter.setReady();
+    }
+
+    /**
+     * Discard the Bloom filter, if any.
+     * 
+     * @see #enableBloomFilter(long)
+     */
+    public void disableBloomFilter() {
+        _bloomFilter = null;
+    }
+
+    /**
+     * @return <code>true</code> if this <code>Tree</code> has a Bloom filter
+     *         that is ready for use
+     * @see #enableBloomFilter(long)
+     */
+    public boolean isBloomFilterEnabled() {
+        final BloomFilter filter = _bloomFilter;
+        return filter != null && filter.isReady();
+    }
+
+    BloomFilter getBloomFilter() {
+        return _bloomFilter;
+    }
+
+    /**
+     * Record a newly stored key in the Bloom filter, if there is one. Called
+     * after the key has been inserted into its data page, so that either this
+     * method sees a filter installed by a concurrent
+     * {@link #enableBloomFilter(long)}, or the scan that populates the filter
+     * sees the key.
+     */
+    void bloomFilterAdd(final Key key) {
+        final BloomFilter filter = _bloomFilter;
+        if (filter != null) {
+            filter.add(key);
+        }
+    }
+
+    /**
+     * <p>
+     * Set the encoded size at or above which {@link Exchange#store()},
+     * {@link Exchange#fetchAndStore()}, {@link Exchange#update(ValueUpdater)}
+     * and {@link BulkLoader#append(Key, Value)} compress a value before
+     * writing it to this <code>Tree</code>. A compressed value occupies less space in data
+     * pages, the buffer pool and the journal; it is kept only if it is
+     * smaller than the original. Values are expanded by {@link Exchange}
+     * fetch methods, so applications see the original value.
+     * </p>
+     * <p>
+     * A compressed value is recognized by its first byte, so values written
+     * before the threshold was changed remain readable whatever its current
+     * setting. The setting is not persistent. A {@link ValueUpdater} is given
+     * the expanded value and its result is compressed.
+     * </p>
+     * 
+     * @param threshold
+     *            minimum encoded size, in bytes, of a value to compress, or 0
+     *            to disable compression
+     */
+    public void setCompressionThreshold(final int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative: " + threshold);
+        }
+        _compressionThreshold = threshold;
+    }
+
+    /**
+     * @return the minimum encoded size of a value compressed when stored in
+     *         this <code>Tree</code>, or 0 if compression is disabled
+     * @see #setCompressionThreshold(int)
+     */
+    public int getCompressionThreshold() {
+        return _compressionThreshold;
+    }
+
+    /**
+     * <p>
+     * Keep, in each index entry of this <code>Tree</code>, the number of
+     * records in the subtree below the entry. {@link Exchange#countKeys(Key, Key)}
+     * and {@link Exchange#skip(long)} then add up the counts of the index
+     * entries that lie wholly within their range instead of visiting the data
+     * pages below them, so that their cost grows with the depth of the tree
+     * rather than with the number of records counted or skipped. An entry
+     * whose subtree holds MVVs or anti-values, or whose subtree has not been
+     * counted since it was written, is descended into and its records are
+     * counted one page at a time, as they are in a tree without counts; the
+     * {@link CleanupManager} recounts a page once pruning has made its values
+     * primordial.
+     * </p>
+     * <p>
+     * Every update of a <code>Tree</code> with record counts holds the
+     * exclusive claim on the <code>Tree</code> while it corrects the counts on
+     * the paths it changed, so concurrent writers of the same
+     * <code>Tree</code> no longer proceed in parallel. The setting is
+     * persistent and cannot be reversed. Counts can be enabled only while the
+     * tree has no index pages, for example when it is empty or before it has
+     * been loaded with a {@link BulkLoader}; index pages with counts cannot be
+     * read by versions of Persistit that predate them.
+     * </p>
+     * 
+     * @throws IllegalStateException
+     *             if the tree already has index pages
+     * @throws PersistitException
+     */
+    public void enableRecordCounts() throws PersistitException {
+        if (!claim(true)) {
+            throw new InUseException("Unable to acquire claim on " + this);
+        }
+        try {
+            if (!_recordCounts) {
+                if (_depth != 1) {
+                    throw new IllegalStateException("Tree " + _name + " already has index pages");
+                }
+                _recordCounts = true;
+                _volume.getStructure().updateDirectoryTree(this);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the index entries of this
+     *         <code>Tree</code> carry subtree record counts
+     * @see #enableRecordCounts()
+     */
+    public boolean hasRecordCounts() {
+        return _recordCounts;
+    }
+
+    /**
+     * <p>
+     * Register the {@link MergeOperator} that combines the operands written to
+     * this <code>Tree</code> by {@link Exchange#mergeStore()}. Each operand is
+     * inserted under a unique key in a companion tree named
+     * <code>_merge.</code><i>treeName</i> in the same volume, so that writing
+     * one requires neither reading the record nor a write-write conflict
+     * check against other writers of the same key. {@link Exchange#fetch()}
+     * and the traversal methods of <code>Exchange</code> apply the pending
+     * operands of a key to its stored value. When a fetch, or the pruning of
+     * a page of the companion tree, finds many pending operands of a key, the
+     * {@link CleanupManager} is asked to fold them into the stored value;
+     * {@link Exchange#foldMergeOperands()} does so immediately.
+     * </p>
+     * <p>
+     * The registration is not persistent. Operands written before a restart
+     * remain in the companion tree and are applied once the operator has been
+     * registered again.
+     * </p>
+     * 
+     * @param operator
+     *            the <code>MergeOperator</code>, or <code>null</code> to stop
+     *            applying operands
+     */
+    public void setMergeOperator(final MergeOperator operator) {
+        _mergeOperator = operator;
+    }
+
+    /**
+     * @return the <code>MergeOperator</code> registered for this
+     *         <code>Tree</code>, or <code>null</code>
+     * @see #setMergeOperator(MergeOperator)
+     */
+    public MergeOperator getMergeOperator() {
+        return _mergeOperator;
+    }
+
+    /**
+     * @param create
+     *            whether to create the tree if it does not exist
+     * @return the tree holding the merge operands of this <code>Tree</code>,
+     *         or <code>null</code> if it does not exist and
+     *         <code>create</code> is <code>false</code>
+     * @throws PersistitException
+     */
+    Tree getMergeOperandTree(final boolean create) throws PersistitException {
+        Tree tree = _mergeOperandTree;
+        if (tree == null || !tree.isValid()) {
+            tree = _volume.getTree(MERGE_OPERAND_TREE_PREFIX + _name, create);
+            if (tree != null) {
+                tree._mergeBaseTree = this;
+            }
+            _mergeOperandTree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * @return the <code>Tree</code> whose merge operands this tree holds, or
+     *         <code>null</code> if this is not a merge operand tree or its
+     *         operands have not been accessed since the volume was opened
+     */
+    Tree getMergeBaseTree() {
+        return _mergeBaseTree;
+    }
+
+    /**
+     * Reserve one of the {@link #MAX_PENDING_MERGE_FOLDS} fold actions this
+     * tree may have waiting in the <code>CleanupManager</code>.
+     * 
+     * @return <code>true</code> if a fold action may be enqueued
+     */
+    boolean reserveMergeFold() {
+        if (_pendingMergeFolds.incrementAndGet() > MAX_PENDING_MERGE_FOLDS) {
+            _pendingMergeFolds.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void releaseMergeFold() {
+        _pendingMergeFolds.decrementAndGet();
+    }
+
     /**
      * @return a displayable description of the <code>Tree</code>, including its
      *         name, its internal tree index, its root page address, and its
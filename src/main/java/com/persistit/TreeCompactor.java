@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.CLI.Arg;
+import com.persistit.CLI.Cmd;
+import com.persistit.exception.PersistitException;
+import com.persistit.util.Util;
+
+/**
+ * <p>
+ * Task that compacts the data pages of one or more trees while the system is
+ * online. After large numbers of records have been removed a tree may hold
+ * many sparsely filled pages; the {@link com.persistit.policy.JoinPolicy}
+ * merges neighboring pages only when a single remove operation spans them.
+ * This task walks each selected tree from left to right and joins every data
+ * page with its right sibling whenever the records of both fit in one page
+ * filled to less than the target fill factor. Each page made empty by a
+ * join is returned to the volume's garbage chain.
+ * </p>
+ * <p>
+ * Pages are joined one pair at a time, each under a brief exclusive claim on
+ * the tree, so that concurrent reads and updates proceed between steps. To
+ * limit its effect on foreground work the task pauses briefly before each step
+ * while the {@link IOMeter} reports recent I/O above the quiescent threshold
+ * used by the journal copier.
+ * </p>
+ */
+public class TreeCompactor extends Task {
+
+    /**
+     * Default target fill factor, in percent of the page size
+     */
+    public final static int DEFAULT_FILL_FACTOR = 90;
+
+    /**
+     * Default interval in milliseconds to pause before each step while I/O is
+     * busy
+     */
+    public final static long DEFAULT_THROTTLE_DELAY = 10;
+
+    private TreeSelector _treeSelector;
+
+    private int _fillFactor = DEFAULT_FILL_FACTOR;
+
+    private long _throttleDelay = DEFAULT_THROTTLE_DELAY;
+
+    private volatile Tree _currentTree;
+
+    private volatile long _pagesVisited;
+
+    private volatile long _pagesJoined;
+
+    @Cmd("compact")
+    static Task compact(@Arg("trees|string|Tree selector: Volumes/Trees to compact") String treeSelectorString,
+            @Arg("_flag|r|Use regex expression") boolean regex,
+            @Arg("fill|int:90:10:100|Target fill factor in percent") int fillFactor,
+            @Arg("delay|long:10:0:10000|Milliseconds to pause before each step while I/O is busy") long delay)
+            throws Exception {
+        final TreeCompactor task = new TreeCompactor();
+        task._treeSelector = TreeSelector.parseSelector(treeSelectorString, regex, '\\');
+        task._fillFactor = fillFactor;
+        task._throttleDelay = delay;
+        return task;
+    }
+
+    /**
+     * Package-private constructor for use in a {@link Task}.
+     */
+    TreeCompactor() {
+    }
+
+    public TreeCompactor(final Persistit persistit) {
+        super(persistit);
+    }
+
+    /**
+     * @return the target fill factor, in percent of the page size
+     */
+    public int getFillFactor() {
+        return _fillFactor;
+    }
+
+    /**
+     * Set the target fill factor. Two adjacent pages are joined only if the
+     * resulting page is filled to less than this percentage of its size.
+     * 
+     * @param fillFactor
+     *            the fill factor, from 10 to 100
+     */
+    public void setFillFactor(final int fillFactor) {
+        if (fillFactor < 10 || fillFactor > 100) {
+            throw new IllegalArgumentException("Fill factor must be between 10 and 100: " + fillFactor);
+        }
+        _fillFactor = fillFactor;
+    }
+
+    /**
+     * @return the interval in milliseconds the task pauses before each step
+     *         while I/O is busy
+     */
+    public long getThrottleDelay() {
+        return _throttleDelay;
+    }
+
+    /**
+     * Set the interval in milliseconds the task pauses before each step while
+     * I/O is busy. Zero disables throttling.
+     * 
+     * @param delay
+     *            the interval in milliseconds
+     */
+    public void setThrottleDelay(final long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative: " + delay);
+        }
+        _throttleDelay = delay;
+    }
+
+    /**
+     * @return the number of data pages examined so far
+     */
+    public long getPagesVisited() {
+        return _pagesVisited;
+    }
+
+    /**
+     * @return the number of data pages joined into their left siblings, and
+     *         therefore freed, so far
+     */
+    public long getPagesJoined() {
+        return _pagesJoined;
+    }
+
+    @Override
+    protected void runTask() throws Exception {
+        for (final Tree tree : _persistit.getSelectedTrees(_treeSelector)) {
+            if (tree == tree.getVolume().getDirectoryTree()) {
+                continue;
+            }
+            final long joined = _pagesJoined;
+            try {
+                compact(tree);
+                postMessage(String.format("Tree %s: %,d pages freed", resourceName(tree), _pagesJoined - joined),
+                        LOG_NORMAL);
+            } catch (PersistitException pe) {
+                postMessage(resourceName(tree) + ": " + pe.toString(), LOG_NORMAL);
+            }
+        }
+        _currentTree = null;
+        postMessage(String.format("Total: %,d pages visited, %,d pages freed", _pagesVisited, _pagesJoined),
+                LOG_NORMAL);
+        endMessage(LOG_NORMAL);
+    }
+
+    /**
+     * Compact the data pages of one tree.
+     * 
+     * @param tree
+     *            the <code>Tree</code>
+     * @return the number of pages freed
+     * @throws PersistitException
+     */
+    public long compact(final Tree tree) throws PersistitException {
+        _currentTree = tree;
+        final Exchange exchange = new Exchange(tree);
+        final int targetSize = tree.getVolume().getPageSize() * _fillFactor / 100;
+        final IOMeter iom = _persistit.getIOMeter();
+        long joined = 0;
+        Key.LEFT_GUARD_KEY.copyTo(exchange.getKey());
+        for (;;) {
+            poll();
+            if (_throttleDelay > 0 && iom.recentCharge() >= iom.getQuiescentIOthreshold()) {
+                Util.sleep(_throttleDelay);
+            }
+            final int result = exchange.compactDataPage(targetSize);
+            if (result == Exchange.COMPACT_JOINED) {
+                joined++;
+                _pagesJoined++;
+            } else {
+                _pagesVisited++;
+                if (result == Exchange.COMPACT_DONE) {
+                    break;
+                }
+            }
+        }
+        return joined;
+    }
+
+    private String resourceName(final Tree tree) {
+        return tree.getVolume().getName() + ":" + tree.getName();
+    }
+
+    @Override
+    public String getStatus() {
+        final Tree tree = _currentTree;
+        final StringBuilder sb = new StringBuilder();
+        if (tree != null) {
+            sb.append(resourceName(tree)).append(": ");
+        }
+        sb.append(String.format("%,d pages visited, %,d pages freed", _pagesVisited, _pagesJoined));
+        return sb.toString();
+    }
+}
@@ -27,6 +27,7 @@ public class TreeState {
     private long _rootPageAddr;
     private int _depth;
     private long _changeCount;
+    private boolean _recordCounts;
     private final TreeStatistics _treeStatistics = new TreeStatistics();
 
     public String getName() {
@@ -59,6 +60,14 @@ public class TreeState {
         return _depth;
     }
 
+    /**
+     * @return <code>true</code> if the index entries of the
+     *         <code>Tree</code> carry subtree record counts
+     */
+    public boolean hasRecordCounts() {
+        return _recordCounts;
+    }
+
     /**
      * Load the state of an existing Tree from the directory from backing byte
      * array. Note: only {@link Tree} object should have a
@@ -80,6 +89,8 @@ public class TreeState {
         int slen = length - (20 + nameLength);
         if (slen > 8) {
             _treeStatistics.load(bytes, at, slen);
+        } else if (slen == 2) {
+            _recordCounts = (Util.getShort(bytes, at) & Tree.RECORD_COUNTS_FLAG) != 0;
         }
         return length;
     }
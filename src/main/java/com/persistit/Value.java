@@ -27,6 +27,12 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -299,6 +305,30 @@ public final class Value {
      */
     public final static int MAXIMUM_SIZE = 64 * 1024 * 1024;
 
+    /**
+     * Number of bytes preceding the elements of a <code>byte</code> array that
+     * forms the entire state of a <code>Value</code>
+     */
+    final static int BYTE_ARRAY_PREFIX_SIZE = 2;
+
+    /**
+     * Number of bytes preceding the elements of any primitive array that forms
+     * the entire state of a <code>Value</code>. The elements follow at a fixed
+     * width, so the first <i>n</i> elements of an array are encoded in the
+     * first {@link #primitiveArrayPrefixSize(Class, int)} bytes.
+     */
+    public final static int PRIMITIVE_ARRAY_HEADER_SIZE = 2;
+
+    /**
+     * Primitive arrays of at least this many elements are encoded and decoded
+     * in bulk through a view buffer; shorter ones element by element, which
+     * avoids allocating the view.
+     */
+    private final static int BULK_ARRAY_THRESHOLD = 32;
+
+    private final static ByteOrder ELEMENT_BYTE_ORDER = Persistit.BIG_ENDIAN ? ByteOrder.BIG_ENDIAN
+            : ByteOrder.LITTLE_ENDIAN;
+
     private final static int SIZE_GRANULARITY = 256;
     private final static int SIZE_GROWTH_DENOMINATOR = 8;
 
@@ -368,6 +398,12 @@ public final class Value {
     //
     private final static int CLASS_REREF = 50;
     //
+    // Indicates a value compressed by ValueCompressor for a Tree having a
+    // compression threshold. Followed by the original encoded size and the
+    // compressed bytes. Exchange expands it on fetch.
+    //
+    final static int CLASS_COMPRESSED = 51;
+    //
     // Indicates a record in a directory tree.
     //
     final static int CLASS_ACCUMULATOR = 58;
@@ -1307,6 +1343,20 @@ public final class Value {
             break;
         }
 
+        case CLASS_COMPRESSED: {
+            final Value value = new Value(_persistit, INITIAL_SIZE, MAXIMUM_SIZE);
+            ValueCompressor.expand(_bytes, _next - 1, _end - _next + 1, value);
+            _next = _end;
+            value.setStreamMode(true);
+            while (value._next < value._size) {
+                if (value._next > 0) {
+                    sb.append(',');
+                }
+                value.decodeDisplayable(quoted, sb, context);
+            }
+            break;
+        }
+
         case TYPE_MVV: {
             final int savedSize = _size;
             sb.append('[');
@@ -1595,7 +1645,7 @@ public final class Value {
 
     public boolean isType(final Class<?> clazz) {
         final int classHandle = getTypeHandle();
-        if (classHandle == TYPE_MVV || classHandle == CLASS_ANTIVALUE) {
+        if (classHandle == TYPE_MVV || classHandle == CLASS_ANTIVALUE || classHandle == CLASS_COMPRESSED) {
             return false;
         }
         if (classHandle > 0 && classHandle < CLASSES.length) {
@@ -2213,54 +2263,42 @@ public final class Value {
 
                 case TYPE_SHORT: {
                     short[] result = new short[arraySize(_end, _next, 2)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = (short) Util.getShort(_bytes, _next + (index * 2));
-                    }
+                    decodeShorts(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
 
                 case TYPE_CHAR: {
                     char[] result = new char[arraySize(_end, _next, 2)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = (char) Util.getChar(_bytes, _next + (index * 2));
-                    }
+                    decodeChars(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
 
                 case TYPE_INT: {
                     int[] result = new int[arraySize(_end, _next, 4)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = (int) Util.getInt(_bytes, _next + (index * 4));
-                    }
+                    decodeInts(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
 
                 case TYPE_LONG: {
                     long[] result = new long[arraySize(_end, _next, 8)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = (long) Util.getLong(_bytes, _next + (index * 8));
-                    }
+                    decodeLongs(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
 
                 case TYPE_FLOAT: {
                     float[] result = new float[arraySize(_end, _next, 4)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = Float.intBitsToFloat(Util.getInt(_bytes, _next + (index * 4)));
-                    }
+                    decodeFloats(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
 
                 case TYPE_DOUBLE: {
                     double[] result = new double[arraySize(_end, _next, 8)];
-                    for (int index = 0; index < result.length; index++) {
-                        result[index] = Double.longBitsToDouble(Util.getLong(_bytes, _next + (index * 8)));
-                    }
+                    decodeDoubles(_next, result, 0, result.length);
                     object = result;
                     break;
                 }
@@ -2327,6 +2365,14 @@ public final class Value {
             break;
         }
 
+        case CLASS_COMPRESSED: {
+            final Value value = new Value(_persistit, INITIAL_SIZE, MAXIMUM_SIZE);
+            ValueCompressor.expand(_bytes, _next - 1, _end - _next + 1, value);
+            _next = _end;
+            object = value.get(target, context);
+            break;
+        }
+
         case TYPE_MVV: {
             final int savedSize = _size;
             final ArrayList<Object> outList = new ArrayList<Object>();
@@ -2405,6 +2451,157 @@ public final class Value {
         return size / blockSize;
     }
 
+    /**
+     * Return a buffer over the <code>length</code> bytes of
+     * <code>_bytes</code> starting at <code>offset</code>, in the byte order of
+     * the encoding. Its typed views transfer arrays of elements in bulk.
+     */
+    private ByteBuffer elementView(int offset, int length) {
+        return ByteBuffer.wrap(_bytes, offset, length).slice().order(ELEMENT_BYTE_ORDER);
+    }
+
+    /**
+     * Encode <code>length</code> elements of <code>array</code> starting at
+     * <code>offset</code> at <code>_size</code>, advancing <code>_size</code>
+     * past them. The caller has ensured there is room.
+     */
+    private void encodeShorts(short[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putShort(_bytes, _size, array[index + offset]);
+                _size += 2;
+            }
+        } else {
+            elementView(_size, length * 2).asShortBuffer().put(array, offset, length);
+            _size += length * 2;
+        }
+    }
+
+    /**
+     * Decode <code>length</code> elements encoded at <code>from</code> into
+     * <code>array</code> starting at <code>offset</code>. Nothing is done if
+     * <code>length</code> is not positive.
+     */
+    private void decodeShorts(int from, short[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = (short) Util.getShort(_bytes, from + index * 2);
+            }
+        } else {
+            elementView(from, length * 2).asShortBuffer().get(array, offset, length);
+        }
+    }
+
+    private void encodeChars(char[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putChar(_bytes, _size, array[index + offset]);
+                _size += 2;
+            }
+        } else {
+            elementView(_size, length * 2).asCharBuffer().put(array, offset, length);
+            _size += length * 2;
+        }
+    }
+
+    private void decodeChars(int from, char[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = (char) Util.getChar(_bytes, from + index * 2);
+            }
+        } else {
+            elementView(from, length * 2).asCharBuffer().get(array, offset, length);
+        }
+    }
+
+    private void encodeInts(int[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putInt(_bytes, _size, array[index + offset]);
+                _size += 4;
+            }
+        } else {
+            elementView(_size, length * 4).asIntBuffer().put(array, offset, length);
+            _size += length * 4;
+        }
+    }
+
+    private void decodeInts(int from, int[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = Util.getInt(_bytes, from + index * 4);
+            }
+        } else {
+            elementView(from, length * 4).asIntBuffer().get(array, offset, length);
+        }
+    }
+
+    private void encodeLongs(long[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putLong(_bytes, _size, array[index + offset]);
+                _size += 8;
+            }
+        } else {
+            elementView(_size, length * 8).asLongBuffer().put(array, offset, length);
+            _size += length * 8;
+        }
+    }
+
+    private void decodeLongs(int from, long[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = Util.getLong(_bytes, from + index * 8);
+            }
+        } else {
+            elementView(from, length * 8).asLongBuffer().get(array, offset, length);
+        }
+    }
+
+    private void encodeFloats(float[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putInt(_bytes, _size, Float.floatToRawIntBits(array[index + offset]));
+                _size += 4;
+            }
+        } else {
+            elementView(_size, length * 4).asFloatBuffer().put(array, offset, length);
+            _size += length * 4;
+        }
+    }
+
+    private void decodeFloats(int from, float[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = Float.intBitsToFloat(Util.getInt(_bytes, from + index * 4));
+            }
+        } else {
+            elementView(from, length * 4).asFloatBuffer().get(array, offset, length);
+        }
+    }
+
+    private void encodeDoubles(double[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                Util.putLong(_bytes, _size, Double.doubleToRawLongBits(array[index + offset]));
+                _size += 8;
+            }
+        } else {
+            elementView(_size, length * 8).asDoubleBuffer().put(array, offset, length);
+            _size += length * 8;
+        }
+    }
+
+    private void decodeDoubles(int from, double[] array, int offset, int length) {
+        if (length < BULK_ARRAY_THRESHOLD) {
+            for (int index = 0; index < length; index++) {
+                array[offset + index] = Double.longBitsToDouble(Util.getLong(_bytes, from + index * 8));
+            }
+        } else {
+            elementView(from, length * 8).asDoubleBuffer().get(array, offset, length);
+        }
+    }
+
     private int utfToAppendable(Appendable sb, int offset, int end) {
         int counter = 0;
 
@@ -2766,9 +2963,7 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = (short) Util.getShort(_bytes, _next + (index + fromOffset) * 2);
-            }
+            decodeShorts(_next + fromOffset * 2, array, toOffset, length);
             closeVariableLengthItem();
             return length;
         } finally {
@@ -2817,9 +3012,7 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = (char) Util.getChar(_bytes, _next + (index + fromOffset) * 2);
-            }
+            decodeChars(_next + fromOffset * 2, array, toOffset, length);
             closeVariableLengthItem();
             return length;
         } finally {
@@ -2868,9 +3061,7 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = (int) Util.getInt(_bytes, _next + (index + fromOffset) * 4);
-            }
+            decodeInts(_next + fromOffset * 4, array, toOffset, length);
             closeVariableLengthItem();
             return length;
         } finally {
@@ -2920,9 +3111,7 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = (long) Util.getLong(_bytes, _next + (index + fromOffset) * 8);
-            }
+            decodeLongs(_next + fromOffset * 8, array, toOffset, length);
             closeVariableLengthItem();
             return length;
         } finally {
@@ -2971,9 +3160,7 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = Float.intBitsToFloat(Util.getInt(_bytes, _next + (index + fromOffset) * 4));
-            }
+            decodeFloats(_next + fromOffset * 4, array, toOffset, length);
             closeVariableLengthItem();
             return length;
         } finally {
@@ -3022,10 +3209,152 @@ public final class Value {
                 length = sourceLength - fromOffset;
             if (length > array.length - toOffset)
                 length = array.length - toOffset;
-            for (int index = 0; index < length; index++) {
-                array[toOffset + index] = Double.longBitsToDouble(Util
-                        .getLong(_bytes, _next + (index + fromOffset) * 8));
-            }
+            decodeDoubles(_next + fromOffset * 8, array, toOffset, length);
+            closeVariableLengthItem();
+            return length;
+        } finally {
+            _depth--;
+        }
+    }
+
+    /**
+     * Copies elements of the <code>byte</code> array represented by the state of
+     * this <code>Value</code> into the supplied buffer, in bulk. Elements are
+     * copied from the start of the array until either the array or the
+     * remaining space in the buffer is exhausted; the position of the buffer
+     * is advanced past them.
+     * 
+     * @param buffer
+     *            The target buffer
+     * 
+     * @return The number of elements actually copied, or -1 if the
+     *         <code>Value</code> object represents <code>null</code>.
+     */
+    public int getByteArray(ByteBuffer buffer) {
+        _serializedItemCount++;
+        if (nextType(CLASS_ARRAY) == TYPE_NULL)
+            return -1;
+        try {
+            _depth++;
+            nextType(TYPE_BYTE);
+            final int length = Math.min((_end - _next), buffer.remaining());
+            buffer.put(_bytes, _next, length);
+            closeVariableLengthItem();
+            return length;
+        } finally {
+            _depth--;
+        }
+    }
+
+    /**
+     * Copies elements of the <code>int</code> array represented by the state of
+     * this <code>Value</code> into the supplied buffer, in bulk. Elements are
+     * copied from the start of the array until either the array or the
+     * remaining space in the buffer is exhausted; the position of the buffer
+     * is advanced past them.
+     * 
+     * @param buffer
+     *            The target buffer
+     * 
+     * @return The number of elements actually copied, or -1 if the
+     *         <code>Value</code> object represents <code>null</code>.
+     */
+    public int getIntArray(IntBuffer buffer) {
+        _serializedItemCount++;
+        if (nextType(CLASS_ARRAY) == TYPE_NULL)
+            return -1;
+        try {
+            _depth++;
+            nextType(TYPE_INT);
+            final int length = Math.min((_end - _next) / 4, buffer.remaining());
+            buffer.put(elementView(_next, length * 4).asIntBuffer());
+            closeVariableLengthItem();
+            return length;
+        } finally {
+            _depth--;
+        }
+    }
+
+    /**
+     * Copies elements of the <code>long</code> array represented by the state of
+     * this <code>Value</code> into the supplied buffer, in bulk. Elements are
+     * copied from the start of the array until either the array or the
+     * remaining space in the buffer is exhausted; the position of the buffer
+     * is advanced past them.
+     * 
+     * @param buffer
+     *            The target buffer
+     * 
+     * @return The number of elements actually copied, or -1 if the
+     *         <code>Value</code> object represents <code>null</code>.
+     */
+    public int getLongArray(LongBuffer buffer) {
+        _serializedItemCount++;
+        if (nextType(CLASS_ARRAY) == TYPE_NULL)
+            return -1;
+        try {
+            _depth++;
+            nextType(TYPE_LONG);
+            final int length = Math.min((_end - _next) / 8, buffer.remaining());
+            buffer.put(elementView(_next, length * 8).asLongBuffer());
+            closeVariableLengthItem();
+            return length;
+        } finally {
+            _depth--;
+        }
+    }
+
+    /**
+     * Copies elements of the <code>float</code> array represented by the state of
+     * this <code>Value</code> into the supplied buffer, in bulk. Elements are
+     * copied from the start of the array until either the array or the
+     * remaining space in the buffer is exhausted; the position of the buffer
+     * is advanced past them.
+     * 
+     * @param buffer
+     *            The target buffer
+     * 
+     * @return The number of elements actually copied, or -1 if the
+     *         <code>Value</code> object represents <code>null</code>.
+     */
+    public int getFloatArray(FloatBuffer buffer) {
+        _serializedItemCount++;
+        if (nextType(CLASS_ARRAY) == TYPE_NULL)
+            return -1;
+        try {
+            _depth++;
+            nextType(TYPE_FLOAT);
+            final int length = Math.min((_end - _next) / 4, buffer.remaining());
+            buffer.put(elementView(_next, length * 4).asFloatBuffer());
+            closeVariableLengthItem();
+            return length;
+        } finally {
+            _depth--;
+        }
+    }
+
+    /**
+     * Copies elements of the <code>double</code> array represented by the state of
+     * this <code>Value</code> into the supplied buffer, in bulk. Elements are
+     * copied from the start of the array until either the array or the
+     * remaining space in the buffer is exhausted; the position of the buffer
+     * is advanced past them.
+     * 
+     * @param buffer
+     *            The target buffer
+     * 
+     * @return The number of elements actually copied, or -1 if the
+     *         <code>Value</code> object represents <code>null</code>.
+     */
+    public int getDoubleArray(DoubleBuffer buffer) {
+        _serializedItemCount++;
+        if (nextType(CLASS_ARRAY) == TYPE_NULL)
+            return -1;
+        try {
+            _depth++;
+            nextType(TYPE_DOUBLE);
+            final int length = Math.min((_end - _next) / 8, buffer.remaining());
+            buffer.put(elementView(_next, length * 8).asDoubleBuffer());
             closeVariableLengthItem();
             return length;
         } finally {
@@ -3655,10 +3984,7 @@ public final class Value {
         ensureFit(length * 2 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_SHORT;
-        for (int index = 0; index < length; index++) {
-            Util.putShort(_bytes, _size, array[index + offset]);
-            _size += 2;
-        }
+        encodeShorts(array, offset, length);
         endVariableSizeItem((length * 2) + 2);
     }
 
@@ -3696,10 +4022,7 @@ public final class Value {
         ensureFit(length * 2 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_CHAR;
-        for (int index = 0; index < length; index++) {
-            Util.putChar(_bytes, _size, array[index + offset]);
-            _size += 2;
-        }
+        encodeChars(array, offset, length);
         endVariableSizeItem((length * 2) + 2);
     }
 
@@ -3737,10 +4060,7 @@ public final class Value {
         ensureFit(length * 4 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_INT;
-        for (int index = 0; index < length; index++) {
-            Util.putInt(_bytes, _size, array[index + offset]);
-            _size += 4;
-        }
+        encodeInts(array, offset, length);
         endVariableSizeItem((length * 4) + 2);
     }
 
@@ -3778,10 +4098,7 @@ public final class Value {
         ensureFit(length * 8 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_LONG;
-        for (int index = 0; index < length; index++) {
-            Util.putLong(_bytes, _size, array[index + offset]);
-            _size += 8;
-        }
+        encodeLongs(array, offset, length);
         endVariableSizeItem((length * 8) + 2);
     }
 
@@ -3820,10 +4137,7 @@ public final class Value {
         ensureFit(length * 4 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_FLOAT;
-        for (int index = 0; index < length; index++) {
-            Util.putInt(_bytes, _size, Float.floatToRawIntBits(array[index + offset]));
-            _size += 4;
-        }
+        encodeFloats(array, offset, length);
         endVariableSizeItem((length * 4) + 2);
     }
 
@@ -3862,10 +4176,112 @@ public final class Value {
         ensureFit(length * 8 + 2);
         _bytes[_size++] = CLASS_ARRAY;
         _bytes[_size++] = TYPE_DOUBLE;
-        for (int index = 0; index < length; index++) {
-            Util.putLong(_bytes, _size, Double.doubleToRawLongBits(array[index + offset]));
-            _size += 8;
-        }
+        encodeDoubles(array, offset, length);
+        endVariableSizeItem((length * 8) + 2);
+    }
+
+    /**
+     * Replaces the current state with the remaining elements of the supplied
+     * buffer, transferred in bulk (or in <i><a href="#_streamMode">stream
+     * mode</a></i>, appends a new field containing them to the state). The
+     * encoding is the same as that of a <code>byte</code> array holding the
+     * same elements. The position of the buffer is advanced to its limit.
+     * 
+     * @param buffer
+     *            The buffer
+     */
+    public void putByteArray(ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        preparePut();
+        ensureFit(length + 2);
+        _bytes[_size++] = CLASS_ARRAY;
+        _bytes[_size++] = TYPE_BYTE;
+        buffer.get(_bytes, _size, length);
+        _size += length;
+        endVariableSizeItem(length + 2);
+    }
+
+    /**
+     * Replaces the current state with the remaining elements of the supplied
+     * buffer, transferred in bulk (or in <i><a href="#_streamMode">stream
+     * mode</a></i>, appends a new field containing them to the state). The
+     * encoding is the same as that of a <code>int</code> array holding the
+     * same elements. The position of the buffer is advanced to its limit.
+     * 
+     * @param buffer
+     *            The buffer
+     */
+    public void putIntArray(IntBuffer buffer) {
+        final int length = buffer.remaining();
+        preparePut();
+        ensureFit(length * 4 + 2);
+        _bytes[_size++] = CLASS_ARRAY;
+        _bytes[_size++] = TYPE_INT;
+        elementView(_size, length * 4).asIntBuffer().put(buffer);
+        _size += length * 4;
+        endVariableSizeItem((length * 4) + 2);
+    }
+
+    /**
+     * Replaces the current state with the remaining elements of the supplied
+     * buffer, transferred in bulk (or in <i><a href="#_streamMode">stream
+     * mode</a></i>, appends a new field containing them to the state). The
+     * encoding is the same as that of a <code>long</code> array holding the
+     * same elements. The position of the buffer is advanced to its limit.
+     * 
+     * @param buffer
+     *            The buffer
+     */
+    public void putLongArray(LongBuffer buffer) {
+        final int length = buffer.remaining();
+        preparePut();
+        ensureFit(length * 8 + 2);
+        _bytes[_size++] = CLASS_ARRAY;
+        _bytes[_size++] = TYPE_LONG;
+        elementView(_size, length * 8).asLongBuffer().put(buffer);
+        _size += length * 8;
+        endVariableSizeItem((length * 8) + 2);
+    }
+
+    /**
+     * Replaces the current state with the remaining elements of the supplied
+     * buffer, transferred in bulk (or in <i><a href="#_streamMode">stream
+     * mode</a></i>, appends a new field containing them to the state). The
+     * encoding is the same as that of a <code>float</code> array holding the
+     * same elements. The position of the buffer is advanced to its limit.
+     * 
+     * @param buffer
+     *            The buffer
+     */
+    public void putFloatArray(FloatBuffer buffer) {
+        final int length = buffer.remaining();
+        preparePut();
+        ensureFit(length * 4 + 2);
+        _bytes[_size++] = CLASS_ARRAY;
+        _bytes[_size++] = TYPE_FLOAT;
+        elementView(_size, length * 4).asFloatBuffer().put(buffer);
+        _size += length * 4;
+        endVariableSizeItem((length * 4) + 2);
+    }
+
+    /**
+     * Replaces the current state with the remaining elements of the supplied
+     * buffer, transferred in bulk (or in <i><a href="#_streamMode">stream
+     * mode</a></i>, appends a new field containing them to the state). The
+     * encoding is the same as that of a <code>double</code> array holding the
+     * same elements. The position of the buffer is advanced to its limit.
+     * 
+     * @param buffer
+     *            The buffer
+     */
+    public void putDoubleArray(DoubleBuffer buffer) {
+        final int length = buffer.remaining();
+        preparePut();
+        ensureFit(length * 8 + 2);
+        _bytes[_size++] = CLASS_ARRAY;
+        _bytes[_size++] = TYPE_DOUBLE;
+        elementView(_size, length * 8).asDoubleBuffer().put(buffer);
+        _size += length * 8;
         endVariableSizeItem((length * 8) + 2);
     }
 
@@ -4049,6 +4465,66 @@ public final class Value {
         return _longMode;
     }
 
+    /**
+     * Write the type code of a <code>byte</code> array that forms the entire
+     * state of a <code>Value</code>. The elements of the array follow the
+     * {@link #BYTE_ARRAY_PREFIX_SIZE} bytes written.
+     */
+    static void encodeByteArrayPrefix(final byte[] bytes, final int offset) {
+        bytes[offset] = (byte) CLASS_ARRAY;
+        bytes[offset + 1] = (byte) TYPE_BYTE;
+    }
+
+    /**
+     * @return <code>true</code> if the encoded state starting at
+     *         <code>offset</code> represents a <code>byte</code> array
+     */
+    static boolean isByteArrayPrefix(final byte[] bytes, final int offset, final int size) {
+        return size >= BYTE_ARRAY_PREFIX_SIZE && bytes[offset] == (byte) CLASS_ARRAY
+                && bytes[offset + 1] == (byte) TYPE_BYTE;
+    }
+
+    /**
+     * Returns the number of leading bytes of the encoded form of a primitive
+     * array that hold its first <code>elementCount</code> elements. A slice of
+     * a large array stored as a long record can be read without fetching the
+     * remainder of the record:
+     * 
+     * <pre>
+     * <code>
+     *   exchange.fetch(Value.primitiveArrayPrefixSize(double.class, to));
+     *   exchange.getValue().getDoubleArray(slice, from, 0, to - from);
+     * </code>
+     * </pre>
+     * 
+     * @param componentType
+     *            The primitive component type of the array, for example
+     *            <code>long.class</code>
+     * @param elementCount
+     *            The number of elements
+     * @return The size in bytes
+     * @throws IllegalArgumentException
+     *             if <code>componentType</code> is not a primitive type
+     */
+    public static int primitiveArrayPrefixSize(final Class<?> componentType, final int elementCount) {
+        final int width;
+        if (componentType == boolean.class || componentType == byte.class) {
+            width = 1;
+        } else if (componentType == short.class || componentType == char.class) {
+            width = 2;
+        } else if (componentType == int.class || componentType == float.class) {
+            width = 4;
+        } else if (componentType == long.class || componentType == double.class) {
+            width = 8;
+        } else {
+            throw new IllegalArgumentException("Not a primitive array component type: " + componentType);
+        }
+        if (elementCount < 0) {
+            throw new IllegalArgumentException("Invalid element count " + elementCount);
+        }
+        return PRIMITIVE_ARRAY_HEADER_SIZE + elementCount * width;
+    }
+
     void setLongRecordMode(boolean mode) {
         _longMode = mode;
     }
@@ -0,0 +1,311 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.exception.MalformedValueException;
+import com.persistit.util.Util;
+
+/**
+ * <p>
+ * Compresses and expands the encoded bytes of a {@link Value} for a
+ * {@link Tree} on which {@link Tree#setCompressionThreshold(int)} has been
+ * set. The compressed form is
+ * 
+ * <pre>
+ *   [CLASS_COMPRESSED][original size: 4 bytes][LZF data]
+ * </pre>
+ * 
+ * so that it can be recognized by its first byte wherever a value may appear:
+ * as a simple value, as the prefix of a LONG_RECORD or as a version within an
+ * MVV.
+ * </p>
+ * <p>
+ * The codec is a byte-oriented LZ77 variant in the format of LibLZF. The
+ * compressed data is a sequence of runs, each introduced by a control byte
+ * <i>c</i>:
+ * <ul>
+ * <li><i>c</i> &lt; 32: the next <i>c</i> + 1 bytes are literals.</li>
+ * <li>otherwise: a back reference of <code>(c &gt;&gt; 5) + 2</code> bytes
+ * (when <code>c &gt;&gt; 5</code> is 7, of 9 bytes plus the value of the next
+ * byte) to a distance given by the low 5 bits of <i>c</i> and the byte that
+ * follows.</li>
+ * </ul>
+ * It trades compression ratio for speed: matches are found through a single
+ * hash table probe and both directions run in a single pass over the data.
+ * </p>
+ * <p>
+ * An instance holds the hash table used in compression and a scratch buffer
+ * used in expansion, and is not threadsafe; each {@link Exchange} has its
+ * own.
+ * </p>
+ */
+class ValueCompressor {
+
+    /**
+     * Size of the header preceding the compressed data: type byte and
+     * original size
+     */
+    final static int HEADER_SIZE = 5;
+
+    private final static int HASH_BITS = 14;
+    private final static int HASH_SIZE = 1 << HASH_BITS;
+    private final static int MAX_LITERAL = 32;
+    private final static int MAX_OFFSET = 1 << 13;
+    private final static int MAX_REFERENCE = (1 << 8) + (1 << 3);
+
+    /**
+     * Positions in the source array, indexed by a hash of the three bytes
+     * found there. Entries left from a previous call are harmless because a
+     * candidate match is always verified.
+     */
+    private final int[] _hashTable = new int[HASH_SIZE];
+
+    private byte[] _scratch = new byte[0];
+
+    /**
+     * Compress the encoded bytes of <code>source</code> into
+     * <code>target</code>. Nothing is done if the source is a LONG_RECORD
+     * descriptor, an MVV, an AntiValue or is already compressed, or if
+     * compression does not make it smaller.
+     * 
+     * @param source
+     *            the value to compress
+     * @param target
+     *            receives the compressed form
+     * @return <code>true</code> if <code>target</code> holds the compressed
+     *         value
+     */
+    boolean compress(final Value source, final Value target) {
+        final int size = source.getEncodedSize();
+        if (size == 0 || !isCompressible(source.getEncodedBytes()[0] & 0xFF)) {
+            return false;
+        }
+        target.clear();
+        target.ensureFit(size);
+        final byte[] out = target.getEncodedBytes();
+        final int limit = Math.min(out.length, size - 1);
+        final int length = compress(source.getEncodedBytes(), 0, size, out, HEADER_SIZE, limit);
+        if (length < 0) {
+            return false;
+        }
+        out[0] = (byte) Value.CLASS_COMPRESSED;
+        Util.putInt(out, 1, size);
+        target.setEncodedSize(HEADER_SIZE + length);
+        return true;
+    }
+
+    /**
+     * Replace the compressed contents of <code>value</code> with the original
+     * encoded bytes.
+     * 
+     * @param value
+     *            a value for which {@link #isCompressed(byte[], int, int)} is
+     *            true
+     * @throws MalformedValueException
+     *             if the compressed data is corrupt
+     */
+    void expand(final Value value) {
+        final int size = value.getEncodedSize();
+        if (_scratch.length < size) {
+            _scratch = new byte[size];
+        }
+        System.arraycopy(value.getEncodedBytes(), 0, _scratch, 0, size);
+        expand(_scratch, 0, size, value);
+    }
+
+    /**
+     * Expand the compressed value held in the supplied byte array into
+     * <code>target</code>.
+     * 
+     * @param bytes
+     *            array containing the compressed form
+     * @param offset
+     *            offset of the CLASS_COMPRESSED byte
+     * @param size
+     *            size of the compressed form including its header
+     * @param target
+     *            receives the original encoded bytes
+     * @throws MalformedValueException
+     *             if the compressed data is corrupt
+     */
+    static void expand(final byte[] bytes, final int offset, final int size, final Value target) {
+        if (size < HEADER_SIZE || !isCompressed(bytes, offset, size)) {
+            throw new MalformedValueException("Not a compressed value");
+        }
+        final int length = Util.getInt(bytes, offset + 1);
+        if (length < 0 || length > Value.MAXIMUM_SIZE) {
+            throw new MalformedValueException("Invalid compressed value size " + length);
+        }
+        target.clear();
+        target.ensureFit(length);
+        final int expanded = expand(bytes, offset + HEADER_SIZE, size - HEADER_SIZE, target.getEncodedBytes(), 0,
+                length);
+        if (expanded != length) {
+            throw new MalformedValueException("Compressed value expanded to " + expanded + " bytes rather than "
+                    + length);
+        }
+        target.setEncodedSize(length);
+    }
+
+    /**
+     * @return <code>true</code> if the value encoded in the supplied bytes is
+     *         in compressed form
+     */
+    static boolean isCompressed(final byte[] bytes, final int offset, final int size) {
+        return size > 0 && (bytes[offset] & 0xFF) == Value.CLASS_COMPRESSED;
+    }
+
+    private static boolean isCompressible(final int type) {
+        return type != Value.CLASS_COMPRESSED && type != Value.CLASS_ANTIVALUE && type != MVV.TYPE_MVV
+                && type != Buffer.LONGREC_TYPE;
+    }
+
+    /**
+     * Compress <code>length</code> bytes of <code>in</code>.
+     * 
+     * @return the number of bytes written to <code>out</code> starting at
+     *         <code>outOffset</code>, or -1 if the result would reach
+     *         <code>outLimit</code>
+     */
+    int compress(final byte[] in, final int inOffset, final int length, final byte[] out, final int outOffset,
+            final int outLimit) {
+        final int[] table = _hashTable;
+        final int end = inOffset + length;
+        /*
+         * Room for a back reference (3 bytes) and the control byte of the
+         * literal run that follows it
+         */
+        final int safeLimit = outLimit - 4;
+        int ip = inOffset;
+        int op = outOffset;
+        int literals = 0;
+        int control = op++;
+
+        while (ip < end - 2) {
+            if (op >= safeLimit) {
+                return -1;
+            }
+            final int hash = hash(in, ip);
+            final int ref = table[hash];
+            table[hash] = ip;
+            final int distance = ip - ref - 1;
+            if (ref >= inOffset && ref < ip && distance < MAX_OFFSET && in[ref] == in[ip]
+                    && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+                final int maxLength = Math.min(MAX_REFERENCE, end - ip);
+                int matched = 3;
+                while (matched < maxLength && in[ref + matched] == in[ip + matched]) {
+                    matched++;
+                }
+                if (literals > 0) {
+                    out[control] = (byte) (literals - 1);
+                    literals = 0;
+                } else {
+                    op--;
+                }
+                final int encodedLength = matched - 2;
+                if (encodedLength < 7) {
+                    out[op++] = (byte) ((encodedLength << 5) + (distance >>> 8));
+                } else {
+                    out[op++] = (byte) ((7 << 5) + (distance >>> 8));
+                    out[op++] = (byte) (encodedLength - 7);
+                }
+                out[op++] = (byte) distance;
+                control = op++;
+                ip += matched;
+            } else {
+                out[op++] = in[ip++];
+                if (++literals == MAX_LITERAL) {
+                    out[control] = (byte) (MAX_LITERAL - 1);
+                    literals = 0;
+                    control = op++;
+                }
+            }
+        }
+        while (ip < end) {
+            if (op >= safeLimit) {
+                return -1;
+            }
+            out[op++] = in[ip++];
+            if (++literals == MAX_LITERAL) {
+                out[control] = (byte) (MAX_LITERAL - 1);
+                literals = 0;
+                control = op++;
+            }
+        }
+        if (literals > 0) {
+            out[control] = (byte) (literals - 1);
+        } else {
+            op--;
+        }
+        return op - outOffset;
+    }
+
+    /**
+     * Expand <code>length</code> bytes of LZF data from <code>in</code>.
+     * 
+     * @return the number of bytes written to <code>out</code>
+     * @throws MalformedValueException
+     *             if the data is corrupt or would expand beyond
+     *             <code>outLength</code> bytes
+     */
+    static int expand(final byte[] in, final int inOffset, final int length, final byte[] out, final int outOffset,
+            final int outLength) {
+        final int end = inOffset + length;
+        final int outEnd = outOffset + outLength;
+        int ip = inOffset;
+        int op = outOffset;
+        while (ip < end) {
+            final int control = in[ip++] & 0xFF;
+            if (control < MAX_LITERAL) {
+                final int run = control + 1;
+                if (ip + run > end || op + run > outEnd) {
+                    throw new MalformedValueException("Compressed literal run overflows at " + (ip - inOffset));
+                }
+                System.arraycopy(in, ip, out, op, run);
+                ip += run;
+                op += run;
+            } else {
+                int run = control >>> 5;
+                if (run == 7) {
+                    if (ip >= end) {
+                        throw new MalformedValueException("Truncated compressed value");
+                    }
+                    run += in[ip++] & 0xFF;
+                }
+                run += 2;
+                if (ip >= end) {
+                    throw new MalformedValueException("Truncated compressed value");
+                }
+                int ref = op - ((control & 0x1F) << 8) - (in[ip++] & 0xFF) - 1;
+                if (ref < outOffset || op + run > outEnd) {
+                    throw new MalformedValueException("Compressed back reference overflows at " + (ip - inOffset));
+                }
+                /*
+                 * Source and destination may overlap: copy byte by byte
+                 */
+                for (int i = 0; i < run; i++) {
+                    out[op++] = out[ref++];
+                }
+            }
+        }
+        return op - outOffset;
+    }
+
+    private static int hash(final byte[] bytes, final int index) {
+        final int v = ((bytes[index] & 0xFF) << 16) | ((bytes[index + 1] & 0xFF) << 8) | (bytes[index + 2] & 0xFF);
+        return ((v * 0x9E3779B1) >>> (32 - HASH_BITS));
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import com.persistit.exception.PersistitException;
+
+/**
+ * Interface for application logic that computes a new value for a record from
+ * its current value. Use this interface in conjunction with the
+ * {@link Exchange#update(ValueUpdater)} method, which locates the record once,
+ * supplies its current value and stores the result in place.
+ */
+public interface ValueUpdater {
+    /**
+     * <p>
+     * Compute the new value of a record. On entry <code>value</code> holds the
+     * value of the record identified by <code>key</code> as it would be
+     * returned by {@link Exchange#fetch()}; if there is no such record the
+     * value is undefined (see {@link Value#isDefined()}). To replace or create
+     * the record, modify <code>value</code> in place and return
+     * <code>true</code>; to leave the record unchanged return
+     * <code>false</code>.
+     * </p>
+     * <p>
+     * This method is called while Persistit holds an exclusive claim on the
+     * page containing the record, so it must be brief and must not perform
+     * other Persistit operations. It may be called more than once for a single
+     * update, for example when a concurrent transaction must first be waited
+     * for, and so its result should depend only on the supplied key and value.
+     * </p>
+     * 
+     * @param key
+     *            the key of the record, which must not be modified
+     * @param value
+     *            the current value, to be modified in place
+     * @return <code>true</code> to store the modified value
+     * @throws PersistitException
+     */
+    public boolean update(Key key, Value value) throws PersistitException;
+}
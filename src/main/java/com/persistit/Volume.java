@@ -57,6 +57,8 @@ public class Volume {
     private volatile VolumeStorage _storage;
     private volatile VolumeStatistics _statistics;
     private volatile VolumeStructure _structure;
+    private final BufferShare _bufferShare = new BufferShare();
+    private final BufferIndex _bufferIndex = new BufferIndex();
 
     /*
      * These two constants are used to identify temporary volumes that may have
@@ -139,6 +141,58 @@ public class Volume {
         return _structure;
     }
 
+    BufferShare getBufferShare() {
+        return _bufferShare;
+    }
+
+    BufferIndex getBufferIndex() {
+        return _bufferIndex;
+    }
+
+    /**
+     * Set the share of its {@link BufferPool} reserved for and permitted to
+     * the pages of this <code>Volume</code>. See
+     * {@link Tree#setBufferShare(int, int)}; a page is subject to the limits
+     * of both its <code>Tree</code> and its <code>Volume</code>. The setting
+     * is not persistent.
+     * 
+     * @param minimumPercent
+     *            percentage of the pool reserved for this <code>Volume</code>
+     * @param maximumPercent
+     *            largest percentage of the pool this <code>Volume</code> may
+     *            occupy
+     * @throws IllegalArgumentException
+     *             unless 0 &lt;= minimumPercent &lt;= maximumPercent &lt;= 100
+     *             and maximumPercent &gt; 0
+     */
+    public void setBufferShare(final int minimumPercent, final int maximumPercent) {
+        _bufferShare.set(minimumPercent, maximumPercent);
+    }
+
+    /**
+     * @return the percentage of the buffer pool reserved for this
+     *         <code>Volume</code>
+     */
+    public int getBufferShareMinimum() {
+        return _bufferShare.getMinimumPercent();
+    }
+
+    /**
+     * @return the largest percentage of the buffer pool this
+     *         <code>Volume</code> may occupy
+     */
+    public int getBufferShareMaximum() {
+        return _bufferShare.getMaximumPercent();
+    }
+
+    /**
+     * @return the count of buffers currently holding pages of this
+     *         <code>Volume</code>
+     */
+    public int getBufferOccupancy() {
+        return _bufferShare.getBufferCount();
+    }
+
     void setSpecification(final VolumeSpecification specification) {
         if (_specification != null) {
             throw new IllegalStateException("Volume " + this + " already has a VolumeSpecification");
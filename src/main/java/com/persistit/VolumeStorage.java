@@ -153,8 +153,40 @@ abstract class VolumeStorage extends SharedResource {
     abstract void readPage(Buffer buffer) throws PersistitIOException, InvalidPageAddressException,
             VolumeClosedException, InUseException, PersistitInterruptedException;
 
+    /**
+     * Read a run of consecutive pages directly from the volume file with a
+     * single I/O operation. The journal is not consulted; the caller is
+     * responsible for reading any page that has a more recent image in the
+     * journal.
+     * 
+     * @param firstPage
+     *            address of the first page
+     * @param bb
+     *            buffer to receive the pages; its remaining space must be a
+     *            multiple of the page size
+     */
+    abstract void readPages(final long firstPage, final ByteBuffer bb) throws PersistitIOException,
+            InvalidPageAddressException, VolumeClosedException, InUseException, PersistitInterruptedException;
+
     abstract void writePage(final Buffer buffer) throws PersistitException;
 
+    /**
+     * Write several pages of this volume with as few I/O operations as
+     * possible. The caller holds a writer claim on each buffer, has called
+     * {@link Buffer#prepareWrite()} on each, and supplies them in ascending
+     * page address order.
+     * 
+     * @param buffers
+     *            the buffers to write
+     * @param count
+     *            number of buffers
+     * @param scratch
+     *            a buffer of at least <code>count</code> pages that may be
+     *            used to assemble adjacent pages into a single write
+     */
+    abstract void writePages(final Buffer[] buffers, final int count, final ByteBuffer scratch)
+            throws PersistitException;
+
     abstract void writePage(final ByteBuffer bb, final long page) throws PersistitException;
 
     abstract long allocNewPage() throws PersistitException;
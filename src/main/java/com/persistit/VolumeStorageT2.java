@@ -286,6 +286,43 @@ class VolumeStorageT2 extends VolumeStorage {
         }
     }
 
+    @Override
+    void readPages(final long firstPage, final ByteBuffer bb) throws PersistitIOException,
+            InvalidPageAddressException, VolumeClosedException, InUseException, PersistitInterruptedException {
+        if (!claim(false, 0)) {
+            throw new InUseException("Unable to acquire claim on " + this);
+        }
+        try {
+            final int pageSize = _volume.getStructure().getPageSize();
+            final int count = bb.remaining() / pageSize;
+            if (firstPage < 1 || firstPage + count > _nextAvailablePage) {
+                throw new InvalidPageAddressException("Pages " + firstPage + "-" + (firstPage + count - 1)
+                        + " out of bounds [0-" + _nextAvailablePage + "]");
+            }
+            try {
+                final long start = (firstPage - 1) * pageSize - bb.position();
+                while (bb.hasRemaining()) {
+                    long position = start + bb.position();
+                    int bytesRead = getChannel().read(bb, position);
+                    if (bytesRead <= 0) {
+                        throw new PersistitIOException("Unable to read bytes at position " + position + " in " + this);
+                    }
+                }
+                _persistit.getIOMeter().chargeReadPageFromVolume(this._volume, firstPage, count * pageSize, -1);
+                for (int index = 0; index < count; index++) {
+                    _volume.getStatistics().bumpReadCounter();
+                }
+            } catch (IOException ioe) {
+                _persistit.getAlertMonitor().post(
+                        new Event(AlertLevel.ERROR, _persistit.getLogBase().readException, ioe, _volume, firstPage,
+                                -1), AlertMonitor.READ_PAGE_CATEGORY);
+                throw new PersistitIOException(ioe);
+            }
+        } finally {
+            release();
+        }
+    }
+
     @Override
     void writePage(final Buffer buffer) throws PersistitIOException, InvalidPageAddressException,
             ReadOnlyVolumeException, VolumeClosedException, InUseException, PersistitInterruptedException {
@@ -323,6 +360,52 @@ class VolumeStorageT2 extends VolumeStorage {
         }
     }
 
+    /**
+     * Each run of pages with adjacent page addresses is copied into the
+     * scratch buffer and written with a single positional write.
+     */
+    @Override
+    void writePages(final Buffer[] buffers, final int count, final ByteBuffer scratch) throws PersistitException {
+        final int pageSize = _volume.getStructure().getPageSize();
+        if (!claim(false, 0)) {
+            throw new InUseException("Unable to acquire claim on " + this);
+        }
+        try {
+            int from = 0;
+            while (from < count) {
+                final long page = buffers[from].getPageAddress();
+                if (page < 1 || page >= _nextAvailablePage) {
+                    throw new InvalidPageAddressException("Page " + page + " out of bounds [0-" + _nextAvailablePage
+                            + "]");
+                }
+                int to = from + 1;
+                while (to < count && buffers[to].getPageAddress() == page + (to - from)
+                        && buffers[to].getPageAddress() < _nextAvailablePage) {
+                    to++;
+                }
+                scratch.clear();
+                for (int index = from; index < to; index++) {
+                    scratch.put(buffers[index].getBytes(), 0, pageSize);
+                }
+                scratch.flip();
+                try {
+                    long position = (page - 1) * pageSize;
+                    while (scratch.hasRemaining()) {
+                        position += getChannel().write(scratch, position);
+                    }
+                } catch (IOException ioe) {
+                    _persistit.getAlertMonitor().post(
+                            new Event(AlertLevel.ERROR, _persistit.getLogBase().writeException, ioe, _volume, page),
+                            AlertMonitor.WRITE_PAGE_CATEGORY);
+                    throw new PersistitIOException(ioe);
+                }
+                from = to;
+            }
+        } finally {
+            release();
+        }
+    }
+
     long allocNewPage() throws PersistitException {
         if (_nextAvailablePage >= _maxPages) {
             throw new VolumeFullException(_volume.getName());
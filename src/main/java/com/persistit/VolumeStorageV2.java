@@ -456,6 +456,43 @@ class VolumeStorageV2 extends VolumeStorage {
         }
     }
 
+    @Override
+    void readPages(final long firstPage, final ByteBuffer bb) throws PersistitIOException,
+            InvalidPageAddressException, VolumeClosedException, InUseException, PersistitInterruptedException {
+        if (!claim(false)) {
+            throw new InUseException("Unable to acquire claim on " + this);
+        }
+        try {
+            final int pageSize = _volume.getStructure().getPageSize();
+            final int count = bb.remaining() / pageSize;
+            if (firstPage < 0 || firstPage + count > _nextAvailablePage) {
+                throw new InvalidPageAddressException("Pages " + firstPage + "-" + (firstPage + count - 1)
+                        + " out of bounds [0-" + _nextAvailablePage + "]");
+            }
+            try {
+                final long start = firstPage * pageSize - bb.position();
+                while (bb.hasRemaining()) {
+                    long position = start + bb.position();
+                    int bytesRead = _channel.read(bb, position);
+                    if (bytesRead <= 0) {
+                        throw new PersistitIOException("Unable to read bytes at position " + position + " in " + this);
+                    }
+                }
+                _persistit.getIOMeter().chargeReadPageFromVolume(this._volume, firstPage, count * pageSize, -1);
+                for (int index = 0; index < count; index++) {
+                    _volume.getStatistics().bumpReadCounter();
+                }
+            } catch (IOException ioe) {
+                _persistit.getAlertMonitor().post(
+                        new Event(AlertLevel.ERROR, _persistit.getLogBase().readException, ioe, _volume, firstPage,
+                                -1), AlertMonitor.READ_PAGE_CATEGORY);
+                throw new PersistitIOException(ioe);
+            }
+        } finally {
+            release();
+        }
+    }
+
     void writePage(final Buffer buffer) throws PersistitException {
         /*
          * Non-exclusive claim here intended to conflict with exclusive claim in
@@ -472,6 +509,24 @@ class VolumeStorageV2 extends VolumeStorage {
 
     }
 
+    /**
+     * Pages of a permanent volume are written to the journal, where each
+     * page image is appended to the journal's write buffer. The pages are
+     * appended under a single acquisition of the journal's lock so that they
+     * occupy contiguous journal addresses and are written to disk together
+     * when the write buffer is flushed.
+     */
+    void writePages(final Buffer[] buffers, final int count, final ByteBuffer scratch) throws PersistitException {
+        if (!claim(false)) {
+            throw new InUseException("Unable to acquire claim on " + this);
+        }
+        try {
+            _persistit.getJournalManager().writePagesToJournal(buffers, count);
+        } finally {
+            release();
+        }
+    }
+
     void writePage(final ByteBuffer bb, final long page) throws PersistitIOException, InvalidPageAddressException,
             ReadOnlyVolumeException, VolumeClosedException {
         if (page < 0 || page >= _nextAvailablePage) {
@@ -243,6 +243,59 @@ class VolumeStructure {
         }
     }
 
+    /**
+     * @return <code>true</code> if the tree consists of a single data page
+     *         holding nothing but the guard keys
+     * @throws PersistitException
+     */
+    boolean isTreeEmpty(final Tree tree) throws PersistitException {
+        final Buffer buffer = _pool.get(_volume, tree.getRootPageAddr(), false, true, tree);
+        try {
+            return buffer.isDataPage() && buffer.getKeyCount() == 2;
+        } finally {
+            buffer.releaseTouched();
+        }
+    }
+
+    /**
+     * Called by {@link BulkLoader} to install a fully constructed tree in
+     * place of the empty root page of an existing <code>Tree</code>. The
+     * directory is updated once, and the former root page is returned to the
+     * garbage chain.
+     * 
+     * @param tree
+     *            the <code>Tree</code>
+     * @param rootPage
+     *            root page of the constructed tree
+     * @throws IllegalStateException
+     *             if the <code>Tree</code> is no longer empty
+     * @throws PersistitException
+     */
+    void replaceEmptyTreeRoot(final Tree tree, final long rootPage) throws PersistitException {
+        _persistit.checkSuspended();
+        if (!tree.claim(true)) {
+            throw new InUseException("Unable to acquire writer claim on " + tree);
+        }
+        final long oldRootPage = tree.getRootPageAddr();
+        try {
+            final Buffer buffer = _pool.get(_volume, oldRootPage, true, true, tree);
+            try {
+                if (!buffer.isDataPage() || buffer.getKeyCount() != 2) {
+                    throw new IllegalStateException("Tree " + tree.getName() + " in volume " + _volume.getName()
+                            + " was modified while it was being loaded");
+                }
+                tree.setRootPageAddress(rootPage);
+                tree.bumpGeneration();
+                updateDirectoryTree(tree);
+            } finally {
+                buffer.releaseTouched();
+            }
+        } finally {
+            tree.release();
+        }
+        deallocateGarbageChain(oldRootPage, 0);
+    }
+
     boolean removeTree(Tree tree) throws PersistitException {
         if (tree == _directoryTree) {
             throw new IllegalArgumentException("Can't delete the Directory tree");
@@ -414,6 +467,19 @@ class VolumeStructure {
      *         has a writer claim on it.
      */
     Buffer allocPage() throws PersistitException {
+        return allocPage(null);
+    }
+
+    /**
+     * Allocates a previously unused page for a {@link Tree}, counting the
+     * buffer that holds it in the <code>Tree</code>'s buffer share.
+     * 
+     * @param tree
+     *            the Tree that will own the page, or <code>null</code>
+     * @return a Buffer containing the newly allocated page. The returned buffer
+     *         has a writer claim on it.
+     */
+    Buffer allocPage(final Tree tree) throws PersistitException {
         Buffer buffer = null;
         _volume.getStorage().claimHeadBuffer();
         try {
@@ -441,7 +507,7 @@ class VolumeStructure {
                     } else {
                         _persistit.getLogBase().allocateFromGarbageChain.log(page, garbageBufferInfo(garbageBuffer));
                         boolean solitaire = rightPage == -1;
-                        buffer = _pool.get(_volume, page, true, !solitaire);
+                        buffer = _pool.get(_volume, page, true, !solitaire, tree);
                         buffer.writePageOnCheckpoint(timestamp);
 
                         Debug.$assert0.t(buffer.getPageAddress() > 0);
@@ -482,7 +548,7 @@ class VolumeStructure {
          * page from the volume.
          */
         long page = _volume.getStorage().allocNewPage();
-        buffer = _pool.get(_volume, page, true, false);
+        buffer = _pool.get(_volume, page, true, false, tree);
         buffer.init(Buffer.PAGE_TYPE_UNALLOCATED);
         Debug.$assert0.t(buffer.getPageAddress() != 0);
         return buffer;
@@ -542,7 +608,10 @@ class VolumeStructure {
                 garbageBuffer.addGarbageChain(nextGarbagePage, right, -1);
                 _persistit.getLogBase().newGarbageChain.log(nextGarbagePage, right, garbageBufferInfo(garbageBuffer));
             }
-            garbageBuffer.setRightSibling(garbagePage);
+            //
+            // Harvesting long records may have installed a new garbage root.
+            //
+            garbageBuffer.setRightSibling(getGarbageRoot());
             garbageBuffer.setDirtyAtTimestamp(timestamp);
             setGarbageRoot(garbageBuffer.getPageAddress());
         } finally {
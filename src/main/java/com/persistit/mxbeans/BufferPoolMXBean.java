@@ -17,6 +17,8 @@ package com.persistit.mxbeans;
 
 import javax.management.MXBean;
 
+import com.persistit.exception.PersistitException;
+
 /**
  * Management structure holding information about the state of a
  * <code>BufferPool</code>, including counters for events such as physical I/O
@@ -39,6 +41,18 @@ public interface BufferPoolMXBean {
     @Description("The count of Buffer managed by this pool")
     public int getBufferCount();
 
+    /**
+     * Change the count of <code>Buffer</code>s managed by this pool while
+     * Persistit is running. Shrinking the pool evicts the pages held by the
+     * buffers being removed; it fails if one of them remains in use.
+     * 
+     * @param count
+     *            The new count
+     * @throws PersistitException
+     */
+    @Description("The count of Buffer managed by this pool")
+    public void setBufferCount(@PName("count") int count) throws PersistitException;
+
     /**
      * Return the number of lookup operations for pages that resulted in a
      * physical disk read operation. This number, in comparison with the hit
@@ -148,4 +162,184 @@ public interface BufferPoolMXBean {
     @Description("Earliest timestamp of any dirty page in this BufferPool.")
     public long getEarliestDirtyTimestamp();
 
+    /**
+     * @return The name of the policy used to select pages for eviction, either
+     *         "CLOCK" or "2Q"
+     */
+    @Description("The name of the policy used to select pages for eviction")
+    public String getReplacementPolicy();
+
+    /**
+     * Return the number of pages read into this <code>BufferPool</code> that
+     * were admitted directly to the protected set because they had recently
+     * been evicted from probation. Always zero for the CLOCK policy.
+     * 
+     * @return The ghost hit count
+     */
+    @Description("The number of pages re-read after eviction from probation and admitted to the protected set")
+    public long getGhostHitCount();
+
+    /**
+     * Return the number of pages read into this <code>BufferPool</code> on
+     * probation. Always zero for the CLOCK policy.
+     * 
+     * @return The ghost miss count
+     */
+    @Description("The number of pages admitted on probation")
+    public long getGhostMissCount();
+
+    /**
+     * Return the number of valid pages evicted from this
+     * <code>BufferPool</code> while still on probation. Always zero for the
+     * CLOCK policy.
+     * 
+     * @return The probation evict count
+     */
+    @Description("The number of valid pages evicted while still on probation")
+    public long getProbationEvictCount();
+
+    /**
+     * Return the number of hits on pages of this <code>BufferPool</code> while
+     * they were on probation. Always zero for the CLOCK policy.
+     * 
+     * @return The probation hit count
+     */
+    @Description("The number of hits on pages while they were on probation")
+    public long getProbationHitCount();
+
+    /**
+     * Return the number of hits on pages in the protected set of this
+     * <code>BufferPool</code>. Always zero for the CLOCK policy.
+     * 
+     * @return The protected hit count
+     */
+    @Description("The number of hits on pages in the protected set")
+    public long getProtectedHitCount();
+
+    /**
+     * Return the number of page frames in the off-heap page cache backing this
+     * <code>BufferPool</code>, or zero if there is none.
+     * 
+     * @return The off-heap frame count
+     */
+    @Description("The number of page frames in the off-heap page cache")
+    public int getOffHeapFrameCount();
+
+    /**
+     * Return the number of misses in this <code>BufferPool</code> that were
+     * satisfied from the off-heap page cache.
+     * 
+     * @return The off-heap hit count
+     */
+    @Description("The number of pool misses satisfied from the off-heap page cache")
+    public long getOffHeapHitCount();
+
+    /**
+     * Return the number of misses in this <code>BufferPool</code> that were
+     * not found in the off-heap page cache.
+     * 
+     * @return The off-heap miss count
+     */
+    @Description("The number of pool misses not found in the off-heap page cache")
+    public long getOffHeapMissCount();
+
+    /**
+     * Return the number of index pages searched during tree traversals
+     * without acquiring a claim. Counts are accumulated by each
+     * <code>Exchange</code> and added to this total in batches.
+     * 
+     * @return The optimistic read count
+     */
+    @Description("The number of index pages searched without acquiring a claim")
+    public long getOptimisticReadCount();
+
+    /**
+     * Return the number of optimistic index page searches that were repeated
+     * with a claim because another thread was modifying the page.
+     * 
+     * @return The optimistic retry count
+     */
+    @Description("The number of optimistic index page searches repeated with a claim")
+    public long getOptimisticRetryCount();
+
+    /**
+     * Return the number of lock-free page lookups that found a buffer which
+     * had been reassigned to another page by the time it was claimed.
+     * 
+     * @return The lookup retry count
+     */
+    @Description("The number of lock-free page lookups repeated under a lock")
+    public long getLookupRetryCount();
+
+    /**
+     * Return the number of pages listed in the buffer inventory from which
+     * this pool is warmed up at startup.
+     * 
+     * @return The warmup page count
+     */
+    @Description("The number of pages listed in the warmup inventory")
+    public long getWarmupPageCount();
+
+    /**
+     * Return the number of pages read by the warmup process so far. Warmup
+     * runs in background threads after Persistit has started; compare this
+     * value with {@link #getWarmupPageCount()} to monitor progress.
+     * 
+     * @return The warmup loaded count
+     */
+    @Description("The number of pages read by the warmup process")
+    public long getWarmupLoadedCount();
+
+    /**
+     * @return <code>true</code> while the pool is being warmed up
+     */
+    @Description("True while the pool is being warmed up")
+    public boolean isWarmupActive();
+
+    /**
+     * Return the number of requests to read pages ahead of an
+     * <code>Exchange</code> that is traversing consecutive data pages.
+     * 
+     * @return The read-ahead request count
+     */
+    @Description("The number of requests to read pages ahead of sequential traversals")
+    public long getReadAheadRequestCount();
+
+    /**
+     * Return the number of pages read into the pool by read-ahead threads.
+     * 
+     * @return The read-ahead page count
+     */
+    @Description("The number of pages read by read-ahead threads")
+    public long getReadAheadPageCount();
+
+    /**
+     * Return the number of threads that write dirty pages from this pool.
+     * 
+     * @return The page writer thread count
+     */
+    @Description("The number of threads that write dirty pages")
+    public int getPageWriterThreadCount();
+
+    /**
+     * Return the number of batches of pages written by the page writer
+     * threads.
+     * 
+     * @return The write batch count
+     */
+    @Description("The number of batches of pages written by the page writer threads")
+    public long getWriteBatchCount();
+
+    /**
+     * Return the number of pages written in batches by the page writer
+     * threads. Dividing by {@link #getWriteBatchCount()} gives the average
+     * batch size; compare the rate of change of
+     * {@link #getForcedWriteCount()} with that of this value to determine
+     * whether more writer threads are needed.
+     * 
+     * @return The write batch page count
+     */
+    @Description("The number of pages written in batches by the page writer threads")
+    public long getWriteBatchPageCount();
+
 }
@@ -61,10 +61,19 @@ public abstract class SplitPolicy {
      */
     public final static SplitPolicy RIGHT90_BIAS = new Right90();
 
+    /**
+     * When a record is inserted after the last key of a page, allocate as
+     * many records as possible to the left page so that it is left full and
+     * the new record begins the right page; otherwise equivalent to
+     * {@link #NICE_BIAS}. Used for trees in append mode, whose keys are
+     * inserted in ascending order at the right edge of the tree.
+     */
+    public final static SplitPolicy APPEND_BIAS = new Append();
+
     final static int KEYBLOCK_LENGTH = 4;
 
     private final static SplitPolicy[] POLICIES = { LEFT_BIAS, RIGHT_BIAS, EVEN_BIAS, NICE_BIAS, PACK_BIAS,
-            LEFT90_BIAS, RIGHT90_BIAS };
+            LEFT90_BIAS, RIGHT90_BIAS, APPEND_BIAS };
 
     private final static float PACK_SHOULDER = 0.9f;
 
@@ -292,4 +301,30 @@ public abstract class SplitPolicy {
             return "PACK";
         }
     }
+
+    private static class Append extends SplitPolicy {
+        @Override
+        public int splitFit(Buffer buffer, int kbOffset, int insertAt, boolean replace, int leftSize, int rightSize,
+                int currentSize, int virtualSize, int capacity, int splitInfo, Sequence sequence) {
+            //
+            // An insert before the final keyblock (the right edge key)
+            // appends a record to the page. Keep everything else in the left
+            // page so that it stays full; subsequent appends fill the right
+            // page.
+            //
+            if (leftSize > capacity || rightSize > capacity) {
+                return 0;
+            }
+            if (!replace && insertAt == Buffer.HEADER_SIZE + (buffer.getKeyCount() - 1) * KEYBLOCK_LENGTH) {
+                return leftSize;
+            }
+            return NICE_BIAS.splitFit(buffer, kbOffset, insertAt, replace, leftSize, rightSize, currentSize,
+                    virtualSize, capacity, splitInfo, sequence);
+        }
+
+        @Override
+        public String toString() {
+            return "APPEND";
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.persistit.Accumulator.Type;
+import com.persistit.unit.PersistitUnitTestCase;
+
+/**
+ * Measures the throughput of a fixed number of transactional inserts whose
+ * keys are allocated from a {@link Accumulator.Type#SEQ} accumulator, divided
+ * among 1 to 16 threads, into a tree in normal mode and a tree in append mode.
+ * Also reports the number of data pages each tree occupies when the run is
+ * finished.
+ */
+public class AppendModeBenchmark extends PersistitUnitTestCase {
+
+    private final static int INSERTS = 200000;
+
+    @Test
+    public void testBenchmarkAppend() throws Exception {
+        System.out.printf("%8s %16s %12s %16s %12s\n", "threads", "normal ins/sec", "normal pages",
+                "append ins/sec", "append pages");
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            final Tree normal = _persistit.getVolume("persistit").getTree("normal" + threads, true);
+            final Tree append = _persistit.getVolume("persistit").getTree("append" + threads, true);
+            append.setAppendMode(true);
+            final long normalRate = run(normal, threads);
+            final long appendRate = run(append, threads);
+            System.out.printf("%8d %,16d %,12d %,16d %,12d\n", threads, normalRate, dataPageCount(normal),
+                    appendRate, dataPageCount(append));
+            _persistit.getExchange(normal.getVolume(), normal.getName(), false).removeTree();
+            _persistit.getExchange(append.getVolume(), append.getName(), false).removeTree();
+        }
+    }
+
+    private long run(final Tree tree, final int threadCount) throws Exception {
+        final Accumulator sequence = tree.getAccumulator(Type.SEQ, 0);
+        final int perThread = INSERTS / threadCount;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = _persistit.getExchange(tree.getVolume(), tree.getName(), false);
+                        final Transaction txn = _persistit.getTransaction();
+                        ex.getValue().put(RED_FOX);
+                        start.await();
+                        for (int count = 0; count < perThread; count++) {
+                            txn.begin();
+                            try {
+                                ex.clear().append(sequence.update(1, txn)).store();
+                                txn.commit();
+                            } finally {
+                                txn.end();
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return (long) perThread * threadCount * 1000000000L / (System.nanoTime() - begin);
+    }
+
+    private long dataPageCount(final Tree tree) throws Exception {
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(tree);
+        assertEquals(0, icheck.getFaults().length);
+        return icheck.getDataPageCount();
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.persistit.Accumulator.Type;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class AppendModeTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 50000;
+
+    @Test
+    public void testAppendSplits() throws Exception {
+        final long normal = dataPageCount("AppendModeTest_normal", false);
+        final long append = dataPageCount("AppendModeTest_append", true);
+        assertTrue("Pages: normal=" + normal + " append=" + append, append < normal * 19 / 20);
+    }
+
+    @Test
+    public void testSharedRightEdge() throws Exception {
+        final long normal = pageGets("AppendModeTest_normal", false);
+        final long append = pageGets("AppendModeTest_append", true);
+        assertTrue("Page gets: normal=" + normal + " append=" + append, append < normal * 2 / 3);
+    }
+
+    @Test
+    public void testConcurrentAppend() throws Exception {
+        final Tree tree = _persistit.getVolume("persistit").getTree("AppendModeTest", true);
+        tree.setAppendMode(true);
+        final Accumulator sequence = tree.getAccumulator(Type.SEQ, 0);
+        final int threadCount = 4;
+        final int perThread = 5000;
+        final Thread[] threads = new Thread[threadCount];
+        final Exception[] failures = new Exception[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = _persistit.getExchange("persistit", "AppendModeTest", false);
+                        final Transaction txn = _persistit.getTransaction();
+                        final Random random = new Random(index);
+                        for (int i = 0; i < perThread; i++) {
+                            txn.begin();
+                            try {
+                                ex.getValue().put(RED_FOX);
+                                if (i % 100 == 99) {
+                                    //
+                                    // An occasional insert away from the
+                                    // right edge
+                                    //
+                                    ex.clear().append(random.nextInt(i)).append(index).append(i).store();
+                                } else {
+                                    ex.clear().append(sequence.update(1, txn)).store();
+                                }
+                                txn.commit();
+                            } finally {
+                                txn.end();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures[index] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (final Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        final Exchange ex = _persistit.getExchange("persistit", "AppendModeTest", false);
+        int count = 0;
+        ex.clear().append(Key.BEFORE);
+        while (ex.next(true)) {
+            count++;
+        }
+        assertEquals(threadCount * perThread, count);
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(tree);
+        assertEquals(0, icheck.getFaults().length);
+    }
+
+    private long dataPageCount(final String treeName, final boolean appendMode) throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", treeName, true);
+        ex.getTree().setAppendMode(appendMode);
+        ex.getValue().put(RED_FOX);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i).store();
+        }
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        assertEquals(0, icheck.getFaults().length);
+        return icheck.getDataPageCount();
+    }
+
+    /**
+     * Count the pages claimed by two <code>Exchange</code>s storing ascending
+     * keys in turn. Each store invalidates the other <code>Exchange</code>'s
+     * cached copy of the rightmost page, so without append mode each store
+     * searches from the root.
+     */
+    private long pageGets(final String treeName, final boolean appendMode) throws Exception {
+        final Exchange ex1 = _persistit.getExchange("persistit", treeName, true);
+        final Exchange ex2 = _persistit.getExchange("persistit", treeName, true);
+        ex1.getTree().setAppendMode(appendMode);
+        ex1.getValue().put(RED_FOX);
+        ex2.getValue().put(RED_FOX);
+        for (int i = 0; i < RECORDS; i++) {
+            ex1.clear().append(i).store();
+        }
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final long before = pool.getHitCounter() + pool.getMissCounter();
+        for (int i = RECORDS; i < RECORDS * 2; i += 2) {
+            ex1.clear().append(i).store();
+            ex2.clear().append(i + 1).store();
+        }
+        return pool.getHitCounter() + pool.getMissCounter() - before;
+    }
+}
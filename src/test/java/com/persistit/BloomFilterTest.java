@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.persistit.Management.TreeInfo;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class BloomFilterTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 20000;
+
+    @Test
+    public void testNegativeLookups() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BloomFilterTest", true);
+        for (int i = 0; i < RECORDS; i += 2) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        ex.getTree().enableBloomFilter(RECORDS);
+        assertTrue(ex.getTree().isBloomFilterEnabled());
+
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final long before = pool.getHitCounter() + pool.getMissCounter();
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i).fetch();
+            if (i % 2 == 0) {
+                assertEquals(RED_FOX + i, ex.getValue().getString());
+            } else {
+                assertFalse(ex.getValue().isDefined());
+            }
+        }
+        final long claims = pool.getHitCounter() + pool.getMissCounter() - before;
+
+        final TreeInfo info = _persistit.getManagement().getTreeInfo("persistit", "BloomFilterTest");
+        final long negatives = info.getBloomFilterNegativeCounter();
+        assertEquals(RECORDS / 2, negatives + info.getBloomFilterFalsePositiveCounter());
+        assertTrue("False positive rate " + info.getBloomFilterFalsePositiveRate(),
+                info.getBloomFilterFalsePositiveRate() < 0.05);
+        assertTrue("Buffer claims " + claims, claims < (RECORDS - negatives) * ex.getTree().getDepth() + 10);
+
+        ex.getTree().disableBloomFilter();
+        assertFalse(ex.getTree().isBloomFilterEnabled());
+        ex.clear().append(1).fetch();
+        assertFalse(ex.getValue().isDefined());
+    }
+
+    @Test
+    public void testMaintenance() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BloomFilterTest", true);
+        ex.getTree().enableBloomFilter(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        final Transaction txn = ex.getTransaction();
+        txn.begin();
+        try {
+            ex.getValue().put(RED_FOX);
+            ex.clear().append("txn").store();
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        for (int i = 0; i < RECORDS; i += 3) {
+            ex.clear().append(i).remove();
+        }
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i);
+            assertEquals(i % 3 != 0, ex.isValueDefined());
+            ex.fetch();
+            assertEquals(i % 3 != 0, ex.getValue().isDefined());
+        }
+        ex.clear().append("txn").fetch();
+        assertEquals(RED_FOX, ex.getValue().getString());
+        ex.clear().append("absent");
+        assertFalse(ex.isValueDefined());
+
+        final Key[] keys = new Key[6];
+        final Value[] values = new Value[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(_persistit).append(i + RECORDS - 3);
+            values[i] = new Value(_persistit);
+        }
+        assertEquals(2, ex.fetchAll(keys, values));
+        assertEquals(RED_FOX + (RECORDS - 3), values[0].getString());
+        assertFalse(values[1].isDefined());
+        assertEquals(RED_FOX + (RECORDS - 1), values[2].getString());
+        assertFalse(values[3].isDefined());
+    }
+
+    @Test
+    public void testConcurrentBuild() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BloomFilterTest", true);
+        for (int i = 0; i < RECORDS; i += 2) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        final Exception[] failure = new Exception[1];
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Exchange ex = _persistit.getExchange("persistit", "BloomFilterTest", false);
+                    for (int i = RECORDS - 1; i > 0; i -= 2) {
+                        ex.getValue().put(RED_FOX + i);
+                        ex.clear().append(i).store();
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        writer.start();
+        ex.getTree().enableBloomFilter(RECORDS);
+        writer.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i).fetch();
+            assertEquals(RED_FOX + i, ex.getValue().getString());
+        }
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BloomFilterTest", true);
+        ex.getTree().enableBloomFilter(RECORDS);
+        final BulkLoader loader = new BulkLoader(ex);
+        final Key key = new Key(_persistit);
+        final Value value = new Value(_persistit);
+        for (int i = 0; i < RECORDS; i += 2) {
+            value.put(RED_FOX + i);
+            loader.append(key.clear().append(i), value);
+        }
+        loader.finish();
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i).fetch();
+            assertEquals(i % 2 == 0, ex.getValue().isDefined());
+        }
+        assertTrue(_persistit.getManagement().getTreeInfo("persistit", "BloomFilterTest")
+                .getBloomFilterNegativeCounter() > RECORDS / 3);
+    }
+}
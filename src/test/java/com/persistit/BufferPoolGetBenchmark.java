@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+/**
+ * Measures the throughput of {@link BufferPool#get} for pages that are
+ * present in the pool, with 1 to 64 threads, first searching the hash table
+ * under its hash locks and then with the lock-free lookup. Every thread
+ * repeatedly gets and releases reader claims on a small set of pages, so the
+ * threads contend only on the pool's lookup path and the buffers' claims.
+ */
+public class BufferPoolGetBenchmark extends PersistitUnitTestCase {
+
+    private final static int PAGES = 64;
+
+    private final static long DURATION = 2000;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "1000");
+        return properties;
+    }
+
+    @Test
+    public void testBenchmarkGet() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final BufferPool pool = volume.getPool();
+        final long timestamp = _persistit.getTimestampAllocator().updateTimestamp();
+        final long[] pages = new long[PAGES];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = volume.getStorage().allocNewPage();
+            final Buffer buffer = pool.get(volume, pages[i], true, false);
+            buffer.init(Buffer.PAGE_TYPE_DATA);
+            buffer.setDirtyAtTimestamp(timestamp);
+            buffer.releaseTouched();
+        }
+        pool.resetCounters();
+        System.out.printf("%8s %18s %18s\n", "threads", "locked gets/sec", "lock-free gets/sec");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            pool.setLockFreeLookup(false);
+            final long locked = run(pool, volume, pages, threads);
+            pool.setLockFreeLookup(true);
+            final long lockFree = run(pool, volume, pages, threads);
+            System.out.printf("%8d %,18d %,18d\n", threads, locked, lockFree);
+        }
+        assertEquals("Pages were evicted during the benchmark", 0, pool.getMissCounter());
+    }
+
+    private long run(final BufferPool pool, final Volume volume, final long[] pages, final int threadCount)
+            throws Exception {
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    final Random random = new Random(seed);
+                    long count = 0;
+                    try {
+                        start.await();
+                        final long end = System.currentTimeMillis() + DURATION;
+                        while ((count & 0xFF) != 0 || System.currentTimeMillis() < end) {
+                            pool.get(volume, pages[random.nextInt(PAGES)], false, true).release();
+                            count++;
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    total.addAndGet(count);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return total.get() * 1000 / DURATION;
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
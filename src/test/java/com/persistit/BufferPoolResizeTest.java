@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class BufferPoolResizeTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 5000;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "100");
+        properties.setProperty("buffer.policy.16384", "2q");
+        return properties;
+    }
+
+    @Test
+    public void testGrowAndShrink() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "BufferPoolResizeTest", true);
+        ex.getValue().put(createString(1000));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+
+        pool.setBufferCount(400);
+        assertEquals(400, pool.getBufferCount());
+        verify(ex);
+        final Management.BufferPoolInfo info = new Management.BufferPoolInfo();
+        pool.populateBufferPoolInfo(info);
+        assertTrue("Valid pages: " + info.getValidPageCount(), info.getValidPageCount() > 100);
+
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(createString(500) + i);
+            ex.to(i).store();
+        }
+        _persistit.getManagement().setBufferCount(16384, 120);
+        assertEquals(120, pool.getBufferCount());
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(createString(500) + i, ex.getValue().getString());
+        }
+
+        final Properties properties = _persistit.getProperties();
+        _persistit.close();
+        _persistit = new Persistit();
+        _persistit.initialize(properties);
+        final Exchange copy = _persistit.getExchange("persistit", "BufferPoolResizeTest", false);
+        for (int i = 0; i < RECORDS; i++) {
+            copy.to(i).fetch();
+            assertEquals(createString(500) + i, copy.getValue().getString());
+        }
+    }
+
+    @Test
+    public void testInvalidCount() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        try {
+            pool.setBufferCount(1);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(100, pool.getBufferCount());
+    }
+
+    @Test
+    public void testResizeUnderLoad() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "BufferPoolResizeTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(createString(1000) + i);
+            ex.to(i).store();
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = _persistit.getExchange("persistit", "BufferPoolResizeTest", false);
+                        for (int i = index; !done.get(); i = (i + 7919) % RECORDS) {
+                            if (index == 0) {
+                                ex.getValue().put(createString(1000) + i);
+                                ex.to(i).store();
+                            } else {
+                                ex.to(i).fetch();
+                                if (!(createString(1000) + i).equals(ex.getValue().getString())) {
+                                    errors.incrementAndGet();
+                                }
+                            }
+                        }
+                        _persistit.releaseExchange(ex);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            for (int cycle = 0; cycle < 10; cycle++) {
+                pool.setBufferCount(cycle % 2 == 0 ? 300 : 100);
+                Thread.sleep(50);
+            }
+        } finally {
+            done.set(true);
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertEquals(0, errors.get());
+        assertEquals(100, pool.getBufferCount());
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(createString(1000) + i, ex.getValue().getString());
+        }
+    }
+
+    private void verify(final Exchange ex) throws Exception {
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(createString(1000), ex.getValue().getString());
+        }
+    }
+}
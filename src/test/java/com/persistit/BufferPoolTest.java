@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -57,6 +58,48 @@ public class BufferPoolTest extends PersistitUnitTestCase {
         buffer1.release();
     }
 
+    @Test
+    public void testVolumeBufferIndex() throws Exception {
+        final Volume vol = _persistit.createTemporaryVolume();
+        final BufferPool pool = vol.getPool();
+        final Exchange ex = _persistit.getExchange(vol, "BufferPoolTest", true);
+        final Exchange other = _persistit.getExchange("persistit", "BufferPoolTest", true);
+        ex.getValue().put(RED_FOX);
+        other.getValue().put(RED_FOX);
+        for (int i = 0; i < 1000; i++) {
+            ex.to(i).store();
+            other.to(i).store();
+        }
+        int expected = 0;
+        for (int index = 0; index < pool.getBufferCount(); index++) {
+            if (pool.getBufferCopy(index).getVolume() == vol) {
+                expected++;
+            }
+        }
+        final int[] indexes = vol.getBufferIndex().toArray();
+        assertEquals(expected, indexes.length);
+        assertEquals(vol.getBufferOccupancy(), indexes.length);
+        for (final int index : indexes) {
+            assertTrue(pool.getBufferCopy(index).getVolume() == vol);
+        }
+        final int otherValid = countValid(pool, other.getVolume());
+        assertTrue(pool.invalidate(vol));
+        assertEquals(0, countValid(pool, vol));
+        assertEquals(0, vol.getBufferIndex().size());
+        assertEquals(otherValid, countValid(pool, other.getVolume()));
+    }
+
+    private int countValid(final BufferPool pool, final Volume vol) {
+        int count = 0;
+        for (int index = 0; index < pool.getBufferCount(); index++) {
+            final Buffer buffer = pool.getBufferCopy(index);
+            if (buffer.getVolume() == vol && buffer.isValid()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Test
     public void testSelectDirtyBuffers() throws Exception {
         final Volume volume = _persistit.getVolume("persistit");
@@ -95,6 +138,91 @@ public class BufferPoolTest extends PersistitUnitTestCase {
         }
     }
 
+    @Test
+    public void testLockFreeLookup() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final BufferPool pool = volume.getPool();
+        final long timestamp = _persistit.getTimestampAllocator().updateTimestamp();
+        final long[] pages = new long[pool.getBufferCount() * 2];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = volume.getStorage().allocNewPage();
+            final Buffer buffer = pool.get(volume, pages[i], true, false);
+            buffer.init(Buffer.PAGE_TYPE_DATA);
+            buffer.setDirtyAtTimestamp(timestamp);
+            buffer.releaseTouched();
+        }
+        //
+        // Threads repeatedly request pages from a set twice the size of the
+        // pool so that buffers are constantly reassigned while other threads
+        // search the hash table without locking.
+        //
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    final Random random = new Random(seed);
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            final long page = pages[random.nextInt(i % 2 == 0 ? pages.length : 10)];
+                            final Buffer buffer = pool.get(volume, page, false, true);
+                            if (buffer.getPageAddress() != page || buffer.getVolume() != volume
+                                    || !buffer.isValid() || buffer.getPageType() != Buffer.PAGE_TYPE_DATA) {
+                                errors.incrementAndGet();
+                            }
+                            buffer.release();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void testLockFreeLookupOfClaimedBuffer() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final BufferPool pool = volume.getPool();
+        final long page = volume.getStorage().allocNewPage();
+        final Buffer buffer = pool.get(volume, page, true, false);
+        buffer.init(Buffer.PAGE_TYPE_DATA);
+        buffer.setDirtyAtTimestamp(_persistit.getTimestampAllocator().updateTimestamp());
+        //
+        // The lock-free lookup must not wait for the writer claim held here;
+        // it retries under the hash lock, which waits for the claim.
+        //
+        final long retries = pool.getLookupRetryCounter();
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Buffer found = pool.get(volume, page, false, true);
+                    if (found != buffer || found.getPageAddress() != page) {
+                        errors.incrementAndGet();
+                    }
+                    found.release();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    errors.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        Thread.sleep(100);
+        assertEquals(retries + 1, pool.getLookupRetryCounter());
+        buffer.releaseTouched();
+        reader.join();
+        assertEquals(0, errors.get());
+    }
+
     @Test
     public void testAddSelectedBuffer() throws Exception {
         final Volume volume = _persistit.getVolume("persistit");
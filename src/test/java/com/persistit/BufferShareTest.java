@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.persistit.Management.BufferPoolInfo;
+import com.persistit.Management.BufferShareInfo;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class BufferShareTest extends PersistitUnitTestCase {
+
+    private final static int BUFFERS = 100;
+
+    private final static int RECORDS = 10000;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", Integer.toString(BUFFERS));
+        return properties;
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BufferShareTest", true);
+        final Tree tree = ex.getTree();
+        assertEquals(0, tree.getBufferShareMinimum());
+        assertEquals(100, tree.getBufferShareMaximum());
+        tree.setBufferShare(10, 50);
+        assertEquals(10, tree.getBufferShareMinimum());
+        assertEquals(50, tree.getBufferShareMaximum());
+        for (final int[] invalid : new int[][] { { -1, 50 }, { 60, 50 }, { 0, 0 }, { 0, 101 } }) {
+            try {
+                ex.getVolume().setBufferShare(invalid[0], invalid[1]);
+                fail("Exception expected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(0, ex.getVolume().getBufferShareMinimum());
+        assertEquals(100, ex.getVolume().getBufferShareMaximum());
+    }
+
+    @Test
+    public void testReservedTreeSurvivesScan() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange hot = _persistit.getExchange("persistit", "BufferShareTest_hot", true);
+        final Exchange cold = _persistit.getExchange("persistit", "BufferShareTest_cold", true);
+        hot.getTree().setBufferShare(20, 100);
+        hot.getValue().put(createString(500));
+        cold.getValue().put(createString(500));
+        for (int i = 0; i < 300; i++) {
+            hot.to(i).store();
+        }
+        for (int i = 0; i < 300; i++) {
+            hot.to(i).fetch();
+        }
+        assertTrue(hot.getTree().getBufferOccupancy() > 0);
+        //
+        // Fill the pool many times over with pages of another tree
+        //
+        for (int i = 0; i < RECORDS; i++) {
+            cold.to(i).store();
+        }
+        pool.resetCounters();
+        for (int i = 0; i < 300; i++) {
+            hot.to(i).fetch();
+            assertEquals(createString(500), hot.getValue().getString());
+        }
+        assertEquals("Reserved pages were evicted", 0, pool.getMissCounter());
+    }
+
+    @Test
+    public void testMaximumShare() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BufferShareTest", true);
+        final Tree tree = ex.getTree();
+        tree.setBufferShare(0, 25);
+        ex.getValue().put(createString(500));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+            assertTrue("Occupancy " + tree.getBufferOccupancy(), tree.getBufferOccupancy() <= BUFFERS / 4 + 2);
+        }
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(createString(500), ex.getValue().getString());
+        }
+        assertTrue("Occupancy " + tree.getBufferOccupancy(), tree.getBufferOccupancy() <= BUFFERS / 4 + 2);
+
+        final BufferPoolInfo[] infos = _persistit.getManagement().getBufferPoolInfoArray();
+        BufferShareInfo found = null;
+        for (final BufferPoolInfo info : infos) {
+            if (info.getBufferSize() == 16384) {
+                for (final BufferShareInfo share : info.getBufferShares()) {
+                    if ("BufferShareTest".equals(share.getTreeName())) {
+                        found = share;
+                    }
+                }
+            }
+        }
+        assertTrue(found != null);
+        assertEquals("persistit", found.getVolumeName());
+        assertEquals(tree.getBufferOccupancy(), found.getBufferCount());
+        assertEquals(25, found.getMaximumShare());
+    }
+}
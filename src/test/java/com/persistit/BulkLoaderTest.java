@@ -0,0 +1,216 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class BulkLoaderTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 50000;
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BulkLoaderTest", true);
+        final BulkLoader loader = new BulkLoader(ex);
+        final Key key = new Key(_persistit);
+        final Value value = new Value(_persistit);
+        for (int i = 0; i < RECORDS; i++) {
+            key.clear().append(i);
+            value.put(valueFor(i));
+            loader.append(key, value);
+        }
+        assertEquals(RECORDS, loader.getRecordCount());
+        assertTrue(ex.clear().append(Key.BEFORE).next() == false);
+        loader.finish();
+
+        assertTrue("Expected index levels", ex.getTree().getDepth() > 1);
+        for (int i = 0; i < RECORDS; i += 7) {
+            ex.clear().append(i).fetch();
+            assertEquals(valueFor(i), ex.getValue().getString());
+        }
+        int count = 0;
+        ex.clear().append(Key.BEFORE);
+        while (ex.next()) {
+            assertEquals(count, ex.getKey().reset().decodeInt());
+            count++;
+        }
+        assertEquals(RECORDS, count);
+
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        assertEquals(0, icheck.getFaults().length);
+        assertTrue(icheck.getLongRecordPageCount() > 0);
+        //
+        // The loaded tree accepts ordinary updates
+        //
+        ex.getValue().put(RED_FOX);
+        for (int i = 0; i < RECORDS; i += 100) {
+            ex.clear().append(i).append("x").store();
+        }
+        ex.clear().append(Key.BEFORE);
+        count = 0;
+        while (ex.next(true)) {
+            count++;
+        }
+        assertEquals(RECORDS + RECORDS / 100, count);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BulkLoaderTest", true);
+        final BulkLoader loader = new BulkLoader(ex);
+        final Value value = new Value(_persistit);
+        for (int i = 0; i < RECORDS; i++) {
+            value.put(valueFor(i));
+            loader.append(new Key(_persistit).append(i), value);
+        }
+        loader.finish();
+        //
+        // Like other non-transactional updates, the loaded tree is recovered
+        // from the page images of the last checkpoint.
+        //
+        _persistit.checkpoint();
+        safeCrashAndRestoreProperties();
+
+        final Exchange recovered = _persistit.getExchange("persistit", "BulkLoaderTest", false);
+        int count = 0;
+        recovered.clear().append(Key.BEFORE);
+        while (recovered.next()) {
+            assertEquals(valueFor(count), recovered.getValue().getString());
+            count++;
+        }
+        assertEquals(RECORDS, count);
+    }
+
+    @Test
+    public void testFillFactor() throws Exception {
+        final long full = dataPageCount("BulkLoaderTest_full", 1.0f);
+        final long half = dataPageCount("BulkLoaderTest_half", 0.5f);
+        assertTrue("Pages: full=" + full + " half=" + half, half > full * 3 / 2);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BulkLoaderTest", true);
+        try {
+            new BulkLoader(ex, 0.0f);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        final BulkLoader loader = new BulkLoader(ex);
+        final Value value = new Value(_persistit);
+        value.put(RED_FOX);
+        loader.append(new Key(_persistit).append(2), value);
+        try {
+            loader.append(new Key(_persistit).append(1), value);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        loader.abort();
+        assertTrue(!ex.clear().append(Key.BEFORE).next());
+
+        ex.getValue().put(RED_FOX);
+        ex.clear().append(1).store();
+        try {
+            new BulkLoader(ex);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAbortFreesLongRecords() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BulkLoaderTest", true);
+        abortedLoad(ex);
+        final long pages = ex.getVolume().getNextAvailablePage();
+        //
+        // Every page of the first load, including the LONG_RECORD chain of
+        // the last record which was never placed in a data page, is reused.
+        //
+        abortedLoad(ex);
+        assertEquals(pages, ex.getVolume().getNextAvailablePage());
+        assertTrue(!ex.clear().append(Key.BEFORE).next());
+    }
+
+    @Test
+    public void testStreamLoader() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "BulkLoaderTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(valueFor(i));
+            ex.clear().append(i).store();
+        }
+        final File file = File.createTempFile("BulkLoaderTest", ".sav");
+        file.deleteOnExit();
+        final StreamSaver saver = new StreamSaver(_persistit, file);
+        saver.saveTrees("persistit", new String[] { "BulkLoaderTest" });
+        saver.close();
+        ex.removeTree();
+
+        final StreamLoader loader = new StreamLoader(_persistit, file);
+        loader.setBulkLoad(true);
+        loader.load();
+
+        final Exchange loaded = _persistit.getExchange("persistit", "BulkLoaderTest", false);
+        int count = 0;
+        loaded.clear().append(Key.BEFORE);
+        while (loaded.next()) {
+            assertEquals(count, loaded.getKey().reset().decodeInt());
+            assertEquals(valueFor(count), loaded.getValue().getString());
+            count++;
+        }
+        assertEquals(RECORDS, count);
+    }
+
+    private long dataPageCount(final String treeName, final float fillFactor) throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", treeName, true);
+        final BulkLoader loader = new BulkLoader(ex, fillFactor);
+        final Value value = new Value(_persistit);
+        value.put(RED_FOX);
+        for (int i = 0; i < RECORDS; i++) {
+            loader.append(new Key(_persistit).append(i), value);
+        }
+        loader.finish();
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        assertEquals(0, icheck.getFaults().length);
+        return icheck.getDataPageCount();
+    }
+
+    private void abortedLoad(final Exchange ex) throws Exception {
+        final BulkLoader loader = new BulkLoader(ex);
+        final Value value = new Value(_persistit);
+        for (int i = 0; i < 100; i++) {
+            value.put(createString(100000) + i);
+            loader.append(new Key(_persistit).append(i), value);
+        }
+        loader.abort();
+    }
+
+    private String valueFor(final int i) {
+        return i % 1000 == 0 ? createString(100000) + i : RED_FOX + i;
+    }
+}
@@ -77,7 +77,12 @@ public class CleanupManagerTest extends PersistitUnitTestCase {
             cm().offer(new CleanupMockAction(i));
         }
         cm().setPollInterval(100);
-        for (int i = 0; i < 10 && cm().getEnqueuedCount() > 0; i++) {
+        /*
+         * The CleanupManager removes a work list of actions from its queue
+         * before performing them, so an empty queue does not mean they have
+         * been performed.
+         */
+        for (int i = 0; i < 10 && cm().getPerformedCount() + cm().getErrorCount() < 500; i++) {
             Thread.sleep(1000);
         }
         assertEquals(500, _counter);
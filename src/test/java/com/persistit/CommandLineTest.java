@@ -39,6 +39,7 @@ public class CommandLineTest extends PersistitUnitTestCase {
         assertNotNull(TestShim.parseTask(_persistit, "backup file=somefile -a -y -z"));
         assertNotNull(TestShim.parseTask(_persistit, "save trees=persistit file=somefile"));
         assertNotNull(TestShim.parseTask(_persistit, "load trees=persistit:*{1:2} file=somefile -t -n"));
+        assertNotNull(TestShim.parseTask(_persistit, "compact trees=persistit:* fill=80 delay=0"));
         assertNull(TestShim.parseTask(_persistit, "open datapath=somefile"));
         try {
             TestShim.parseTask(_persistit, "backup file=somefile -s -y -z wrong=parameter");
@@ -72,6 +73,10 @@ public class CommandLineTest extends PersistitUnitTestCase {
 
         assertEquals(300, pmap.size());
 
+        status = management.launch("compact trees=persistit:CommandLineTest");
+        waitForCompletion(taskId(status));
+        assertEquals(300, pmap.size());
+
         status = management.launch("jquery -T -V -v page=1");
         waitForCompletion(taskId(status));
 
@@ -0,0 +1,325 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class CountKeysTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 20000;
+
+    private final static int COUNTED_RECORDS = 10000;
+
+    @Test
+    public void testCountKeys() throws Exception {
+        final Exchange ex = store();
+        final Key empty = new Key(_persistit);
+        assertEquals(RECORDS, ex.countKeys(empty, empty));
+        assertEquals(RECORDS, ex.countKeys(key(Key.BEFORE), key(Key.AFTER)));
+        assertEquals(4900, ex.countKeys(key(100), key(5000)));
+        assertEquals(1, ex.countKeys(key(100), key(100, 0)));
+        assertEquals(0, ex.countKeys(key(5000), key(100)));
+        assertEquals(0, ex.countKeys(key(RECORDS), empty));
+        assertEquals(RECORDS - 101, ex.countKeys(key(100, 0), empty));
+        assertEquals(RECORDS - 1, ex.getKey().reset().decodeInt());
+
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        //
+        // Background threads also claim pages; take the least of several runs
+        //
+        long claims = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            final long before = pool.getHitCounter() + pool.getMissCounter();
+            assertEquals(RECORDS, ex.countKeys(empty, empty));
+            claims = Math.min(claims, pool.getHitCounter() + pool.getMissCounter() - before);
+        }
+        assertTrue("Buffer claims " + claims + " pages " + icheck.getDataPageCount(), claims <= icheck.getDataPageCount() + ex.getTree().getDepth());
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        final Exchange ex = store();
+        for (int n = 0; n < RECORDS; n += 997) {
+            assertTrue(ex.clear().skip(n + 1));
+            assertEquals(n, ex.getKey().reset().decodeInt());
+            assertEquals(RED_FOX + n, ex.getValue().getString());
+        }
+        ex.clear().append(RECORDS - 10);
+        assertTrue(ex.skip(9));
+        assertEquals(RECORDS - 1, ex.getKey().reset().decodeInt());
+        assertFalse(ex.skip(1));
+        assertTrue(ex.getKey().reset().isBefore());
+        assertFalse(ex.clear().skip(RECORDS + 1));
+        assertTrue(ex.clear().skip(RECORDS));
+        assertEquals(RECORDS - 1, ex.getKey().reset().decodeInt());
+    }
+
+    @Test
+    public void testVisibility() throws Exception {
+        final Exchange ex = store();
+        final Key empty = new Key(_persistit);
+        final Transaction txn = ex.getTransaction();
+        txn.begin();
+        try {
+            for (int i = 0; i < RECORDS; i += 2) {
+                ex.clear().append(i).remove();
+            }
+            ex.getValue().put(RED_FOX);
+            ex.clear().append(RECORDS).store();
+            assertEquals(RECORDS / 2 + 1, ex.countKeys(empty, empty));
+            assertEquals(50, ex.countKeys(key(1000), key(1100)));
+            assertTrue(ex.clear().skip(100));
+            assertEquals(199, ex.getKey().reset().decodeInt());
+            assertTrue(ex.clear().skip(RECORDS / 2 + 1));
+            assertEquals(RECORDS, ex.getKey().reset().decodeInt());
+            assertEquals(RECORDS, countInOtherThread());
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        assertEquals(RECORDS / 2 + 1, ex.countKeys(empty, empty));
+        assertEquals(RECORDS / 2 + 1, countInOtherThread());
+    }
+
+    @Test
+    public void testCountedTree() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", true);
+        ex.getTree().enableRecordCounts();
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+        final Random random = new Random(1);
+        for (int i = 0; i < COUNTED_RECORDS; i++) {
+            final int k = random.nextInt(COUNTED_RECORDS);
+            if (random.nextInt(4) == 0) {
+                countedKey(ex, k).remove();
+                expected.remove(k);
+            } else {
+                ex.getValue().put(RED_FOX + k);
+                countedKey(ex, k).store();
+                expected.add(k);
+            }
+        }
+        //
+        // Remove runs of keys to join and rebalance pages
+        //
+        for (int k = 0; k < COUNTED_RECORDS; k += 100) {
+            for (int j = k + 10; j < k + 90; j++) {
+                countedKey(ex, j).remove();
+                expected.remove(j);
+            }
+        }
+        assertTrue("Expected three levels", ex.getTree().getDepth() >= 3);
+        verifyCountedTree(ex, expected);
+    }
+
+    @Test
+    public void testCountedTransactions() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", true);
+        ex.getTree().enableRecordCounts();
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (int k = 0; k < COUNTED_RECORDS; k++) {
+            ex.getValue().put(RED_FOX + k);
+            countedKey(ex, k).store();
+            expected.add(k);
+        }
+        final Key empty = new Key(_persistit);
+        final Transaction txn = ex.getTransaction();
+        txn.begin();
+        try {
+            for (int k = 0; k < COUNTED_RECORDS; k += 2) {
+                countedKey(ex, k).remove();
+            }
+            assertEquals(COUNTED_RECORDS / 2, ex.countKeys(empty, empty));
+            assertEquals(50, ex.countKeys(key(1000), key(1100)));
+            assertTrue(ex.clear().skip(100));
+            assertEquals(199, ex.getKey().reset().decodeInt());
+            assertEquals(COUNTED_RECORDS, countInOtherThread());
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        for (int k = 0; k < COUNTED_RECORDS; k += 2) {
+            expected.remove(k);
+        }
+        assertEquals(COUNTED_RECORDS / 2, ex.countKeys(empty, empty));
+        //
+        // Pruning leaves the counts above the pruned pages stale until the
+        // cleanup manager recounts them
+        //
+        _persistit.getTransactionIndex().updateActiveTransactionCache();
+        ex.prune(Key.LEFT_GUARD_KEY, Key.RIGHT_GUARD_KEY);
+        assertEquals(COUNTED_RECORDS / 2, ex.countKeys(empty, empty));
+        while (_persistit.getCleanupManager().getEnqueuedCount() > 0) {
+            _persistit.getCleanupManager().poll();
+        }
+        verifyCountedTree(ex, expected);
+    }
+
+    @Test
+    public void testCountedBulkLoad() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", true);
+        ex.getTree().enableRecordCounts();
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+        final BulkLoader loader = new BulkLoader(ex);
+        final Value value = new Value(_persistit);
+        for (int k = 0; k < COUNTED_RECORDS; k++) {
+            value.put(RED_FOX + k);
+            loader.append(countedKey(ex, k).getKey(), value);
+            expected.add(k);
+        }
+        loader.finish();
+        verifyCountedTree(ex, expected);
+        for (int k = 0; k < COUNTED_RECORDS; k += 3) {
+            countedKey(ex, k).remove();
+            expected.remove(k);
+        }
+        verifyCountedTree(ex, expected);
+    }
+
+    @Test
+    public void testCountedTreePersists() throws Exception {
+        Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", true);
+        ex.getTree().enableRecordCounts();
+        for (int k = 0; k < COUNTED_RECORDS; k++) {
+            ex.getValue().put(RED_FOX + k);
+            countedKey(ex, k).store();
+        }
+        _persistit.checkpoint();
+        safeCrashAndRestoreProperties();
+        ex = _persistit.getExchange("persistit", "CountKeysTest", false);
+        assertTrue(ex.getTree().hasRecordCounts());
+        final Key empty = new Key(_persistit);
+        assertEquals(COUNTED_RECORDS, ex.countKeys(empty, empty));
+        assertEquals(4900, ex.countKeys(key(100), key(5000)));
+
+        final Exchange other = _persistit.getExchange("persistit", "CountKeysTest2", true);
+        for (int i = 0; i < RECORDS; i++) {
+            other.getValue().put(RED_FOX + i);
+            other.clear().append(i).store();
+        }
+        assertFalse(other.getTree().hasRecordCounts());
+        try {
+            other.getTree().enableRecordCounts();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares counts and skips over a variety of ranges with the expected
+     * keys, checks the record counts in the index, and verifies that a count
+     * reads only the pages on the paths to the ends of its range.
+     */
+    private void verifyCountedTree(final Exchange ex, final TreeSet<Integer> expected) throws Exception {
+        final Key empty = new Key(_persistit);
+        assertEquals(expected.size(), ex.countKeys(empty, empty));
+        final List<Integer> keys = new ArrayList<Integer>(expected);
+        for (int from = 0; from < COUNTED_RECORDS; from += 1237) {
+            for (int to = from; to <= COUNTED_RECORDS; to += 3011) {
+                assertEquals("Range " + from + " to " + to, expected.subSet(from, to).size(),
+                        ex.countKeys(key(from), key(to)));
+            }
+        }
+        for (int n = 0; n < keys.size(); n += 331) {
+            assertTrue(ex.clear().skip(n + 1));
+            assertEquals(keys.get(n).intValue(), ex.getKey().reset().decodeInt());
+            assertEquals(RED_FOX + keys.get(n), ex.getValue().getString());
+        }
+        assertFalse(ex.clear().skip(keys.size() + 1));
+        assertTrue(ex.clear().skip(keys.size()));
+        assertEquals(keys.get(keys.size() - 1).intValue(), ex.getKey().reset().decodeInt());
+
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        assertEquals(0, icheck.getFaults().length);
+
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        long claims = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            final long before = pool.getHitCounter() + pool.getMissCounter();
+            ex.countKeys(key(COUNTED_RECORDS / 3), key(COUNTED_RECORDS * 2 / 3));
+            claims = Math.min(claims, pool.getHitCounter() + pool.getMissCounter() - before);
+        }
+        assertTrue("Buffer claims " + claims + " pages " + icheck.getDataPageCount(), claims <= 2 * ex.getTree()
+                .getDepth());
+    }
+
+    /**
+     * Sets a key whose second segment defeats elision so that index pages
+     * hold few entries and the tree grows several levels deep.
+     */
+    private Exchange countedKey(final Exchange ex, final int k) {
+        final StringBuilder sb = new StringBuilder();
+        final Random random = new Random(k);
+        for (int i = 0; i < 150; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return ex.clear().append(k).append(sb.toString());
+    }
+
+    private long countInOtherThread() throws Exception {
+        final long[] result = new long[1];
+        final Exception[] failure = new Exception[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", false);
+                    final Key empty = new Key(_persistit);
+                    result[0] = ex.countKeys(empty, empty);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result[0];
+    }
+
+    private Key key(final Object... segments) {
+        final Key key = new Key(_persistit);
+        for (final Object segment : segments) {
+            key.append(segment);
+        }
+        return key;
+    }
+
+    private Exchange store() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "CountKeysTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        return ex;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.persistit.exception.PersistitException;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class ExchangeUpdateTest extends PersistitUnitTestCase {
+
+    private final static ValueUpdater INCREMENT = new ValueUpdater() {
+        @Override
+        public boolean update(final Key key, final Value value) {
+            value.put(value.isDefined() ? value.getLong() + 1 : 1);
+            return true;
+        }
+    };
+
+    private final static ValueUpdater APPEND = new ValueUpdater() {
+        @Override
+        public boolean update(final Key key, final Value value) {
+            value.put((value.isDefined() ? value.getString() : "") + RED_FOX);
+            return true;
+        }
+    };
+
+    @Test
+    public void testIncrement() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+        for (int i = 0; i < 1000; i++) {
+            ex.clear().append(i % 10);
+            assertTrue(ex.update(INCREMENT));
+            assertEquals(i / 10 + 1, ex.getValue().getLong());
+        }
+        for (int i = 0; i < 10; i++) {
+            ex.clear().append(i).fetch();
+            assertEquals(100, ex.getValue().getLong());
+        }
+    }
+
+    @Test
+    public void testDecline() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+        final ValueUpdater onlyIfAbsent = new ValueUpdater() {
+            @Override
+            public boolean update(final Key key, final Value value) {
+                if (value.isDefined()) {
+                    return false;
+                }
+                value.put("first");
+                return true;
+            }
+        };
+        assertTrue(ex.clear().append("a").update(onlyIfAbsent));
+        ex.getValue().put("second");
+        assertFalse(ex.update(onlyIfAbsent));
+        assertEquals("first", ex.getValue().getString());
+        assertFalse(ex.clear().append("b").update(new ValueUpdater() {
+            @Override
+            public boolean update(final Key key, final Value value) {
+                return false;
+            }
+        }));
+        assertFalse(ex.isValueDefined());
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        runIncrements(false);
+        runIncrements(true);
+    }
+
+    @Test
+    public void testTransactionVisibility() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+        ex.clear().append("counter").update(INCREMENT);
+        final Transaction txn = ex.getTransaction();
+        txn.begin();
+        try {
+            ex.update(INCREMENT);
+            ex.update(INCREMENT);
+            assertEquals(3, ex.getValue().getLong());
+            assertEquals(1, fetchInOtherThread());
+            txn.rollback();
+        } finally {
+            txn.end();
+        }
+        ex.fetch();
+        assertEquals(1, ex.getValue().getLong());
+        ex.remove();
+        txn.begin();
+        try {
+            ex.update(INCREMENT);
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        assertEquals(1, fetchInOtherThread());
+    }
+
+    @Test
+    public void testLongRecords() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+        final int count = _persistit.getBufferPool(16384).getBufferSize() / RED_FOX.length() * 3;
+        for (int pass = 0; pass < 2; pass++) {
+            final Transaction txn = ex.getTransaction();
+            if (pass == 1) {
+                txn.begin();
+            }
+            try {
+                ex.clear().append("long").append(pass);
+                for (int i = 0; i < count; i++) {
+                    ex.update(APPEND);
+                }
+                final StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    expected.append(RED_FOX);
+                }
+                ex.getValue().clear();
+                ex.fetch();
+                assertEquals(expected.toString(), ex.getValue().getString());
+                ex.update(new ValueUpdater() {
+                    @Override
+                    public boolean update(final Key key, final Value value) {
+                        value.put(value.getString().length());
+                        return true;
+                    }
+                });
+                ex.getValue().clear();
+                ex.fetch();
+                assertEquals(expected.length(), ex.getValue().getInt());
+                if (pass == 1) {
+                    txn.commit();
+                }
+            } finally {
+                if (pass == 1) {
+                    txn.end();
+                }
+            }
+        }
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkVolume(ex.getVolume());
+        assertEquals(0, icheck.getFaults().length);
+    }
+
+    private void runIncrements(final boolean transactional) throws Exception {
+        final int threadCount = 4;
+        final int perThread = 2000;
+        final Thread[] threads = new Thread[threadCount];
+        final Exception[] failures = new Exception[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+                        ex.clear().append("counter").append(transactional);
+                        for (int i = 0; i < perThread; i++) {
+                            if (transactional) {
+                                ex.getTransaction().run(new TransactionRunnable() {
+                                    public void runTransaction() throws PersistitException {
+                                        ex.update(INCREMENT);
+                                    }
+                                }, 10000, 0, false);
+                            } else {
+                                ex.update(INCREMENT);
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures[index] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (final Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", true);
+        ex.clear().append("counter").append(transactional).fetch();
+        assertEquals(threadCount * perThread, ex.getValue().getLong());
+    }
+
+    private long fetchInOtherThread() throws Exception {
+        final long[] result = new long[1];
+        final Exception[] failure = new Exception[1];
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Exchange ex = _persistit.getExchange("persistit", "ExchangeUpdateTest", false);
+                    ex.clear().append("counter").fetch();
+                    result[0] = ex.getValue().getLong();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result[0];
+    }
+}
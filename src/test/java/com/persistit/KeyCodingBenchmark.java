@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+/**
+ * Measures the time and the heap allocation per operation of encoding and
+ * decoding primitive and <code>String</code> key segments. The typed
+ * <code>append</code> and <code>decode</code> methods, decoding into a
+ * caller-supplied <code>StringBuilder</code> or <code>char</code> array, and
+ * {@link Key#compareString(CharSequence)} are expected to allocate nothing;
+ * {@link Key#decode()} and {@link Key#decodeString()}, which box or create a
+ * <code>String</code>, are shown for comparison. Allocation is measured with
+ * the HotSpot per-thread allocation counter.
+ */
+public class KeyCodingBenchmark extends PersistitUnitTestCase {
+
+    private final static int ITERATIONS = 2000000;
+
+    private final static String NAME = "customer-name";
+
+    private interface Operation {
+        long run(Key key);
+    }
+
+    private final static Operation[] ALLOCATION_FREE = { new Operation() {
+        public long run(final Key key) {
+            key.clear().append(12345L).append(67);
+            key.reset();
+            return key.decodeLong() + key.decodeInt();
+        }
+
+        public String toString() {
+            return "append/decodeLong/decodeInt";
+        }
+    }, new Operation() {
+        final StringBuilder _sb = new StringBuilder();
+
+        public long run(final Key key) {
+            key.clear().append(NAME);
+            _sb.setLength(0);
+            key.reset().decodeString(_sb);
+            return _sb.length();
+        }
+
+        public String toString() {
+            return "append/decodeString(StringBuilder)";
+        }
+    }, new Operation() {
+        final char[] _chars = new char[32];
+
+        public long run(final Key key) {
+            key.clear().append(NAME);
+            return key.reset().decodeString(_chars, 0);
+        }
+
+        public String toString() {
+            return "append/decodeString(char[])";
+        }
+    }, new Operation() {
+        public long run(final Key key) {
+            key.clear().append(NAME);
+            return key.reset().compareString(NAME);
+        }
+
+        public String toString() {
+            return "append/compareString";
+        }
+    } };
+
+    private final static Operation[] ALLOCATING = { new Operation() {
+        public long run(final Key key) {
+            key.clear().append(12345L).append(67);
+            key.reset();
+            return ((Long) key.decode()).longValue() + ((Integer) key.decode()).intValue();
+        }
+
+        public String toString() {
+            return "append/decode() boxed";
+        }
+    }, new Operation() {
+        public long run(final Key key) {
+            key.clear().append(NAME);
+            return key.reset().decodeString().length();
+        }
+
+        public String toString() {
+            return "append/decodeString()";
+        }
+    } };
+
+    @Test
+    public void testBenchmarkKeyCoding() throws Exception {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final Key key = new Key(_persistit);
+        System.out.printf("%-40s %12s %12s\n", "operation", "ns/op", "bytes/op");
+        for (final Operation[] operations : new Operation[][] { ALLOCATION_FREE, ALLOCATING }) {
+            for (final Operation operation : operations) {
+                // Warm up so that the measurement covers compiled code
+                run(operation, key, ITERATIONS);
+                final long allocated = bean.getThreadAllocatedBytes(threadId);
+                final long start = System.nanoTime();
+                run(operation, key, ITERATIONS);
+                final long elapsed = System.nanoTime() - start;
+                final double bytesPerOp = (double) (bean.getThreadAllocatedBytes(threadId) - allocated) / ITERATIONS;
+                System.out.printf("%-40s %12.1f %12.3f\n", operation, (double) elapsed / ITERATIONS, bytesPerOp);
+                if (operations == ALLOCATION_FREE) {
+                    assertEquals(operation + " allocated", 0, (long) bytesPerOp);
+                }
+            }
+        }
+    }
+
+    private static long run(final Operation operation, final Key key, final int iterations) {
+        long sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            sum += operation.run(key);
+        }
+        return sum;
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
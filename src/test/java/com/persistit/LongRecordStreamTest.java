@@ -0,0 +1,184 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.persistit.exception.ConversionException;
+import com.persistit.exception.CorruptVolumeException;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class LongRecordStreamTest extends PersistitUnitTestCase {
+
+    @Test
+    public void testShortValue() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        assertNull(ex.clear().append("a").fetchStream());
+        write(ex, 10, 1);
+        assertTrue(!ex.isValueLongRecord());
+        assertArrayEquals(bytes(10, 1), ex.fetch().getValue().getByteArray());
+        assertEquals(10, verify(ex, 1));
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        final int size = Value.DEFAULT_MAXIMUM_SIZE + 1000000;
+        ex.clear().append("a");
+        write(ex, size, 2);
+        assertTrue(ex.isValueLongRecord());
+        assertEquals(size, verify(ex, 2));
+
+        write(ex, size / 2, 3);
+        assertEquals(size / 2, verify(ex, 3));
+        ex.getValue().put(bytes(100000, 4));
+        ex.store();
+        assertEquals(100000, verify(ex, 4));
+
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        assertEquals(0, icheck.getFaults().length);
+    }
+
+    @Test
+    public void testPartialFetch() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        ex.clear().append("a").getValue().put(bytes(100000, 5));
+        ex.store();
+        ex.fetch(1000);
+        assertTrue(ex.getValue().getEncodedSize() >= 1000);
+        assertTrue(ex.getValue().getEncodedSize() < 100000);
+        ex.fetch();
+        assertArrayEquals(bytes(100000, 5), ex.getValue().getByteArray());
+    }
+
+    @Test
+    public void testNotByteArray() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        ex.clear().append("a").getValue().put(RED_FOX);
+        ex.store();
+        try {
+            ex.fetchStream();
+            fail("Expected ConversionException");
+        } catch (ConversionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentReplacement() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        ex.clear().append("a");
+        write(ex, 200000, 8);
+        final InputStream is = ex.fetchStream();
+        final byte[] chunk = new byte[50000];
+        assertTrue(is.read(chunk) > 0);
+        write(ex, 200000, 9);
+        try {
+            while (is.read(chunk) > 0) {
+            }
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof CorruptVolumeException);
+        }
+        assertEquals(200000, verify(ex, 9));
+    }
+
+    @Test
+    public void testTransactionalRecovery() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "LongRecordStreamTest", true);
+        final Transaction txn = _persistit.getTransaction();
+        txn.begin();
+        try {
+            ex.clear().append("a");
+            write(ex, 200000, 6);
+            assertEquals(200000, verify(ex, 6));
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        txn.begin();
+        try {
+            ex.clear().append("b");
+            write(ex, 200000, 7);
+            txn.rollback();
+        } finally {
+            txn.end();
+        }
+        assertNull(ex.clear().append("b").fetchStream());
+
+        _persistit.getJournalManager().flush();
+        _persistit.crash();
+        final Properties properties = _persistit.getProperties();
+        _persistit = new Persistit();
+        _persistit.initialize(properties);
+        final Exchange recovered = _persistit.getExchange("persistit", "LongRecordStreamTest", false);
+        assertEquals(200000, verify(recovered.clear().append("a"), 6));
+        assertNull(recovered.clear().append("b").fetchStream());
+    }
+
+    private static byte[] bytes(final int size, final int seed) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static void write(final Exchange ex, final int size, final int seed) throws Exception {
+        final OutputStream os = ex.storeStream();
+        final byte[] chunk = new byte[1000];
+        for (int i = 0; i < size; i += chunk.length) {
+            final int length = Math.min(chunk.length, size - i);
+            for (int j = 0; j < length; j++) {
+                chunk[j] = (byte) ((i + j) * 31 + seed);
+            }
+            os.write(chunk, 0, length);
+        }
+        os.close();
+    }
+
+    private static int verify(final Exchange ex, final int seed) throws Exception {
+        final InputStream is = ex.fetchStream();
+        final byte[] chunk = new byte[777];
+        int count = 0;
+        int length;
+        while ((length = is.read(chunk)) > 0) {
+            for (int j = 0; j < length; j++) {
+                assertEquals("At " + (count + j), (byte) ((count + j) * 31 + seed), chunk[j]);
+            }
+            count += length;
+        }
+        is.close();
+        return count;
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
@@ -0,0 +1,458 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.persistit.exception.PersistitException;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class MergeOperandTest extends PersistitUnitTestCase {
+
+    private final static MergeOperator SUM = new MergeOperator() {
+        @Override
+        public void merge(final Key key, final Value value, final Value operand) throws PersistitException {
+            value.put((value.isDefined() ? value.getLong() : 0) + operand.getLong());
+        }
+    };
+
+    private Exchange exchange() throws PersistitException {
+        final Exchange ex = _persistit.getExchange("persistit", "MergeOperandTest", true);
+        ex.getTree().setMergeOperator(SUM);
+        return ex;
+    }
+
+    @Test
+    public void testMergeAndFetch() throws Exception {
+        final Exchange ex = exchange();
+        ex.clear().append("a").getValue().put(100L);
+        ex.store();
+        for (int i = 1; i <= 10; i++) {
+            ex.clear().append("a").getValue().put((long) i);
+            ex.mergeStore();
+            ex.clear().append("b").getValue().put((long) i);
+            ex.mergeStore();
+        }
+        assertEquals(155L, ex.clear().append("a").fetch().getValue().getLong());
+        assertEquals(55L, ex.clear().append("b").fetch().getValue().getLong());
+        assertFalse(ex.clear().append("c").fetch().getValue().isDefined());
+
+        ex.getTree().setMergeOperator(null);
+        assertEquals(100L, ex.clear().append("a").fetch().getValue().getLong());
+        assertFalse(ex.clear().append("b").fetch().getValue().isDefined());
+        try {
+            ex.mergeStore();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ex.getTree().setMergeOperator(SUM);
+        assertTrue(ex.clear().append("b").remove());
+        assertFalse(ex.fetch().getValue().isDefined());
+        assertEquals(155L, ex.clear().append("a").fetch().getValue().getLong());
+    }
+
+    @Test
+    public void testOperandsSeenByOtherOperations() throws Exception {
+        final Exchange ex = exchange();
+        for (int i = 1; i <= 4; i++) {
+            ex.clear().append("k").append(i).getValue().put((long) i);
+            ex.mergeStore();
+        }
+        ex.clear().append("k").append(2).getValue().put(100L);
+        ex.store();
+        assertTrue(ex.clear().append("k").append(1).isValueDefined());
+        assertFalse(ex.clear().append("k").append(5).isValueDefined());
+
+        final Key[] keys = new Key[5];
+        final Value[] values = new Value[5];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(_persistit).append("k").append(i + 1);
+            values[i] = new Value(_persistit);
+        }
+        ex.clear().append("z");
+        assertEquals(4, ex.fetchAll(keys, values));
+        assertEquals(1L, values[0].getLong());
+        assertEquals(100L, values[1].getLong());
+        assertFalse(values[4].isDefined());
+        assertEquals("{\"z\"}", ex.getKey().toString());
+
+        ex.clear().append("k").append(3);
+        assertTrue(ex.update(new ValueUpdater() {
+            @Override
+            public boolean update(final Key key, final Value value) {
+                value.put(value.getLong() * 10);
+                return true;
+            }
+        }));
+        assertEquals(30L, ex.fetch().getValue().getLong());
+
+        ex.clear().append("k").append(4);
+        assertTrue(ex.fetchAndRemove());
+        assertEquals(4L, ex.getValue().getLong());
+        assertFalse(ex.isValueDefined());
+
+        final Key from = new Key(_persistit).append("k").append(1);
+        final Key to = new Key(_persistit).append("k").append(3);
+        assertTrue(ex.removeKeyRange(from, to));
+        assertFalse(ex.clear().append("k").append(1).fetch().getValue().isDefined());
+        assertFalse(ex.clear().append("k").append(2).fetch().getValue().isDefined());
+        assertEquals(30L, ex.clear().append("k").append(3).fetch().getValue().getLong());
+
+        ex.clear().append("k").append(1).getValue().put(7L);
+        ex.mergeStore();
+        assertTrue(ex.removeAll());
+        assertFalse(ex.clear().append("k").append(1).fetch().getValue().isDefined());
+        assertFalse(new Exchange(ex.getTree().getMergeOperandTree(false)).next(true));
+    }
+
+    @Test
+    public void testStoreReplacesOperands() throws Exception {
+        final Exchange ex = exchange();
+        ex.clear().append("a").getValue().put(2L);
+        ex.mergeStore();
+        ex.getValue().put(100L);
+        ex.store();
+        assertEquals(100L, ex.fetch().getValue().getLong());
+
+        ex.getValue().put(3L);
+        ex.mergeStore();
+        ex.getValue().put(7L);
+        ex.fetchAndStore();
+        assertEquals(103L, ex.getValue().getLong());
+        assertEquals(7L, ex.fetch().getValue().getLong());
+
+        ex.clear().append("b").getValue().put(5L);
+        ex.mergeStore();
+        ex.getValue().put(1L);
+        ex.fetchAndStore();
+        assertEquals(5L, ex.getValue().getLong());
+        assertEquals(1L, ex.fetch().getValue().getLong());
+        assertFalse(new Exchange(ex.getTree().getMergeOperandTree(false)).next(true));
+    }
+
+    @Test
+    public void testTraverse() throws Exception {
+        final Exchange ex = exchange();
+        /*
+         * A zero operand removes the record
+         */
+        ex.getTree().setMergeOperator(new MergeOperator() {
+            @Override
+            public void merge(final Key key, final Value value, final Value operand) throws PersistitException {
+                if (operand.getLong() == 0) {
+                    value.clear();
+                } else {
+                    SUM.merge(key, value, operand);
+                }
+            }
+        });
+        ex.clear().append("a").getValue().put(1L);
+        ex.store();
+        ex.clear().append("b").getValue().put(2L);
+        ex.mergeStore();
+        ex.clear().append("c").getValue().put(3L);
+        ex.store();
+        ex.getValue().put(4L);
+        ex.mergeStore();
+        ex.clear().append("d").getValue().put(5L);
+        ex.store();
+        ex.getValue().put(0L);
+        ex.mergeStore();
+        ex.clear().append("e").getValue().put(0L);
+        ex.mergeStore();
+        ex.clear().append("f").getValue().put(9L);
+        ex.store();
+        ex.clear().append("g").append(1).getValue().put(6L);
+        ex.mergeStore();
+        ex.clear().append("g").append(2).append("x").getValue().put(8L);
+        ex.store();
+
+        final StringBuilder sb = new StringBuilder();
+        ex.clear();
+        while (ex.next(true)) {
+            sb.append(ex.getKey()).append('=').append(ex.getValue().getLong()).append(' ');
+        }
+        assertEquals("{\"a\"}=1 {\"b\"}=2 {\"c\"}=7 {\"f\"}=9 {\"g\",1}=6 {\"g\",2,\"x\"}=8 ", sb.toString());
+
+        sb.setLength(0);
+        ex.clear();
+        while (ex.previous(true)) {
+            sb.append(ex.getKey()).append(' ');
+        }
+        assertEquals("{\"g\",2,\"x\"} {\"g\",1} {\"f\"} {\"c\"} {\"b\"} {\"a\"} ", sb.toString());
+
+        sb.setLength(0);
+        ex.clear();
+        while (ex.next()) {
+            sb.append(ex.getKey()).append(ex.getValue().isDefined() ? "=" + ex.getValue().getLong() : "").append(' ');
+        }
+        assertEquals("{\"a\"}=1 {\"b\"}=2 {\"c\"}=7 {\"f\"}=9 {\"g\"} ", sb.toString());
+
+        sb.setLength(0);
+        ex.clear().append("g").append(Key.AFTER);
+        while (ex.previous()) {
+            sb.append(ex.getKey()).append(ex.getValue().isDefined() ? "=" + ex.getValue().getLong() : "").append(' ');
+        }
+        assertEquals("{\"g\",2} {\"g\",1}=6 ", sb.toString());
+
+        assertTrue(ex.clear().append("b").isValueDefined());
+        assertFalse(ex.clear().append("d").isValueDefined());
+        assertFalse(ex.clear().append("e").isValueDefined());
+        assertTrue(ex.clear().append("g").hasChildren());
+        assertFalse(ex.clear().append("c").hasChildren());
+        assertTrue(ex.clear().append("c").traverse(Key.GT, true));
+        assertEquals("{\"f\"}", ex.getKey().toString());
+        assertTrue(ex.clear().append("e").traverse(Key.LTEQ, true));
+        assertEquals("{\"c\"}", ex.getKey().toString());
+        assertTrue(ex.clear().append("b").traverse(Key.EQ, true));
+        assertFalse(ex.clear().append("d").traverse(Key.EQ, true));
+
+        ex.clear().append("b");
+        assertTrue(ex.next(new KeyFilter("{\"d\":\"g\"}")));
+        assertEquals("{\"f\"}", ex.getKey().toString());
+    }
+
+    @Test
+    public void testPageMethods() throws Exception {
+        final Exchange ex = exchange();
+        ex.clear().append("a").getValue().put(1L);
+        ex.store();
+        ex.getValue().put(2L);
+        ex.mergeStore();
+        ex.clear().append("b").getValue().put(5L);
+        ex.mergeStore();
+        ex.clear().append("c").getValue().put(7L);
+        ex.store();
+        ex.clear().append("d").getValue().put(3L);
+        ex.store();
+
+        final RecordBatch batch = new RecordBatch(10);
+        ex.clear().getValue().put("unchanged");
+        assertEquals(4, ex.nextBatch(batch));
+        assertEquals("unchanged", ex.getValue().getString());
+        assertEquals("d", ex.getKey().reset().decodeString());
+        final long[] expected = { 3L, 5L, 7L, 3L };
+        final Value value = new Value(_persistit);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], batch.getValue(i, value).getLong());
+        }
+        assertEquals(0, ex.nextBatch(batch));
+
+        ex.clear().append("x");
+        assertEquals(4, ex.countKeys(new Key(_persistit), new Key(_persistit)));
+        assertEquals(2, ex.countKeys(new Key(_persistit).append("b"), new Key(_persistit).append("d")));
+        assertEquals("x", ex.getKey().reset().decodeString());
+        assertEquals("unchanged", ex.getValue().getString());
+
+        assertTrue(ex.clear().skip(2));
+        assertEquals("b", ex.getKey().reset().decodeString());
+        assertEquals(5L, ex.getValue().getLong());
+        assertFalse(ex.clear().skip(5));
+
+        final RawRecordVisitor large = new RawRecordVisitor() {
+            @Override
+            public boolean visit(final Key key, final byte[] bytes, final int offset, final int length) {
+                value.putEncodedBytes(bytes, offset, length);
+                return value.getLong() > 4;
+            }
+        };
+        assertFalse(ex.clear().append("a").fetch(large));
+        assertEquals(3L, value.getLong());
+        assertTrue(ex.next(large));
+        assertEquals("b", ex.getKey().reset().decodeString());
+        assertTrue(ex.next(large));
+        assertEquals("c", ex.getKey().reset().decodeString());
+        assertFalse(ex.next(large));
+    }
+
+    @Test
+    public void testFoldOfferedByPrune() throws Exception {
+        _persistit.getCleanupManager().setPollInterval(-1);
+        final Exchange ex = exchange();
+        final Transaction txn = _persistit.getTransaction();
+        for (int i = 1; i <= Exchange.MERGE_FOLD_THRESHOLD; i++) {
+            txn.begin();
+            try {
+                ex.clear().append("a").getValue().put((long) i);
+                ex.mergeStore();
+                txn.commit();
+            } finally {
+                txn.end();
+            }
+        }
+        final Exchange operands = new Exchange(ex.getTree().getMergeOperandTree(false));
+        _persistit.getTransactionIndex().updateActiveTransactionCache();
+        operands.clear().append(Key.BEFORE);
+        assertTrue(operands.prune(operands.getKey()));
+        _persistit.getCleanupManager().poll();
+        assertFalse(operands.clear().append(Key.BEFORE).next(true));
+
+        final long sum = Exchange.MERGE_FOLD_THRESHOLD * (Exchange.MERGE_FOLD_THRESHOLD + 1) / 2;
+        ex.getTree().setMergeOperator(null);
+        assertEquals(sum, ex.clear().append("a").fetch().getValue().getLong());
+    }
+
+    @Test
+    public void testFold() throws Exception {
+        final Exchange ex = exchange();
+        for (int i = 1; i <= 10; i++) {
+            ex.clear().append("a").getValue().put((long) i);
+            ex.mergeStore();
+        }
+        ex.clear().append("a");
+        assertEquals(10, ex.foldMergeOperands());
+        assertEquals(55L, ex.getValue().getLong());
+        assertEquals(0, ex.foldMergeOperands());
+
+        final Tree operandTree = ex.getTree().getMergeOperandTree(false);
+        final Exchange operands = new Exchange(operandTree);
+        assertFalse(operands.next(true));
+
+        ex.getTree().setMergeOperator(null);
+        assertEquals(55L, ex.clear().append("a").fetch().getValue().getLong());
+    }
+
+    @Test
+    public void testFoldByCleanupManager() throws Exception {
+        _persistit.getCleanupManager().setPollInterval(-1);
+        final Exchange ex = exchange();
+        for (int i = 1; i <= Exchange.MERGE_FOLD_THRESHOLD; i++) {
+            ex.clear().append("a").getValue().put((long) i);
+            ex.mergeStore();
+        }
+        final long sum = Exchange.MERGE_FOLD_THRESHOLD * (Exchange.MERGE_FOLD_THRESHOLD + 1) / 2;
+        assertEquals(sum, ex.clear().append("a").fetch().getValue().getLong());
+        _persistit.getCleanupManager().poll();
+        assertEquals(sum, ex.clear().append("a").fetch().getValue().getLong());
+
+        ex.getTree().setMergeOperator(null);
+        assertEquals(sum, ex.clear().append("a").fetch().getValue().getLong());
+        final Exchange operands = new Exchange(ex.getTree().getMergeOperandTree(false));
+        assertFalse(operands.next(true));
+    }
+
+    @Test
+    public void testConcurrentTransactionalMerges() throws Exception {
+        final int threadCount = 4;
+        final int perThread = 500;
+        final Thread[] threads = new Thread[threadCount];
+        final Exception[] failures = new Exception[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = exchange();
+                        final Transaction txn = _persistit.getTransaction();
+                        for (int i = 0; i < perThread; i++) {
+                            txn.begin();
+                            try {
+                                ex.clear().append("counter").getValue().put(1L);
+                                ex.mergeStore();
+                                txn.commit();
+                            } finally {
+                                txn.end();
+                            }
+                            if (i % 100 == 99) {
+                                ex.foldMergeOperands();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures[index] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (final Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        final Exchange ex = exchange();
+        assertEquals((long) threadCount * perThread, ex.clear().append("counter").fetch().getValue().getLong());
+        ex.foldMergeOperands();
+        assertEquals((long) threadCount * perThread, ex.getValue().getLong());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        final Exchange ex = exchange();
+        final Transaction txn = _persistit.getTransaction();
+        txn.begin();
+        try {
+            ex.clear().append("a").getValue().put(5L);
+            ex.mergeStore();
+            assertEquals(5L, ex.fetch().getValue().getLong());
+            txn.rollback();
+        } finally {
+            txn.end();
+        }
+        assertFalse(ex.clear().append("a").fetch().getValue().isDefined());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        final Exchange ex = exchange();
+        final Transaction txn = _persistit.getTransaction();
+        for (int i = 1; i <= 10; i++) {
+            txn.begin();
+            try {
+                ex.clear().append("a").getValue().put((long) i);
+                ex.mergeStore();
+                txn.commit();
+            } finally {
+                txn.end();
+            }
+        }
+        _persistit.getJournalManager().flush();
+        _persistit.crash();
+        final Properties properties = _persistit.getProperties();
+        _persistit = new Persistit();
+        _persistit.initialize(properties);
+        assertEquals(55L, exchange().clear().append("a").fetch().getValue().getLong());
+    }
+
+    @Test
+    public void testRemoveTree() throws Exception {
+        final Exchange ex = exchange();
+        ex.clear().append("a").getValue().put(1L);
+        ex.mergeStore();
+        final Volume volume = ex.getVolume();
+        assertTrue(ex.getTree().getMergeOperandTree(false) != null);
+        ex.removeTree();
+        assertNull(volume.getTree("MergeOperandTest", false));
+        assertNull(volume.getTree(Tree.MERGE_OPERAND_TREE_PREFIX + "MergeOperandTest", false));
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+import com.persistit.util.Util;
+
+public class OffHeapPageCacheTest extends PersistitUnitTestCase {
+
+    private final static int FRAMES = 256;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "40");
+        properties.setProperty("buffer.offheap.16384", Integer.toString(FRAMES * 16384));
+        return properties;
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        assertNotNull(pool.getOffHeapPageCache());
+        assertEquals(FRAMES, pool.getOffHeapPageCache().getFrameCount());
+        final Configuration configuration = new Configuration();
+        final Configuration.BufferPoolConfiguration bpc = configuration.getBufferPoolMap().get(8192);
+        assertEquals(0, bpc.getOffHeapMemory());
+        bpc.setOffHeapMemory(1024 * 1024);
+        assertTrue(bpc.toString().contains("offheap"));
+        try {
+            bpc.setOffHeapMemory(100);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final OffHeapPageCache cache = new OffHeapPageCache(4 * 16384, 16384);
+        final Buffer original = volume.getPool().get(volume, 1, false, true);
+        final Buffer copy = new Buffer(original);
+        original.release();
+        copy.claim(true);
+        cache.store(copy);
+        assertEquals(1, cache.getOccupiedCount());
+
+        final Buffer target = new Buffer(16384, -1, volume.getPool(), _persistit);
+        target.claim(true);
+        target.setPageAddressAndVolume(1, volume);
+        assertTrue(cache.load(target));
+        assertEquals(0, cache.getOccupiedCount());
+        assertEquals(copy.getPageType(), target.getPageType());
+        for (int i = 0; i < 16384; i++) {
+            assertEquals(copy.getBytes()[i], target.getBytes()[i]);
+        }
+        assertFalse(cache.load(target));
+        assertEquals(1, cache.getHitCounter());
+        assertEquals(1, cache.getMissCounter());
+    }
+
+    @Test
+    public void testRecycleAndInvalidate() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final OffHeapPageCache cache = new OffHeapPageCache(4 * 16384, 16384);
+        final Buffer buffer = new Buffer(16384, -1, volume.getPool(), _persistit);
+        buffer.claim(true);
+        for (long page = 1; page <= 10; page++) {
+            buffer.setPageAddressAndVolume(page, volume);
+            cache.store(buffer);
+        }
+        assertEquals(4, cache.getOccupiedCount());
+        buffer.setPageAddressAndVolume(2, volume);
+        assertFalse("Least recently stored page should be recycled", cache.load(buffer));
+        cache.discard(volume, 10);
+        assertEquals(3, cache.getOccupiedCount());
+        cache.invalidate(volume);
+        assertEquals(0, cache.getOccupiedCount());
+    }
+
+    @Test
+    public void testConcurrentStripes() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final OffHeapPageCache cache = new OffHeapPageCache(FRAMES * 16384L, 16384);
+        assertEquals(FRAMES / OffHeapPageCache.MIN_STRIPE_FRAMES, cache.getStripeCount());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = 1 + t * 1000;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Buffer buffer = new Buffer(16384, -1, volume.getPool(), _persistit);
+                        buffer.claim(true);
+                        for (int i = 0; i < 5000; i++) {
+                            final long page = base + (i * 7) % 100;
+                            buffer.setPageAddressAndVolume(page, volume);
+                            if (cache.load(buffer)) {
+                                assertEquals(page, Util.getLong(buffer.getBytes(), 100));
+                            }
+                            buffer.setPageAddressAndVolume(base + i % 100, volume);
+                            Util.putLong(buffer.getBytes(), 100, base + i % 100);
+                            cache.store(buffer);
+                        }
+                    } catch (final Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, failure.get());
+        assertTrue(cache.getOccupiedCount() <= FRAMES);
+        cache.invalidate(null);
+        assertEquals(0, cache.getOccupiedCount());
+    }
+
+    @Test
+    public void testLivePool() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "OffHeapPageCacheTest", true);
+        ex.getValue().put(createString(1000));
+        for (int i = 0; i < 2000; i++) {
+            ex.to(i).store();
+        }
+        _persistit.checkpoint();
+        pool.resetCounters();
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = 0; i < 2000; i++) {
+                ex.to(i).fetch();
+                assertEquals(createString(1000), ex.getValue().getString());
+            }
+        }
+        assertTrue(pool.getOffHeapHitCounter() > 0);
+
+        ex.removeAll();
+        for (int i = 0; i < 2000; i++) {
+            ex.to(i).fetch();
+            assertFalse(ex.getValue().isDefined());
+        }
+    }
+
+    @Test
+    public void testFailedDetachRetainsNothing() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final OffHeapPageCache cache = pool.getOffHeapPageCache();
+        final Volume volume = _persistit.getVolume("persistit");
+        final Exchange ex = _persistit.getExchange("persistit", "OffHeapPageCacheTest", true);
+        ex.getValue().put(createString(1000));
+        for (int i = 0; i < 2000; i++) {
+            ex.to(i).store();
+        }
+        _persistit.checkpoint();
+        /*
+         * Find a page of the volume that is not in the pool and whose hash
+         * lock is not shared by any page in the pool.
+         */
+        final Set<ReentrantLock> locks = new HashSet<ReentrantLock>();
+        final Set<Long> resident = new HashSet<Long>();
+        for (int index = 0; index < pool.getBufferCount(); index++) {
+            final Buffer copy = pool.getBufferCopy(index);
+            if (copy.isValid()) {
+                locks.add(pool.hashLock(copy.getVolume(), copy.getPageAddress()));
+                if (copy.getVolume() == volume) {
+                    resident.add(copy.getPageAddress());
+                }
+            }
+        }
+        long page = 1;
+        while (resident.contains(page) || locks.contains(pool.hashLock(volume, page))) {
+            page++;
+        }
+        assertTrue(page < volume.getStorage().getNextAvailablePage());
+        /*
+         * Hold the hash locks of every resident page so that no buffer can be
+         * detached to make room for the page.
+         */
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (final ReentrantLock lock : locks) {
+                    lock.lock();
+                }
+                try {
+                    locked.countDown();
+                    done.await();
+                } catch (final InterruptedException e) {
+                    // done
+                } finally {
+                    for (final ReentrantLock lock : locks) {
+                        lock.unlock();
+                    }
+                }
+            }
+        });
+        holder.start();
+        final long stores;
+        try {
+            locked.await();
+            stores = cache.getStoreCounter();
+            try {
+                pool.get(volume, page, false, true).release();
+                fail("Expected no buffer to be available");
+            } catch (final IllegalStateException e) {
+                // expected
+            }
+            assertEquals("Pages copied by failed evictions", stores, cache.getStoreCounter());
+        } finally {
+            done.countDown();
+            holder.join();
+        }
+        pool.get(volume, page, false, true).release();
+        assertTrue(cache.getStoreCounter() > stores);
+    }
+}
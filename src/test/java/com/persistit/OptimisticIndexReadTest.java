@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.persistit.ValueHelper.RawValueWriter;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class OptimisticIndexReadTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 20000;
+
+    @Test
+    public void testStamp() throws Exception {
+        final Buffer buffer = new Buffer(16384, -1, _persistit.getBufferPool(16384), _persistit);
+        assertEquals(-1, buffer.getOptimisticStamp());
+        buffer.setValid();
+        final long stamp = buffer.getOptimisticStamp();
+        assertTrue(stamp != -1);
+        assertTrue(buffer.validateOptimisticStamp(stamp));
+
+        assertTrue(buffer.claim(false));
+        assertTrue("Reader claim must not invalidate the stamp", buffer.validateOptimisticStamp(stamp));
+        buffer.release();
+
+        assertTrue(buffer.claim(true));
+        assertEquals(-1, buffer.getOptimisticStamp());
+        assertFalse(buffer.validateOptimisticStamp(stamp));
+        buffer.release();
+        assertFalse("Writer claim must invalidate the stamp", buffer.validateOptimisticStamp(stamp));
+        assertTrue(buffer.getOptimisticStamp() != stamp);
+    }
+
+    @Test
+    public void testFastIndexVersion() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "OptimisticIndexReadTest", true);
+        final Buffer buffer = ex.getBufferPool().get(ex.getVolume(), 1, true, false);
+        try {
+            buffer.init(Buffer.PAGE_TYPE_DATA);
+            final RawValueWriter writer = new RawValueWriter();
+            final Key key = new Key(_persistit);
+            final Value value = new Value(_persistit);
+            for (int i = 0; i < 200; i++) {
+                value.put(i);
+                writer.init(value);
+                buffer.putValue(key.to(i * 3), writer);
+            }
+            buffer.invalidateFastIndex();
+            key.to(301);
+            assertEquals("Invalid FastIndex must not be used", -1, buffer.findKeyOptimistic(key));
+
+            final int version = buffer.getFastIndex().getVersion();
+            assertEquals(0, version & 1);
+            assertEquals(buffer.findKey(key), buffer.findKeyOptimistic(key));
+            buffer.getFastIndex().recompute();
+            assertEquals(version + 2, buffer.getFastIndex().getVersion());
+            assertEquals(buffer.findKey(key), buffer.findKeyOptimistic(key));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testOptimisticDescent() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "OptimisticIndexReadTest", true);
+        ex.getValue().put(createString(200));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+        assertTrue(ex.getTree().getDepth() > 1);
+        pool.resetCounters();
+        //
+        // Visit keys in a scattered order so that most fetch operations
+        // descend from the root rather than finding the key in the data page
+        // cached from the previous operation.
+        //
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to((i * 7919) % RECORDS).fetch();
+            assertTrue(ex.getValue().isDefined());
+        }
+        assertTrue("Optimistic reads: " + pool.getOptimisticReadCounter(),
+                pool.getOptimisticReadCounter() > RECORDS / 2);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "OptimisticIndexReadTest", true);
+        for (int i = 0; i < RECORDS; i += 2) {
+            ex.getValue().put(i);
+            ex.to(i).store();
+        }
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        final Exchange ex = _persistit.getExchange("persistit", "OptimisticIndexReadTest", false);
+                        if (index == 0) {
+                            // Writer: fill in odd keys, causing page splits
+                            for (int i = 1; i < RECORDS; i += 2) {
+                                ex.getValue().put(i);
+                                ex.to(i).store();
+                            }
+                        } else {
+                            for (int pass = 0; pass < 3; pass++) {
+                                for (int i = 0; i < RECORDS; i += 2) {
+                                    ex.to(i).fetch();
+                                    if (!ex.getValue().isDefined() || ex.getValue().getInt() != i) {
+                                        errors.incrementAndGet();
+                                    }
+                                }
+                            }
+                        }
+                        _persistit.releaseExchange(ex);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(i, ex.getValue().getInt());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class PageWriterTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 5000;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "200");
+        properties.setProperty(Configuration.PAGE_WRITER_THREADS_PROPERTY_NAME, "4");
+        return properties;
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final Configuration configuration = new Configuration();
+        assertEquals(Configuration.DEFAULT_PAGE_WRITER_THREADS, configuration.getPageWriterThreads());
+        try {
+            configuration.setPageWriterThreads(0);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(4, _persistit.getBufferPool(16384).getPageWriterThreadCount());
+    }
+
+    @Test
+    public void testCoalescedWrites() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "PageWriterTest", true);
+        ex.getValue().put(createString(1000));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+        _persistit.checkpoint();
+        _persistit.flush();
+        assertTrue(pool.getWriteBatchCounter() > 0);
+        assertTrue("Average batch size: " + pool.getWriteBatchPageCounter() / pool.getWriteBatchCounter(),
+                pool.getWriteBatchPageCounter() > pool.getWriteBatchCounter());
+
+        final Properties properties = _persistit.getProperties();
+        _persistit.close();
+        _persistit = new Persistit();
+        _persistit.initialize(properties);
+        final Exchange copy = _persistit.getExchange("persistit", "PageWriterTest", false);
+        for (int i = 0; i < RECORDS; i++) {
+            copy.to(i).fetch();
+            assertEquals(createString(1000), copy.getValue().getString());
+        }
+    }
+
+    @Test
+    public void testTemporaryVolume() throws Exception {
+        final Volume volume = _persistit.createTemporaryVolume();
+        final Exchange ex = _persistit.getExchange(volume, "PageWriterTest", true);
+        ex.getValue().put(createString(1000));
+        //
+        // Temporary pages are written only when evicted, so the volume must
+        // be several times larger than the pool.
+        //
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+        assertTrue(volume.getStatistics().getWriteCounter() > 0);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).fetch();
+            assertEquals(createString(1000), ex.getValue().getString());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import com.persistit.ParallelScan.RecordVisitor;
+import com.persistit.exception.InvalidKeyException;
+import com.persistit.exception.PersistitException;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class ParallelScanTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 50000;
+
+    @Test
+    public void testPartition() throws Exception {
+        final ParallelScan scan = new ParallelScan(store());
+        final List<Key> separators = scan.partition(null, null, 8);
+        assertTrue("Too few partitions: " + separators, separators.size() >= 4 && separators.size() <= 7);
+        for (int i = 1; i < separators.size(); i++) {
+            assertTrue(separators.get(i).compareTo(separators.get(i - 1)) > 0);
+        }
+        final Key start = new Key(_persistit).append(10000);
+        final Key end = new Key(_persistit).append(20000);
+        for (final Key key : scan.partition(start, end, 8)) {
+            assertTrue(key.compareTo(start) > 0 && key.compareTo(end) < 0);
+        }
+        assertEquals(0, scan.partition(null, null, 1).size());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        final ParallelScan scan = new ParallelScan(store());
+        scan.setThreadCount(4);
+        scan.setPartitionCount(16);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(RECORDS);
+        final RecordVisitor visitor = new RecordVisitor() {
+            @Override
+            public boolean visit(final Exchange exchange) throws PersistitException {
+                final int k = exchange.getKey().reset().decodeInt();
+                assertEquals(RED_FOX + k, exchange.getValue().getString());
+                seen.incrementAndGet(k);
+                return true;
+            }
+        };
+        assertEquals(RECORDS, scan.scan(visitor));
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals("Key " + i, 1, seen.getAndSet(i, 0));
+        }
+
+        assertEquals(10001, scan.scan(new Key(_persistit).append(10000), new Key(_persistit).append(20000), visitor));
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals("Key " + i, i >= 10000 && i <= 20000 ? 1 : 0, seen.get(i));
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        final ParallelScan scan = new ParallelScan(store());
+        scan.setThreadCount(2);
+        final long visited = scan.scan(new RecordVisitor() {
+            @Override
+            public boolean visit(final Exchange exchange) throws PersistitException {
+                return false;
+            }
+        });
+        assertTrue(visited >= 1 && visited < RECORDS);
+
+        try {
+            scan.scan(new RecordVisitor() {
+                @Override
+                public boolean visit(final Exchange exchange) throws PersistitException {
+                    throw new InvalidKeyException("Test");
+                }
+            });
+            fail("Expected InvalidKeyException");
+        } catch (InvalidKeyException e) {
+            // expected
+        }
+    }
+
+    private Exchange store() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ParallelScanTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        return ex;
+    }
+}
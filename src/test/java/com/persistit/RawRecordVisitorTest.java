@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.persistit.exception.PersistitException;
+import com.persistit.unit.PersistitUnitTestCase;
+import com.persistit.util.Util;
+
+public class RawRecordVisitorTest extends PersistitUnitTestCase {
+
+    /**
+     * Accepts records whose value is a long divisible by the divisor,
+     * decoding it in place
+     */
+    private static class MultipleOf implements RawRecordVisitor {
+        final long _divisor;
+        long _visited;
+
+        MultipleOf(final long divisor) {
+            _divisor = divisor;
+        }
+
+        @Override
+        public boolean visit(final Key key, final byte[] bytes, final int offset, final int length) {
+            _visited++;
+            assertEquals(9, length);
+            return Util.getLong(bytes, offset + 1) % _divisor == 0;
+        }
+    }
+
+    /**
+     * Accepts every record, retaining a copy of its bytes
+     */
+    private static class Capture implements RawRecordVisitor {
+        byte[] _bytes;
+
+        @Override
+        public boolean visit(final Key key, final byte[] bytes, final int offset, final int length) {
+            _bytes = Arrays.copyOfRange(bytes, offset, offset + length);
+            return true;
+        }
+    }
+
+    private Exchange populate(final int count) throws PersistitException {
+        final Exchange ex = _persistit.getExchange("persistit", "RawRecordVisitorTest", true);
+        for (int i = 0; i < count; i++) {
+            ex.clear().append(i).getValue().put((long) i);
+            ex.store();
+        }
+        return ex;
+    }
+
+    private List<Integer> scan(final Exchange ex, final RawRecordVisitor visitor) throws PersistitException {
+        final List<Integer> keys = new ArrayList<Integer>();
+        ex.clear();
+        while (ex.next(visitor)) {
+            keys.add(ex.getKey().indexTo(0).decodeInt());
+        }
+        assertEquals(Key.BEFORE, ex.getKey().reset().decode());
+        return keys;
+    }
+
+    @Test
+    public void testFetch() throws Exception {
+        final Exchange ex = populate(10);
+        ex.getValue().put("unchanged");
+        final Capture capture = new Capture();
+        assertTrue(ex.clear().append(5).fetch(capture));
+        assertEquals(5, ex.getKey().decodeInt());
+        assertEquals("unchanged", ex.getValue().getString());
+
+        final Value value = new Value(_persistit);
+        ex.fetch(value);
+        assertArrayEquals(Arrays.copyOf(value.getEncodedBytes(), value.getEncodedSize()), capture._bytes);
+
+        assertFalse(ex.clear().append(10).fetch(capture));
+        assertFalse(ex.clear().append(4).fetch(new MultipleOf(3)));
+        assertTrue(ex.clear().append(3).fetch(new MultipleOf(3)));
+    }
+
+    @Test
+    public void testFilteringScan() throws Exception {
+        final int count = 5000;
+        final Exchange ex = populate(count);
+        final MultipleOf visitor = new MultipleOf(7);
+        final List<Integer> keys = scan(ex, visitor);
+        assertEquals(count, visitor._visited);
+        assertEquals((count + 6) / 7, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i * 7, keys.get(i).intValue());
+        }
+        assertFalse(ex.clear().append(count - 1).next(visitor));
+
+        ex.clear().append(100);
+        assertTrue(ex.next(visitor));
+        assertEquals(105, ex.getKey().decodeInt());
+        assertTrue(ex.next());
+        assertEquals(106, ex.getKey().decodeInt());
+    }
+
+    @Test
+    public void testTransactionVisibility() throws Exception {
+        final Exchange ex = populate(1000);
+        final Transaction txn = _persistit.getTransaction();
+        txn.begin();
+        try {
+            ex.clear().append(1).getValue().put(21L);
+            ex.store();
+            ex.clear().append(7).remove();
+            assertEquals(Arrays.asList(0, 1, 14, 21), scan(ex, new MultipleOf(7)).subList(0, 4));
+            txn.rollback();
+        } finally {
+            txn.end();
+        }
+        assertEquals(Arrays.asList(0, 7, 14, 21), scan(ex, new MultipleOf(7)).subList(0, 4));
+
+        txn.begin();
+        try {
+            ex.clear().append(2).getValue().put(28L);
+            ex.store();
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+        assertEquals(Arrays.asList(0, 2, 7, 14), scan(ex, new MultipleOf(7)).subList(0, 4));
+    }
+
+    @Test
+    public void testLongAndCompressedValues() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "RawRecordVisitorTest", true);
+        ex.getTree().setCompressionThreshold(100);
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100000) {
+            sb.append("record ").append(sb.length()).append(' ');
+        }
+        ex.clear().append("a").getValue().put(sb.toString());
+        ex.store();
+        ex.getTree().setCompressionThreshold(0);
+        ex.clear().append("b").getValue().put(sb.toString());
+        ex.store();
+        ex.clear().append("c").getValue().put(sb.substring(0, 200));
+        ex.store();
+
+        final Value value = new Value(_persistit);
+        final Capture capture = new Capture();
+        ex.clear();
+        while (ex.next(capture)) {
+            ex.fetch(value);
+            assertArrayEquals(Arrays.copyOf(value.getEncodedBytes(), value.getEncodedSize()), capture._bytes);
+        }
+    }
+
+    @Test
+    public void testMergeOperator() throws Exception {
+        final Exchange ex = populate(10);
+        ex.getTree().setMergeOperator(new MergeOperator() {
+            @Override
+            public void merge(final Key key, final Value value, final Value operand) {
+                value.put((value.isDefined() ? value.getLong() : 0) + operand.getLong());
+            }
+        });
+        ex.clear().append(4).getValue().put(2L);
+        ex.mergeStore();
+        ex.clear().append(20).getValue().put(6L);
+        ex.mergeStore();
+
+        assertTrue(ex.clear().append(4).fetch(new MultipleOf(3)));
+        assertFalse(ex.clear().append(3).fetch(new MultipleOf(2)));
+        assertTrue(ex.clear().append(20).fetch(new MultipleOf(6)));
+        final MultipleOf visitor = new MultipleOf(3);
+        assertEquals(Arrays.asList(0, 3, 4, 6, 9, 20), scan(ex, visitor));
+        assertEquals(11, visitor._visited);
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class ReadAheadTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 10000;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "100");
+        return properties;
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final Configuration configuration = new Configuration();
+        assertEquals(Configuration.DEFAULT_READ_AHEAD_THREADS, configuration.getReadAheadThreads());
+        final Properties properties = new Properties();
+        properties.setProperty(Configuration.READ_AHEAD_THREADS_PROPERTY_NAME, "0");
+        assertEquals(0, new Configuration(properties).getReadAheadThreads());
+        try {
+            configuration.setReadAheadThreads(-1);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(_persistit.getBufferPool(16384).isReadAheadEnabled());
+    }
+
+    @Test
+    public void testSequentialTraversal() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "ReadAheadTest", true);
+        final Exchange other = _persistit.getExchange("persistit", "ReadAheadTest2", true);
+        ex.getValue().put(createString(500));
+        other.getValue().put(createString(500));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+        //
+        // Displace the pages of the first tree from the pool
+        //
+        for (int i = 0; i < RECORDS; i++) {
+            other.to(i).store();
+        }
+        pool.resetCounters();
+
+        int count = 0;
+        ex.to(Key.BEFORE);
+        while (ex.next()) {
+            assertEquals(count, ex.getKey().decodeInt());
+            assertEquals(createString(500), ex.getValue().getString());
+            count++;
+        }
+        assertEquals(RECORDS, count);
+        assertTrue(pool.getReadAheadRequestCounter() > 0);
+        assertTrue("Pages read ahead: " + pool.getReadAheadPageCounter(), pool.getReadAheadPageCounter() > 0);
+    }
+
+    @Test
+    public void testRandomAccessDoesNotReadAhead() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "ReadAheadTest", true);
+        ex.getValue().put(createString(500));
+        for (int i = 0; i < RECORDS; i++) {
+            ex.to(i).store();
+        }
+        pool.resetCounters();
+        for (int i = 0; i < RECORDS; i += 97) {
+            ex.to(i).fetch();
+            assertTrue(ex.getValue().isDefined());
+        }
+        assertEquals(0, pool.getReadAheadRequestCounter());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class RecordBatchTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 10000;
+
+    @Test
+    public void testScan() throws Exception {
+        final Exchange ex = store();
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final RecordBatch batch = new RecordBatch(300);
+        final Key key = new Key(_persistit);
+        final Value value = new Value(_persistit);
+        final long hits = pool.getHitCounter() + pool.getMissCounter();
+        int count = 0;
+        ex.clear();
+        while (ex.nextBatch(batch) > 0) {
+            for (int i = 0; i < batch.getCount(); i++) {
+                assertEquals(count, batch.getKey(i, key).reset().decodeInt());
+                assertEquals(RED_FOX + count, batch.getValue(i, value).getString());
+                count++;
+            }
+            assertEquals(count - 1, ex.getKey().reset().decodeInt());
+        }
+        assertEquals(RECORDS, count);
+        assertEquals(0, ex.getKey().compareTo(new Key(_persistit).append(Key.AFTER)));
+        assertTrue("Too many buffer claims", pool.getHitCounter() + pool.getMissCounter() - hits < RECORDS / 10);
+    }
+
+    @Test
+    public void testKeyFilter() throws Exception {
+        final Exchange ex = store();
+        final RecordBatch batch = new RecordBatch();
+        final KeyFilter filter = new KeyFilter("{{1000:1099,5000:5009}}");
+        final Key key = new Key(_persistit);
+        ex.clear();
+        assertEquals(110, ex.nextBatch(batch, filter));
+        for (int i = 0; i < batch.getCount(); i++) {
+            final int k = batch.getKey(i, key).reset().decodeInt();
+            assertEquals(i < 100 ? 1000 + i : 4900 + i, k);
+        }
+        assertEquals(0, ex.nextBatch(batch, filter));
+    }
+
+    @Test
+    public void testVisibility() throws Exception {
+        final Exchange ex = store();
+        final Transaction txn = ex.getTransaction();
+        final RecordBatch batch = new RecordBatch(RECORDS);
+        txn.begin();
+        try {
+            for (int i = 0; i < RECORDS; i += 2) {
+                ex.clear().append(i).remove();
+            }
+            ex.clear();
+            assertEquals(RECORDS / 2, ex.nextBatch(batch));
+            final Key key = new Key(_persistit);
+            for (int i = 0; i < batch.getCount(); i++) {
+                assertEquals(i * 2 + 1, batch.getKey(i, key).reset().decodeInt());
+            }
+            txn.commit();
+        } finally {
+            txn.end();
+        }
+    }
+
+    private Exchange store() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "RecordBatchTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        return ex;
+    }
+}
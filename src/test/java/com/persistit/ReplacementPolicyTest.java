@@ -0,0 +1,216 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class ReplacementPolicyTest extends PersistitUnitTestCase {
+
+    private final static int COUNT = 40;
+
+    private final static int WORKING_SET = 24;
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.policy.16384", "2q");
+        return properties;
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        assertEquals("2Q", pool.getReplacementPolicyName());
+        final Configuration configuration = new Configuration();
+        final Configuration.BufferPoolConfiguration bpc = configuration.getBufferPoolMap().get(8192);
+        assertEquals("CLOCK", bpc.getReplacementPolicy());
+        bpc.setReplacementPolicy("clock");
+        assertEquals("CLOCK", bpc.getReplacementPolicy());
+        try {
+            bpc.setReplacementPolicy("LRU-17");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testScanResistance() throws Exception {
+        final int twoQueueSurvivors = workingSetAfterScan("2Q");
+        final int clockSurvivors = workingSetAfterScan("CLOCK");
+        assertTrue("2Q should retain the working set: " + twoQueueSurvivors, twoQueueSurvivors > WORKING_SET / 2);
+        assertEquals("CLOCK should not retain the working set", 0, clockSurvivors);
+    }
+
+    @Test
+    public void testClockBehavesAsBefore() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final Buffer[] buffers = buffers(volume);
+        final ReplacementPolicy policy = ReplacementPolicy.forName("CLOCK", buffers);
+        for (int i = 0; i < COUNT; i++) {
+            load(policy, evict(policy), volume, i);
+        }
+        buffers[0].setTouched();
+        final Buffer victim = policy.nextCandidate();
+        assertEquals(1, victim.getIndex());
+        assertFalse(buffers[0].isTouched());
+        assertEquals(0, policy.getGhostHitCounter());
+    }
+
+    @Test
+    public void testLivePool() throws Exception {
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        final Exchange ex = _persistit.getExchange("persistit", "ReplacementPolicyTest", true);
+        ex.getValue().put(createString(1000));
+        for (int i = 0; i < 5000; i++) {
+            ex.to(i).store();
+        }
+        for (int i = 0; i < 5000; i++) {
+            ex.to(i).fetch();
+            assertTrue(ex.getValue().isDefined());
+        }
+        assertTrue(pool.getGhostMissCounter() > 0);
+        assertTrue(pool.getProbationEvictCounter() > 0);
+        assertTrue(pool.getProbationHitCounter() + pool.getProtectedHitCounter() > 0);
+        assertTrue(pool.getProtectedHitCounter() <= pool.getHitCounter());
+    }
+
+    @Test
+    public void testConcurrentPolicy() throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final Buffer[] buffers = buffers(volume);
+        final ReplacementPolicy.TwoQueue policy = (ReplacementPolicy.TwoQueue) ReplacementPolicy.forName("2Q",
+                buffers);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = 1000 + t * 100000;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            final Buffer buffer = policy.nextCandidate();
+                            if (buffer.claim(true, 0)) {
+                                try {
+                                    if (buffer.isValid()) {
+                                        policy.evicted(buffer);
+                                    }
+                                    load(policy, buffer, volume, base + i % 200);
+                                    policy.hit(buffer);
+                                } finally {
+                                    buffer.release();
+                                }
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, failure.get());
+        int probation = 0;
+        for (final Buffer buffer : buffers) {
+            if (buffer.isValid() && !policy.isProtected(buffer)) {
+                probation++;
+            }
+        }
+        assertEquals(probation, policy.getProbationCount());
+        assertEquals(policy.getGhostHitCounter() + policy.getGhostMissCounter(), policy.getProbationHitCounter()
+                + policy.getProtectedHitCounter());
+    }
+
+    /**
+     * Simulate a working set that is referenced repeatedly, then a long scan
+     * that references each of many other pages once.
+     * 
+     * @return the number of working set pages still resident after the scan
+     */
+    private int workingSetAfterScan(final String policyName) throws Exception {
+        final Volume volume = _persistit.getVolume("persistit");
+        final Buffer[] buffers = buffers(volume);
+        final ReplacementPolicy policy = ReplacementPolicy.forName(policyName, buffers);
+        long nextPage = 1000;
+        for (int pass = 0; pass < 4; pass++) {
+            for (int page = 0; page < WORKING_SET; page++) {
+                if (!resident(buffers, volume, page)) {
+                    load(policy, evict(policy), volume, page);
+                }
+            }
+            for (int i = 0; i < COUNT / 4; i++) {
+                load(policy, evict(policy), volume, nextPage++);
+            }
+        }
+        for (int i = 0; i < COUNT * 10; i++) {
+            load(policy, evict(policy), volume, nextPage++);
+        }
+        int survivors = 0;
+        for (final Buffer buffer : buffers) {
+            if (buffer.getPageAddress() < WORKING_SET) {
+                survivors++;
+            }
+        }
+        return survivors;
+    }
+
+    private Buffer[] buffers(final Volume volume) {
+        final BufferPool pool = volume.getPool();
+        final Buffer[] buffers = new Buffer[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            buffers[i] = new Buffer(16384, i, pool, _persistit);
+        }
+        return buffers;
+    }
+
+    private Buffer evict(final ReplacementPolicy policy) {
+        final Buffer buffer = policy.nextCandidate();
+        if (buffer.isValid()) {
+            policy.evicted(buffer);
+        }
+        return buffer;
+    }
+
+    private void load(final ReplacementPolicy policy, final Buffer buffer, final Volume volume, final long page) {
+        buffer.setPageAddressAndVolume(page, volume);
+        buffer.setValid();
+        policy.admit(buffer);
+    }
+
+    private boolean resident(final Buffer[] buffers, final Volume volume, final long page) {
+        for (final Buffer buffer : buffers) {
+            if (buffer.getVolume() == volume && buffer.getPageAddress() == page) {
+                buffer.setTouched();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -199,6 +199,34 @@ public class SplitPolicyTest extends PersistitUnitTestCase {
         }
     }
 
+    @Test
+    public void testAppendBias() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "SplitPolicyTest", true);
+        ex.getValue().put("aaabbbcccdddeee");
+        ex.to(1);
+        long page = ex.fetchBufferCopy(0).getPageAddress();
+        final Buffer buffer = ex.getBufferPool().get(ex.getVolume(), page, false, true);
+        buffer.releaseTouched();
+        for (int i = 0; buffer.getAvailableSize() > 100; i++) {
+            ex.to(i).store();
+        }
+        SplitPolicy appendBias = SplitPolicy.APPEND_BIAS;
+        assertEquals("APPEND", appendBias.toString());
+        assertEquals(appendBias, SplitPolicy.forName("append"));
+        //
+        // Inserting before the right edge key leaves the left page full
+        //
+        final int last = buffer.getKeyBlockEnd() - Buffer.KEYBLOCK_LENGTH;
+        assertEquals(last, split(appendBias, buffer, last, Sequence.FORWARD));
+        //
+        // Elsewhere works the same as NICE_BIAS.
+        //
+        for (int p = buffer.getKeyBlockStart(); p < last; p += Buffer.KEYBLOCK_LENGTH) {
+            assertEquals(split(SplitPolicy.NICE_BIAS, buffer, p, Sequence.FORWARD),
+                    split(appendBias, buffer, p, Sequence.FORWARD));
+        }
+    }
+
     private int split(final SplitPolicy policy, final Buffer buffer, final int foundAt, final Sequence sequence) {
         int best = -1;
         int bestMeasure = -1;
@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.persistit.KeyHistogram.KeyCount;
+import com.persistit.policy.JoinPolicy;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class TreeCompactorTest extends PersistitUnitTestCase {
+
+    private final static int RECORDS = 50000;
+
+    @Test
+    public void testCompact() throws Exception {
+        final Exchange ex = store();
+        final Set<Integer> kept = thin(ex, 20);
+        final long before = dataPageCount(ex.getTree());
+        final TreeCompactor compactor = compactor();
+        final long freed = compactor.compact(ex.getTree());
+        final long after = dataPageCount(ex.getTree());
+        assertEquals(before - after, freed);
+        assertTrue("Pages: before=" + before + " after=" + after, after < before / 4);
+
+        for (int i = 0; i < RECORDS; i++) {
+            ex.clear().append(i).fetch();
+            if (kept.contains(i)) {
+                assertEquals(RED_FOX + i, ex.getValue().getString());
+            } else {
+                assertFalse(ex.getValue().isDefined());
+            }
+        }
+        int count = 0;
+        int previous = -1;
+        ex.clear().append(Key.BEFORE);
+        while (ex.next()) {
+            final int k = ex.getKey().reset().decodeInt();
+            assertTrue(k > previous && kept.contains(k));
+            previous = k;
+            count++;
+        }
+        assertEquals(kept.size(), count);
+        //
+        // A second pass has nothing left to join
+        //
+        assertEquals(0, compactor.compact(ex.getTree()));
+    }
+
+    @Test
+    public void testFillFactor() throws Exception {
+        final Exchange ex = store();
+        thin(ex, 3);
+        final long before = dataPageCount(ex.getTree());
+        final TreeCompactor compactor = compactor();
+        //
+        // Pages are about one third full, so pairs of pages rarely fit in half
+        // a page but usually fit in a whole one.
+        //
+        compactor.setFillFactor(50);
+        final long low = compactor.compact(ex.getTree());
+        compactor.setFillFactor(100);
+        final long high = compactor.compact(ex.getTree());
+        assertTrue("Pages: before=" + before + " low=" + low + " high=" + high, low < before / 10
+                && high > before / 3);
+        assertEquals(before - compactor.getPagesJoined(), dataPageCount(ex.getTree()));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final Exchange ex = store();
+        final Set<Integer> kept = thin(ex, 10);
+        final Exception[] failure = new Exception[1];
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Exchange ex = _persistit.getExchange("persistit", "TreeCompactorTest", false);
+                    for (int i = 0; i < RECORDS; i += 10) {
+                        ex.getValue().put(RED_FOX + i);
+                        ex.clear().append(i).append(1).store();
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        writer.start();
+        final long freed = compactor().compact(ex.getTree());
+        writer.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        assertTrue(freed > 0);
+        dataPageCount(ex.getTree());
+        int count = 0;
+        ex.clear().append(Key.BEFORE);
+        while (ex.next(true)) {
+            final int k = ex.getKey().reset().decodeInt();
+            if (ex.getKey().getDepth() == 2) {
+                assertEquals(0, k % 10);
+                assertEquals(1, ex.getKey().decodeInt());
+            } else {
+                assertTrue(kept.contains(k));
+            }
+            count++;
+        }
+        assertEquals(kept.size() + RECORDS / 10, count);
+    }
+
+    @Test
+    public void testRebalanceInsteadOfJoin() throws Exception {
+        final Exchange ex = store();
+        final Set<Integer> kept = thin(ex, 20);
+        final long before = dataPageCount(ex.getTree());
+        //
+        // A JoinPolicy that never accepts a join makes every join rebalance
+        // the two pages instead.
+        //
+        _persistit.setDefaultJoinPolicy(new JoinPolicy(0, "NEVER") {
+            @Override
+            public boolean acceptJoin(final Buffer buffer, final int virtualSize) {
+                return false;
+            }
+        });
+        assertEquals(0, compactor().compact(ex.getTree()));
+        assertEquals(before, dataPageCount(ex.getTree()));
+        int count = 0;
+        ex.clear().append(Key.BEFORE);
+        while (ex.next()) {
+            assertTrue(kept.contains(ex.getKey().reset().decodeInt()));
+            count++;
+        }
+        assertEquals(kept.size(), count);
+    }
+
+    private TreeCompactor compactor() {
+        final TreeCompactor compactor = new TreeCompactor(_persistit);
+        compactor.setThrottleDelay(0);
+        return compactor;
+    }
+
+    private Exchange store() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "TreeCompactorTest", true);
+        for (int i = 0; i < RECORDS; i++) {
+            ex.getValue().put(RED_FOX + i);
+            ex.clear().append(i).store();
+        }
+        return ex;
+    }
+
+    /**
+     * Remove every record except those whose key is a multiple of
+     * <code>modulus</code> or is the first key of a data page. Because no
+     * remove operation spans two pages, none of them joins pages, and the
+     * tree is left with the same number of sparsely filled pages.
+     */
+    private Set<Integer> thin(final Exchange ex, final int modulus) throws Exception {
+        final Set<Integer> kept = new HashSet<Integer>();
+        final Key key = new Key(_persistit);
+        for (final KeyCount sample : ex.computeHistogram(null, null, RECORDS, 0, null, 1).getSamples()) {
+            System.arraycopy(sample.getBytes(), 0, key.getEncodedBytes(), 0, sample.getBytes().length);
+            key.setEncodedSize(sample.getBytes().length);
+            if (!key.isLeftEdge() && !key.isRightEdge()) {
+                kept.add(key.reset().decodeInt());
+            }
+        }
+        final long pages = dataPageCount(ex.getTree());
+        for (int i = 0; i < RECORDS; i++) {
+            if (i % modulus == 0) {
+                kept.add(i);
+            } else if (!kept.contains(i)) {
+                ex.clear().append(i).remove();
+            }
+        }
+        assertEquals(pages, dataPageCount(ex.getTree()));
+        return kept;
+    }
+
+    private long dataPageCount(final Tree tree) throws Exception {
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(tree);
+        assertEquals(0, icheck.getFaults().length);
+        return icheck.getDataPageCount();
+    }
+}
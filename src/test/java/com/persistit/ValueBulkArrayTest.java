@@ -0,0 +1,252 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import org.junit.Test;
+
+import com.persistit.unit.PersistitUnitTestCase;
+import com.persistit.util.Util;
+
+public class ValueBulkArrayTest extends PersistitUnitTestCase {
+
+    private final static int[] SIZES = { 0, 1, 31, 32, 33, 1000 };
+
+    private static long[] longs(final int size) {
+        final long[] array = new long[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = (i * 0x9E3779B97F4A7C15L) ^ -i;
+        }
+        return array;
+    }
+
+    private static double[] doubles(final int size) {
+        final double[] array = new double[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = i % 7 == 3 ? Double.longBitsToDouble(0x7FF0000000000000L | i) : i * -1.25;
+        }
+        return array;
+    }
+
+    /**
+     * Encoding written element by element, as by earlier versions
+     */
+    private static byte[] expected(final long[] array) {
+        final byte[] bytes = new byte[array.length * 8 + 2];
+        bytes[0] = 62;
+        bytes[1] = 10;
+        for (int i = 0; i < array.length; i++) {
+            Util.putLong(bytes, i * 8 + 2, array[i]);
+        }
+        return bytes;
+    }
+
+    private static byte[] encoded(final Value value) {
+        final byte[] bytes = new byte[value.getEncodedSize()];
+        System.arraycopy(value.getEncodedBytes(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+        final Value value = new Value(_persistit);
+        for (final int size : SIZES) {
+            final long[] longs = longs(size);
+            value.put(longs);
+            assertArrayEquals(expected(longs), encoded(value));
+            assertArrayEquals(longs, (long[]) value.get());
+            final long[] slice = new long[size + 1];
+            final int from = size / 3;
+            assertEquals(size - from, value.getLongArray(slice, from, 1, size));
+            for (int i = from; i < size; i++) {
+                assertEquals(longs[i], slice[i - from + 1]);
+            }
+
+            final double[] doubles = doubles(size);
+            value.put(doubles);
+            final double[] copy = value.getDoubleArray();
+            for (int i = 0; i < size; i++) {
+                assertEquals(Double.doubleToRawLongBits(doubles[i]), Double.doubleToRawLongBits(copy[i]));
+            }
+            final double[] part = new double[size / 2];
+            assertEquals(part.length, value.getDoubleArray(part, size - part.length, 0, size));
+            for (int i = 0; i < part.length; i++) {
+                assertEquals(doubles[size - part.length + i], part[i], 0.0);
+            }
+
+            final short[] shorts = new short[size];
+            final char[] chars = new char[size];
+            final int[] ints = new int[size];
+            final float[] floats = new float[size];
+            for (int i = 0; i < size; i++) {
+                shorts[i] = (short) (i * 977);
+                chars[i] = (char) (i * 131);
+                ints[i] = i * 0x9E3779B1;
+                floats[i] = i / 3f;
+            }
+            value.put(shorts);
+            assertArrayEquals(shorts, value.getShortArray());
+            value.put(chars);
+            assertArrayEquals(chars, value.getCharArray());
+            value.put(ints);
+            assertArrayEquals(ints, value.getIntArray());
+            value.put(floats);
+            final float[] floatCopy = value.getFloatArray();
+            for (int i = 0; i < size; i++) {
+                assertEquals(floats[i], floatCopy[i], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamMode() throws Exception {
+        final Value value = new Value(_persistit);
+        final long[] longs = longs(1000);
+        final double[] doubles = doubles(100);
+        value.setStreamMode(true);
+        value.put("a");
+        value.put(longs);
+        value.put(doubles);
+        value.putLongArray(LongBuffer.wrap(longs, 10, 50));
+        value.put("b");
+        value.setStreamMode(false);
+        value.setStreamMode(true);
+        assertEquals("a", value.get());
+        assertArrayEquals(longs, value.getLongArray());
+        final DoubleBuffer buffer = DoubleBuffer.allocate(10);
+        assertEquals(10, value.getDoubleArray(buffer));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(doubles[i], buffer.get(i), 0.0);
+        }
+        final long[] slice = new long[50];
+        assertEquals(50, value.getLongArray(slice, 0, 0, 100));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(longs[i + 10], slice[i]);
+        }
+        assertEquals("b", value.get());
+    }
+
+    @Test
+    public void testBuffers() throws Exception {
+        final Value value = new Value(_persistit);
+        final Value reference = new Value(_persistit);
+        final long[] longs = longs(1000);
+        reference.put(longs);
+
+        final LongBuffer heap = LongBuffer.wrap(longs);
+        value.putLongArray(heap);
+        assertEquals(0, heap.remaining());
+        assertArrayEquals(encoded(reference), encoded(value));
+
+        final LongBuffer direct = ByteBuffer.allocateDirect(8000).asLongBuffer();
+        direct.put(longs).flip();
+        value.putLongArray(direct);
+        assertArrayEquals(encoded(reference), encoded(value));
+
+        direct.clear().position(100).limit(400);
+        assertEquals(300, value.getLongArray(direct));
+        assertEquals(400, direct.position());
+        for (int i = 100; i < 400; i++) {
+            assertEquals(longs[i - 100], direct.get(i));
+        }
+        final LongBuffer large = LongBuffer.allocate(2000);
+        assertEquals(1000, value.getLongArray(large));
+        assertEquals(1000, large.position());
+
+        final double[] doubles = doubles(1000);
+        value.putDoubleArray(DoubleBuffer.wrap(doubles, 1, 998));
+        reference.putDoubleArray(doubles, 1, 998);
+        assertArrayEquals(encoded(reference), encoded(value));
+        final DoubleBuffer doubleBuffer = DoubleBuffer.allocate(998);
+        assertEquals(998, value.getDoubleArray(doubleBuffer));
+        for (int i = 0; i < 998; i++) {
+            assertEquals(Double.doubleToRawLongBits(doubles[i + 1]),
+                    Double.doubleToRawLongBits(doubleBuffer.get(i)));
+        }
+
+        final IntBuffer ints = IntBuffer.allocate(64);
+        for (int i = 0; i < 64; i++) {
+            ints.put(i * i);
+        }
+        ints.flip();
+        value.putIntArray(ints);
+        final int[] intArray = value.getIntArray();
+        assertEquals(64, intArray.length);
+        assertEquals(63 * 63, intArray[63]);
+
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(500);
+        for (int i = 0; i < 500; i++) {
+            bytes.put((byte) i);
+        }
+        bytes.flip();
+        value.putByteArray(bytes);
+        final byte[] byteArray = value.getByteArray();
+        assertEquals(500, byteArray.length);
+        assertEquals((byte) 499, byteArray[499]);
+        final ByteBuffer target = ByteBuffer.allocate(100);
+        assertEquals(100, value.getByteArray(target));
+        assertEquals((byte) 99, target.get(99));
+
+        value.put(null);
+        assertEquals(-1, value.getLongArray(LongBuffer.allocate(1)));
+    }
+
+    @Test
+    public void testSliceOfLongRecord() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "ValueBulkArrayTest", true);
+        final double[] doubles = doubles(200000);
+        ex.clear().append("doubles").getValue().put(doubles);
+        ex.store();
+
+        final int from = 1000;
+        final int to = 1500;
+        ex.fetch(Value.primitiveArrayPrefixSize(double.class, to));
+        assertTrue(ex.getValue().getEncodedSize() < doubles.length * 8);
+        final double[] slice = new double[to - from];
+        assertEquals(slice.length, ex.getValue().getDoubleArray(slice, from, 0, slice.length));
+        for (int i = 0; i < slice.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(doubles[from + i]), Double.doubleToRawLongBits(slice[i]));
+        }
+
+        ex.fetch();
+        final double[] all = new double[doubles.length];
+        assertEquals(all.length, ex.getValue().getDoubleArray(DoubleBuffer.wrap(all)));
+        assertEquals(doubles[doubles.length - 1], all[all.length - 1], 0.0);
+
+        assertEquals(2 + 8 * 10, Value.primitiveArrayPrefixSize(long.class, 10));
+        assertEquals(2 + 10, Value.primitiveArrayPrefixSize(boolean.class, 10));
+        try {
+            Value.primitiveArrayPrefixSize(String.class, 10);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
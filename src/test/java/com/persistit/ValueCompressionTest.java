@@ -0,0 +1,251 @@
+/**
+ * Copyright © 2012 Akiban Technologies, Inc.  All rights reserved.
+ * 
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * This program may also be available under different license terms.
+ * For more information, see www.akiban.com or contact licensing@akiban.com.
+ * 
+ * Contributors:
+ * Akiban Technologies, Inc.
+ */
+
+package com.persistit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.persistit.exception.PersistitException;
+import com.persistit.unit.PersistitUnitTestCase;
+
+public class ValueCompressionTest extends PersistitUnitTestCase {
+
+    private final static int THRESHOLD = 64;
+
+    private static String record(final int id) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"id\":").append(id).append(",\"items\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":\"item-").append(i).append("\",\"quantity\":").append(i * id % 7)
+                    .append(",\"status\":\"shipped\"}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private Exchange exchange(final String treeName) throws PersistitException {
+        final Exchange ex = _persistit.getExchange("persistit", treeName, true);
+        ex.getTree().setCompressionThreshold(THRESHOLD);
+        return ex;
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        final ValueCompressor compressor = new ValueCompressor();
+        final Random random = new Random(1);
+        for (int size = 0; size < 5000; size += 1 + size / 4) {
+            final byte[] repetitive = new byte[size];
+            final byte[] noise = new byte[size];
+            random.nextBytes(noise);
+            for (int i = 0; i < size; i++) {
+                repetitive[i] = (byte) (i % 37 < 20 ? 'a' + i % 5 : noise[i]);
+            }
+            for (final byte[] bytes : new byte[][] { repetitive, noise }) {
+                final byte[] compressed = new byte[size + size / 16 + 64];
+                final int length = compressor.compress(bytes, 0, size, compressed, 0, compressed.length);
+                assertTrue(length >= 0);
+                final byte[] expanded = new byte[size];
+                assertEquals(size, ValueCompressor.expand(compressed, 0, length, expanded, 0, size));
+                assertArrayEquals(expanded, bytes);
+            }
+        }
+        final Value source = new Value(_persistit);
+        final Value target = new Value(_persistit);
+        source.put(record(1));
+        assertTrue(compressor.compress(source, target));
+        assertTrue(target.getEncodedSize() < source.getEncodedSize() / 2);
+        assertFalse(compressor.compress(target, new Value(_persistit)));
+        assertEquals(record(1), target.get());
+        assertEquals(source.toString(), target.toString());
+        compressor.expand(target);
+        assertArrayEquals(source.getEncodedBytes(), target.getEncodedBytes());
+
+        final byte[] noise = new byte[1000];
+        random.nextBytes(noise);
+        source.put(noise);
+        assertFalse(compressor.compress(source, target));
+    }
+
+    @Test
+    public void testStoreAndFetch() throws Exception {
+        final Exchange plain = _persistit.getExchange("persistit", "ValueCompressionTest.plain", true);
+        final Exchange ex = exchange("ValueCompressionTest");
+        for (int i = 0; i < 1000; i++) {
+            plain.clear().append(i).getValue().put(record(i));
+            plain.store();
+            ex.clear().append(i).getValue().put(record(i));
+            ex.store();
+        }
+        ex.clear().append("small").getValue().put("small");
+        ex.store();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(record(i), ex.clear().append(i).fetch().getValue().getString());
+        }
+        assertEquals("small", ex.clear().append("small").fetch().getValue().getString());
+        ex.clear();
+        int count = 0;
+        while (ex.next()) {
+            if (ex.getKey().decode() instanceof Integer) {
+                assertEquals(record(count++), ex.getValue().getString());
+            }
+        }
+        assertEquals(1000, count);
+
+        ex.clear().append(0).getValue().put(record(-1));
+        ex.fetchAndStore();
+        assertEquals(record(0), ex.getValue().getString());
+        assertEquals(record(-1), ex.fetch().getValue().getString());
+        assertTrue(ex.remove());
+
+        final IntegrityCheck plainCheck = new IntegrityCheck(_persistit);
+        plainCheck.checkTree(plain.getTree());
+        final long plainBytes = plainCheck.getDataByteCount();
+        final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+        icheck.checkTree(ex.getTree());
+        final long compressedBytes = icheck.getDataByteCount();
+        assertEquals(0, icheck.getFaults().length);
+        assertTrue("Compressed " + compressedBytes + " plain " + plainBytes, compressedBytes < plainBytes / 2);
+
+        ex.getTree().setCompressionThreshold(0);
+        assertEquals(record(1), ex.clear().append(1).fetch().getValue().getString());
+    }
+
+    @Test
+    public void testLongRecord() throws Exception {
+        final Exchange ex = exchange("ValueCompressionTest");
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 200000; i++) {
+            sb.append(record(i));
+        }
+        final String large = sb.toString();
+        ex.clear().append("large").getValue().put(large);
+        ex.store();
+        ex.fetch(10);
+        assertEquals(large, ex.getValue().getString());
+
+        final byte[] bytes = new byte[100000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 100);
+        }
+        ex.clear().append("bytes").getValue().put(bytes);
+        ex.store();
+        final InputStream is = ex.fetchStream();
+        for (int i = 0; i < bytes.length; i++) {
+            assertEquals(bytes[i], (byte) is.read());
+        }
+        assertEquals(-1, is.read());
+        is.close();
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        final Exchange ex = exchange("ValueCompressionTest");
+        final Transaction txn = _persistit.getTransaction();
+        for (int i = 0; i < 100; i++) {
+            txn.begin();
+            try {
+                ex.clear().append(i).getValue().put(record(i));
+                ex.store();
+                txn.commit();
+            } finally {
+                txn.end();
+            }
+        }
+        txn.begin();
+        try {
+            ex.clear().append(1).getValue().put(record(-1));
+            ex.store();
+            assertEquals(record(-1), ex.fetch().getValue().getString());
+            txn.rollback();
+        } finally {
+            txn.end();
+        }
+        assertEquals(record(1), ex.clear().append(1).fetch().getValue().getString());
+
+        _persistit.getJournalManager().flush();
+        _persistit.crash();
+        final Properties properties = _persistit.getProperties();
+        _persistit = new Persistit();
+        _persistit.initialize(properties);
+        final Exchange recovered = _persistit.getExchange("persistit", "ValueCompressionTest", false);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(record(i), recovered.clear().append(i).fetch().getValue().getString());
+        }
+    }
+
+    @Test
+    public void testUpdateAndBulkLoad() throws Exception {
+        final Exchange plain = _persistit.getExchange("persistit", "ValueCompressionTest.plain", true);
+        final Exchange updated = exchange("ValueCompressionTest.updated");
+        final Exchange loaded = exchange("ValueCompressionTest.loaded");
+        final BulkLoader loader = new BulkLoader(loaded);
+        for (int i = 0; i < 1000; i++) {
+            plain.clear().append(i).getValue().put(record(i));
+            plain.store();
+            final int id = i;
+            updated.clear().append(i).update(new ValueUpdater() {
+                @Override
+                public boolean update(final Key key, final Value value) {
+                    assertFalse(value.isDefined());
+                    value.put(record(id));
+                    return true;
+                }
+            });
+            assertEquals(record(i), updated.getValue().getString());
+            loaded.clear().append(i).getValue().put(record(i));
+            loader.append(loaded.getKey(), loaded.getValue());
+        }
+        loader.finish();
+        updated.clear().append(1).update(new ValueUpdater() {
+            @Override
+            public boolean update(final Key key, final Value value) {
+                assertEquals(record(1), value.getString());
+                value.put(record(-1));
+                return true;
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(record(i == 1 ? -1 : i), updated.clear().append(i).fetch().getValue().getString());
+            assertEquals(record(i), loaded.clear().append(i).fetch().getValue().getString());
+        }
+
+        final IntegrityCheck plainCheck = new IntegrityCheck(_persistit);
+        plainCheck.checkTree(plain.getTree());
+        final long plainBytes = plainCheck.getDataByteCount();
+        for (final Exchange ex : new Exchange[] { updated, loaded }) {
+            final IntegrityCheck icheck = new IntegrityCheck(_persistit);
+            icheck.checkTree(ex.getTree());
+            final long compressedBytes = icheck.getDataByteCount();
+            assertEquals(0, icheck.getFaults().length);
+            assertTrue("Compressed " + compressedBytes + " plain " + plainBytes, compressedBytes < plainBytes / 2);
+        }
+    }
+
+    @Override
+    public void runAllTests() throws Exception {
+
+    }
+}
@@ -15,52 +15,113 @@
 
 package com.persistit;
 
-import static org.junit.Assert.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 import org.junit.Test;
 
 import com.persistit.unit.PersistitUnitTestCase;
 
 public class WarmupTest extends PersistitUnitTestCase {
-	
+
+    @Override
+    protected Properties getProperties(final boolean cleanup) {
+        final Properties properties = super.getProperties(cleanup);
+        properties.setProperty("buffer.count.16384", "200");
+        return properties;
+    }
+
     @Test
     public void testWarmup() throws Exception {
         Exchange ex = _persistit.getExchange("persistit", "WarmupTest", true);
+        ex.getValue().put(createString(1000));
         for (int i = 1; i <= 1000; i++) {
-            ex.getValue().put(RED_FOX);
             ex.clear().append(i).store();
         }
-        
-        // Assumption: only one buffer pool is created
-        int poolCount = 0;
-        String pathName = "";
-        Buffer[] buff = new Buffer[100];
-        for (BufferPool p: _persistit.getBufferPoolHashMap().values()) {
-        	poolCount = p.getBufferCount();
-                pathName = p.toString();
-        	for (int i = 0; i < poolCount; ++i) {
-        		buff[i] = p.getBufferCopy(i);
-        	}
-        }
-        
-        Properties properties = _persistit.getProperties();
+
+        final Properties properties = _persistit.getProperties();
+        final File file = new File(_persistit.getConfiguration().getBufferInventoryPathName(), "BufferPool_16384.inv");
         ex = null;
         _persistit.close();
 
+        final BufferInventory inventory = BufferInventory.load(file);
+        assertNotNull(inventory);
+        assertTrue(inventory.getPageCount() > 20);
+
         _persistit = new Persistit();
         _persistit.initialize(properties);
-        
-        int poolCount1 = 0;
-        for (BufferPool p: _persistit.getBufferPoolHashMap().values()) {
-        	poolCount1 = p.getBufferCount();
-        	for (int i = 0; i < poolCount1; ++i) {
-        		Buffer bufferCopy = p.getBufferCopy(i);
-        		assertEquals(bufferCopy.getPageAddress(), buff[i].getPageAddress());
-        		assertEquals(bufferCopy.getPageType(), buff[i].getPageType());
-        		assertEquals(bufferCopy.getBufferSize(), buff[i].getBufferSize());
-        	}
+        final BufferPool pool = _persistit.getBufferPool(16384);
+        for (int wait = 0; wait < 100 && pool.isWarmupActive(); wait++) {
+            Thread.sleep(100);
+        }
+        assertFalse(pool.isWarmupActive());
+        assertEquals(inventory.getPageCount(), pool.getWarmupPageCounter());
+        assertTrue(pool.getWarmupLoadedCounter() > 0);
+
+        final Set<String> cached = new HashSet<String>();
+        for (int index = 0; index < pool.getBufferCount(); index++) {
+            final Buffer copy = pool.getBufferCopy(index);
+            if (copy.isValid()) {
+                cached.add(copy.getVolume().getName() + ":" + copy.getPageAddress());
+            }
+        }
+        for (int v = 0; v < inventory.getVolumeCount(); v++) {
+            for (final long page : inventory.getPages(v)) {
+                assertTrue("Page " + page + " not warmed up",
+                        cached.contains(inventory.getVolumeName(v) + ":" + page));
+            }
+        }
+
+        ex = _persistit.getExchange("persistit", "WarmupTest", false);
+        for (int i = 1; i <= 1000; i++) {
+            ex.clear().append(i).fetch();
+            assertEquals(createString(1000), ex.getValue().getString());
+        }
+    }
+
+    @Test
+    public void testInventoryFile() throws Exception {
+        final File file = new File(_persistit.getConfiguration().getBufferInventoryPathName(), "WarmupTest.inv");
+        assertNull(BufferInventory.load(file));
+
+        final BufferInventory inventory = new BufferInventory(16384);
+        inventory.add("a", new long[] { 7, 3, 5, 4, 1000000000000L });
+        inventory.add("b", new long[0]);
+        inventory.save(file);
+
+        final BufferInventory copy = BufferInventory.load(file);
+        assertEquals(16384, copy.getBufferSize());
+        assertEquals(2, copy.getVolumeCount());
+        assertEquals("a", copy.getVolumeName(0));
+        assertEquals("b", copy.getVolumeName(1));
+        final long[] pages = copy.getPages(0);
+        assertEquals(5, pages.length);
+        assertEquals(3, pages[0]);
+        assertEquals(7, pages[3]);
+        assertEquals(1000000000000L, pages[4]);
+        assertEquals(0, copy.getPages(1).length);
+        assertEquals(5, copy.getPageCount());
+
+        final FileOutputStream os = new FileOutputStream(file);
+        os.write("1000 persistit\n".getBytes());
+        os.close();
+        try {
+            BufferInventory.load(file);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
         }
-        assertEquals(poolCount, poolCount1);         
+        file.delete();
     }
 }
@@ -21,6 +21,7 @@ import static org.junit.Assert.fail;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
@@ -28,7 +29,9 @@ import org.junit.Test;
 import com.persistit.Exchange;
 import com.persistit.Key;
 import com.persistit.KeyFilter;
+import com.persistit.Management.BufferPoolInfo;
 import com.persistit.Transaction;
+import com.persistit.Value;
 import com.persistit.Volume;
 import com.persistit.exception.ConversionException;
 import com.persistit.exception.PersistitException;
@@ -314,6 +317,50 @@ public class ExchangeTest extends PersistitUnitTestCase {
         }
     }
     
+    @Test
+    public void testFetchAll() throws Exception {
+        final Exchange ex = _persistit.getExchange("persistit", "gogo", true);
+        for (int i = 0; i < 10000; i += 2) {
+            ex.getValue().put(RED_FOX + i);
+            ex.to(i).store();
+        }
+        final Random random = new Random(1);
+        final Key[] keys = new Key[500];
+        final Value[] values = new Value[keys.length];
+        int expected = 0;
+        for (int i = 0; i < keys.length; i++) {
+            final int k = random.nextInt(10001);
+            keys[i] = new Key(_persistit).append(k);
+            values[i] = new Value(_persistit);
+            if (k % 2 == 0) {
+                expected++;
+            }
+        }
+        ex.to("unchanged");
+        ex.getValue().put("unchanged");
+        final long hits = hitCount();
+        assertEquals(expected, ex.fetchAll(keys, values));
+        assertTrue("Too many buffer claims", hitCount() - hits < keys.length / 2);
+        for (int i = 0; i < keys.length; i++) {
+            final int k = keys[i].reset().decodeInt();
+            if (k % 2 == 0) {
+                assertEquals(RED_FOX + k, values[i].getString());
+            } else {
+                assertTrue("No value expected for " + k, !values[i].isDefined());
+            }
+        }
+        assertEquals("unchanged", ex.getKey().reset().decodeString());
+        assertEquals("unchanged", ex.getValue().getString());
+    }
+
+    private long hitCount() throws Exception {
+        long count = 0;
+        for (final BufferPoolInfo info : _persistit.getManagement().getBufferPoolInfoArray()) {
+            count += info.getHitCount();
+        }
+        return count;
+    }
+
     @Test
     public void testWrongThreadAssertion() throws Exception {
         boolean assertsEnabled = false;
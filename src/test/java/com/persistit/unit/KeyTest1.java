@@ -31,6 +31,7 @@ import com.persistit.Buffer;
 import com.persistit.Key;
 import com.persistit.KeyState;
 import com.persistit.TestShim;
+import com.persistit.exception.ConversionException;
 import com.persistit.exception.InvalidKeyException;
 import com.persistit.exception.MissingKeySegmentException;
 import com.persistit.util.Util;
@@ -701,6 +702,54 @@ public class KeyTest1 extends PersistitUnitTestCase {
         }
     }
 
+    @Test
+    public void testDecodeStringIntoArray() {
+        final Key key1 = new Key(_persistit);
+        final String[] strings = { "", "abc", "a\u0000b\u0001c", "\u00e9t\u00e9", "\u4e2d\u6587" };
+        final char[] chars = new char[10];
+        for (final String s : strings) {
+            key1.clear().append(s).append(42);
+            key1.reset();
+            final int length = key1.decodeString(chars, 1);
+            assertEquals(s, new String(chars, 1, length));
+            assertEquals(42, key1.decodeInt());
+        }
+        key1.clear().append("abcdefghijk");
+        try {
+            key1.reset().decodeString(chars, 0);
+            Assert.fail("Expected ConversionException!");
+        } catch (ConversionException e) {
+            // expected
+        }
+        assertEquals("abcdefghijk", key1.reset().decodeString());
+    }
+
+    @Test
+    public void testCompareString() {
+        final Key key1 = new Key(_persistit);
+        final Key key2 = new Key(_persistit);
+        final String[] strings = { "", "a", "ab", "abc", "abd", "b", "a\u0000", "a\u0001", "a\u0002", "\u00e9",
+                "\u4e2d", "\uffff" };
+        for (final String s1 : strings) {
+            key1.clear().append(s1);
+            for (final String s2 : strings) {
+                key2.clear().append(s2);
+                final int expected = Integer.signum(key1.compareTo(key2));
+                assertEquals(s1 + " vs " + s2, expected, Integer.signum(key1.reset().compareString(s2)));
+                assertEquals(expected, Integer.signum(s1.compareTo(s2)));
+            }
+        }
+        key1.clear().append(1).append("abc");
+        assertEquals(0, key1.indexTo(1).compareString(new StringBuilder("abc")));
+        assertEquals("abc", key1.decodeString());
+        try {
+            key1.reset().compareString("abc");
+            Assert.fail("Expected ConversionException!");
+        } catch (ConversionException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testFirstUniqueSegmentDepth() {
         final Key key1 = new Key(_persistit);